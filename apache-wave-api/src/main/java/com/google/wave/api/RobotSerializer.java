@@ -28,9 +28,18 @@ import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParseException;
 import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.google.gson.stream.MalformedJsonException;
 import com.google.wave.api.JsonRpcConstant.ParamsProperty;
 import com.google.wave.api.JsonRpcConstant.RequestProperty;
 
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -159,6 +168,30 @@ public class RobotSerializer {
     return getGson(protocolVersion).toJson(object, type);
   }
 
+  /**
+   * Serializes the given objects as a JSON array, writing each element to
+   * {@code out} as soon as it is serialized rather than building the whole
+   * array as a string first.
+   *
+   * @param <T> the generic type of the given objects.
+   * @param objects the objects to serialize.
+   * @param elementType the specific genericized type of each object.
+   * @param protocolVersion the version of the serializer to use.
+   * @param out the writer to write the JSON array to.
+   * @throws IOException if writing fails.
+   */
+  public <T> void serializeList(Iterable<T> objects, Type elementType,
+      ProtocolVersion protocolVersion, Writer out) throws IOException {
+    Gson gson = getGson(protocolVersion);
+    JsonWriter writer = new JsonWriter(out);
+    writer.beginArray();
+    for (T object : objects) {
+      gson.toJson(object, elementType, writer);
+    }
+    writer.endArray();
+    writer.flush();
+  }
+
   /**
    * Parses the given JSON string into a {@link JsonElement}.
    *
@@ -184,37 +217,91 @@ public class RobotSerializer {
     if (Util.isEmptyOrWhitespace(jsonString)) {
       return Collections.emptyList();
     }
-
-    // Parse incoming operations.
-    JsonArray requestsAsJsonArray = null;
-
-    JsonElement json = null;
     try {
-      json = jsonParser.parse(jsonString);
-    } catch (JsonParseException e) {
+      return deserializeOperations(new StringReader(jsonString));
+    } catch (IOException e) {
       throw new InvalidRequestException("Couldn't deserialize incoming operations: " +
           jsonString, null, e);
     }
+  }
 
-    if (json.isJsonArray()) {
-      requestsAsJsonArray = json.getAsJsonArray();
-    } else {
-      requestsAsJsonArray = new JsonArray();
-      requestsAsJsonArray.add(json);
+  /**
+   * Deserializes operations, reading them one at a time from a stream, so that
+   * only the operation being read is held as a JSON tree. This method supports
+   * only the new JSON-RPC style operations.
+   *
+   * @param in the reader of the operations JSON to deserialize.
+   * @return a list of {@link OperationRequest},that represents the operations.
+   * @throws InvalidRequestException if there is a problem deserializing the
+   *     operations.
+   * @throws IOException if reading from {@code in} fails.
+   */
+  public List<OperationRequest> deserializeOperations(Reader in)
+      throws InvalidRequestException, IOException {
+    JsonReader reader = new JsonReader(in);
+    reader.setLenient(true);
+    List<OperationRequest> requests = new ArrayList<OperationRequest>();
+    try {
+      boolean isArray;
+      try {
+        isArray = reader.peek() == JsonToken.BEGIN_ARRAY;
+      } catch (EOFException e) {
+        // An empty document.
+        return requests;
+      }
+      if (isArray) {
+        reader.beginArray();
+      }
+      Gson gson = null;
+      while (isArray ? reader.hasNext() : requests.isEmpty()) {
+        JsonElement requestAsJsonElement = jsonParser.parse(reader);
+        if (gson == null) {
+          // The version is given by the first operation.
+          ProtocolVersion protocolVersion = determineProtocolVersion(requestAsJsonElement);
+          PROTOCOL_VERSION_COUNTERS.get(protocolVersion).incrementAndGet();
+          gson = getGson(protocolVersion);
+        }
+        validate(requestAsJsonElement);
+        requests.add(gson.fromJson(requestAsJsonElement, OperationRequest.class));
+      }
+      if (isArray) {
+        reader.endArray();
+      }
+      if (reader.peek() != JsonToken.END_DOCUMENT) {
+        throw new InvalidRequestException("Unexpected content after the incoming operations");
+      }
+    } catch (MalformedJsonException e) {
+      throw new InvalidRequestException("Couldn't deserialize incoming operations", null, e);
+    } catch (EOFException e) {
+      throw new InvalidRequestException("Incoming operations are truncated", null, e);
+    } catch (JsonParseException e) {
+      throw new InvalidRequestException("Couldn't deserialize incoming operations", null, e);
     }
-
-    // Convert incoming operations into a list of JsonRpcRequest.
-    ProtocolVersion protocolVersion = determineProtocolVersion(requestsAsJsonArray);
-    PROTOCOL_VERSION_COUNTERS.get(protocolVersion).incrementAndGet();
-    List<OperationRequest> requests = new ArrayList<OperationRequest>(requestsAsJsonArray.size());
-    for (JsonElement requestAsJsonElement : requestsAsJsonArray) {
-      validate(requestAsJsonElement);
-      requests.add(getGson(protocolVersion).fromJson(requestAsJsonElement,
-          OperationRequest.class));
+    if (requests.isEmpty()) {
+      PROTOCOL_VERSION_COUNTERS.get(defaultProtocolVersion).incrementAndGet();
     }
     return requests;
   }
 
+  /**
+   * Determines the protocol version of a given operation bundle JSON by
+   * inspecting its first operation. If it is a {@code robot.notify} operation,
+   * and contains {@code protocolVersion} parameter, then this method will
+   * return the value of that parameter. Otherwise, this method will return the
+   * default version.
+   *
+   * @param firstOperation the first operation of the bundle.
+   * @return the wire protocol version of the bundle.
+   */
+  private ProtocolVersion determineProtocolVersion(JsonElement firstOperation) {
+    if (!firstOperation.isJsonObject()) {
+      return defaultProtocolVersion;
+    }
+    JsonArray operationBundle = new JsonArray();
+    operationBundle.add(firstOperation);
+    return determineProtocolVersion(operationBundle);
+  }
+
   /**
    * Determines the protocol version of a given operation bundle JSON by
    * inspecting the first operation in the bundle. If it is a
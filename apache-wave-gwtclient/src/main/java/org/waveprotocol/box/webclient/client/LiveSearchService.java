@@ -0,0 +1,213 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.waveprotocol.box.webclient.client;
+
+import com.google.gwt.http.client.Request;
+import com.google.gwt.user.client.Timer;
+
+import org.waveprotocol.box.search.SearchResponse.Digest;
+import org.waveprotocol.box.search.SearchUpdate;
+import org.waveprotocol.box.search.jso.SearchRequestJsoImpl;
+import org.waveprotocol.box.webclient.search.JsoSearchBuilderImpl;
+import org.waveprotocol.box.webclient.search.SearchService;
+import org.waveprotocol.wave.client.debug.logger.DomLogger;
+import org.waveprotocol.wave.common.logging.LoggerBundle;
+import org.waveprotocol.wave.model.util.CollectionUtils;
+import org.waveprotocol.wave.model.util.StringMap;
+
+import java.util.List;
+
+/**
+ * A search service that keeps the last search open over the wave websocket,
+ * so the server pushes its results as they change instead of the client
+ * polling for them.
+ *
+ * The callback of the open search is called again with the whole segment of
+ * results whenever an update arrives. Asking again for the open search answers
+ * at once from the last results, without a request. If the server doesn't
+ * answer a live search, live searches are given up and searches go to the
+ * fallback service from then on. While the websocket is down, searches also
+ * go to the fallback.
+ */
+public final class LiveSearchService implements SearchService {
+
+  private static final LoggerBundle LOG = new DomLogger("search");
+
+  /** The time to wait for the first results of a live search. */
+  private static final int FIRST_UPDATE_TIMEOUT_MS = 5000;
+
+  private final WaveWebSocketClient socket;
+  private final SearchService fallback;
+
+  /** Whether the server failed a live search, so that searches use the fallback. */
+  private boolean unavailable;
+
+  /** The open live search, or null. */
+  private LiveSearch current;
+
+  /**
+   * @param socket the websocket to open live searches on
+   * @param fallback the service to search through when live searches are not
+   *        available
+   */
+  public LiveSearchService(WaveWebSocketClient socket, SearchService fallback) {
+    this.socket = socket;
+    this.fallback = fallback;
+  }
+
+  @Override
+  public Request search(String query, int index, int numResults, Callback callback) {
+    if (current != null && current.isFor(query, index, numResults)) {
+      current.setCallback(callback);
+      return null;
+    }
+    if (current != null) {
+      current.cancel();
+      current = null;
+    }
+    if (unavailable || !socket.isConnected()) {
+      return fallback.search(query, index, numResults, callback);
+    }
+    current = new LiveSearch(query, index, numResults, callback);
+    current.open();
+    return null;
+  }
+
+  /**
+   * A search open on the server.
+   */
+  private final class LiveSearch implements SearchUpdateCallback {
+    private final String query;
+    private final int index;
+    private final int numResults;
+    private Callback callback;
+    private int searchId;
+
+    /** The last results, null before the first update. */
+    private List<String> waveIds;
+    private int total;
+    private final StringMap<DigestSnapshot> digests = CollectionUtils.createStringMap();
+
+    private final Timer firstUpdateTimeout = new Timer() {
+      @Override
+      public void run() {
+        LOG.error().log("No live search results after ", FIRST_UPDATE_TIMEOUT_MS,
+            "ms, searching without live updates");
+        unavailable = true;
+        LiveSearch.this.cancel();
+        fallBack();
+      }
+    };
+
+    LiveSearch(String query, int index, int numResults, Callback callback) {
+      this.query = query;
+      this.index = index;
+      this.numResults = numResults;
+      this.callback = callback;
+    }
+
+    boolean isFor(String query, int index, int numResults) {
+      return this.query.equals(query) && this.index == index && this.numResults == numResults;
+    }
+
+    void open() {
+      SearchRequestJsoImpl request = SearchRequestJsoImpl.create();
+      request.setQuery(query);
+      request.setIndex(index);
+      request.setNumResults(numResults);
+      searchId = socket.search(request, this);
+      firstUpdateTimeout.schedule(FIRST_UPDATE_TIMEOUT_MS);
+    }
+
+    /**
+     * Sends the results to another callback, at once if there are results
+     * already.
+     */
+    void setCallback(Callback callback) {
+      this.callback = callback;
+      if (waveIds != null) {
+        deliver();
+      }
+    }
+
+    void cancel() {
+      firstUpdateTimeout.cancel();
+      socket.cancelSearch(searchId);
+    }
+
+    @Override
+    public void onUpdate(SearchUpdate update) {
+      firstUpdateTimeout.cancel();
+      total = update.getTotalResults();
+      for (Digest digest : update.getDigests()) {
+        digests.put(digest.getWaveId(), JsoSearchBuilderImpl.deserializeDigest(digest));
+      }
+      waveIds = update.getWaveIds();
+      // Forget the digests of waves that left the results.
+      final StringMap<Boolean> present = CollectionUtils.createStringMap();
+      for (String waveId : waveIds) {
+        present.put(waveId, true);
+      }
+      digests.filter(new StringMap.EntryFilter<DigestSnapshot>() {
+        @Override
+        public boolean apply(String waveId, DigestSnapshot digest) {
+          return present.containsKey(waveId);
+        }
+      });
+      deliver();
+    }
+
+    @Override
+    public void onFinished() {
+      firstUpdateTimeout.cancel();
+      if (current != this) {
+        return;
+      }
+      current = null;
+      if (waveIds == null) {
+        if (socket.isConnected()) {
+          LOG.error().log("Live search failed, searching without live updates");
+          unavailable = true;
+        }
+        fallBack();
+      }
+      // Otherwise the results stay as they are until the next search, which
+      // opens a new live search.
+    }
+
+    private void fallBack() {
+      if (current == this) {
+        current = null;
+      }
+      fallback.search(query, index, numResults, callback);
+    }
+
+    private void deliver() {
+      List<DigestSnapshot> snapshots = CollectionUtils.newArrayList();
+      for (String waveId : waveIds) {
+        DigestSnapshot digest = digests.get(waveId);
+        if (digest != null) {
+          snapshots.add(digest);
+        }
+      }
+      callback.onSuccess(total, snapshots);
+    }
+  }
+}
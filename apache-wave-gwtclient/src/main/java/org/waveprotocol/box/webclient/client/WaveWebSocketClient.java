@@ -36,6 +36,8 @@ import org.waveprotocol.box.common.comms.jso.ProtocolOpenRequestJsoImpl;
 import org.waveprotocol.box.common.comms.jso.ProtocolSubmitRequestJsoImpl;
 import org.waveprotocol.box.common.comms.jso.ProtocolSubmitResponseJsoImpl;
 import org.waveprotocol.box.common.comms.jso.ProtocolWaveletUpdateJsoImpl;
+import org.waveprotocol.box.search.jso.SearchRequestJsoImpl;
+import org.waveprotocol.box.search.jso.SearchUpdateJsoImpl;
 import org.waveprotocol.wave.client.events.ClientEvents;
 import org.waveprotocol.wave.client.events.Log;
 import org.waveprotocol.wave.client.events.NetworkStatusEvent;
@@ -44,6 +46,7 @@ import org.waveprotocol.wave.communication.gwt.JsonMessage;
 import org.waveprotocol.wave.communication.json.JsonException;
 import org.waveprotocol.wave.model.util.CollectionUtils;
 import org.waveprotocol.wave.model.util.IntMap;
+import org.waveprotocol.wave.model.util.ReadableIntMap;
 
 import java.util.Queue;
 import org.waveprotocol.box.stat.Timer;
@@ -96,6 +99,7 @@ public class WaveWebSocketClient implements WaveSocket.WaveSocketCallback {
 
   private WaveSocket socket;
   private final IntMap<SubmitResponseCallback> submitRequestCallbacks;
+  private final IntMap<SearchUpdateCallback> searchCallbacks;
 
   /**
    * Lifecycle of a socket is:
@@ -137,6 +141,7 @@ public class WaveWebSocketClient implements WaveSocket.WaveSocketCallback {
     this.websocketNotAvailable = websocketNotAvailable;
     this.urlBase = urlBase;
     submitRequestCallbacks = CollectionUtils.createIntMap();
+    searchCallbacks = CollectionUtils.createIntMap();
     socket = WaveSocketFactory.create(websocketNotAvailable, urlBase, this);
   }
 
@@ -181,9 +186,29 @@ public class WaveWebSocketClient implements WaveSocket.WaveSocketCallback {
     ClientEvents.get().fireEvent(new NetworkStatusEvent(ConnectionStatus.CONNECTED));
   }
 
+  /**
+   * Returns whether this connection is open, so that messages sent now are
+   * not queued.
+   */
+  public boolean isConnected() {
+    return connected == ConnectState.CONNECTED;
+  }
+
   @Override
   public void onDisconnect() {
     connected = ConnectState.DISCONNECTED;
+    // Live searches end with the connection on the server.
+    if (!searchCallbacks.isEmpty()) {
+      final IntMap<SearchUpdateCallback> lost = CollectionUtils.createIntMap();
+      lost.putAll(searchCallbacks);
+      searchCallbacks.clear();
+      lost.each(new ReadableIntMap.ProcV<SearchUpdateCallback>() {
+        @Override
+        public void apply(int seqno, SearchUpdateCallback callback) {
+          callback.onFinished();
+        }
+      });
+    }
     ClientEvents.get().fireEvent(new NetworkStatusEvent(ConnectionStatus.DISCONNECTED));
   }
 
@@ -212,6 +237,18 @@ public class WaveWebSocketClient implements WaveSocket.WaveSocketCallback {
         submitRequestCallbacks.remove(seqno);
         callback.run(wrapper.<ProtocolSubmitResponseJsoImpl>getPayload());
       }
+    } else if ("SearchUpdate".equals(messageType)) {
+      SearchUpdateCallback callback = searchCallbacks.get(wrapper.getSequenceNumber());
+      if (callback != null) {
+        callback.onUpdate(wrapper.<SearchUpdateJsoImpl>getPayload());
+      }
+    } else if ("RpcFinished".equals(messageType)) {
+      int seqno = wrapper.getSequenceNumber();
+      SearchUpdateCallback callback = searchCallbacks.get(seqno);
+      if (callback != null) {
+        searchCallbacks.remove(seqno);
+        callback.onFinished();
+      }
     }
   }
 
@@ -225,6 +262,31 @@ public class WaveWebSocketClient implements WaveSocket.WaveSocketCallback {
     send(MessageWrapper.create(sequenceNo++, "ProtocolOpenRequest", message));
   }
 
+  /**
+   * Opens a live search.
+   *
+   * @return the id of the search, to cancel it with
+   */
+  public int search(SearchRequestJsoImpl message, SearchUpdateCallback callback) {
+    int searchId = sequenceNo++;
+    searchCallbacks.put(searchId, callback);
+    send(MessageWrapper.create(searchId, "SearchRequest", message));
+    return searchId;
+  }
+
+  /**
+   * Cancels a live search. Its callback is not called again.
+   */
+  public void cancelSearch(int searchId) {
+    if (searchCallbacks.containsKey(searchId)) {
+      searchCallbacks.remove(searchId);
+      if (connected == ConnectState.CONNECTED) {
+        // CancelRpc has no fields.
+        send(MessageWrapper.create(searchId, "CancelRpc", JsonMessage.createJsonMessage()));
+      }
+    }
+  }
+
   private void send(JsonMessage message) {
     switch (connected) {
       case CONNECTED:
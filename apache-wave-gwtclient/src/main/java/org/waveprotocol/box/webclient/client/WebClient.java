@@ -247,7 +247,8 @@ public class WebClient implements EntryPoint {
             ClientEvents.get().fireEvent(new WaveSelectionEvent(WaveRef.of(id)));
           }
         };
-    Search search = SimpleSearch.create(RemoteSearchService.create(), waveStore);
+    Search search = SimpleSearch.create(
+        new LiveSearchService(websocket, RemoteSearchService.create()), waveStore);
     SearchPresenter.create(search, searchPanel, actionHandler, profiles);
   }
 
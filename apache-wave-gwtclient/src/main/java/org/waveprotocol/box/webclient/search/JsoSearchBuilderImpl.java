@@ -140,6 +140,14 @@ public final class JsoSearchBuilderImpl implements SearchBuilder {
     }
   }
 
+  /**
+   * Copies a digest of a search response or update into a
+   * {@link DigestSnapshot}.
+   */
+  public static DigestSnapshot deserializeDigest(Digest digest) {
+    return SearchBuilderUtils.deserializeDigest(digest);
+  }
+
   private static class SearchBuilderUtils {
     /**
      * Constructs a list of {@link org.waveprotocol.box.webclient.search.Digest}
@@ -61,7 +61,11 @@ public final class SearchPresenter
 
   private static final SearchPresenterMessages messages = GWT.create(SearchPresenterMessages.class);
 
-  /** How often to repeat the search query. */
+  /**
+   * How often to repeat the search query. With a live search service, which
+   * answers repeated queries without a request, this only reopens a live
+   * search that was lost, or polls when live searches are not available.
+   */
   private final static int POLLING_INTERVAL_MS = 15000; // 15s
   private final static String DEFAULT_SEARCH = "in:inbox";
   private final static int DEFAULT_PAGE_SIZE = 20;
@@ -173,9 +177,9 @@ public final class SearchPresenter
             actionHandler.onCreateWave();
 
             // HACK(hearnden): To mimic live search, fire a search poll
-            // reasonably soon (500ms) after creating a wave. This will be unnecessary
-            // with a real live search implementation. The delay is to give
-            // enough time for the wave state to propagate to the server.
+            // reasonably soon (500ms) after creating a wave, for when live
+            // searches are not available. The delay is to give enough time for
+            // the wave state to propagate to the server.
             int delay = 500;
             scheduler.scheduleRepeating(searchUpdater, delay, POLLING_INTERVAL_MS);
           }
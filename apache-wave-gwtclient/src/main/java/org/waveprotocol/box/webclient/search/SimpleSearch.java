@@ -199,6 +199,12 @@ public final class SimpleSearch implements Search, WaveStore.Listener {
   /** The request that is currently in flight, or {@code null}. */
   private Callback outstanding;
 
+  /**
+   * The request whose results are shown, or {@code null}. A live search
+   * service calls it again when the results change.
+   */
+  private Callback current;
+
   /** Total size of the search result. */
   private int total = 0;
 
@@ -237,6 +243,7 @@ public final class SimpleSearch implements Search, WaveStore.Listener {
     destroyDigests();
     waveStore.removeListener(this);
     outstanding = null;
+    current = null;
   }
 
   private void destroyDigests() {
@@ -276,6 +283,10 @@ public final class SimpleSearch implements Search, WaveStore.Listener {
         if (outstanding == this) {
           outstanding = null;
           previousRequest = null;
+          current = this;
+          handleSuccess(total, 0, snapshots);
+        } else if (current == this && outstanding == null) {
+          // Pushed by a live search service.
           handleSuccess(total, 0, snapshots);
         }
       }
@@ -293,6 +304,7 @@ public final class SimpleSearch implements Search, WaveStore.Listener {
 
   @Override
   public void cancel() {
+    current = null;
     handleFailure("cancelled by user");
   }
 
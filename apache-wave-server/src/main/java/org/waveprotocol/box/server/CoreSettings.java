@@ -61,7 +61,18 @@ public class CoreSettings {
   public static final String LOOKUP_EXECUTOR_THREAD_COUNT = "lookup_executor_thread_count";
   public static final String ROBOT_CONNECTION_THREAD_COUNT = "robot_connection_thread_count";
   public static final String ROBOT_GATEWAY_THREAD_COUNT = "robot_gateway_thread_count";
+  public static final String ROBOT_OPERATION_THREAD_COUNT = "robot_operation_thread_count";
+  public static final String ROBOT_CONNECTION_MAX_PER_ROBOT = "robot_connection_max_per_robot";
+  public static final String ROBOT_CONNECTION_TIMEOUT_MS = "robot_connection_timeout_ms";
   public static final String SOLR_THREAD_COUNT = "solr_thread_count";
+  public static final String DELTA_VERIFICATION_THREAD_COUNT = "delta_verification_thread_count";
+  public static final String ATTACHMENT_EXECUTOR_THREAD_COUNT = "attachment_executor_thread_count";
+  public static final String PRELOAD_THREAD_COUNT = "preload_thread_count";
+  public static final String PRELOAD_WAVE_COUNT = "preload_wave_count";
+  public static final String PRELOAD_MAX_AGE_DAYS = "preload_max_age_days";
+  public static final String PRELOAD_WAVES_FILE = "preload_waves_file";
+  public static final String LIVE_SEARCH_THREAD_COUNT = "live_search_thread_count";
+  public static final String LIVE_SEARCH_REFRESH_DELAY_MS = "live_search_refresh_delay_ms";
   public static final String DISABLE_REGISTRATION = "disable_registration";
   public static final String ENABLE_SSL = "enable_ssl";
   public static final String SSL_KEYSTORE_PATH = "ssl_keystore_path";
@@ -228,11 +239,75 @@ public class CoreSettings {
       defaultValue = "10")
   private static int robotGatewayThreadCount;
 
+  @Setting(name = ROBOT_OPERATION_THREAD_COUNT,
+      description = "The number of threads to execute robot operations on different wavelets"
+      + " in parallel, 0 executes them on the request thread.",
+      defaultValue = "4")
+  private static int robotOperationThreadCount;
+
+  @Setting(name = ROBOT_CONNECTION_MAX_PER_ROBOT,
+      description = "The maximum number of concurrent requests to a single robot endpoint.",
+      defaultValue = "4")
+  private static int robotConnectionMaxPerRobot;
+
+  @Setting(name = ROBOT_CONNECTION_TIMEOUT_MS,
+      description = "The connect, read and queueing timeout for robot requests in milliseconds.",
+      defaultValue = "10000")
+  private static int robotConnectionTimeoutMs;
+
   @Setting(name = SOLR_THREAD_COUNT,
       description = "The number of threads to make search/update requests to Solr.",
       defaultValue = "1")
   private static int solrThreadCount;
 
+  @Setting(name = DELTA_VERIFICATION_THREAD_COUNT,
+      description = "The number of threads to verify the signatures of deltas from remote"
+      + " servers in parallel, 0 verifies them on the receiving thread.",
+      defaultValue = "2")
+  private static int deltaVerificationThreadCount;
+
+  @Setting(name = ATTACHMENT_EXECUTOR_THREAD_COUNT,
+      description = "The number of threads to build the thumbnails and metadata of uploaded"
+      + " attachments, 0 builds them on the uploading thread.",
+      defaultValue = "2")
+  private static int attachmentExecutorThreadCount;
+
+  @Setting(name = PRELOAD_THREAD_COUNT,
+      description = "The number of waves to load at once when the server starts, 0 loads them"
+      + " one by one before the server accepts traffic.",
+      defaultValue = "4")
+  private static int preloadThreadCount;
+
+  @Setting(name = PRELOAD_WAVE_COUNT,
+      description = "The number of most recently modified waves to load when the server starts,"
+      + " 0 disables preloading.",
+      defaultValue = "1000")
+  private static int preloadWaveCount;
+
+  @Setting(name = PRELOAD_MAX_AGE_DAYS,
+      description = "Waves last modified more than this many days before the server starts are"
+      + " not preloaded.",
+      defaultValue = "7")
+  private static int preloadMaxAgeDays;
+
+  @Setting(name = PRELOAD_WAVES_FILE,
+      description = "The file where the server keeps the most recently modified waves, to"
+      + " preload them at the next start. Must be writeable by the wave-in-a-box process.",
+      defaultValue = "_recent_waves")
+  private static String preloadWavesFile;
+
+  @Setting(name = LIVE_SEARCH_THREAD_COUNT,
+      description = "The number of threads to update the live searches of the clients when"
+      + " waves change.",
+      defaultValue = "2")
+  private static int liveSearchThreadCount;
+
+  @Setting(name = LIVE_SEARCH_REFRESH_DELAY_MS,
+      description = "How long a live search waits after a wave changes before it updates,"
+      + " so a burst of changes is sent to the client as one update.",
+      defaultValue = "1000")
+  private static int liveSearchRefreshDelayMs;
+
   @Setting(name = DISABLE_REGISTRATION,
       description = "Prevents the register page from being available to anyone", defaultValue = "false")
   private static boolean disableRegistration;
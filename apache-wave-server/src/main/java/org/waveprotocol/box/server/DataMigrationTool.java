@@ -26,7 +26,10 @@ import com.google.inject.Key;
 import com.google.inject.Module;
 import com.google.inject.name.Names;
 
+import org.waveprotocol.box.server.persistence.AttachmentStore;
 import org.waveprotocol.box.server.persistence.PersistenceModule;
+import org.waveprotocol.box.server.persistence.file.FileAttachmentStore;
+import org.waveprotocol.box.server.persistence.migration.AttachmentMigrator;
 import org.waveprotocol.box.server.persistence.migration.DeltaMigrator;
 import org.waveprotocol.box.server.waveserver.DeltaStore;
 import org.waveprotocol.wave.util.logging.Log;
@@ -75,6 +78,23 @@ public class DataMigrationTool {
 
   }
 
+  private static void runAttachmentsMigration(Injector sourceInjector, Injector targetInjector) {
+    AttachmentStore sourceStore = sourceInjector.getInstance(AttachmentStore.class);
+    if (!(sourceStore instanceof FileAttachmentStore)) {
+      usageError("Attachments can only be migrated from a disk attachment store");
+    }
+    String sourceDirectory = sourceInjector
+        .getInstance(Key.get(String.class, Names.named(CoreSettings.ATTACHMENT_STORE_DIRECTORY)));
+    String targetDirectory = targetInjector
+        .getInstance(Key.get(String.class, Names.named(CoreSettings.ATTACHMENT_STORE_DIRECTORY)));
+    if (sourceDirectory.equals(targetDirectory)) {
+      usageError("Source and Target attachment store directories must be different");
+    }
+
+    new AttachmentMigrator((FileAttachmentStore) sourceStore,
+        targetInjector.getInstance(AttachmentStore.class)).run();
+  }
+
   private static Map<Setting, Field> getCoreSettings() {
 
     // Get all method fields
@@ -178,11 +198,14 @@ public class DataMigrationTool {
   public static void usageError(String msg) {
     System.out.println(msg + "\n");
     System.out.println("Use: DataMigrationTool <data type> <source options> <target options>\n");
-    System.out.println("supported data types : deltas");
+    System.out.println("supported data types : deltas, attachments");
     System.out
         .println("source options example : delta_store_type=file,delta_store_directory=./_deltas");
     System.out
         .println("target options example : delta_store_type=mongodb,mongodb_host=127.0.0.1,mongodb_port=27017,mongodb_database=wiab");
+    System.out.println("attachments options example : "
+        + "attachment_store_type=disk,attachment_store_directory=./_attachments "
+        + "attachment_store_type=content,attachment_store_directory=./_attachments_content");
     System.exit(1);
   }
 
@@ -209,6 +232,10 @@ public class DataMigrationTool {
       runDeltasMigration(sourceInjector, targetInjector);
 
 
+    } else if (dataType.equals("attachments")) {
+
+      runAttachmentsMigration(sourceInjector, targetInjector);
+
     } else {
       usageError("Wrong data type");
     }
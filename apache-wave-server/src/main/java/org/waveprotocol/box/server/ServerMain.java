@@ -38,6 +38,8 @@ import org.waveprotocol.box.server.authentication.AccountStoreHolder;
 import org.waveprotocol.box.server.authentication.SessionManager;
 import org.waveprotocol.box.server.frontend.ClientFrontend;
 import org.waveprotocol.box.server.frontend.ClientFrontendImpl;
+import org.waveprotocol.box.server.frontend.LiveSearchManager;
+import org.waveprotocol.box.server.frontend.SearchRpcImpl;
 import org.waveprotocol.box.server.frontend.WaveClientRpcImpl;
 import org.waveprotocol.box.server.frontend.WaveletInfo;
 import org.waveprotocol.box.server.persistence.AccountStore;
@@ -55,6 +57,7 @@ import org.waveprotocol.box.server.robots.agent.welcome.WelcomeRobot;
 import org.waveprotocol.box.server.robots.dataapi.DataApiOAuthServlet;
 import org.waveprotocol.box.server.robots.dataapi.DataApiServlet;
 import org.waveprotocol.box.server.robots.passive.RobotsGateway;
+import org.waveprotocol.box.server.robots.register.RobotRegistrar;
 import org.waveprotocol.box.server.rpc.AttachmentInfoServlet;
 import org.waveprotocol.box.server.rpc.AttachmentServlet;
 import org.waveprotocol.box.server.rpc.AuthenticationServlet;
@@ -69,11 +72,14 @@ import org.waveprotocol.box.server.rpc.SignOutServlet;
 import org.waveprotocol.box.server.rpc.UserRegistrationServlet;
 import org.waveprotocol.box.server.rpc.WaveClientServlet;
 import org.waveprotocol.box.server.rpc.WaveRefServlet;
+import org.waveprotocol.box.server.util.collect.CompactCollectionFactory;
 import org.waveprotocol.box.server.waveserver.PerUserWaveViewBus;
 import org.waveprotocol.box.server.waveserver.PerUserWaveViewDistpatcher;
+import org.waveprotocol.box.server.waveserver.UnreadSummaryStore;
 import org.waveprotocol.box.server.waveserver.WaveBus;
 import org.waveprotocol.box.server.waveserver.WaveIndexer;
 import org.waveprotocol.box.server.waveserver.WaveServerException;
+import org.waveprotocol.box.server.waveserver.WaveletPreloader;
 import org.waveprotocol.box.server.waveserver.WaveletProvider;
 import org.waveprotocol.box.server.waveserver.WaveletStateException;
 import org.waveprotocol.wave.crypto.CertPathStore;
@@ -81,6 +87,7 @@ import org.waveprotocol.wave.federation.FederationSettings;
 import org.waveprotocol.wave.federation.FederationTransport;
 import org.waveprotocol.wave.federation.noop.NoOpFederationModule;
 import org.waveprotocol.wave.federation.xmpp.XmppFederationModule;
+import org.waveprotocol.wave.model.util.CollectionUtils;
 import org.waveprotocol.wave.model.version.HashedVersionFactory;
 import org.waveprotocol.wave.model.wave.ParticipantIdUtil;
 import org.waveprotocol.wave.util.logging.Log;
@@ -98,6 +105,8 @@ import javax.servlet.http.HttpServlet;
 
 import org.eclipse.jetty.proxy.ProxyServlet;
 import org.waveprotocol.box.common.comms.WaveClientRpc.ProtocolWaveClientRpc;
+import org.waveprotocol.box.search.SearchProto.ProtocolSearchRpc;
+import org.waveprotocol.box.server.stat.MetricszServlet;
 import org.waveprotocol.box.server.stat.RequestScopeFilter;
 import org.waveprotocol.box.server.stat.StatuszServlet;
 import org.waveprotocol.box.server.stat.TimingFilter;
@@ -158,6 +167,9 @@ public class ServerMain {
 
   public static void run(Module coreSettings) throws PersistenceException,
       ConfigurationException, WaveServerException {
+    // Wavelet documents, annotations and supplements on the server take their
+    // string and number keyed collections from this factory.
+    CollectionUtils.setDefaultCollectionFactory(new CompactCollectionFactory());
     Injector injector = Guice.createInjector(coreSettings);
     Module profilingModule = injector.getInstance(StatModule.class);
     ExecutorsModule executorsModule = injector.getInstance(ExecutorsModule.class);
@@ -197,6 +209,7 @@ public class ServerMain {
     initializeFrontend(injector, server, waveBus);
     initializeFederation(injector);
     initializeSearch(injector, waveBus);
+    initializePreloader(injector);
 
     LOG.info("Starting server");
     server.startWebSocketServer(injector);
@@ -275,12 +288,14 @@ public class ServerMain {
     if (enableProfiling) {
       server.addFilter("/*", TimingFilter.class);
       server.addServlet(StatService.STAT_URL, StatuszServlet.class);
+      server.addServlet(MetricszServlet.METRICS_URL, MetricszServlet.class);
     }
   }
 
   private static void initializeRobots(Injector injector, WaveBus waveBus) {
     RobotsGateway robotsGateway = injector.getInstance(RobotsGateway.class);
     waveBus.subscribe(robotsGateway);
+    injector.getInstance(RobotRegistrar.class).addRegistrationListener(robotsGateway);
   }
 
   private static void initializeRobotAgents(Injector injector, ServerRpcProvider server) {
@@ -301,6 +316,10 @@ public class ServerMain {
 
     ProtocolWaveClientRpc.Interface rpcImpl = WaveClientRpcImpl.create(frontend, false);
     server.registerService(ProtocolWaveClientRpc.newReflectiveService(rpcImpl));
+
+    ProtocolSearchRpc.Interface searchRpcImpl =
+        SearchRpcImpl.create(injector.getInstance(LiveSearchManager.class));
+    server.registerService(ProtocolSearchRpc.newReflectiveService(searchRpcImpl));
   }
 
   private static void initializeFederation(Injector injector) {
@@ -315,8 +334,14 @@ public class ServerMain {
     PerUserWaveViewBus.Listener listener = injector.getInstance(PerUserWaveViewBus.Listener.class);
     waveViewDistpatcher.addListener(listener);
     waveBus.subscribe(waveViewDistpatcher);
+    waveBus.subscribe(injector.getInstance(UnreadSummaryStore.class));
 
     WaveIndexer waveIndexer = injector.getInstance(WaveIndexer.class);
     waveIndexer.remakeIndex();
   }
+
+  private static void initializePreloader(Injector injector) {
+    // Waves are loaded in the background while the server accepts traffic.
+    injector.getInstance(WaveletPreloader.class).start();
+  }
 }
@@ -89,6 +89,7 @@ public class ServerModule extends AbstractModule {
 
     bind(ServerRpcProvider.class).in(Singleton.class);
 
+    bind(RobotRegistrarImpl.class).in(Singleton.class);
     bind(RobotRegistrar.class).to(RobotRegistrarImpl.class);
 
     requestStaticInjection(WebSocketChannel.class);
@@ -20,6 +20,9 @@
 package org.waveprotocol.box.server.attachment;
 
 import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Maps;
 import com.google.inject.Inject;
 import java.awt.Color;
 import java.awt.Graphics2D;
@@ -30,13 +33,20 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URLConnection;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 import org.waveprotocol.box.attachment.AttachmentMetadata;
 import org.waveprotocol.box.attachment.ImageMetadata;
 import org.waveprotocol.box.attachment.impl.AttachmentMetadataImpl;
 import org.waveprotocol.box.attachment.impl.ImageMetadataImpl;
+import org.waveprotocol.box.server.executor.ExecutorAnnotations.AttachmentExecutor;
 import org.waveprotocol.box.server.persistence.AttachmentStore;
 import org.waveprotocol.box.server.persistence.AttachmentStore.AttachmentData;
 import org.waveprotocol.box.server.rpc.AttachmentServlet;
@@ -49,6 +59,11 @@ import org.waveprotocol.wave.util.escapers.jvm.JavaWaverefEncoder;
 /**
  * Serves storing and getting of attachments.
  *
+ * Metadata and thumbnails are built on the attachment executor, so storing an
+ * attachment returns as soon as its data is stored. Until they are built,
+ * {@link #getMetadata} returns metadata without image details, for which
+ * thumbnails are served from the patterns.
+ *
  * @author akaplanov@gmail.com (A. Kaplanov)
  */
 public class AttachmentService {
@@ -63,15 +78,41 @@ public class AttachmentService {
   private static final int MAX_THUMBNAIL_WIDTH = 200;
   private static final int MAX_THUMBNAIL_HEIGHT = 200;
 
+  /** Number of attachment metadata kept in memory. */
+  private static final int METADATA_CACHE_SIZE = 10000;
+
   private final AttachmentStore store;
+  private final Executor executor;
+
+  /**
+   * Metadata by attachment id. Metadata is written once, so entries never go
+   * stale; attachments without metadata are not cached.
+   */
+  private final Cache<AttachmentId, AttachmentMetadata> metadataCache =
+      CacheBuilder.newBuilder().maximumSize(METADATA_CACHE_SIZE).build();
+
+  /** Metadata without image details of attachments still being built. */
+  private final ConcurrentMap<AttachmentId, AttachmentMetadata> pendingMetadata =
+      Maps.newConcurrentMap();
 
   @Inject
-  private AttachmentService(AttachmentStore store) {
+  private AttachmentService(AttachmentStore store, @AttachmentExecutor Executor executor) {
     this.store = store;
+    this.executor = executor;
   }
 
   public AttachmentMetadata getMetadata(AttachmentId attachmentId) throws IOException {
-    return store.getMetadata(attachmentId);
+    AttachmentMetadata metadata = pendingMetadata.get(attachmentId);
+    if (metadata == null) {
+      metadata = metadataCache.getIfPresent(attachmentId);
+    }
+    if (metadata == null) {
+      metadata = store.getMetadata(attachmentId);
+      if (metadata != null) {
+        metadataCache.put(attachmentId, metadata);
+      }
+    }
+    return metadata;
   }
 
   public AttachmentData getAttachment(AttachmentId attachmentId) throws IOException {
@@ -85,15 +126,64 @@ public class AttachmentService {
   public void storeAttachment(AttachmentId attachmentId, InputStream in, WaveletName waveletName,
       String fileName, ParticipantId creator) throws IOException {
     store.storeAttachment(attachmentId, in);
-    buildAndStoreMetadataWithThumbnail(attachmentId, waveletName, fileName, creator);
+    buildMetadataWithThumbnail(attachmentId, waveletName, fileName, creator);
   }
 
-  public AttachmentMetadata buildAndStoreMetadataWithThumbnail(AttachmentId attachmentId,
-      WaveletName waveletName, String fileName, ParticipantId creator) throws IOException {
+  /**
+   * Starts building and storing the metadata and thumbnail of a stored
+   * attachment.
+   *
+   * @return the metadata without image details, which {@link #getMetadata}
+   *         returns until the full metadata is stored.
+   */
+  public AttachmentMetadata buildMetadataWithThumbnail(final AttachmentId attachmentId,
+      final WaveletName waveletName, final String fileName, final ParticipantId creator)
+      throws IOException {
     AttachmentData data = store.getAttachment(attachmentId);
     if (data == null) {
       throw new IOException("No such atachment " + attachmentId.serialise());
     }
+    final AttachmentMetadata pending =
+        makeMetadata(attachmentId, data, waveletName, fileName, creator);
+    AttachmentMetadata previous = pendingMetadata.putIfAbsent(attachmentId, pending);
+    if (previous != null) {
+      return previous;
+    }
+    executor.execute(new Runnable() {
+      @Override
+      public void run() {
+        buildAndStoreMetadataWithThumbnail(attachmentId, pending, waveletName, fileName, creator);
+      }
+    });
+    return pending;
+  }
+
+  private void buildAndStoreMetadataWithThumbnail(AttachmentId attachmentId,
+      AttachmentMetadata pending, WaveletName waveletName, String fileName,
+      ParticipantId creator) {
+    // If the image can't be read, the attachment keeps the pattern thumbnail.
+    AttachmentMetadata metadata = pending;
+    try {
+      AttachmentData data = store.getAttachment(attachmentId);
+      if (data != null) {
+        metadata = makeMetadata(attachmentId, data, waveletName, fileName, creator);
+        addImageMetadataWithThumbnail(attachmentId, data, metadata);
+      }
+    } catch (IOException | RuntimeException ex) {
+      LOG.log(Level.SEVERE, "Building metadata of attachment " + attachmentId.serialise(), ex);
+    }
+    try {
+      store.storeMetadata(attachmentId, metadata);
+      metadataCache.put(attachmentId, metadata);
+    } catch (IOException ex) {
+      LOG.log(Level.SEVERE, "Storing metadata of attachment " + attachmentId.serialise(), ex);
+    } finally {
+      pendingMetadata.remove(attachmentId);
+    }
+  }
+
+  private static AttachmentMetadata makeMetadata(AttachmentId attachmentId, AttachmentData data,
+      WaveletName waveletName, String fileName, ParticipantId creator) {
     AttachmentMetadata metadata = new AttachmentMetadataImpl();
     metadata.setAttachmentId(attachmentId.serialise());
     metadata.setAttachmentUrl(AttachmentServlet.ATTACHMENT_URL + "/" + attachmentId.serialise());
@@ -104,35 +194,61 @@ public class AttachmentService {
     metadata.setMimeType(contentType);
     metadata.setSize(data.getSize());
     metadata.setCreator((creator != null) ? creator.getAddress() : "");
-    BufferedImage image = null;
+    ImageMetadata thumbnailMetadata = new ImageMetadataImpl();
+    thumbnailMetadata.setWidth(THUMBNAIL_PATTERN_WIDTH);
+    thumbnailMetadata.setHeight(THUMBNAIL_PATTERN_HEIGHT);
+    metadata.setThumbnailMetadata(thumbnailMetadata);
+    return metadata;
+  }
+
+  /**
+   * Adds the size of an image attachment to its metadata and stores its
+   * thumbnail. Only a subsample of the image, a few times the size of the
+   * thumbnail, is decoded. Does nothing if the attachment is not an image.
+   */
+  private void addImageMetadataWithThumbnail(AttachmentId attachmentId, AttachmentData data,
+      AttachmentMetadata metadata) throws IOException {
+    InputStream in = data.getInputStream();
     try {
-      image = ImageIO.read(data.getInputStream());
-    } catch (IOException ex) {
-      LOG.log(Level.SEVERE, "Identifying attachment", ex);
-    }
-    if (image != null) {
-      ImageMetadata imageMetadata = new ImageMetadataImpl();
-      imageMetadata.setWidth(image.getWidth());
-      imageMetadata.setHeight(image.getHeight());
-      metadata.setImageMetadata(imageMetadata);
+      ImageInputStream imageIn = ImageIO.createImageInputStream(in);
+      if (imageIn == null) {
+        return;
+      }
       try {
-        BufferedImage thumbnail = makeThumbnail(image);
-        storeThumbnail(attachmentId, thumbnail);
-        ImageMetadata thumbnailMetadata = new ImageMetadataImpl();
-        thumbnailMetadata.setWidth(thumbnail.getWidth());
-        thumbnailMetadata.setHeight(thumbnail.getHeight());
-        metadata.setThumbnailMetadata(thumbnailMetadata);
-      } catch (IOException ex) {
-        LOG.log(Level.SEVERE, "Building attachment thumbnail", ex);
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(imageIn);
+        if (!readers.hasNext()) {
+          return;
+        }
+        ImageReader reader = readers.next();
+        try {
+          reader.setInput(imageIn, true, true);
+          int width = reader.getWidth(0);
+          int height = reader.getHeight(0);
+          ImageReadParam param = reader.getDefaultReadParam();
+          int subsampling = Math.max(1,
+              Math.max(width / (2 * MAX_THUMBNAIL_WIDTH), height / (2 * MAX_THUMBNAIL_HEIGHT)));
+          param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+          BufferedImage image = reader.read(0, param);
+
+          ImageMetadata imageMetadata = new ImageMetadataImpl();
+          imageMetadata.setWidth(width);
+          imageMetadata.setHeight(height);
+          metadata.setImageMetadata(imageMetadata);
+          BufferedImage thumbnail = makeThumbnail(image);
+          storeThumbnail(attachmentId, thumbnail);
+          ImageMetadata thumbnailMetadata = new ImageMetadataImpl();
+          thumbnailMetadata.setWidth(thumbnail.getWidth());
+          thumbnailMetadata.setHeight(thumbnail.getHeight());
+          metadata.setThumbnailMetadata(thumbnailMetadata);
+        } finally {
+          reader.dispose();
+        }
+      } finally {
+        imageIn.close();
       }
-    } else {
-      ImageMetadata thumbnailMetadata = new ImageMetadataImpl();
-      thumbnailMetadata.setWidth(THUMBNAIL_PATTERN_WIDTH);
-      thumbnailMetadata.setHeight(THUMBNAIL_PATTERN_HEIGHT);
-      metadata.setThumbnailMetadata(thumbnailMetadata);
+    } finally {
+      in.close();
     }
-    store.storeMetadata(attachmentId, metadata);
-    return metadata;
   }
 
   private static BufferedImage makeThumbnail(BufferedImage image) {
@@ -61,6 +61,18 @@ public interface SessionManager {
    */
   AccountData getLoggedInAccount(HttpSession session);
 
+  /**
+   * Drop the account data of the logged in user kept in the session, so that
+   * changes to the account are seen by the next call to
+   * {@link #getLoggedInAccount}.
+   *
+   * If session is null, this function has no effect.
+   *
+   * @param session The user's HTTP session, usually obtained from
+   *        request.getSession(false);
+   */
+  void invalidateLoggedInAccount(HttpSession session);
+
   /**
    * Bind the user's participant id to the user's session.
    *
@@ -30,6 +30,8 @@ import org.waveprotocol.wave.model.wave.ParticipantId;
 import org.waveprotocol.wave.util.escapers.PercentEscaper;
 import org.waveprotocol.wave.util.logging.Log;
 
+import java.io.Serializable;
+
 import javax.servlet.http.HttpSession;
 
 /**
@@ -39,6 +41,13 @@ import javax.servlet.http.HttpSession;
  */
 public final class SessionManagerImpl implements SessionManager {
   private static final String USER_FIELD = "user";
+  private static final String ACCOUNT_FIELD = "account";
+
+  /**
+   * The number of milliseconds account data is kept in a session, which bounds
+   * how long changes made to the account outside the session go unseen.
+   */
+  private static final long ACCOUNT_CACHE_MILLIS = 60 * 1000;
 
   private final AccountStore accountStore;
   private final org.eclipse.jetty.server.SessionManager jettySessionManager;
@@ -65,11 +74,18 @@ public final class SessionManagerImpl implements SessionManager {
 
   @Override
   public AccountData getLoggedInAccount(HttpSession session) {
-    // Consider caching the account data in the session object.
     ParticipantId user = getLoggedInUser(session);
     if (user != null) {
+      Object cached = session.getAttribute(ACCOUNT_FIELD);
+      if (cached instanceof CachedAccount && ((CachedAccount) cached).isValidFor(user)) {
+        return ((CachedAccount) cached).account;
+      }
       try {
-        return accountStore.getAccount(user);
+        AccountData account = accountStore.getAccount(user);
+        if (account != null) {
+          session.setAttribute(ACCOUNT_FIELD, new CachedAccount(account));
+        }
+        return account;
       } catch (PersistenceException e) {
         LOG.warning("Failed to retrieve account data for " + user, e);
         return null;
@@ -79,11 +95,19 @@ public final class SessionManagerImpl implements SessionManager {
     }
   }
 
+  @Override
+  public void invalidateLoggedInAccount(HttpSession session) {
+    if (session != null) {
+      session.removeAttribute(ACCOUNT_FIELD);
+    }
+  }
+
   @Override
   public void setLoggedInUser(HttpSession session, ParticipantId id) {
     Preconditions.checkNotNull(session, "Session is null");
     Preconditions.checkNotNull(id, "Participant id is null");
     session.setAttribute(USER_FIELD, id);
+    session.removeAttribute(ACCOUNT_FIELD);
   }
 
   @Override
@@ -92,6 +116,7 @@ public final class SessionManagerImpl implements SessionManager {
       // This function should also remove any other bound fields in the session
       // object.
       session.removeAttribute(USER_FIELD);
+      session.removeAttribute(ACCOUNT_FIELD);
     }
   }
 
@@ -112,4 +137,24 @@ public final class SessionManagerImpl implements SessionManager {
     Preconditions.checkNotNull(token);
     return jettySessionManager.getHttpSession(token);
   }
+
+  /**
+   * Account data kept in a session, with the time it was read from the
+   * account store. The account data is not written out with persisted
+   * sessions, and is read again after they are restored.
+   */
+  private static final class CachedAccount implements Serializable {
+    private final transient AccountData account;
+    private final long loadedMillis;
+
+    CachedAccount(AccountData account) {
+      this.account = account;
+      this.loadedMillis = System.currentTimeMillis();
+    }
+
+    boolean isValidFor(ParticipantId user) {
+      return account != null && account.getId().equals(user)
+          && System.currentTimeMillis() - loadedMillis < ACCOUNT_CACHE_MILLIS;
+    }
+  }
 }
@@ -21,7 +21,6 @@ package org.waveprotocol.box.server.common;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
 import com.google.protobuf.ByteString;
 
 import org.waveprotocol.box.common.comms.WaveClientRpc.DocumentSnapshot;
@@ -37,10 +36,6 @@ import org.waveprotocol.wave.model.document.operation.Attributes;
 import org.waveprotocol.wave.model.document.operation.AttributesUpdate;
 import org.waveprotocol.wave.model.document.operation.DocOp;
 import org.waveprotocol.wave.model.document.operation.DocOpCursor;
-import org.waveprotocol.wave.model.document.operation.impl.AnnotationBoundaryMapImpl;
-import org.waveprotocol.wave.model.document.operation.impl.AttributesImpl;
-import org.waveprotocol.wave.model.document.operation.impl.AttributesUpdateImpl;
-import org.waveprotocol.wave.model.document.operation.impl.DocOpBuilder;
 import org.waveprotocol.wave.model.id.WaveletName;
 import org.waveprotocol.wave.model.operation.OperationException;
 import org.waveprotocol.wave.model.operation.core.CoreAddParticipant;
@@ -67,7 +62,6 @@ import org.waveprotocol.wave.model.wave.data.core.impl.CoreWaveletDataImpl;
 import org.waveprotocol.wave.model.wave.data.impl.DataUtil;
 
 import java.util.List;
-import java.util.Map;
 
 /**
  * Utility class for serialising/deserialising wavelet operations (and their components) to/from
@@ -167,6 +161,10 @@ public class CoreWaveletOperationSerializer {
    * @return serialized protocol buffer document operation
    */
   public static ProtocolDocumentOperation serialize(DocOp inputOp) {
+    if (inputOp instanceof PackedDocOp) {
+      // Deserialized by us and immutable, so the original protobuf is still exact.
+      return ((PackedDocOp) inputOp).getProto();
+    }
     final ProtocolDocumentOperation.Builder output = ProtocolDocumentOperation.newBuilder();
 
     inputOp.apply(new DocOpCursor() {
@@ -352,6 +350,24 @@ public class CoreWaveletOperationSerializer {
    */
   public static WaveletOperation deserialize(ProtocolWaveletOperation protobufOp,
       WaveletOperationContext context) {
+    return deserialize(protobufOp, context, true);
+  }
+
+  /**
+   * Deserialize a {@link ProtocolWaveletOperation} of a delta that has already
+   * been applied, such as a delta read from storage. Its document operation is
+   * known to be well-formed, and is only decoded when it is first used.
+   *
+   * @param protobufOp protocol buffer wavelet operation to deserialize
+   * @return deserialized wavelet operation
+   */
+  public static WaveletOperation deserializeApplied(ProtocolWaveletOperation protobufOp,
+      WaveletOperationContext context) {
+    return deserialize(protobufOp, context, false);
+  }
+
+  private static WaveletOperation deserialize(ProtocolWaveletOperation protobufOp,
+      WaveletOperationContext context, boolean checkDocumentOperation) {
     if (protobufOp.hasNoOp()) {
       return new NoOp(context);
     } else if (protobufOp.hasAddParticipant()) {
@@ -359,9 +375,10 @@ public class CoreWaveletOperationSerializer {
     } else if (protobufOp.hasRemoveParticipant()) {
       return new RemoveParticipant(context, new ParticipantId(protobufOp.getRemoveParticipant()));
     } else if (protobufOp.hasMutateDocument()) {
+      ProtocolDocumentOperation docOp = protobufOp.getMutateDocument().getDocumentOperation();
       return new WaveletBlipOperation(protobufOp.getMutateDocument().getDocumentId(),
-          new BlipContentOperation(context,
-              deserialize(protobufOp.getMutateDocument().getDocumentOperation())));
+          new BlipContentOperation(context, checkDocumentOperation
+              ? deserialize(docOp) : deserializeApplied(docOp)));
     } else {
       throw new IllegalArgumentException("Unsupported operation: " + protobufOp);
     }
@@ -393,94 +410,23 @@ public class CoreWaveletOperationSerializer {
    *
    * @param op protocol buffer document operation to deserialize
    * @return deserialized DocOp
+   * @throws IllegalStateException if the operation is ill-formed
    */
   public static DocOp deserialize(ProtocolDocumentOperation op) {
-    DocOpBuilder output = new DocOpBuilder();
-
-    for (ProtocolDocumentOperation.Component c : op.getComponentList()) {
-      if (c.hasAnnotationBoundary()) {
-        if (c.getAnnotationBoundary().getEmpty()) {
-          output.annotationBoundary(AnnotationBoundaryMapImpl.EMPTY_MAP);
-        } else {
-          String[] ends = new String[c.getAnnotationBoundary().getEndCount()];
-          String[] changeKeys = new String[c.getAnnotationBoundary().getChangeCount()];
-          String[] oldValues = new String[c.getAnnotationBoundary().getChangeCount()];
-          String[] newValues = new String[c.getAnnotationBoundary().getChangeCount()];
-          if (c.getAnnotationBoundary().getEndCount() > 0) {
-            c.getAnnotationBoundary().getEndList().toArray(ends);
-          }
-          for (int i = 0; i < changeKeys.length; i++) {
-            ProtocolDocumentOperation.Component.KeyValueUpdate kvu =
-              c.getAnnotationBoundary().getChange(i);
-            changeKeys[i] = kvu.getKey();
-            oldValues[i] = kvu.hasOldValue() ? kvu.getOldValue() : null;
-            newValues[i] = kvu.hasNewValue() ? kvu.getNewValue() : null;
-          }
-          output.annotationBoundary(
-              new AnnotationBoundaryMapImpl(ends, changeKeys, oldValues, newValues));
-        }
-      } else if (c.hasCharacters()) {
-        output.characters(c.getCharacters());
-      } else if (c.hasElementStart()) {
-        Map<String, String> attributesMap = Maps.newHashMap();
-        for (ProtocolDocumentOperation.Component.KeyValuePair pair :
-            c.getElementStart().getAttributeList()) {
-          attributesMap.put(pair.getKey(), pair.getValue());
-        }
-        output.elementStart(c.getElementStart().getType(), new AttributesImpl(attributesMap));
-      } else if (c.hasElementEnd()) {
-        output.elementEnd();
-      } else if (c.hasRetainItemCount()) {
-        output.retain(c.getRetainItemCount());
-      } else if (c.hasDeleteCharacters()) {
-        output.deleteCharacters(c.getDeleteCharacters());
-      } else if (c.hasDeleteElementStart()) {
-        Map<String, String> attributesMap = Maps.newHashMap();
-        for (ProtocolDocumentOperation.Component.KeyValuePair pair :
-            c.getDeleteElementStart().getAttributeList()) {
-          attributesMap.put(pair.getKey(), pair.getValue());
-        }
-        output.deleteElementStart(c.getDeleteElementStart().getType(),
-            new AttributesImpl(attributesMap));
-      } else if (c.hasDeleteElementEnd()) {
-        output.deleteElementEnd();
-      } else if (c.hasReplaceAttributes()) {
-        if (c.getReplaceAttributes().getEmpty()) {
-          output.replaceAttributes(AttributesImpl.EMPTY_MAP, AttributesImpl.EMPTY_MAP);
-        } else {
-          Map<String, String> oldAttributesMap = Maps.newHashMap();
-          Map<String, String> newAttributesMap = Maps.newHashMap();
-          for (ProtocolDocumentOperation.Component.KeyValuePair pair :
-              c.getReplaceAttributes().getOldAttributeList()) {
-            oldAttributesMap.put(pair.getKey(), pair.getValue());
-          }
-          for (ProtocolDocumentOperation.Component.KeyValuePair pair :
-              c.getReplaceAttributes().getNewAttributeList()) {
-            newAttributesMap.put(pair.getKey(), pair.getValue());
-          }
-          output.replaceAttributes(new AttributesImpl(oldAttributesMap),
-              new AttributesImpl(newAttributesMap));
-        }
-      } else if (c.hasUpdateAttributes()) {
-        if (c.getUpdateAttributes().getEmpty()) {
-          output.updateAttributes(AttributesUpdateImpl.EMPTY_MAP);
-        } else {
-          String[] triplets = new String[c.getUpdateAttributes().getAttributeUpdateCount()*3];
-          for (int i = 0, j = 0; i < c.getUpdateAttributes().getAttributeUpdateCount(); i++) {
-            ProtocolDocumentOperation.Component.KeyValueUpdate kvu =
-              c.getUpdateAttributes().getAttributeUpdate(i);
-            triplets[j++] = kvu.getKey();
-            triplets[j++] = kvu.hasOldValue() ? kvu.getOldValue() : null;
-            triplets[j++] = kvu.hasNewValue() ? kvu.getNewValue() : null;
-          }
-          output.updateAttributes(new AttributesUpdateImpl(triplets));
-        }
-      } else {
-        //throw new IllegalArgumentException("Unsupported operation component: " + c);
-      }
-    }
+    return PackedDocOp.create(op);
+  }
 
-    return output.build();
+  /**
+   * Deserialize a {@link ProtocolDocumentOperation} that is known to be
+   * well-formed, because it has already been applied, into a {@link DocOp}.
+   * The operation is only decoded when it is first used, and serializes back
+   * to the given protocol buffer.
+   *
+   * @param op protocol buffer document operation to deserialize
+   * @return deserialized DocOp
+   */
+  public static DocOp deserializeApplied(ProtocolDocumentOperation op) {
+    return PackedDocOp.createUnchecked(op);
   }
 
   /**
@@ -0,0 +1,535 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.waveprotocol.box.server.common;
+
+import com.google.common.collect.Maps;
+
+import org.waveprotocol.wave.federation.Proto.ProtocolDocumentOperation;
+import org.waveprotocol.wave.federation.Proto.ProtocolDocumentOperation.Component;
+import org.waveprotocol.wave.federation.Proto.ProtocolDocumentOperation.Component.KeyValuePair;
+import org.waveprotocol.wave.federation.Proto.ProtocolDocumentOperation.Component.KeyValueUpdate;
+import org.waveprotocol.wave.model.document.operation.AnnotationBoundaryMap;
+import org.waveprotocol.wave.model.document.operation.Attributes;
+import org.waveprotocol.wave.model.document.operation.AttributesUpdate;
+import org.waveprotocol.wave.model.document.operation.DocOp;
+import org.waveprotocol.wave.model.document.operation.DocOpComponentType;
+import org.waveprotocol.wave.model.document.operation.DocOpCursor;
+import org.waveprotocol.wave.model.document.operation.automaton.DocOpAutomaton.ViolationCollector;
+import org.waveprotocol.wave.model.document.operation.impl.AnnotationBoundaryMapImpl;
+import org.waveprotocol.wave.model.document.operation.impl.AttributesImpl;
+import org.waveprotocol.wave.model.document.operation.impl.AttributesUpdateImpl;
+import org.waveprotocol.wave.model.document.operation.impl.DocOpUtil;
+import org.waveprotocol.wave.model.document.operation.impl.DocOpValidator;
+import org.waveprotocol.wave.model.document.util.DocOpScrub;
+
+import java.util.Map;
+
+/**
+ * A document operation backed by the {@link ProtocolDocumentOperation} it was
+ * received or stored as.
+ *
+ * <p>
+ * On first access the protobuf is decoded into a packed form: an opcode per
+ * component, the offset of its operands in a shared int array, and a table of
+ * the distinct strings of the operation. Traversal uses no per-component
+ * objects; attribute and annotation maps are only built when a component that
+ * carries them is visited. An operation that is only passed on, for example
+ * from storage to a client, is never decoded and serializes back to the
+ * original protobuf.
+ *
+ * <p>
+ * Package-private. Use {@link CoreWaveletOperationSerializer} to deserialize
+ * document operations.
+ */
+final class PackedDocOp implements DocOp {
+
+  private static final byte RETAIN = 0;
+  private static final byte CHARACTERS = 1;
+  private static final byte DELETE_CHARACTERS = 2;
+  private static final byte ELEMENT_START = 3;
+  private static final byte DELETE_ELEMENT_START = 4;
+  private static final byte ELEMENT_END = 5;
+  private static final byte DELETE_ELEMENT_END = 6;
+  private static final byte REPLACE_ATTRIBUTES = 7;
+  private static final byte UPDATE_ATTRIBUTES = 8;
+  private static final byte ANNOTATION_BOUNDARY = 9;
+
+  /** Component types by opcode. */
+  private static final DocOpComponentType[] TYPES = {
+      DocOpComponentType.RETAIN,
+      DocOpComponentType.CHARACTERS,
+      DocOpComponentType.DELETE_CHARACTERS,
+      DocOpComponentType.ELEMENT_START,
+      DocOpComponentType.DELETE_ELEMENT_START,
+      DocOpComponentType.ELEMENT_END,
+      DocOpComponentType.DELETE_ELEMENT_END,
+      DocOpComponentType.REPLACE_ATTRIBUTES,
+      DocOpComponentType.UPDATE_ATTRIBUTES,
+      DocOpComponentType.ANNOTATION_BOUNDARY};
+
+  /** Operand standing for a null string, such as an absent old value. */
+  private static final int NULL = -1;
+
+  /** Operand of a replace attributes or annotation boundary with the empty flag. */
+  private static final int EMPTY = -1;
+
+  /**
+   * The decoded form of an operation. The operands of a component start at
+   * its offset in {@code operands} and are:
+   * <ul>
+   * <li>retain: the item count</li>
+   * <li>(delete) characters: the string</li>
+   * <li>(delete) element start: the tag, the number of attributes, and a key
+   * and value per attribute</li>
+   * <li>replace attributes: {@code EMPTY}, or the number of old attributes,
+   * their keys and values, the number of new attributes, their keys and
+   * values</li>
+   * <li>update attributes: the number of updates, and a key, old and new
+   * value per update</li>
+   * <li>annotation boundary: {@code EMPTY}, or the number of ends, their keys,
+   * the number of changes, and a key, old and new value per change</li>
+   * </ul>
+   * Strings are indices in {@code strings}.
+   */
+  private static final class Packed {
+    final byte[] opcodes;
+    final int[] offsets;
+    final int[] operands;
+    final String[] strings;
+
+    Packed(byte[] opcodes, int[] offsets, int[] operands, String[] strings) {
+      this.opcodes = opcodes;
+      this.offsets = offsets;
+      this.operands = operands;
+      this.strings = strings;
+    }
+  }
+
+  /**
+   * Creates an operation which is decoded on first access, without checking
+   * that it is well-formed. Only for operations that have been checked before,
+   * such as the operations of applied deltas.
+   */
+  static PackedDocOp createUnchecked(ProtocolDocumentOperation proto) {
+    return new PackedDocOp(proto);
+  }
+
+  /**
+   * Creates an operation, decoding it and checking that it is well-formed.
+   *
+   * @throws IllegalStateException if the op is ill-formed
+   * @throws IllegalArgumentException if an annotation boundary is invalid
+   */
+  static PackedDocOp create(ProtocolDocumentOperation proto) {
+    PackedDocOp op = new PackedDocOp(proto);
+    if (!DocOpValidator.isWellFormed(null, op)) {
+      // Check again, collecting violations this time.
+      ViolationCollector v = new ViolationCollector();
+      DocOpValidator.isWellFormed(v, op);
+      throw new IllegalStateException(
+          "Attempt to decode ill-formed operation (" + v + "): " + op);
+    }
+    return op;
+  }
+
+  private final ProtocolDocumentOperation proto;
+
+  /** Written once on first access; racing threads decode identical copies. */
+  private volatile Packed packed;
+
+  private PackedDocOp(ProtocolDocumentOperation proto) {
+    this.proto = proto;
+  }
+
+  /**
+   * Returns the protobuf this operation was created from.
+   */
+  ProtocolDocumentOperation getProto() {
+    return proto;
+  }
+
+  @Override
+  public int size() {
+    return packed().opcodes.length;
+  }
+
+  @Override
+  public DocOpComponentType getType(int i) {
+    return TYPES[packed().opcodes[i]];
+  }
+
+  @Override
+  public void applyComponent(int i, DocOpCursor cursor) {
+    apply(packed(), i, cursor);
+  }
+
+  @Override
+  public void apply(DocOpCursor cursor) {
+    Packed p = packed();
+    for (int i = 0; i < p.opcodes.length; i++) {
+      apply(p, i, cursor);
+    }
+  }
+
+  @Override
+  public String getCharactersString(int i) {
+    return string(check(i, CHARACTERS), i);
+  }
+
+  @Override
+  public String getDeleteCharactersString(int i) {
+    return string(check(i, DELETE_CHARACTERS), i);
+  }
+
+  @Override
+  public Attributes getReplaceAttributesNewAttributes(int i) {
+    Packed p = check(i, REPLACE_ATTRIBUTES);
+    int offset = p.offsets[i];
+    if (p.operands[offset] == EMPTY) {
+      return AttributesImpl.EMPTY_MAP;
+    }
+    return attributes(p, offset + 1 + 2 * p.operands[offset]);
+  }
+
+  @Override
+  public Attributes getReplaceAttributesOldAttributes(int i) {
+    Packed p = check(i, REPLACE_ATTRIBUTES);
+    int offset = p.offsets[i];
+    if (p.operands[offset] == EMPTY) {
+      return AttributesImpl.EMPTY_MAP;
+    }
+    return attributes(p, offset);
+  }
+
+  @Override
+  public int getRetainItemCount(int i) {
+    Packed p = check(i, RETAIN);
+    return p.operands[p.offsets[i]];
+  }
+
+  @Override
+  public AnnotationBoundaryMap getAnnotationBoundary(int i) {
+    Packed p = check(i, ANNOTATION_BOUNDARY);
+    return annotationBoundary(p, p.offsets[i]);
+  }
+
+  @Override
+  public Attributes getDeleteElementStartAttributes(int i) {
+    Packed p = check(i, DELETE_ELEMENT_START);
+    return attributes(p, p.offsets[i] + 1);
+  }
+
+  @Override
+  public String getDeleteElementStartTag(int i) {
+    return string(check(i, DELETE_ELEMENT_START), i);
+  }
+
+  @Override
+  public Attributes getElementStartAttributes(int i) {
+    Packed p = check(i, ELEMENT_START);
+    return attributes(p, p.offsets[i] + 1);
+  }
+
+  @Override
+  public String getElementStartTag(int i) {
+    return string(check(i, ELEMENT_START), i);
+  }
+
+  @Override
+  public AttributesUpdate getUpdateAttributesUpdate(int i) {
+    Packed p = check(i, UPDATE_ATTRIBUTES);
+    return attributesUpdate(p, p.offsets[i]);
+  }
+
+  @Override
+  public String toString() {
+    return "Packed@" + Integer.toHexString(System.identityHashCode(this)) +
+        "[" + DocOpUtil.toConciseString(DocOpScrub.maybeScrub(this)) + "]";
+  }
+
+  private Packed packed() {
+    Packed p = packed;
+    if (p == null) {
+      p = pack(proto);
+      packed = p;
+    }
+    return p;
+  }
+
+  private Packed check(int i, byte expected) {
+    Packed p = packed();
+    if (p.opcodes[i] != expected) {
+      throw new IllegalArgumentException("Component " + i + " is not of type ' "
+          + TYPES[expected] + "', it is '" + TYPES[p.opcodes[i]] + "'");
+    }
+    return p;
+  }
+
+  /** Returns the string that is the first operand of component i. */
+  private static String string(Packed p, int i) {
+    return p.strings[p.operands[p.offsets[i]]];
+  }
+
+  private static void apply(Packed p, int i, DocOpCursor cursor) {
+    int offset = p.offsets[i];
+    switch (p.opcodes[i]) {
+      case RETAIN:
+        cursor.retain(p.operands[offset]);
+        break;
+      case CHARACTERS:
+        cursor.characters(p.strings[p.operands[offset]]);
+        break;
+      case DELETE_CHARACTERS:
+        cursor.deleteCharacters(p.strings[p.operands[offset]]);
+        break;
+      case ELEMENT_START:
+        cursor.elementStart(p.strings[p.operands[offset]], attributes(p, offset + 1));
+        break;
+      case DELETE_ELEMENT_START:
+        cursor.deleteElementStart(p.strings[p.operands[offset]], attributes(p, offset + 1));
+        break;
+      case ELEMENT_END:
+        cursor.elementEnd();
+        break;
+      case DELETE_ELEMENT_END:
+        cursor.deleteElementEnd();
+        break;
+      case REPLACE_ATTRIBUTES:
+        if (p.operands[offset] == EMPTY) {
+          cursor.replaceAttributes(AttributesImpl.EMPTY_MAP, AttributesImpl.EMPTY_MAP);
+        } else {
+          cursor.replaceAttributes(attributes(p, offset),
+              attributes(p, offset + 1 + 2 * p.operands[offset]));
+        }
+        break;
+      case UPDATE_ATTRIBUTES:
+        cursor.updateAttributes(attributesUpdate(p, offset));
+        break;
+      case ANNOTATION_BOUNDARY:
+        cursor.annotationBoundary(annotationBoundary(p, offset));
+        break;
+      default:
+        throw new IllegalStateException("Unknown opcode " + p.opcodes[i]);
+    }
+  }
+
+  /** Builds the attributes stored as a count followed by keys and values. */
+  private static Attributes attributes(Packed p, int offset) {
+    int count = p.operands[offset];
+    if (count == 0) {
+      return AttributesImpl.EMPTY_MAP;
+    }
+    Map<String, String> map = Maps.newHashMapWithExpectedSize(count);
+    for (int i = offset + 1, end = offset + 1 + 2 * count; i < end; i += 2) {
+      map.put(p.strings[p.operands[i]], p.strings[p.operands[i + 1]]);
+    }
+    return new AttributesImpl(map);
+  }
+
+  private static AttributesUpdate attributesUpdate(Packed p, int offset) {
+    int count = p.operands[offset];
+    if (count == 0) {
+      return AttributesUpdateImpl.EMPTY_MAP;
+    }
+    String[] triplets = new String[3 * count];
+    for (int i = 0; i < triplets.length; i++) {
+      triplets[i] = stringOrNull(p, p.operands[offset + 1 + i]);
+    }
+    return new AttributesUpdateImpl(triplets);
+  }
+
+  private static AnnotationBoundaryMap annotationBoundary(Packed p, int offset) {
+    int endCount = p.operands[offset];
+    if (endCount == EMPTY) {
+      return AnnotationBoundaryMapImpl.EMPTY_MAP;
+    }
+    String[] ends = new String[endCount];
+    for (int i = 0; i < endCount; i++) {
+      ends[i] = p.strings[p.operands[offset + 1 + i]];
+    }
+    int changes = offset + 1 + endCount;
+    int changeCount = p.operands[changes];
+    String[] changeKeys = new String[changeCount];
+    String[] oldValues = new String[changeCount];
+    String[] newValues = new String[changeCount];
+    for (int i = 0, j = changes + 1; i < changeCount; i++) {
+      changeKeys[i] = p.strings[p.operands[j++]];
+      oldValues[i] = stringOrNull(p, p.operands[j++]);
+      newValues[i] = stringOrNull(p, p.operands[j++]);
+    }
+    return new AnnotationBoundaryMapImpl(ends, changeKeys, oldValues, newValues);
+  }
+
+  private static String stringOrNull(Packed p, int index) {
+    return index == NULL ? null : p.strings[index];
+  }
+
+  /**
+   * Decodes a protobuf into the packed form. Components of an unknown type
+   * are skipped, as they were by the builder based deserializer.
+   */
+  private static Packed pack(ProtocolDocumentOperation proto) {
+    Packer packer = new Packer(proto.getComponentCount());
+    for (Component c : proto.getComponentList()) {
+      if (c.hasAnnotationBoundary()) {
+        Component.AnnotationBoundary boundary = c.getAnnotationBoundary();
+        packer.start(ANNOTATION_BOUNDARY);
+        if (boundary.getEmpty()) {
+          packer.add(EMPTY);
+        } else {
+          packer.add(boundary.getEndCount());
+          for (String end : boundary.getEndList()) {
+            packer.addString(end);
+          }
+          packer.add(boundary.getChangeCount());
+          for (KeyValueUpdate change : boundary.getChangeList()) {
+            packer.addUpdate(change);
+          }
+        }
+      } else if (c.hasCharacters()) {
+        packer.start(CHARACTERS);
+        packer.addString(c.getCharacters());
+      } else if (c.hasElementStart()) {
+        packer.start(ELEMENT_START);
+        packer.addElementStart(c.getElementStart());
+      } else if (c.hasElementEnd()) {
+        packer.start(ELEMENT_END);
+      } else if (c.hasRetainItemCount()) {
+        packer.start(RETAIN);
+        packer.add(c.getRetainItemCount());
+      } else if (c.hasDeleteCharacters()) {
+        packer.start(DELETE_CHARACTERS);
+        packer.addString(c.getDeleteCharacters());
+      } else if (c.hasDeleteElementStart()) {
+        packer.start(DELETE_ELEMENT_START);
+        packer.addElementStart(c.getDeleteElementStart());
+      } else if (c.hasDeleteElementEnd()) {
+        packer.start(DELETE_ELEMENT_END);
+      } else if (c.hasReplaceAttributes()) {
+        Component.ReplaceAttributes replace = c.getReplaceAttributes();
+        packer.start(REPLACE_ATTRIBUTES);
+        if (replace.getEmpty()) {
+          packer.add(EMPTY);
+        } else {
+          packer.addPairs(replace.getOldAttributeCount(), replace.getOldAttributeList());
+          packer.addPairs(replace.getNewAttributeCount(), replace.getNewAttributeList());
+        }
+      } else if (c.hasUpdateAttributes()) {
+        Component.UpdateAttributes update = c.getUpdateAttributes();
+        packer.start(UPDATE_ATTRIBUTES);
+        if (update.getEmpty()) {
+          packer.add(0);
+        } else {
+          packer.add(update.getAttributeUpdateCount());
+          for (KeyValueUpdate kvu : update.getAttributeUpdateList()) {
+            packer.addUpdate(kvu);
+          }
+        }
+      }
+    }
+    return packer.build();
+  }
+
+  /** Accumulates the arrays of a {@link Packed}. */
+  private static final class Packer {
+    private final byte[] opcodes;
+    private final int[] offsets;
+    private int[] operands;
+    private int size;
+    private int operandCount;
+    private final Map<String, Integer> stringIndices = Maps.newHashMap();
+    private String[] strings = new String[8];
+
+    Packer(int maxComponents) {
+      opcodes = new byte[maxComponents];
+      offsets = new int[maxComponents];
+      operands = new int[Math.max(8, 2 * maxComponents)];
+    }
+
+    void start(byte opcode) {
+      opcodes[size] = opcode;
+      offsets[size] = operandCount;
+      size++;
+    }
+
+    void add(int operand) {
+      if (operandCount == operands.length) {
+        int[] grown = new int[2 * operands.length];
+        System.arraycopy(operands, 0, grown, 0, operandCount);
+        operands = grown;
+      }
+      operands[operandCount++] = operand;
+    }
+
+    void addString(String s) {
+      add(s == null ? NULL : intern(s));
+    }
+
+    void addElementStart(Component.ElementStart elementStart) {
+      addString(elementStart.getType());
+      addPairs(elementStart.getAttributeCount(), elementStart.getAttributeList());
+    }
+
+    void addPairs(int count, Iterable<KeyValuePair> pairs) {
+      add(count);
+      for (KeyValuePair pair : pairs) {
+        addString(pair.getKey());
+        addString(pair.getValue());
+      }
+    }
+
+    void addUpdate(KeyValueUpdate kvu) {
+      addString(kvu.getKey());
+      addString(kvu.hasOldValue() ? kvu.getOldValue() : null);
+      addString(kvu.hasNewValue() ? kvu.getNewValue() : null);
+    }
+
+    private int intern(String s) {
+      Integer index = stringIndices.get(s);
+      if (index == null) {
+        index = stringIndices.size();
+        if (index == strings.length) {
+          String[] grown = new String[2 * strings.length];
+          System.arraycopy(strings, 0, grown, 0, index);
+          strings = grown;
+        }
+        strings[index] = s;
+        stringIndices.put(s, index);
+      }
+      return index;
+    }
+
+    Packed build() {
+      byte[] finalOpcodes = opcodes;
+      int[] finalOffsets = offsets;
+      if (size < opcodes.length) {
+        finalOpcodes = new byte[size];
+        System.arraycopy(opcodes, 0, finalOpcodes, 0, size);
+        finalOffsets = new int[size];
+        System.arraycopy(offsets, 0, finalOffsets, 0, size);
+      }
+      int[] finalOperands = new int[operandCount];
+      System.arraycopy(operands, 0, finalOperands, 0, operandCount);
+      String[] finalStrings = new String[stringIndices.size()];
+      System.arraycopy(strings, 0, finalStrings, 0, finalStrings.length);
+      return new Packed(finalOpcodes, finalOffsets, finalOperands, finalStrings);
+    }
+  }
+}
@@ -80,6 +80,11 @@ public interface ExecutorAnnotations {
   public @interface RobotGatewayExecutor {
   }
 
+  @Retention(RUNTIME)
+  @BindingAnnotation
+  public @interface RobotOperationExecutor {
+  }
+
   @Retention(RUNTIME)
   @BindingAnnotation
   public @interface XmppExecutor {
@@ -88,4 +93,24 @@ public interface ExecutorAnnotations {
   @BindingAnnotation
   public @interface SolrExecutor {
   }
+
+  @Retention(RUNTIME)
+  @BindingAnnotation
+  public @interface DeltaVerificationExecutor {
+  }
+
+  @Retention(RUNTIME)
+  @BindingAnnotation
+  public @interface AttachmentExecutor {
+  }
+
+  @Retention(RUNTIME)
+  @BindingAnnotation
+  public @interface PreloadExecutor {
+  }
+
+  @Retention(RUNTIME)
+  @BindingAnnotation
+  public @interface LiveSearchExecutor {
+  }
 }
@@ -29,24 +29,35 @@ import com.google.inject.Singleton;
 import com.google.inject.name.Named;
 
 import java.util.concurrent.Executor;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.waveprotocol.box.server.CoreSettings;
+import org.waveprotocol.box.server.executor.ExecutorAnnotations.AttachmentExecutor;
 import org.waveprotocol.box.server.executor.ExecutorAnnotations.ClientServerExecutor;
 import org.waveprotocol.box.server.executor.ExecutorAnnotations.ContactExecutor;
 import org.waveprotocol.box.server.executor.ExecutorAnnotations.DeltaPersistExecutor;
+import org.waveprotocol.box.server.executor.ExecutorAnnotations.DeltaVerificationExecutor;
 import org.waveprotocol.box.server.executor.ExecutorAnnotations.SolrExecutor;
 import org.waveprotocol.box.server.executor.ExecutorAnnotations.XmppExecutor;
 import org.waveprotocol.box.server.executor.ExecutorAnnotations.IndexExecutor;
 import org.waveprotocol.box.server.executor.ExecutorAnnotations.ListenerExecutor;
 import org.waveprotocol.box.server.executor.ExecutorAnnotations.LookupExecutor;
+import org.waveprotocol.box.server.executor.ExecutorAnnotations.LiveSearchExecutor;
+import org.waveprotocol.box.server.executor.ExecutorAnnotations.PreloadExecutor;
 import org.waveprotocol.box.server.executor.ExecutorAnnotations.RobotConnectionExecutor;
 import org.waveprotocol.box.server.executor.ExecutorAnnotations.RobotGatewayExecutor;
+import org.waveprotocol.box.server.executor.ExecutorAnnotations.RobotOperationExecutor;
 import org.waveprotocol.box.server.executor.ExecutorAnnotations.StorageContinuationExecutor;
 import org.waveprotocol.box.server.executor.ExecutorAnnotations.WaveletLoadExecutor;
+import org.waveprotocol.box.server.stat.MetricRegistry;
 
 /**
  * Module with executors.
@@ -142,6 +153,14 @@ public class ExecutorsModule extends AbstractModule {
     return provideThreadPoolExecutor(executorProvider, threadCount, RobotGatewayExecutor.class.getSimpleName());
   }
 
+  @Provides
+  @Singleton
+  @RobotOperationExecutor
+  protected Executor provideRobotOperationExecutor(Provider<RequestScopeExecutor> executorProvider,
+      @Named(CoreSettings.ROBOT_OPERATION_THREAD_COUNT) int threadCount) {
+    return provideThreadPoolExecutor(executorProvider, threadCount, RobotOperationExecutor.class.getSimpleName());
+  }
+
   @Provides
   @Singleton
   @XmppExecutor
@@ -156,6 +175,43 @@ public class ExecutorsModule extends AbstractModule {
       @Named(CoreSettings.SOLR_THREAD_COUNT) int threadCount) {
     return provideThreadPoolExecutor(executorProvider, threadCount, SolrExecutor.class.getSimpleName());
   }
+
+  @Provides
+  @Singleton
+  @DeltaVerificationExecutor
+  protected Executor provideDeltaVerificationExecutor(Provider<RequestScopeExecutor> executorProvider,
+      @Named(CoreSettings.DELTA_VERIFICATION_THREAD_COUNT) int threadCount) {
+    return provideThreadPoolExecutor(executorProvider, threadCount,
+        DeltaVerificationExecutor.class.getSimpleName());
+  }
+
+  @Provides
+  @Singleton
+  @AttachmentExecutor
+  protected Executor provideAttachmentExecutor(Provider<RequestScopeExecutor> executorProvider,
+      @Named(CoreSettings.ATTACHMENT_EXECUTOR_THREAD_COUNT) int threadCount) {
+    return provideThreadPoolExecutor(executorProvider, threadCount,
+        AttachmentExecutor.class.getSimpleName());
+  }
+
+  @Provides
+  @Singleton
+  @PreloadExecutor
+  protected Executor providePreloadExecutor(Provider<RequestScopeExecutor> executorProvider,
+      @Named(CoreSettings.PRELOAD_THREAD_COUNT) int threadCount) {
+    return provideThreadPoolExecutor(executorProvider, threadCount,
+        PreloadExecutor.class.getSimpleName());
+  }
+
+  @Provides
+  @Singleton
+  @LiveSearchExecutor
+  protected ScheduledExecutorService provideLiveSearchExecutor(
+      Provider<ScheduledRequestScopeExecutor> executorProvider,
+      @Named(CoreSettings.LIVE_SEARCH_THREAD_COUNT) int threadCount) {
+    return provideScheduledThreadPoolExecutor(executorProvider, threadCount,
+        LiveSearchExecutor.class.getSimpleName());
+  }
   
   private Executor provideThreadPoolExecutor(Provider<RequestScopeExecutor> executorProvider,
       int threadCount, String name) {
@@ -163,14 +219,15 @@ public class ExecutorsModule extends AbstractModule {
       return MoreExecutors.sameThreadExecutor();
     }
     ThreadFactory threadFactory = new ThreadFactoryBuilder().setNameFormat(name).build();
-    ExecutorService executor;
+    ThreadPoolExecutor executor;
     if (threadCount < 0) {
-      executor = Executors.newCachedThreadPool(threadFactory);
-    } else if (threadCount == 1) {
-      executor = Executors.newSingleThreadExecutor(threadFactory);
+      executor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60L, TimeUnit.SECONDS,
+          new SynchronousQueue<Runnable>(), threadFactory);
     } else {
-      executor = Executors.newFixedThreadPool(threadCount, threadFactory);
+      executor = new ThreadPoolExecutor(threadCount, threadCount, 0L, TimeUnit.MILLISECONDS,
+          new LinkedBlockingQueue<Runnable>(), threadFactory);
     }
+    registerGauges(executor, name);
     RequestScopeExecutor scopeExecutor = executorProvider.get();
     scopeExecutor.setExecutor(executor, name);
     return scopeExecutor;
@@ -179,14 +236,50 @@ public class ExecutorsModule extends AbstractModule {
   private ScheduledExecutorService provideScheduledThreadPoolExecutor(
       Provider<ScheduledRequestScopeExecutor> executorProvider, int threadCount, String name) {
     ThreadFactory threadFactory = new ThreadFactoryBuilder().setNameFormat(name).build();
-    ScheduledExecutorService executor;
-    if (threadCount == 1) {
-      executor = Executors.newSingleThreadScheduledExecutor(threadFactory);
-    } else {
-      executor = Executors.newScheduledThreadPool(threadCount, threadFactory);
-    }
+    ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(threadCount, threadFactory);
+    registerGauges(executor, name);
     ScheduledRequestScopeExecutor scopeExecutor = executorProvider.get();
     scopeExecutor.setExecutor(executor, name);
     return scopeExecutor;
   }
+
+  /**
+   * Exports the number of active threads, queued, completed and rejected
+   * tasks of the executor through the {@link MetricRegistry}.
+   */
+  private static void registerGauges(final ThreadPoolExecutor executor, String name) {
+    final AtomicLong rejected = new AtomicLong();
+    final RejectedExecutionHandler handler = executor.getRejectedExecutionHandler();
+    executor.setRejectedExecutionHandler(new RejectedExecutionHandler() {
+      @Override
+      public void rejectedExecution(Runnable task, ThreadPoolExecutor pool) {
+        rejected.incrementAndGet();
+        handler.rejectedExecution(task, pool);
+      }
+    });
+    MetricRegistry.registerGauge("executor_active_threads", name, new MetricRegistry.Gauge() {
+      @Override
+      public long getValue() {
+        return executor.getActiveCount();
+      }
+    });
+    MetricRegistry.registerGauge("executor_queued_tasks", name, new MetricRegistry.Gauge() {
+      @Override
+      public long getValue() {
+        return executor.getQueue().size();
+      }
+    });
+    MetricRegistry.registerGauge("executor_completed_tasks", name, new MetricRegistry.Gauge() {
+      @Override
+      public long getValue() {
+        return executor.getCompletedTaskCount();
+      }
+    });
+    MetricRegistry.registerGauge("executor_rejected_tasks", name, new MetricRegistry.Gauge() {
+      @Override
+      public long getValue() {
+        return rejected.get();
+      }
+    });
+  }
 }
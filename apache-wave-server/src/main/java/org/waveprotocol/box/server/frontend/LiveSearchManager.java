@@ -0,0 +1,330 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.waveprotocol.box.server.frontend;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import com.google.wave.api.SearchResult;
+
+import org.waveprotocol.box.common.DeltaSequence;
+import org.waveprotocol.box.search.SearchProto.SearchResponse;
+import org.waveprotocol.box.search.SearchProto.SearchUpdate;
+import org.waveprotocol.box.server.CoreSettings;
+import org.waveprotocol.box.server.executor.ExecutorAnnotations.LiveSearchExecutor;
+import org.waveprotocol.box.server.rpc.SearchServlet;
+import org.waveprotocol.box.server.stat.MetricRegistry;
+import org.waveprotocol.box.server.waveserver.SearchProvider;
+import org.waveprotocol.box.server.waveserver.WaveBus;
+import org.waveprotocol.box.webclient.search.SearchService;
+import org.waveprotocol.wave.model.id.WaveletName;
+import org.waveprotocol.wave.model.operation.wave.RemoveParticipant;
+import org.waveprotocol.wave.model.operation.wave.TransformedWaveletDelta;
+import org.waveprotocol.wave.model.operation.wave.WaveletOperation;
+import org.waveprotocol.wave.model.version.HashedVersion;
+import org.waveprotocol.wave.model.wave.ParticipantId;
+import org.waveprotocol.wave.model.wave.ParticipantIdUtil;
+import org.waveprotocol.wave.model.wave.data.ReadableWaveletData;
+import org.waveprotocol.wave.util.logging.Log;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the searches that clients have open up to date, so clients are told
+ * when their results change instead of polling for them.
+ *
+ * A live search holds the segment of results its client asked for. When a
+ * wavelet changes, the searches of its participants, and of participants just
+ * removed from it, are refreshed after a short delay, so a burst of changes
+ * costs one refresh. A refresh runs the query again on the live search
+ * executor and sends the client the order of the segment and only the digests
+ * that are new or have changed, or nothing if the segment is unchanged.
+ *
+ * The number of open searches, refreshes and digests sent are exported
+ * through the {@link MetricRegistry}, along with the time it takes to find
+ * the searches affected by a wavelet update.
+ */
+@Singleton
+public class LiveSearchManager implements WaveBus.Subscriber {
+
+  private static final Log LOG = Log.get(LiveSearchManager.class);
+
+  /**
+   * The maximum number of searches a user may have open. Opening more closes
+   * the oldest, which also bounds the searches left by clients that went away
+   * without closing them.
+   */
+  @VisibleForTesting
+  static final int MAX_SEARCHES_PER_USER = 32;
+
+  /** Receives the updates of a live search. */
+  public interface Listener {
+    /**
+     * Called with the first results of the search, and then whenever they
+     * change. Calls for a search are never concurrent.
+     */
+    void onUpdate(SearchUpdate update);
+
+    /**
+     * Called when the search is closed because its user opened too many
+     * others.
+     */
+    void onEvicted();
+  }
+
+  private final SearchProvider searchProvider;
+  private final ScheduledExecutorService executor;
+  private final long refreshDelayMs;
+  private final ParticipantId sharedDomainParticipantId;
+
+  /** The open searches, by user, oldest first. Guarded by itself. */
+  private final Map<ParticipantId, List<LiveSearch>> searches = Maps.newHashMap();
+
+  private final AtomicLong refreshes = new AtomicLong();
+  private final AtomicLong updatesSent = new AtomicLong();
+  private final AtomicLong digestsSent = new AtomicLong();
+
+  @Inject
+  public LiveSearchManager(SearchProvider searchProvider, WaveBus waveBus,
+      @LiveSearchExecutor ScheduledExecutorService executor,
+      @Named(CoreSettings.LIVE_SEARCH_REFRESH_DELAY_MS) int refreshDelayMs,
+      @Named(CoreSettings.WAVE_SERVER_DOMAIN) String waveDomain) {
+    this.searchProvider = searchProvider;
+    this.executor = executor;
+    this.refreshDelayMs = refreshDelayMs;
+    this.sharedDomainParticipantId =
+        ParticipantIdUtil.makeUnsafeSharedDomainParticipantId(waveDomain);
+    waveBus.subscribe(this);
+    registerGauges();
+  }
+
+  /**
+   * Opens a live search. The listener is called with the first results on the
+   * live search executor, and then whenever they change until the search is
+   * closed.
+   */
+  public LiveSearch subscribe(ParticipantId user, String query, int index, int numResults,
+      Listener listener) {
+    LiveSearch search = new LiveSearch(user, query, index, numResults, listener);
+    LiveSearch evicted = null;
+    synchronized (searches) {
+      List<LiveSearch> userSearches = searches.get(user);
+      if (userSearches == null) {
+        userSearches = Lists.newArrayList();
+        searches.put(user, userSearches);
+      }
+      userSearches.add(search);
+      if (userSearches.size() > MAX_SEARCHES_PER_USER) {
+        evicted = userSearches.get(0);
+      }
+    }
+    if (evicted != null) {
+      LOG.info("Closing the oldest live search of " + user + ", who has too many open");
+      evicted.close();
+      evicted.listener.onEvicted();
+    }
+    executor.execute(search);
+    return search;
+  }
+
+  @Override
+  public void waveletUpdate(ReadableWaveletData wavelet, DeltaSequence deltas) {
+    long startNanos = System.nanoTime();
+    Set<ParticipantId> users = Sets.newHashSet(wavelet.getParticipants());
+    for (TransformedWaveletDelta delta : deltas) {
+      for (WaveletOperation op : delta) {
+        if (op instanceof RemoveParticipant) {
+          users.add(((RemoveParticipant) op).getParticipantId());
+        }
+      }
+    }
+    List<LiveSearch> affected = Lists.newArrayList();
+    synchronized (searches) {
+      if (searches.isEmpty()) {
+        return;
+      }
+      if (users.contains(sharedDomainParticipantId)) {
+        // Everyone in the domain may find the wave.
+        for (List<LiveSearch> userSearches : searches.values()) {
+          affected.addAll(userSearches);
+        }
+      } else {
+        for (ParticipantId user : users) {
+          List<LiveSearch> userSearches = searches.get(user);
+          if (userSearches != null) {
+            affected.addAll(userSearches);
+          }
+        }
+      }
+    }
+    for (LiveSearch search : affected) {
+      search.scheduleRefresh();
+    }
+    MetricRegistry.recordSince("live_search_fanout", startNanos);
+  }
+
+  @Override
+  public void waveletCommitted(WaveletName waveletName, HashedVersion version) {
+    // No op.
+  }
+
+  /** Returns the number of open searches. */
+  @VisibleForTesting
+  int getSearchCount() {
+    synchronized (searches) {
+      int count = 0;
+      for (List<LiveSearch> userSearches : searches.values()) {
+        count += userSearches.size();
+      }
+      return count;
+    }
+  }
+
+  private void remove(LiveSearch search) {
+    synchronized (searches) {
+      List<LiveSearch> userSearches = searches.get(search.user);
+      if (userSearches != null && userSearches.remove(search) && userSearches.isEmpty()) {
+        searches.remove(search.user);
+      }
+    }
+  }
+
+  private void registerGauges() {
+    MetricRegistry.registerGauge("live_search", "searches", new MetricRegistry.Gauge() {
+      @Override
+      public long getValue() {
+        return getSearchCount();
+      }
+    });
+    MetricRegistry.registerGauge("live_search", "refreshes", new MetricRegistry.Gauge() {
+      @Override
+      public long getValue() {
+        return refreshes.get();
+      }
+    });
+    MetricRegistry.registerGauge("live_search", "updates_sent", new MetricRegistry.Gauge() {
+      @Override
+      public long getValue() {
+        return updatesSent.get();
+      }
+    });
+    MetricRegistry.registerGauge("live_search", "digests_sent", new MetricRegistry.Gauge() {
+      @Override
+      public long getValue() {
+        return digestsSent.get();
+      }
+    });
+  }
+
+  /**
+   * A search open by a client. Running it refreshes the results.
+   */
+  public final class LiveSearch implements Runnable {
+    private final ParticipantId user;
+    private final String query;
+    private final int index;
+    private final int numResults;
+    private final Listener listener;
+
+    private final AtomicBoolean refreshScheduled = new AtomicBoolean();
+    private volatile boolean closed;
+
+    /** The digests last sent, by wave id. Guarded by this. */
+    private Map<String, SearchResponse.Digest> sentDigests = Maps.newHashMap();
+    /** The wave ids and total last sent, null before the first update. Guarded by this. */
+    private List<String> sentWaveIds;
+    private int sentTotal;
+
+    private LiveSearch(ParticipantId user, String query, int index, int numResults,
+        Listener listener) {
+      this.user = user;
+      this.query = query;
+      this.index = index;
+      this.numResults = numResults;
+      this.listener = listener;
+    }
+
+    /** Stops the updates of this search. */
+    public void close() {
+      closed = true;
+      remove(this);
+    }
+
+    @Override
+    public void run() {
+      refreshScheduled.set(false);
+      try {
+        refresh();
+      } catch (RuntimeException e) {
+        LOG.warning("Failed to refresh live search " + query + " of " + user, e);
+      }
+    }
+
+    private void scheduleRefresh() {
+      if (!closed && refreshScheduled.compareAndSet(false, true)) {
+        executor.schedule(this, refreshDelayMs, TimeUnit.MILLISECONDS);
+      }
+    }
+
+    private synchronized void refresh() {
+      if (closed) {
+        return;
+      }
+      long startNanos = System.nanoTime();
+      refreshes.incrementAndGet();
+      SearchResult result = searchProvider.search(user, query, index, numResults);
+      int total = result.getNumResults() >= numResults
+          ? SearchService.UNKNOWN_SIZE : index + result.getNumResults();
+      List<String> waveIds = Lists.newArrayList();
+      Map<String, SearchResponse.Digest> digests = Maps.newHashMap();
+      SearchUpdate.Builder update = SearchUpdate.newBuilder().setTotalResults(total);
+      for (SearchResult.Digest resultDigest : result.getDigests()) {
+        SearchResponse.Digest digest = SearchServlet.serializeDigest(resultDigest);
+        waveIds.add(digest.getWaveId());
+        digests.put(digest.getWaveId(), digest);
+        if (!digest.equals(sentDigests.get(digest.getWaveId()))) {
+          update.addDigests(digest);
+        }
+      }
+      MetricRegistry.recordSince("live_search_refresh", startNanos);
+      if (sentWaveIds != null && update.getDigestsCount() == 0 && total == sentTotal
+          && waveIds.equals(sentWaveIds)) {
+        return;
+      }
+      update.addAllWaveIds(waveIds);
+      sentDigests = digests;
+      sentWaveIds = waveIds;
+      sentTotal = total;
+      updatesSent.incrementAndGet();
+      digestsSent.addAndGet(update.getDigestsCount());
+      listener.onUpdate(update.build());
+    }
+  }
+}
@@ -0,0 +1,102 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.waveprotocol.box.server.frontend;
+
+import com.google.protobuf.RpcCallback;
+import com.google.protobuf.RpcController;
+
+import org.waveprotocol.box.search.SearchProto.ProtocolSearchRpc;
+import org.waveprotocol.box.search.SearchProto.SearchRequest;
+import org.waveprotocol.box.search.SearchProto.SearchUpdate;
+import org.waveprotocol.box.server.rpc.ServerRpcController;
+import org.waveprotocol.wave.model.wave.ParticipantId;
+
+/**
+ * RPC interface implementation for live searches. Each search RPC streams the
+ * updates of a search opened on the {@link LiveSearchManager}, until the
+ * client cancels it.
+ */
+public class SearchRpcImpl implements ProtocolSearchRpc.Interface {
+
+  private final LiveSearchManager searchManager;
+
+  public static SearchRpcImpl create(LiveSearchManager searchManager) {
+    return new SearchRpcImpl(searchManager);
+  }
+
+  private SearchRpcImpl(LiveSearchManager searchManager) {
+    this.searchManager = searchManager;
+  }
+
+  @Override
+  public void search(RpcController controller, SearchRequest request,
+      final RpcCallback<SearchUpdate> done) {
+    ParticipantId loggedInUser = ((ServerRpcController) controller).getLoggedInUser();
+    if (loggedInUser == null) {
+      controller.setFailed("Not logged in");
+      return;
+    }
+    final Stream stream = new Stream(done);
+    stream.search = searchManager.subscribe(loggedInUser, request.getQuery(),
+        request.getIndex(), request.getNumResults(), stream);
+    controller.notifyOnCancel(new RpcCallback<Object>() {
+      @Override
+      public void run(Object parameter) {
+        stream.close();
+      }
+    });
+  }
+
+  /**
+   * Sends the updates of a live search until the RPC is cancelled. Updates
+   * and the end of the RPC are sent under the lock of the stream, as nothing
+   * may be sent once the RPC is finished.
+   */
+  private static final class Stream implements LiveSearchManager.Listener {
+    private final RpcCallback<SearchUpdate> done;
+    private volatile LiveSearchManager.LiveSearch search;
+    private boolean closed;
+
+    Stream(RpcCallback<SearchUpdate> done) {
+      this.done = done;
+    }
+
+    @Override
+    public synchronized void onUpdate(SearchUpdate update) {
+      if (!closed) {
+        done.run(update);
+      }
+    }
+
+    @Override
+    public void onEvicted() {
+      close();
+    }
+
+    synchronized void close() {
+      if (!closed) {
+        closed = true;
+        search.close();
+        // Finishes the streaming RPC.
+        done.run(null);
+      }
+    }
+  }
+}
@@ -21,9 +21,9 @@ package org.waveprotocol.box.server.frontend;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
-import com.google.common.collect.LinkedListMultimap;
-import com.google.common.collect.ListMultimap;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 
 import org.waveprotocol.box.common.DeltaSequence;
 import org.waveprotocol.wave.model.id.IdFilter;
@@ -32,19 +32,30 @@ import org.waveprotocol.wave.model.id.WaveletName;
 import org.waveprotocol.wave.model.version.HashedVersion;
 
 import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Collects active wave view subscriptions for a single participant.
+ *
+ * Subscriptions are kept in copy-on-write lists, so that delivering updates,
+ * which happens far more often than subscribing, doesn't take a lock. Updates
+ * are delivered on the calling thread without holding any lock of the user
+ * manager, so a slow client doesn't hold up the user's other clients.
  */
 final class UserManager {
-  private final ListMultimap<WaveId, WaveViewSubscription> subscriptions =
-      LinkedListMultimap.create();
+  private final ConcurrentMap<WaveId, List<WaveViewSubscription>> subscriptions =
+      Maps.newConcurrentMap();
 
   /** The listeners interested in the specified wavelet. */
   @VisibleForTesting
-  synchronized List<WaveViewSubscription> matchSubscriptions(WaveletName waveletName) {
+  List<WaveViewSubscription> matchSubscriptions(WaveletName waveletName) {
+    List<WaveViewSubscription> waveSubscriptions = subscriptions.get(waveletName.waveId);
+    if (waveSubscriptions == null) {
+      return ImmutableList.of();
+    }
     List<WaveViewSubscription> result = Lists.newArrayList();
-    for (WaveViewSubscription subscription : subscriptions.get(waveletName.waveId)) {
+    for (WaveViewSubscription subscription : waveSubscriptions) {
       if (subscription.includes(waveletName.waveletId)) {
         result.add(subscription);
       }
@@ -53,12 +64,10 @@ final class UserManager {
   }
 
   /** Returns the subscription (if it exists) for a given wavelet and channel */
-  private synchronized WaveViewSubscription findSubscription(WaveletName waveletName, String channelId) {
-    for (WaveViewSubscription subscription : subscriptions.get(waveletName.waveId)) {
-      if (subscription.includes(waveletName.waveletId)) {
-        if (subscription.getChannelId().equals(channelId)) {
-          return subscription;
-        }
+  private WaveViewSubscription findSubscription(WaveletName waveletName, String channelId) {
+    for (WaveViewSubscription subscription : matchSubscriptions(waveletName)) {
+      if (subscription.getChannelId().equals(channelId)) {
+        return subscription;
       }
     }
     return null;
@@ -68,7 +77,7 @@ final class UserManager {
    * Receives additional deltas for the specified wavelet, of which we must be a
    * participant. Delta updates must be received in contiguous version order.
    */
-  public synchronized void onUpdate(WaveletName waveletName, DeltaSequence deltas) {
+  public void onUpdate(WaveletName waveletName, DeltaSequence deltas) {
     Preconditions.checkNotNull(waveletName);
     if (deltas.isEmpty()) {
       return;
@@ -97,11 +106,20 @@ final class UserManager {
    *
    * @return a subscription
    */
-  public synchronized WaveViewSubscription subscribe(WaveId waveId, IdFilter waveletIdFilter,
+  public WaveViewSubscription subscribe(WaveId waveId, IdFilter waveletIdFilter,
       String channelId, ClientFrontend.OpenListener listener) {
     WaveViewSubscription subscription =
         new WaveViewSubscription(waveId, waveletIdFilter, channelId, listener);
-    subscriptions.put(waveId, subscription);
+    List<WaveViewSubscription> waveSubscriptions = subscriptions.get(waveId);
+    if (waveSubscriptions == null) {
+      List<WaveViewSubscription> newSubscriptions =
+          new CopyOnWriteArrayList<WaveViewSubscription>();
+      waveSubscriptions = subscriptions.putIfAbsent(waveId, newSubscriptions);
+      if (waveSubscriptions == null) {
+        waveSubscriptions = newSubscriptions;
+      }
+    }
+    waveSubscriptions.add(subscription);
     return subscription;
   }
 
@@ -52,26 +52,55 @@ import java.util.concurrent.ExecutionException;
 public class WaveletInfo {
   private static final Log LOG = Log.get(WaveletInfo.class);
 
-  /** Information we hold in memory for each wavelet. */
-  private static class PerWavelet {
-    private final HashedVersion version0;
-    private final Set<ParticipantId> explicitParticipants;
-    private final Set<ParticipantId> implicitParticipants;
-    private HashedVersion currentVersion;
+  /**
+   * Information we hold in memory for each wavelet. The information is
+   * immutable and replaced as a whole on every change, so that it can be read
+   * without a lock. Changes are made while holding the lock of the
+   * {@link PerWavelet}.
+   */
+  private static final class WaveletState {
+    final HashedVersion currentVersion;
+    final ImmutableSet<ParticipantId> explicitParticipants;
+    final ImmutableSet<ParticipantId> implicitParticipants;
+
+    WaveletState(HashedVersion currentVersion, ImmutableSet<ParticipantId> explicitParticipants,
+        ImmutableSet<ParticipantId> implicitParticipants) {
+      this.currentVersion = currentVersion;
+      this.explicitParticipants = explicitParticipants;
+      this.implicitParticipants = implicitParticipants;
+    }
+
+    WaveletState withVersion(HashedVersion version) {
+      return new WaveletState(version, explicitParticipants, implicitParticipants);
+    }
+
+    WaveletState withExplicitParticipants(Set<ParticipantId> participants) {
+      return new WaveletState(currentVersion, ImmutableSet.copyOf(participants),
+          implicitParticipants);
+    }
+
+    WaveletState withImplicitParticipants(Set<ParticipantId> participants) {
+      return new WaveletState(currentVersion, explicitParticipants,
+          ImmutableSet.copyOf(participants));
+    }
+  }
+
+  /** Publishes the state of a wavelet. */
+  private static final class PerWavelet {
+    private volatile WaveletState state;
 
-    PerWavelet(WaveletName waveletName, HashedVersion hashedVersionZero) {
-      this.explicitParticipants = Sets.newHashSet();
-      this.implicitParticipants = Sets.newHashSet();
-      this.version0 = hashedVersionZero;
-      this.currentVersion = version0;
+    PerWavelet(HashedVersion hashedVersionZero) {
+      this.state = new WaveletState(hashedVersionZero, ImmutableSet.<ParticipantId>of(),
+          ImmutableSet.<ParticipantId>of());
     }
 
-    synchronized HashedVersion getCurrentVersion() {
-      return currentVersion;
+    WaveletState getState() {
+      return state;
     }
 
-    synchronized void setCurrentVersion(HashedVersion version) {
-      this.currentVersion = version;
+    /** Must be called while holding the lock of this object. */
+    void setState(WaveletState state) {
+      this.state = state;
     }
   }
 
@@ -100,8 +129,7 @@ public class WaveletInfo {
           @Override
           public PerWavelet load(WaveletId waveletId) {
             WaveletName waveletName = WaveletName.of(waveId, waveletId);
-            return new PerWavelet(waveletName, hashedVersionFactory
-                .createVersionZero(waveletName));
+            return new PerWavelet(hashedVersionFactory.createVersionZero(waveletName));
           }
         });
       }
@@ -155,11 +183,13 @@ public class WaveletInfo {
           // Wavelets is a computing map, so get() initializes the entry.
           PerWavelet waveletInfo = wavelets.get(waveletId);
           synchronized (waveletInfo) {
-            waveletInfo.currentVersion = wavelet.getHashedVersion();
+            WaveletState state = waveletInfo.getState();
             if(LOG.isFineLoggable()) {
               LOG.fine("frontend wavelet " + waveletId + " @" + wavelet.getHashedVersion().getVersion());
             }
-            waveletInfo.explicitParticipants.addAll(wavelet.getParticipants());
+            waveletInfo.setState(state.withVersion(wavelet.getHashedVersion())
+                .withExplicitParticipants(Sets.union(state.explicitParticipants,
+                    wavelet.getParticipants())));
           }
         }
       }
@@ -179,11 +209,12 @@ public class WaveletInfo {
     HashedVersion expectedVersion;
     PerWavelet waveletInfo = getWavelet(waveletName);
     synchronized (waveletInfo) {
-      expectedVersion = waveletInfo.getCurrentVersion();
+      WaveletState state = waveletInfo.getState();
+      expectedVersion = state.currentVersion;
       Preconditions.checkState(expectedVersion.getVersion() == newDeltas.getStartVersion(),
           "Expected deltas starting at version %s, got %s", expectedVersion,
           newDeltas.getStartVersion());
-      waveletInfo.setCurrentVersion(newDeltas.getEndVersion());
+      waveletInfo.setState(state.withVersion(newDeltas.getEndVersion()));
     }
   }
 
@@ -202,10 +233,7 @@ public class WaveletInfo {
    * Returns the current wavelet version.
    */
   public HashedVersion getCurrentWaveletVersion(WaveletName waveletName) {
-    PerWavelet waveletInfo = getWavelet(waveletName);
-    synchronized (waveletInfo) {
-      return waveletInfo.getCurrentVersion();
-    }
+    return getWavelet(waveletName).getState().currentVersion;
   }
 
   /**
@@ -213,10 +241,7 @@ public class WaveletInfo {
    * @return the wavelet participants.
    */
   public Set<ParticipantId> getWaveletParticipants(WaveletName waveletName) {
-    PerWavelet waveletInfo = getWavelet(waveletName);
-    synchronized (waveletInfo) {
-      return ImmutableSet.copyOf(waveletInfo.explicitParticipants);
-    }
+    return getWavelet(waveletName).getState().explicitParticipants;
   }
 
   /**
@@ -227,10 +252,7 @@ public class WaveletInfo {
    *         wave without becoming explicit participant.
    */
   public Set<ParticipantId> getImplicitWaveletParticipants(WaveletName waveletName) {
-    PerWavelet waveletInfo = getWavelet(waveletName);
-    synchronized (waveletInfo) {
-      return ImmutableSet.copyOf(waveletInfo.explicitParticipants);
-    }
+    return getWavelet(waveletName).getState().implicitParticipants;
   }
 
   /**
@@ -242,8 +264,13 @@ public class WaveletInfo {
   public void notifyAddedExplicitWaveletParticipant(WaveletName waveletName,
       ParticipantId participant) {
     PerWavelet waveletInfo = getWavelet(waveletName);
+    if (waveletInfo.getState().explicitParticipants.contains(participant)) {
+      return;
+    }
     synchronized (waveletInfo) {
-      waveletInfo.explicitParticipants.add(participant);
+      WaveletState state = waveletInfo.getState();
+      waveletInfo.setState(state.withExplicitParticipants(
+          Sets.union(state.explicitParticipants, ImmutableSet.of(participant))));
     }
   }
 
@@ -256,8 +283,13 @@ public class WaveletInfo {
   public void notifyRemovedExplicitWaveletParticipant(WaveletName waveletName,
       ParticipantId participant) {
     PerWavelet waveletInfo = getWavelet(waveletName);
+    if (!waveletInfo.getState().explicitParticipants.contains(participant)) {
+      return;
+    }
     synchronized (waveletInfo) {
-      waveletInfo.explicitParticipants.remove(participant);
+      WaveletState state = waveletInfo.getState();
+      waveletInfo.setState(state.withExplicitParticipants(
+          Sets.difference(state.explicitParticipants, ImmutableSet.of(participant))));
     }
   }
 
@@ -269,9 +301,17 @@ public class WaveletInfo {
    */
   public void notifyAddedImplcitParticipant(WaveletName waveletName, ParticipantId participant) {
     PerWavelet waveletInfo = getWavelet(waveletName);
+    // Reopening a wave is the common case, and needs no lock.
+    WaveletState current = waveletInfo.getState();
+    if (current.explicitParticipants.contains(participant)
+        || current.implicitParticipants.contains(participant)) {
+      return;
+    }
     synchronized (waveletInfo) {
-      if (!waveletInfo.explicitParticipants.contains(participant)) {
-        waveletInfo.implicitParticipants.add(participant);
+      WaveletState state = waveletInfo.getState();
+      if (!state.explicitParticipants.contains(participant)) {
+        waveletInfo.setState(state.withImplicitParticipants(
+            Sets.union(state.implicitParticipants, ImmutableSet.of(participant))));
       }
     }
   }
@@ -21,6 +21,7 @@ package org.waveprotocol.box.server.persistence;
 import org.waveprotocol.box.attachment.AttachmentMetadata;
 import org.waveprotocol.wave.media.model.AttachmentId;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 
@@ -39,6 +40,15 @@ public interface AttachmentStore {
     public long getSize();
   }
 
+  /**
+   * Attachment data held in a file, which can be sent by the file system
+   * rather than copied through a stream.
+   */
+  interface FileAttachmentData extends AttachmentData {
+
+    public File getFile();
+  }
+
   /**
    * Fetch an attachment metadata.
    *
@@ -20,11 +20,17 @@
 package org.waveprotocol.box.server.persistence;
 
 import org.waveprotocol.box.server.persistence.AttachmentStore.AttachmentData;
+import org.waveprotocol.box.server.persistence.AttachmentStore.FileAttachmentData;
 
 import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 
 import org.waveprotocol.wave.model.id.IdConstants;
 import org.waveprotocol.wave.model.id.WaveId;
@@ -44,6 +50,8 @@ import org.waveprotocol.wave.util.logging.Log;
 public class AttachmentUtil {
   private static final Log LOG = Log.get(AttachmentUtil.class);
 
+  private static final int BUFFER_SIZE = 64 * 1024;
+
   private AttachmentUtil() {}
 
   /**
@@ -55,13 +63,69 @@ public class AttachmentUtil {
    * @throws IOException
    */
   public static void writeTo(InputStream source, OutputStream dest) throws IOException {
-    byte[] buffer = new byte[256];
+    byte[] buffer = new byte[BUFFER_SIZE];
     int length;
     while ((length = source.read(buffer)) != -1) {
       dest.write(buffer, 0, length);
     }
   }
 
+  /**
+   * Writes a range of attachment data to an output stream. Data held in a file
+   * is transferred by the file channel, other data is streamed, skipping to
+   * the start of the range.
+   *
+   * @param data the data to write
+   * @param start the offset of the first byte to write
+   * @param length the number of bytes to write
+   * @param dest the stream to write to
+   * @throws IOException
+   */
+  public static void writeTo(AttachmentData data, long start, long length, OutputStream dest)
+      throws IOException {
+    if (data instanceof FileAttachmentData) {
+      FileChannel channel = new FileInputStream(((FileAttachmentData) data).getFile()).getChannel();
+      try {
+        WritableByteChannel target = Channels.newChannel(dest);
+        long position = start;
+        long end = start + length;
+        while (position < end) {
+          long transferred = channel.transferTo(position, end - position, target);
+          if (transferred <= 0) {
+            throw new EOFException("Attachment shorter than " + end + " bytes");
+          }
+          position += transferred;
+        }
+      } finally {
+        channel.close();
+      }
+      return;
+    }
+    InputStream source = data.getInputStream();
+    try {
+      long skipped = 0;
+      while (skipped < start) {
+        long n = source.skip(start - skipped);
+        if (n <= 0) {
+          throw new EOFException("Attachment shorter than " + start + " bytes");
+        }
+        skipped += n;
+      }
+      byte[] buffer = new byte[(int) Math.min(BUFFER_SIZE, Math.max(length, 1))];
+      long remaining = length;
+      while (remaining > 0) {
+        int n = source.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+        if (n == -1) {
+          throw new EOFException("Attachment shorter than " + (start + length) + " bytes");
+        }
+        dest.write(buffer, 0, n);
+        remaining -= n;
+      }
+    } finally {
+      source.close();
+    }
+  }
+
   /**
    * Write the attachment out to a string.
    *
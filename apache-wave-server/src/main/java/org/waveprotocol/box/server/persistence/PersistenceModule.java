@@ -26,9 +26,11 @@ import com.google.inject.name.Named;
 
 import org.waveprotocol.box.server.CoreSettings;
 import org.waveprotocol.box.server.persistence.file.FileAccountStore;
+import org.waveprotocol.box.server.persistence.file.ContentAddressedAttachmentStore;
 import org.waveprotocol.box.server.persistence.file.FileAttachmentStore;
 import org.waveprotocol.box.server.persistence.file.FileDeltaStore;
 import org.waveprotocol.box.server.persistence.file.FileSignerInfoStore;
+import org.waveprotocol.box.server.persistence.log.LogDeltaStore;
 import org.waveprotocol.box.server.persistence.memory.MemoryDeltaStore;
 import org.waveprotocol.box.server.persistence.memory.MemoryStore;
 import org.waveprotocol.box.server.persistence.mongodb.MongoDbProvider;
@@ -42,11 +44,14 @@ import org.waveprotocol.wave.crypto.CertPathStore;
  * The valid names for the cert store are 'memory', 'file' and 'mongodb'
  *
  *<p>
- *The valid names for the attachment store are 'disk' and 'mongodb'
+ *The valid names for the attachment store are 'disk', 'content' and 'mongodb'
  *
  *<p>
  *The valid names for the account store are 'memory', 'file' and 'mongodb'.
  *
+ *<p>
+ *The valid names for the delta store are 'memory', 'file', 'log' and 'mongodb'.
+ *
  * @author ljvderijk@google.com (Lennard de Rijk)
  */
 public class PersistenceModule extends AbstractModule {
@@ -124,6 +129,8 @@ public class PersistenceModule extends AbstractModule {
   private void bindAttachmentStore() {
     if (attachmentStoreType.equalsIgnoreCase("disk")) {
       bind(AttachmentStore.class).to(FileAttachmentStore.class).in(Singleton.class);
+    } else if (attachmentStoreType.equalsIgnoreCase("content")) {
+      bind(AttachmentStore.class).to(ContentAddressedAttachmentStore.class).in(Singleton.class);
     } else if (attachmentStoreType.equalsIgnoreCase("mongodb")) {
       MongoDbProvider mongoDbProvider = getMongoDbProvider();
       bind(AttachmentStore.class).toInstance(mongoDbProvider.provideMongoDbStore());
@@ -152,6 +159,8 @@ public class PersistenceModule extends AbstractModule {
       bind(DeltaStore.class).to(MemoryDeltaStore.class).in(Singleton.class);
     } else if (deltaStoreType.equalsIgnoreCase("file")) {
       bind(DeltaStore.class).to(FileDeltaStore.class).in(Singleton.class);
+    } else if (deltaStoreType.equalsIgnoreCase("log")) {
+      bind(DeltaStore.class).to(LogDeltaStore.class).in(Singleton.class);
     } else if (deltaStoreType.equalsIgnoreCase("mongodb")) {
       MongoDbProvider mongoDbProvider = getMongoDbProvider();
       bind(DeltaStore.class).toInstance(mongoDbProvider.provideMongoDbDeltaStore());
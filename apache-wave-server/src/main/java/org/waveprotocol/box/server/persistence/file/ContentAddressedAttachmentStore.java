@@ -0,0 +1,369 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.waveprotocol.box.server.persistence.file;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Charsets;
+import com.google.common.io.BaseEncoding;
+import com.google.common.util.concurrent.Striped;
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+
+import org.waveprotocol.box.attachment.AttachmentMetadata;
+import org.waveprotocol.box.attachment.AttachmentProto;
+import org.waveprotocol.box.attachment.proto.AttachmentMetadataProtoImpl;
+import org.waveprotocol.box.server.CoreSettings;
+import org.waveprotocol.box.server.persistence.AttachmentStore;
+import org.waveprotocol.box.server.persistence.AttachmentUtil;
+import org.waveprotocol.wave.media.model.AttachmentId;
+import org.waveprotocol.wave.util.logging.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * An attachment store on disk which keeps the data of attachments by the
+ * SHA-256 of their content, so that data attached many times is stored once.
+ *
+ * Content, and the thumbnail made of it, live in {@code blobs} under their
+ * hash, next to a count of the attachments that refer to them. Each attachment
+ * id has a file in {@code ids}, named by the hash of the id, holding the hash
+ * of its content, and its metadata. Both trees are sharded two levels deep by
+ * the first bytes of the hash, so no directory grows past a few thousand
+ * entries.
+ *
+ * Reference counts are only kept consistent within a single server process.
+ */
+public class ContentAddressedAttachmentStore implements AttachmentStore {
+
+  private static final Log LOG = Log.get(ContentAddressedAttachmentStore.class);
+
+  private static final String BLOBS_DIR = "blobs";
+  private static final String IDS_DIR = "ids";
+  private static final String TMP_DIR = "tmp";
+
+  private static final String META_EXT = ".meta";
+  private static final String THUMBNAIL_EXT = ".thumbnail";
+  private static final String REFS_EXT = ".refs";
+
+  private static final BaseEncoding HEX = BaseEncoding.base16().lowerCase();
+
+  private final File blobsDir;
+  private final File idsDir;
+  private final File tmpDir;
+
+  /** Guards the reference counts of blobs, by their hash. */
+  private final Striped<Lock> blobLocks = Striped.lock(64);
+
+  @Inject
+  public ContentAddressedAttachmentStore(
+      @Named(CoreSettings.ATTACHMENT_STORE_DIRECTORY) String basePath) {
+    blobsDir = new File(basePath, BLOBS_DIR);
+    idsDir = new File(basePath, IDS_DIR);
+    tmpDir = new File(basePath, TMP_DIR);
+    blobsDir.mkdirs();
+    idsDir.mkdirs();
+    tmpDir.mkdirs();
+    // Leftovers of writes interrupted by a crash.
+    File[] leftovers = tmpDir.listFiles();
+    if (leftovers != null) {
+      for (File file : leftovers) {
+        file.delete();
+      }
+    }
+  }
+
+  @Override
+  public AttachmentMetadata getMetadata(AttachmentId attachmentId) throws IOException {
+    File file = idFile(attachmentId, META_EXT);
+    if (!file.exists()) {
+      return null;
+    }
+    InputStream in = new FileInputStream(file);
+    try {
+      return new AttachmentMetadataProtoImpl(AttachmentProto.AttachmentMetadata.parseFrom(in));
+    } finally {
+      in.close();
+    }
+  }
+
+  @Override
+  public AttachmentData getAttachment(AttachmentId attachmentId) throws IOException {
+    String hash = readHash(attachmentId);
+    return hash != null ? getFileData(blobFile(hash, "")) : null;
+  }
+
+  @Override
+  public AttachmentData getThumbnail(AttachmentId attachmentId) throws IOException {
+    String hash = readHash(attachmentId);
+    return hash != null ? getFileData(blobFile(hash, THUMBNAIL_EXT)) : null;
+  }
+
+  @Override
+  public void storeMetadata(AttachmentId attachmentId, AttachmentMetadata metaData)
+      throws IOException {
+    File tmp = File.createTempFile("meta", null, tmpDir);
+    try {
+      OutputStream out = new FileOutputStream(tmp);
+      try {
+        new AttachmentMetadataProtoImpl(metaData).getPB().writeTo(out);
+      } finally {
+        out.close();
+      }
+      moveIntoPlace(tmp, idFile(attachmentId, META_EXT));
+    } finally {
+      tmp.delete();
+    }
+  }
+
+  @Override
+  public void storeAttachment(AttachmentId attachmentId, InputStream data) throws IOException {
+    File idFile = idFile(attachmentId, "");
+    if (idFile.exists()) {
+      throw new IOException("Attachment already exist");
+    }
+    File tmp = File.createTempFile("blob", null, tmpDir);
+    try {
+      String hash = writeHashed(data, tmp);
+      addReference(hash, tmp);
+      try {
+        writeHash(idFile, hash);
+      } catch (IOException e) {
+        removeReference(hash);
+        throw e;
+      }
+    } finally {
+      tmp.delete();
+    }
+  }
+
+  /**
+   * Stores the thumbnail of an attachment. As a thumbnail is made from the
+   * content of the attachment, attachments with the same content share it,
+   * and the thumbnail is not written again if there is one already.
+   */
+  @Override
+  public void storeThumbnail(AttachmentId attachmentId, InputStream data) throws IOException {
+    String hash = readHash(attachmentId);
+    if (hash == null) {
+      throw new IOException("No such attachment " + attachmentId.serialise());
+    }
+    File file = blobFile(hash, THUMBNAIL_EXT);
+    if (file.exists()) {
+      return;
+    }
+    File tmp = File.createTempFile("thumbnail", null, tmpDir);
+    try {
+      OutputStream out = new FileOutputStream(tmp);
+      try {
+        AttachmentUtil.writeTo(data, out);
+      } finally {
+        out.close();
+      }
+      try {
+        moveIntoPlace(tmp, file);
+      } catch (FileAlreadyExistsException e) {
+        // Made at the same time for another attachment with the same content.
+      }
+    } finally {
+      tmp.delete();
+    }
+  }
+
+  @Override
+  public void deleteAttachment(AttachmentId attachmentId) {
+    try {
+      String hash = readHash(attachmentId);
+      if (hash != null && idFile(attachmentId, "").delete()) {
+        removeReference(hash);
+      }
+    } catch (IOException e) {
+      LOG.warning("Failed to delete attachment " + attachmentId.serialise(), e);
+    }
+  }
+
+  /** Returns the number of attachments that refer to content with a hash. */
+  @VisibleForTesting
+  int getReferenceCount(String hash) throws IOException {
+    File file = blobFile(hash, REFS_EXT);
+    if (!file.exists()) {
+      return 0;
+    }
+    return Integer.parseInt(new String(Files.readAllBytes(file.toPath()), Charsets.UTF_8).trim());
+  }
+
+  /** Returns the hash of the content of an attachment, or null if there is none. */
+  @VisibleForTesting
+  String readHash(AttachmentId attachmentId) throws IOException {
+    File file = idFile(attachmentId, "");
+    if (!file.exists()) {
+      return null;
+    }
+    return new String(Files.readAllBytes(file.toPath()), Charsets.UTF_8).trim();
+  }
+
+  /** Copies data to a file, returning the hash of the data. */
+  private static String writeHashed(InputStream data, File file) throws IOException {
+    MessageDigest digest = newDigest();
+    OutputStream out = new DigestOutputStream(new FileOutputStream(file), digest);
+    try {
+      AttachmentUtil.writeTo(data, out);
+    } finally {
+      out.close();
+    }
+    return HEX.encode(digest.digest());
+  }
+
+  /**
+   * Counts a new reference to the content with a hash, moving the content in
+   * place from a temporary file if it is not stored yet.
+   */
+  private void addReference(String hash, File content) throws IOException {
+    Lock lock = blobLocks.get(hash);
+    lock.lock();
+    try {
+      File blob = blobFile(hash, "");
+      if (!blob.exists()) {
+        moveIntoPlace(content, blob);
+      }
+      writeReferenceCount(hash, getReferenceCount(hash) + 1);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** Drops a reference to content, deleting it with the last one. */
+  private void removeReference(String hash) throws IOException {
+    Lock lock = blobLocks.get(hash);
+    lock.lock();
+    try {
+      int count = getReferenceCount(hash) - 1;
+      if (count > 0) {
+        writeReferenceCount(hash, count);
+      } else {
+        blobFile(hash, "").delete();
+        blobFile(hash, THUMBNAIL_EXT).delete();
+        blobFile(hash, REFS_EXT).delete();
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void writeReferenceCount(String hash, int count) throws IOException {
+    File tmp = writeTemporary(Integer.toString(count));
+    try {
+      Files.move(tmp.toPath(), blobFile(hash, REFS_EXT).toPath(),
+          StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      tmp.delete();
+    }
+  }
+
+  /**
+   * Records the hash of the content of an attachment, failing if the
+   * attachment already has one.
+   */
+  private void writeHash(File idFile, String hash) throws IOException {
+    File tmp = writeTemporary(hash);
+    try {
+      moveIntoPlace(tmp, idFile);
+    } catch (FileAlreadyExistsException e) {
+      throw new IOException("Attachment already exist");
+    } finally {
+      tmp.delete();
+    }
+  }
+
+  private File writeTemporary(String content) throws IOException {
+    File tmp = File.createTempFile("ref", null, tmpDir);
+    Files.write(tmp.toPath(), content.getBytes(Charsets.UTF_8));
+    return tmp;
+  }
+
+  /**
+   * Moves a complete file from the temporary directory to a path in one of
+   * the sharded trees, creating its directory if needed. The temporary
+   * directory is on the same file system, so this is a rename.
+   *
+   * @throws FileAlreadyExistsException if there is a file at the path
+   */
+  private static void moveIntoPlace(File source, File target) throws IOException {
+    target.getParentFile().mkdirs();
+    Files.move(source.toPath(), target.toPath());
+  }
+
+  private File blobFile(String hash, String extension) {
+    return shardedFile(blobsDir, hash, extension);
+  }
+
+  private File idFile(AttachmentId attachmentId, String extension) {
+    MessageDigest digest = newDigest();
+    String hash = HEX.encode(digest.digest(attachmentId.serialise().getBytes(Charsets.UTF_8)));
+    return shardedFile(idsDir, hash, extension);
+  }
+
+  private static File shardedFile(File dir, String hash, String extension) {
+    File shard = new File(new File(dir, hash.substring(0, 2)), hash.substring(2, 4));
+    return new File(shard, hash + extension);
+  }
+
+  private static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static AttachmentData getFileData(final File file) {
+    if (!file.exists()) {
+      return null;
+    }
+    return new FileAttachmentData() {
+
+      @Override
+      public InputStream getInputStream() throws IOException {
+        return new FileInputStream(file);
+      }
+
+      @Override
+      public long getSize() {
+        return file.length();
+      }
+
+      @Override
+      public File getFile() {
+        return file;
+      }
+    };
+  }
+}
@@ -19,24 +19,35 @@
 
 package org.waveprotocol.box.server.persistence.file;
 
+import com.google.common.collect.Lists;
 import com.google.inject.Inject;
 import com.google.inject.name.Named;
 
 import org.waveprotocol.box.server.CoreSettings;
 import org.waveprotocol.box.server.persistence.AttachmentStore;
+import org.waveprotocol.box.server.persistence.AttachmentUtil;
+import org.waveprotocol.wave.model.id.InvalidIdException;
+import org.waveprotocol.wave.model.util.Base64DecoderException;
 import org.waveprotocol.wave.model.util.CharBase64;
+import org.waveprotocol.wave.util.logging.Log;
 
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
 import org.waveprotocol.box.attachment.AttachmentMetadata;
 import org.waveprotocol.box.attachment.AttachmentProto;
 import org.waveprotocol.box.attachment.proto.AttachmentMetadataProtoImpl;
 import org.waveprotocol.wave.media.model.AttachmentId;
+import org.waveprotocol.wave.media.model.AttachmentIdImpl;
 
 /**
  * An implementation of AttachmentStore which uses files on disk
@@ -46,6 +57,8 @@ import org.waveprotocol.wave.media.model.AttachmentId;
  */
 public class FileAttachmentStore implements AttachmentStore {
 
+  private static final Log LOG = Log.get(FileAttachmentStore.class);
+
   private final String META_EXT = ".meta";
   private final String THUMBNAIL_EXT = ".thumbnail";
 
@@ -73,42 +86,12 @@ public class FileAttachmentStore implements AttachmentStore {
 
   @Override
   public AttachmentData getAttachment(AttachmentId attachmentId) throws IOException {
-    final File file = new File(getAttachmentPath(attachmentId));
-    if (!file.exists()) {
-      return null;
-    }
-    return new AttachmentData() {
-
-      @Override
-      public InputStream getInputStream() throws IOException {
-        return new FileInputStream(file);
-      }
-
-      @Override
-      public long getSize() {
-        return file.length();
-      }
-    };
+    return getFileData(new File(getAttachmentPath(attachmentId)));
   }
 
   @Override
   public AttachmentData getThumbnail(AttachmentId attachmentId) throws IOException {
-    final File file = new File(getThumbnailPath(attachmentId));
-    if (!file.exists()) {
-      return null;
-    }
-    return new AttachmentData() {
-
-      @Override
-      public InputStream getInputStream() throws IOException {
-        return new FileInputStream(file);
-      }
-
-      @Override
-      public long getSize() {
-        return file.length();
-      }
-    };
+    return getFileData(new File(getThumbnailPath(attachmentId)));
   }
 
   @Override
@@ -130,7 +113,7 @@ public class FileAttachmentStore implements AttachmentStore {
       throw new IOException("Attachment already exist");
     }
     FileOutputStream stream = new FileOutputStream(file);
-    writeTo(data, stream);
+    AttachmentUtil.writeTo(data, stream);
     stream.close();
   }
 
@@ -141,7 +124,7 @@ public class FileAttachmentStore implements AttachmentStore {
       throw new IOException("Attachment already exist");
     }
     FileOutputStream stream = new FileOutputStream(file);
-    writeTo(data, stream);
+    AttachmentUtil.writeTo(data, stream);
     stream.close();
   }
 
@@ -153,6 +136,32 @@ public class FileAttachmentStore implements AttachmentStore {
     }
   }
 
+  /**
+   * Returns the ids of the attachments in the store, so that they can be
+   * migrated to another store.
+   */
+  public List<AttachmentId> getAttachmentIds() throws IOException {
+    final List<AttachmentId> ids = Lists.newArrayList();
+    final Path base = new File(basePath).toPath();
+    // Ids whose encoding has a '/' are stored in subdirectories.
+    Files.walkFileTree(base, new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+        String name = base.relativize(file).toString().replace(File.separatorChar, '/');
+        if (!name.endsWith(META_EXT) && !name.endsWith(THUMBNAIL_EXT)) {
+          try {
+            ids.add(AttachmentIdImpl.deserialise(
+                new String(CharBase64.decode(name), "UTF-8")));
+          } catch (Base64DecoderException | InvalidIdException | UnsupportedEncodingException e) {
+            LOG.warning("Skipping file that is not an attachment: " + file, e);
+          }
+        }
+        return FileVisitResult.CONTINUE;
+      }
+    });
+    return ids;
+  }
+
   private String getMetadataPath(AttachmentId attachmentId) {
     return basePath + File.separatorChar + encodeId(attachmentId) + META_EXT;
   }
@@ -165,12 +174,27 @@ public class FileAttachmentStore implements AttachmentStore {
     return basePath + File.separatorChar + encodeId(attachmentId) + THUMBNAIL_EXT;
   }
 
-  private static void writeTo(InputStream source, OutputStream dest) throws IOException {
-    byte[] buffer = new byte[256];
-    int length;
-    while ((length = source.read(buffer)) != -1) {
-      dest.write(buffer, 0, length);
+  private static AttachmentData getFileData(final File file) {
+    if (!file.exists()) {
+      return null;
     }
+    return new FileAttachmentData() {
+
+      @Override
+      public InputStream getInputStream() throws IOException {
+        return new FileInputStream(file);
+      }
+
+      @Override
+      public long getSize() {
+        return file.length();
+      }
+
+      @Override
+      public File getFile() {
+        return file;
+      }
+    };
   }
 
   private static String encodeId(AttachmentId id) {
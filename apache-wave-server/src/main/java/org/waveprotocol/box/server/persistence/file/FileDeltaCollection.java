@@ -78,6 +78,8 @@ public class FileDeltaCollection implements DeltasAccess {
   private final WaveletName waveletName;
   private final RandomAccessFile file;
   private final DeltaIndex index;
+  /** The catalog to record appends in, or null. */
+  private WaveletCatalog catalog;
 
   private HashedVersion endVersion;
   private boolean isOpen;
@@ -132,6 +134,30 @@ public class FileDeltaCollection implements DeltasAccess {
     return collection;
   }
 
+  /**
+   * Opens a file delta collection which keeps its entry in a catalog up to
+   * date.
+   *
+   * @param waveletName name of the wavelet to open
+   * @param basePath base path of files
+   * @param catalog the catalog of the wavelets under the base path
+   * @return an open collection
+   * @throws IOException
+   */
+  static FileDeltaCollection open(WaveletName waveletName, String basePath,
+      WaveletCatalog catalog) throws IOException {
+    FileDeltaCollection collection = open(waveletName, basePath);
+    try {
+      // Opening has read all the deltas, and may have truncated the file.
+      catalog.update(waveletName, collection.endVersion);
+    } catch (IOException e) {
+      collection.close();
+      throw e;
+    }
+    collection.catalog = catalog;
+    return collection;
+  }
+
   /**
    * Delete the delta files from disk.
    *
@@ -253,6 +279,15 @@ public class FileDeltaCollection implements DeltasAccess {
     } catch (IOException e) {
       throw new PersistenceException(e);
     }
+    if (catalog != null) {
+      try {
+        catalog.update(waveletName, endVersion);
+      } catch (IOException e) {
+        // The deltas are durable. The catalog entry is stale now, and will be
+        // rebuilt when next read.
+        LOG.warning("Failed to update the catalog for " + waveletName, e);
+      }
+    }
   }
 
   @Override
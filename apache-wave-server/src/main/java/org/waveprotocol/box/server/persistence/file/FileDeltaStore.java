@@ -20,6 +20,7 @@
 package org.waveprotocol.box.server.persistence.file;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.inject.Inject;
 import com.google.inject.name.Named;
@@ -38,6 +39,7 @@ import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import org.waveprotocol.box.stat.Timed;
 
@@ -47,6 +49,10 @@ import org.waveprotocol.box.stat.Timed;
  * The delta store lives at some base directory. The directory structure looks like this:
  * base/encoded-wave-id/encoded-wavelet-id.delta
  * base/encoded-wave-id/encoded-wavelet-id.index
+ * base/encoded-wave-id/wavelets.catalog
+ *
+ * The catalog of each wave lets {@link #lookup} and {@link #getWaveIdIterator}
+ * answer without parsing delta files, see {@link WaveletCatalog}.
  *
  * See design doc:
  * https://sites.google.com/a/waveprotocol.org/wave-protocol/protocol/design-proposals/wave-store-design-for-wave-in-a-box
@@ -60,18 +66,31 @@ public class FileDeltaStore implements DeltaStore {
    * The directory in which the wavelets are stored
    */
   final private String basePath;
+  private final WaveletCatalog catalog;
 
   @Inject
-  public FileDeltaStore(@Named(CoreSettings.DELTA_STORE_DIRECTORY) String basePath) {
+  public FileDeltaStore(@Named(CoreSettings.DELTA_STORE_DIRECTORY) final String basePath) {
     Preconditions.checkNotNull(basePath, "Requested path is null");
     this.basePath = basePath;
+    this.catalog = new WaveletCatalog(basePath, new WaveletCatalog.Rebuilder() {
+      @Override
+      public long readEndVersion(WaveletName waveletName) throws IOException {
+        FileDeltaCollection deltas = FileDeltaCollection.open(waveletName, basePath);
+        try {
+          HashedVersion endVersion = deltas.getEndVersion();
+          return endVersion != null ? endVersion.getVersion() : 0;
+        } finally {
+          deltas.close();
+        }
+      }
+    });
   }
 
   @Timed
   @Override
   public FileDeltaCollection open(WaveletName waveletName) throws PersistenceException {
     try {
-      return FileDeltaCollection.open(waveletName, basePath);
+      return FileDeltaCollection.open(waveletName, basePath, catalog);
     } catch (IOException e) {
       throw new PersistenceException("Failed to open deltas for wavelet " + waveletName, e);
     }
@@ -80,42 +99,30 @@ public class FileDeltaStore implements DeltaStore {
   @Override
   public void delete(WaveletName waveletName) throws PersistenceException {
     FileDeltaCollection.delete(waveletName, basePath);
+    try {
+      catalog.remove(waveletName);
+    } catch (IOException e) {
+      // The catalog drops entries without a deltas file when next read.
+      LOG.warning("Failed to remove " + waveletName + " from the catalog", e);
+    }
   }
 
   @Timed
   @Override
   public ImmutableSet<WaveletId> lookup(WaveId waveId) throws PersistenceException {
-    String waveDirectory = FileUtils.waveIdToPathSegment(waveId);
-    File waveDir = new File(basePath, waveDirectory);
-    if (!waveDir.exists()) {
-      return ImmutableSet.of();
+    ImmutableMap<WaveletId, WaveletCatalog.Entry> wavelets;
+    try {
+      wavelets = catalog.getWavelets(waveId);
+    } catch (IOException e) {
+      throw new PersistenceException("Failed to read the catalog of wave " + waveId, e);
     }
 
-    File[] deltaFiles = waveDir.listFiles(new FilenameFilter() {
-      @Override
-      public boolean accept(File dir, String name) {
-        return name.endsWith(FileDeltaCollection.DELTAS_FILE_SUFFIX);
-      }
-    });
-
     ImmutableSet.Builder<WaveletId> results = ImmutableSet.builder();
-    for(File deltaFile : deltaFiles) {
-      String name = deltaFile.getName();
-      String encodedWaveletId =
-          name.substring(0, name.lastIndexOf(FileDeltaCollection.DELTAS_FILE_SUFFIX));
-      WaveletId waveletId = FileUtils.waveletIdFromPathSegment(encodedWaveletId);
-        FileDeltaCollection deltas = open(WaveletName.of(waveId, waveletId));
-        HashedVersion endVersion = deltas.getEndVersion();
-        if (endVersion != null && endVersion.getVersion() > 0) {
-          results.add(waveletId);
-        }
-      try {
-        deltas.close();
-      } catch (IOException e) {
-        LOG.info("Failed to close deltas file " + name, e);
+    for (Map.Entry<WaveletId, WaveletCatalog.Entry> wavelet : wavelets.entrySet()) {
+      if (wavelet.getValue().endVersion > 0) {
+        results.add(wavelet.getKey());
       }
     }
-
     return results.build();
   }
 
@@ -72,14 +72,16 @@ public class FileSignerInfoStore implements SignerInfoStore {
   public SignerInfo getSignerInfo(byte[] signerId) throws SignatureException {
     synchronized(certPathStore) {
       SignerInfo signerInfo = certPathStore.getSignerInfo(signerId);
-      File signerFile = new File(signerIdToFileName(signerId));
       if (signerInfo == null) {
+        File signerFile = new File(signerIdToFileName(signerId));
         if (signerFile.exists()) {
           FileInputStream file = null;
           try {
             file = new FileInputStream(signerFile);
             ProtocolSignerInfo data = ProtocolSignerInfo.newBuilder().mergeFrom(file).build();
             signerInfo = new SignerInfo(data);
+            // Keep it in memory, so that the file is read only once.
+            certPathStore.putSignerInfo(data);
           } catch (SignatureException e) {
             throw new SignatureException("Failed to parse signer info from file: "
                 + signerFile.getAbsolutePath(), e);
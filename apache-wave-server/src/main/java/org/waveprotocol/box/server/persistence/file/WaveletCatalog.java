@@ -0,0 +1,252 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.waveprotocol.box.server.persistence.file;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.Striped;
+
+import org.waveprotocol.wave.model.id.WaveId;
+import org.waveprotocol.wave.model.id.WaveletId;
+import org.waveprotocol.wave.model.id.WaveletName;
+import org.waveprotocol.wave.model.version.HashedVersion;
+import org.waveprotocol.wave.util.logging.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * A catalog of the wavelets of a {@link FileDeltaStore}, so that the store can
+ * list the wavelets of a wave without parsing their delta files.
+ *
+ * Every wave directory holds a catalog file, which records for each wavelet
+ * the end version of its deltas, and the length and last-modified time of
+ * its deltas file. The catalog is rewritten after each append, to a temporary
+ * file that is then renamed over it, so it is never seen half written. It is
+ * not synced to disk: an entry whose length or time no longer matches its
+ * deltas file, say after a crash between an append and the catalog update,
+ * is stale, and only such entries, or missing ones, are rebuilt by reading
+ * the deltas.
+ */
+class WaveletCatalog {
+
+  private static final Log LOG = Log.get(WaveletCatalog.class);
+
+  @VisibleForTesting
+  static final String CATALOG_FILE_NAME = "wavelets.catalog";
+  private static final String TEMP_FILE_SUFFIX = ".tmp";
+  private static final int CATALOG_FORMAT_VERSION = 1;
+
+  /** What the catalog records of one wavelet. */
+  @VisibleForTesting
+  static final class Entry {
+    final long endVersion;
+    final long length;
+    final long lastModified;
+
+    Entry(long endVersion, long length, long lastModified) {
+      this.endVersion = endVersion;
+      this.length = length;
+      this.lastModified = lastModified;
+    }
+
+    /** Whether the entry describes the deltas file as it is now. */
+    boolean matches(File deltasFile) {
+      return deltasFile.length() == length && deltasFile.lastModified() == lastModified;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Entry)) {
+        return false;
+      }
+      Entry other = (Entry) o;
+      return endVersion == other.endVersion && length == other.length
+          && lastModified == other.lastModified;
+    }
+
+    @Override
+    public int hashCode() {
+      return (int) (endVersion ^ length ^ lastModified);
+    }
+  }
+
+  /** Reads the end version of a wavelet from its deltas. */
+  interface Rebuilder {
+    long readEndVersion(WaveletName waveletName) throws IOException;
+  }
+
+  private final String basePath;
+  private final Rebuilder rebuilder;
+  /** Serializes the updates of the catalog of each wave. */
+  private final Striped<Lock> waveLocks = Striped.lock(64);
+
+  WaveletCatalog(String basePath, Rebuilder rebuilder) {
+    this.basePath = basePath;
+    this.rebuilder = rebuilder;
+  }
+
+  /**
+   * Returns the catalog of a wave, rebuilding the entries that are missing
+   * or stale.
+   */
+  ImmutableMap<WaveletId, Entry> getWavelets(WaveId waveId) throws IOException {
+    File waveDir = new File(basePath, FileUtils.waveIdToPathSegment(waveId));
+    File[] deltaFiles = waveDir.listFiles(new FilenameFilter() {
+      @Override
+      public boolean accept(File dir, String name) {
+        return name.endsWith(FileDeltaCollection.DELTAS_FILE_SUFFIX);
+      }
+    });
+    if (deltaFiles == null) {
+      return ImmutableMap.of();
+    }
+    Lock lock = waveLocks.get(waveId);
+    lock.lock();
+    try {
+      Map<WaveletId, Entry> catalog = read(waveDir);
+      Map<WaveletId, Entry> current = Maps.newHashMap();
+      boolean changed = false;
+      for (File deltaFile : deltaFiles) {
+        String name = deltaFile.getName();
+        WaveletId waveletId = FileUtils.waveletIdFromPathSegment(
+            name.substring(0, name.lastIndexOf(FileDeltaCollection.DELTAS_FILE_SUFFIX)));
+        Entry entry = catalog.get(waveletId);
+        if (entry == null || !entry.matches(deltaFile)) {
+          long endVersion = rebuilder.readEndVersion(WaveletName.of(waveId, waveletId));
+          // Reading the deltas may have truncated a partly written record.
+          entry = new Entry(endVersion, deltaFile.length(), deltaFile.lastModified());
+          changed = true;
+        }
+        current.put(waveletId, entry);
+      }
+      if (changed || current.size() != catalog.size()) {
+        write(waveDir, current);
+      }
+      return ImmutableMap.copyOf(current);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Records the state of a wavelet's deltas file, after an append or after
+   * the file was opened.
+   *
+   * @param endVersion the end version of the deltas, or null if there are
+   *        none.
+   */
+  void update(WaveletName waveletName, HashedVersion endVersion) throws IOException {
+    File deltasFile = FileDeltaCollection.deltasFile(basePath, waveletName);
+    Entry entry = new Entry(endVersion != null ? endVersion.getVersion() : 0,
+        deltasFile.length(), deltasFile.lastModified());
+    File waveDir = deltasFile.getParentFile();
+    Lock lock = waveLocks.get(waveletName.waveId);
+    lock.lock();
+    try {
+      Map<WaveletId, Entry> catalog = read(waveDir);
+      if (!entry.equals(catalog.get(waveletName.waveletId))) {
+        catalog.put(waveletName.waveletId, entry);
+        write(waveDir, catalog);
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** Removes a deleted wavelet from the catalog of its wave. */
+  void remove(WaveletName waveletName) throws IOException {
+    File waveDir = FileDeltaCollection.deltasFile(basePath, waveletName).getParentFile();
+    Lock lock = waveLocks.get(waveletName.waveId);
+    lock.lock();
+    try {
+      Map<WaveletId, Entry> catalog = read(waveDir);
+      if (catalog.remove(waveletName.waveletId) != null) {
+        write(waveDir, catalog);
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Reads the catalog of a wave directory. A missing or unreadable catalog
+   * reads as empty, so that all its entries are rebuilt.
+   */
+  private static Map<WaveletId, Entry> read(File waveDir) {
+    Map<WaveletId, Entry> catalog = Maps.newHashMap();
+    File file = new File(waveDir, CATALOG_FILE_NAME);
+    DataInputStream in = null;
+    try {
+      in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+      if (in.readInt() != CATALOG_FORMAT_VERSION) {
+        LOG.warning("Ignoring catalog of unknown format " + file.getAbsolutePath());
+        return catalog;
+      }
+      int count = in.readInt();
+      for (int i = 0; i < count; i++) {
+        WaveletId waveletId = FileUtils.waveletIdFromPathSegment(in.readUTF());
+        catalog.put(waveletId, new Entry(in.readLong(), in.readLong(), in.readLong()));
+      }
+    } catch (FileNotFoundException e) {
+      // No catalog yet.
+    } catch (IOException | IllegalArgumentException e) {
+      LOG.warning("Ignoring unreadable catalog " + file.getAbsolutePath(), e);
+      catalog.clear();
+    } finally {
+      FileUtils.closeAndIgnoreException(in, file, LOG);
+    }
+    return catalog;
+  }
+
+  private static void write(File waveDir, Map<WaveletId, Entry> catalog) throws IOException {
+    File file = new File(waveDir, CATALOG_FILE_NAME);
+    File temp = new File(waveDir, CATALOG_FILE_NAME + TEMP_FILE_SUFFIX);
+    DataOutputStream out =
+        new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+    try {
+      out.writeInt(CATALOG_FORMAT_VERSION);
+      out.writeInt(catalog.size());
+      for (Map.Entry<WaveletId, Entry> e : catalog.entrySet()) {
+        out.writeUTF(FileUtils.waveletIdToPathSegment(e.getKey()));
+        out.writeLong(e.getValue().endVersion);
+        out.writeLong(e.getValue().length);
+        out.writeLong(e.getValue().lastModified);
+      }
+    } finally {
+      out.close();
+    }
+    Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+  }
+}
@@ -0,0 +1,107 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.waveprotocol.box.server.persistence.log;
+
+import org.waveprotocol.box.server.persistence.PersistenceException;
+import org.waveprotocol.box.server.waveserver.ByteStringMessage;
+import org.waveprotocol.box.server.waveserver.DeltaStore.DeltasAccess;
+import org.waveprotocol.box.server.waveserver.WaveletDeltaRecord;
+import org.waveprotocol.wave.federation.Proto.ProtocolAppliedWaveletDelta;
+import org.waveprotocol.wave.model.id.WaveletName;
+import org.waveprotocol.wave.model.operation.wave.TransformedWaveletDelta;
+import org.waveprotocol.wave.model.version.HashedVersion;
+
+import java.io.IOException;
+import java.util.Collection;
+
+/**
+ * The deltas of one wavelet in a {@link LogDeltaStore}. Holds no state of its
+ * own: reads go through the index of the store, appends to its log.
+ */
+final class LogDeltaCollection implements DeltasAccess {
+
+  private final LogDeltaStore store;
+  private final WaveletName waveletName;
+
+  LogDeltaCollection(LogDeltaStore store, WaveletName waveletName) {
+    this.store = store;
+    this.waveletName = waveletName;
+  }
+
+  @Override
+  public WaveletName getWaveletName() {
+    return waveletName;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return store.isEmpty(waveletName);
+  }
+
+  @Override
+  public HashedVersion getEndVersion() {
+    return store.getEndVersion(waveletName);
+  }
+
+  @Override
+  public WaveletDeltaRecord getDelta(long version) throws IOException {
+    return store.readDelta(waveletName, version, false);
+  }
+
+  @Override
+  public WaveletDeltaRecord getDeltaByEndVersion(long version) throws IOException {
+    return store.readDelta(waveletName, version, true);
+  }
+
+  @Override
+  public HashedVersion getAppliedAtVersion(long version) throws IOException {
+    WaveletDeltaRecord delta = getDelta(version);
+    return (delta != null) ? delta.getAppliedAtVersion() : null;
+  }
+
+  @Override
+  public HashedVersion getResultingVersion(long version) throws IOException {
+    WaveletDeltaRecord delta = getDelta(version);
+    return (delta != null) ? delta.getResultingVersion() : null;
+  }
+
+  @Override
+  public ByteStringMessage<ProtocolAppliedWaveletDelta> getAppliedDelta(long version)
+      throws IOException {
+    WaveletDeltaRecord delta = getDelta(version);
+    return (delta != null) ? delta.getAppliedDelta() : null;
+  }
+
+  @Override
+  public TransformedWaveletDelta getTransformedDelta(long version) throws IOException {
+    WaveletDeltaRecord delta = getDelta(version);
+    return (delta != null) ? delta.getTransformedDelta() : null;
+  }
+
+  @Override
+  public void append(Collection<WaveletDeltaRecord> deltas) throws PersistenceException {
+    store.append(waveletName, deltas);
+  }
+
+  @Override
+  public void close() {
+    // The segments belong to the store.
+  }
+}
@@ -0,0 +1,686 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.waveprotocol.box.server.persistence.log;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+
+import org.waveprotocol.box.common.ExceptionalIterator;
+import org.waveprotocol.box.server.CoreSettings;
+import org.waveprotocol.box.server.persistence.PersistenceException;
+import org.waveprotocol.box.server.persistence.PersistenceStartException;
+import org.waveprotocol.box.server.waveserver.DeltaStore;
+import org.waveprotocol.box.server.waveserver.WaveletDeltaRecord;
+import org.waveprotocol.wave.model.id.WaveId;
+import org.waveprotocol.wave.model.id.WaveletId;
+import org.waveprotocol.wave.model.id.WaveletName;
+import org.waveprotocol.wave.model.version.HashedVersion;
+import org.waveprotocol.wave.util.logging.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A log-structured implementation of DeltaStore.
+ *
+ * Where {@link org.waveprotocol.box.server.persistence.file.FileDeltaStore}
+ * keeps a file per wavelet, this store appends the deltas of all wavelets to
+ * one log, split into segment files of bounded size:
+ * base/log/0000000001.segment
+ * base/log/0000000001.hint
+ * ...
+ *
+ * An append is a sequential write to the newest segment, and concurrent
+ * appends share the sync to disk that makes them durable. The position of
+ * every delta is kept in an in-memory index per wavelet, see
+ * {@link WaveletLog}, from which reads are positional reads of the segments.
+ * Deleting a wavelet appends a tombstone record.
+ *
+ * On startup the index is rebuilt from the hint files of the sealed segments
+ * and a scan of the newest one, which also drops a record torn by a crash.
+ * Sealed segments whose records are mostly dead, through deletion, are
+ * compacted in the background by copying their live records to a new file.
+ */
+public class LogDeltaStore implements DeltaStore {
+
+  private static final Log LOG = Log.get(LogDeltaStore.class);
+
+  /** The directory, under the delta store directory, holding the log. */
+  static final String LOG_DIRECTORY = "log";
+
+  private static final String TEMP_SUFFIX = ".tmp";
+
+  @VisibleForTesting
+  static final long DEFAULT_SEGMENT_SIZE = 64L << 20;
+
+  /** Sealed segments with less than this ratio of live bytes are compacted. */
+  private static final double COMPACTION_LIVE_RATIO = 0.5;
+
+  private static final long COMPACTION_INTERVAL_MINUTES = 10;
+
+  /** The headers and positions of the records of one segment, in order. */
+  private static final class RecordList implements LogSegment.RecordVisitor {
+    final List<LogRecord> records = Lists.newArrayList();
+    final List<Long> offsets = Lists.newArrayList();
+    final List<Integer> lengths = Lists.newArrayList();
+
+    @Override
+    public void visit(LogRecord record, long offset, int length) {
+      records.add(record);
+      offsets.add(offset);
+      lengths.add(length);
+    }
+
+    void sealInto(LogSegment segment) throws IOException {
+      int count = records.size();
+      long[] offsetArray = new long[count];
+      int[] lengthArray = new int[count];
+      for (int i = 0; i < count; i++) {
+        offsetArray[i] = offsets.get(i);
+        lengthArray[i] = lengths.get(i);
+      }
+      segment.seal(records.toArray(new LogRecord[count]), offsetArray, lengthArray, count);
+    }
+  }
+
+  private final File dir;
+  private final long segmentSize;
+
+  /**
+   * Guards the index, the segment map and the live byte counts. Record reads
+   * hold the read lock, so that compaction never closes a segment under them.
+   */
+  private final ReadWriteLock indexLock = new ReentrantReadWriteLock();
+  private final Map<WaveId, Map<WaveletId, WaveletLog>> wavelets = Maps.newHashMap();
+  private final SortedMap<Integer, LogSegment> segments = Maps.newTreeMap();
+  /** Bytes of each segment taken by live deltas and by tombstones. */
+  private final Map<Integer, Long> liveBytes = Maps.newHashMap();
+
+  /** Serializes writes to the log. */
+  private final Object appendLock = new Object();
+  private volatile LogSegment active;
+  private RecordList activeRecords;
+  /** Bytes appended since startup. */
+  private long appendedBytes = 0;
+
+  /** Serializes syncs, each of which covers every append before it. */
+  private final Object syncLock = new Object();
+  private long syncedBytes = 0;
+
+  private ScheduledExecutorService compactor;
+
+  @Inject
+  public LogDeltaStore(@Named(CoreSettings.DELTA_STORE_DIRECTORY) String basePath) {
+    this(new File(basePath, LOG_DIRECTORY), DEFAULT_SEGMENT_SIZE);
+    compactor = Executors.newSingleThreadScheduledExecutor(
+        new ThreadFactoryBuilder().setNameFormat("LogDeltaStoreCompactor").setDaemon(true)
+            .build());
+    compactor.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          compact();
+        } catch (IOException | RuntimeException e) {
+          LOG.warning("Failed to compact the delta log", e);
+        }
+      }
+    }, COMPACTION_INTERVAL_MINUTES, COMPACTION_INTERVAL_MINUTES, TimeUnit.MINUTES);
+  }
+
+  @VisibleForTesting
+  LogDeltaStore(File dir, long segmentSize) {
+    Preconditions.checkNotNull(dir, "Requested path is null");
+    this.dir = dir;
+    this.segmentSize = segmentSize;
+    try {
+      recover();
+    } catch (IOException e) {
+      throw new PersistenceStartException("Failed to open the delta log in " + dir, e);
+    }
+  }
+
+  /** Rebuilds the index from the segments on disk. */
+  private void recover() throws IOException {
+    if (!dir.exists() && !dir.mkdirs()) {
+      throw new IOException("Could not create directory " + dir);
+    }
+    File[] files = dir.listFiles();
+    if (files == null) {
+      throw new IOException("Could not list " + dir);
+    }
+    SortedMap<Integer, File> segmentFiles = Maps.newTreeMap();
+    for (File file : files) {
+      if (file.getName().endsWith(TEMP_SUFFIX)) {
+        // Left behind by a crash during compaction or sealing.
+        Files.deleteIfExists(file.toPath());
+        continue;
+      }
+      int id = LogSegment.idOf(file.getName());
+      if (id >= 0) {
+        segmentFiles.put(id, file);
+      }
+    }
+
+    RecordList lastRecords = null;
+    for (Map.Entry<Integer, File> entry : segmentFiles.entrySet()) {
+      final int id = entry.getKey();
+      boolean last = id == segmentFiles.lastKey();
+      LogSegment segment = LogSegment.open(entry.getValue(), id);
+      segments.put(id, segment);
+      liveBytes.put(id, 0L);
+
+      final RecordList records = new RecordList();
+      LogSegment.RecordVisitor visitor = new LogSegment.RecordVisitor() {
+        @Override
+        public void visit(LogRecord record, long offset, int length) {
+          records.visit(record, offset, length);
+          index(record, id, offset, length);
+        }
+      };
+      if (last) {
+        // Appends continue in the newest segment, outdating any hint of it.
+        Files.deleteIfExists(LogSegment.hintFile(dir, id).toPath());
+        segment.scan(visitor);
+        lastRecords = records;
+      } else if (!segment.readHint(visitor)) {
+        segment.scan(visitor);
+        records.sealInto(segment);
+      }
+    }
+
+    if (lastRecords != null) {
+      active = segments.get(segmentFiles.lastKey());
+      activeRecords = lastRecords;
+    } else {
+      active = LogSegment.create(dir, 1);
+      activeRecords = new RecordList();
+      segments.put(active.id, active);
+      liveBytes.put(active.id, 0L);
+    }
+  }
+
+  /** Applies a record to the index. Called with the write lock held, or during recovery. */
+  private void index(LogRecord record, int segmentId, long offset, int length) {
+    if (record.type == LogRecord.DELTA) {
+      WaveletLog log = getOrCreateLog(record.waveletName);
+      if (log.add(record.appliedAtVersion, record.resultingVersion, segmentId, offset, length)) {
+        addLiveBytes(segmentId, length);
+      } else {
+        LOG.warning("Ignoring delta of " + record.waveletName + " at version "
+            + record.appliedAtVersion + ", expected version " + log.endVersionNumber());
+      }
+    } else {
+      removeLog(record.waveletName);
+      addLiveBytes(segmentId, length);
+    }
+  }
+
+  @Override
+  public DeltasAccess open(WaveletName waveletName) {
+    return new LogDeltaCollection(this, waveletName);
+  }
+
+  @Override
+  public void delete(WaveletName waveletName) throws PersistenceException {
+    long end;
+    synchronized (appendLock) {
+      if (isEmpty(waveletName)) {
+        return;
+      }
+      try {
+        ByteBuffer frame = LogRecord.encodeDelete(waveletName);
+        int length = frame.remaining();
+        LogSegment segment = segmentFor(length);
+        long offset = segment.append(frame);
+        LogRecord record = new LogRecord(LogRecord.DELETE, waveletName, -1, -1);
+        activeRecords.visit(record, offset, length);
+        appendedBytes += length;
+        end = appendedBytes;
+        indexLock.writeLock().lock();
+        try {
+          index(record, segment.id, offset, length);
+        } finally {
+          indexLock.writeLock().unlock();
+        }
+      } catch (IOException e) {
+        throw new PersistenceException("Failed to delete wavelet " + waveletName, e);
+      }
+    }
+    sync(end);
+  }
+
+  @Override
+  public ImmutableSet<WaveletId> lookup(WaveId waveId) {
+    ImmutableSet.Builder<WaveletId> results = ImmutableSet.builder();
+    indexLock.readLock().lock();
+    try {
+      Map<WaveletId, WaveletLog> logs = wavelets.get(waveId);
+      if (logs != null) {
+        for (Map.Entry<WaveletId, WaveletLog> entry : logs.entrySet()) {
+          if (entry.getValue().size() > 0) {
+            results.add(entry.getKey());
+          }
+        }
+      }
+    } finally {
+      indexLock.readLock().unlock();
+    }
+    return results.build();
+  }
+
+  @Override
+  public ExceptionalIterator<WaveId, PersistenceException> getWaveIdIterator() {
+    ImmutableSet.Builder<WaveId> results = ImmutableSet.builder();
+    indexLock.readLock().lock();
+    try {
+      for (Map.Entry<WaveId, Map<WaveletId, WaveletLog>> wave : wavelets.entrySet()) {
+        for (WaveletLog log : wave.getValue().values()) {
+          if (log.size() > 0) {
+            results.add(wave.getKey());
+            break;
+          }
+        }
+      }
+    } finally {
+      indexLock.readLock().unlock();
+    }
+    return ExceptionalIterator.FromIterator.create(results.build().iterator());
+  }
+
+  /** Stops background compaction and closes the segments. */
+  public void close() throws IOException {
+    if (compactor != null) {
+      compactor.shutdownNow();
+    }
+    synchronized (appendLock) {
+      indexLock.writeLock().lock();
+      try {
+        for (LogSegment segment : segments.values()) {
+          segment.close();
+        }
+      } finally {
+        indexLock.writeLock().unlock();
+      }
+    }
+  }
+
+  boolean isEmpty(WaveletName waveletName) {
+    indexLock.readLock().lock();
+    try {
+      WaveletLog log = getLog(waveletName);
+      return log == null || log.size() == 0;
+    } finally {
+      indexLock.readLock().unlock();
+    }
+  }
+
+  HashedVersion getEndVersion(WaveletName waveletName) {
+    indexLock.readLock().lock();
+    try {
+      WaveletLog log = getLog(waveletName);
+      if (log == null || log.size() == 0) {
+        return null;
+      }
+      HashedVersion endVersion = log.getEndVersion();
+      if (endVersion == null) {
+        // Only the numbers of versions are indexed, the hash is in the record.
+        endVersion = read(log, log.size() - 1).getResultingVersion();
+        log.setEndVersion(endVersion);
+      }
+      return endVersion;
+    } catch (IOException e) {
+      throw new RuntimeException("Failed to read the end version of " + waveletName, e);
+    } finally {
+      indexLock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Reads the delta applied at a version, or, if byEndVersion is set, the
+   * delta resulting in it.
+   */
+  WaveletDeltaRecord readDelta(WaveletName waveletName, long version, boolean byEndVersion)
+      throws IOException {
+    indexLock.readLock().lock();
+    try {
+      WaveletLog log = getLog(waveletName);
+      if (log == null) {
+        return null;
+      }
+      int i = byEndVersion ? log.indexOfResulting(version) : log.indexOfAppliedAt(version);
+      return (i >= 0) ? read(log, i) : null;
+    } finally {
+      indexLock.readLock().unlock();
+    }
+  }
+
+  /** Appends the deltas of a wavelet to the log and syncs it. */
+  void append(WaveletName waveletName, Collection<WaveletDeltaRecord> deltas)
+      throws PersistenceException {
+    if (deltas.isEmpty()) {
+      return;
+    }
+    // Serialize outside of the append lock.
+    List<ByteBuffer> frames = Lists.newArrayListWithCapacity(deltas.size());
+    try {
+      for (WaveletDeltaRecord delta : deltas) {
+        frames.add(LogRecord.encodeDelta(waveletName, delta));
+      }
+    } catch (IOException e) {
+      throw new PersistenceException("Failed to serialize deltas of " + waveletName, e);
+    }
+
+    long end;
+    synchronized (appendLock) {
+      long expected;
+      indexLock.readLock().lock();
+      try {
+        WaveletLog log = getLog(waveletName);
+        expected = (log != null) ? log.endVersionNumber() : 0;
+      } finally {
+        indexLock.readLock().unlock();
+      }
+      long appliedAt = deltas.iterator().next().getTransformedDelta().getAppliedAtVersion();
+      Preconditions.checkState(appliedAt == expected,
+          "Deltas of %s start at version %s, expected %s", waveletName, appliedAt, expected);
+
+      int count = frames.size();
+      LogRecord[] records = new LogRecord[count];
+      int[] segmentIds = new int[count];
+      long[] offsets = new long[count];
+      int[] lengths = new int[count];
+      int i = 0;
+      try {
+        for (WaveletDeltaRecord delta : deltas) {
+          ByteBuffer frame = frames.get(i);
+          lengths[i] = frame.remaining();
+          LogSegment segment = segmentFor(lengths[i]);
+          segmentIds[i] = segment.id;
+          offsets[i] = segment.append(frame);
+          records[i] = new LogRecord(LogRecord.DELTA, waveletName,
+              delta.getTransformedDelta().getAppliedAtVersion(),
+              delta.getResultingVersion().getVersion());
+          activeRecords.visit(records[i], offsets[i], lengths[i]);
+          appendedBytes += lengths[i];
+          i++;
+        }
+      } catch (IOException e) {
+        throw new PersistenceException("Failed to append deltas of " + waveletName, e);
+      }
+      end = appendedBytes;
+
+      indexLock.writeLock().lock();
+      try {
+        for (i = 0; i < count; i++) {
+          index(records[i], segmentIds[i], offsets[i], lengths[i]);
+        }
+        WaveletDeltaRecord last = null;
+        for (WaveletDeltaRecord delta : deltas) {
+          last = delta;
+        }
+        getLog(waveletName).setEndVersion(last.getResultingVersion());
+      } finally {
+        indexLock.writeLock().unlock();
+      }
+    }
+    sync(end);
+  }
+
+  /**
+   * Makes the first {@code end} bytes appended since startup durable. A sync
+   * in progress covers every append before it, so that concurrent appenders
+   * mostly find their records already synced.
+   */
+  private void sync(long end) throws PersistenceException {
+    synchronized (syncLock) {
+      if (syncedBytes >= end) {
+        return;
+      }
+      long target;
+      LogSegment segment;
+      synchronized (appendLock) {
+        // Segments before the active one were synced when sealed.
+        target = appendedBytes;
+        segment = active;
+      }
+      try {
+        segment.force();
+      } catch (IOException e) {
+        throw new PersistenceException("Failed to sync the delta log", e);
+      }
+      syncedBytes = target;
+    }
+  }
+
+  /**
+   * Returns the segment to append a record to, sealing the active segment and
+   * starting a new one if the record does not fit. Called with the append
+   * lock held.
+   */
+  private LogSegment segmentFor(int length) throws IOException {
+    if (active.size() > LogSegment.HEADER_LENGTH && active.size() + length > segmentSize) {
+      activeRecords.sealInto(active);
+      LogSegment next = LogSegment.create(dir, active.id + 1);
+      indexLock.writeLock().lock();
+      try {
+        segments.put(next.id, next);
+        liveBytes.put(next.id, 0L);
+      } finally {
+        indexLock.writeLock().unlock();
+      }
+      active = next;
+      activeRecords = new RecordList();
+    }
+    return active;
+  }
+
+  /**
+   * Compacts the sealed segments that are mostly dead. Runs in the background
+   * and must not run concurrently with itself.
+   */
+  @VisibleForTesting
+  void compact() throws IOException {
+    List<LogSegment> candidates = Lists.newArrayList();
+    int oldest;
+    indexLock.readLock().lock();
+    try {
+      oldest = segments.firstKey();
+      for (LogSegment segment : segments.values()) {
+        long recordBytes = segment.size() - LogSegment.HEADER_LENGTH;
+        if (segment != active
+            && liveBytes.get(segment.id) < COMPACTION_LIVE_RATIO * recordBytes) {
+          candidates.add(segment);
+        }
+      }
+    } finally {
+      indexLock.readLock().unlock();
+    }
+    for (LogSegment segment : candidates) {
+      compact(segment, segment.id == oldest);
+    }
+  }
+
+  /**
+   * Rewrites a sealed segment with its live records only, keeping their order.
+   * Tombstones are kept, as older segments may still hold deltas of the
+   * wavelets they delete, unless the segment is the oldest.
+   */
+  private void compact(LogSegment old, boolean oldest) throws IOException {
+    RecordList all = new RecordList();
+    if (!old.readHint(all)) {
+      old.scan(all);
+    }
+
+    File temp = new File(old.file.getPath() + TEMP_SUFFIX);
+    LogSegment copy = LogSegment.createAt(temp, old.id);
+    RecordList copied = new RecordList();
+    List<Long> oldOffsets = Lists.newArrayList();
+    try {
+      for (int i = 0; i < all.records.size(); i++) {
+        LogRecord record = all.records.get(i);
+        long offset = all.offsets.get(i);
+        boolean live;
+        if (record.type == LogRecord.DELTA) {
+          indexLock.readLock().lock();
+          try {
+            live = isLive(record, WaveletLog.location(old.id, offset));
+          } finally {
+            indexLock.readLock().unlock();
+          }
+        } else {
+          live = !oldest;
+        }
+        if (live) {
+          int length = all.lengths.get(i);
+          ByteBuffer frame = old.read(offset, length);
+          frame.rewind();
+          copied.visit(record, copy.append(frame), length);
+          oldOffsets.add(offset);
+        }
+      }
+      copy.force();
+    } finally {
+      copy.close();
+    }
+
+    if (copied.records.isEmpty()) {
+      indexLock.writeLock().lock();
+      try {
+        segments.remove(old.id);
+        liveBytes.remove(old.id);
+        old.delete();
+      } finally {
+        indexLock.writeLock().unlock();
+      }
+      Files.deleteIfExists(temp.toPath());
+      LOG.info("Deleted dead segment " + old.file);
+      return;
+    }
+
+    // Until the new hint is written, recovery scans the new segment.
+    Files.deleteIfExists(LogSegment.hintFile(dir, old.id).toPath());
+    Files.move(temp.toPath(), old.file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+    LogSegment compacted = LogSegment.open(old.file, old.id);
+    copied.sealInto(compacted);
+
+    indexLock.writeLock().lock();
+    try {
+      long live = 0;
+      for (int i = 0; i < copied.records.size(); i++) {
+        LogRecord record = copied.records.get(i);
+        int length = copied.lengths.get(i);
+        if (record.type == LogRecord.DELETE) {
+          live += length;
+          continue;
+        }
+        WaveletLog log = getLog(record.waveletName);
+        long oldLocation = WaveletLog.location(old.id, oldOffsets.get(i));
+        // Deltas deleted since they were copied stay dead.
+        if (isLive(record, oldLocation)) {
+          log.relocate(log.indexOfAppliedAt(record.appliedAtVersion),
+              WaveletLog.location(old.id, copied.offsets.get(i)));
+          live += length;
+        }
+      }
+      liveBytes.put(old.id, live);
+      segments.put(old.id, compacted);
+      old.close();
+    } finally {
+      indexLock.writeLock().unlock();
+    }
+    LOG.info("Compacted segment " + old.file + " from " + all.records.size() + " to "
+        + copied.records.size() + " records");
+  }
+
+  /** Whether the index points at a delta record. Called with the lock held. */
+  private boolean isLive(LogRecord record, long location) {
+    WaveletLog log = getLog(record.waveletName);
+    if (log == null) {
+      return false;
+    }
+    int i = log.indexOfAppliedAt(record.appliedAtVersion);
+    return i >= 0 && log.location(i) == location;
+  }
+
+  /** Reads the i-th delta of a wavelet. Called with the lock held. */
+  private WaveletDeltaRecord read(WaveletLog log, int i) throws IOException {
+    long location = log.location(i);
+    LogSegment segment = segments.get(WaveletLog.segmentId(location));
+    return LogRecord.decodeDelta(segment.read(WaveletLog.offset(location), log.length(i)));
+  }
+
+  private WaveletLog getLog(WaveletName waveletName) {
+    Map<WaveletId, WaveletLog> logs = wavelets.get(waveletName.waveId);
+    return (logs != null) ? logs.get(waveletName.waveletId) : null;
+  }
+
+  private WaveletLog getOrCreateLog(WaveletName waveletName) {
+    Map<WaveletId, WaveletLog> logs = wavelets.get(waveletName.waveId);
+    if (logs == null) {
+      logs = Maps.newHashMap();
+      wavelets.put(waveletName.waveId, logs);
+    }
+    WaveletLog log = logs.get(waveletName.waveletId);
+    if (log == null) {
+      log = new WaveletLog();
+      logs.put(waveletName.waveletId, log);
+    }
+    return log;
+  }
+
+  /** Drops a wavelet from the index, making its deltas dead. */
+  private void removeLog(WaveletName waveletName) {
+    Map<WaveletId, WaveletLog> logs = wavelets.get(waveletName.waveId);
+    WaveletLog log = (logs != null) ? logs.remove(waveletName.waveletId) : null;
+    if (log == null) {
+      return;
+    }
+    if (logs.isEmpty()) {
+      wavelets.remove(waveletName.waveId);
+    }
+    for (int i = 0; i < log.size(); i++) {
+      addLiveBytes(WaveletLog.segmentId(log.location(i)), -log.length(i));
+    }
+  }
+
+  private void addLiveBytes(int segmentId, long delta) {
+    Long live = liveBytes.get(segmentId);
+    liveBytes.put(segmentId, (live != null ? live : 0L) + delta);
+  }
+}
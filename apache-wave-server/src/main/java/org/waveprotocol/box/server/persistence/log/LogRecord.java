@@ -0,0 +1,188 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.waveprotocol.box.server.persistence.log;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+
+import org.waveprotocol.box.server.persistence.protos.ProtoDeltaStoreData.ProtoTransformedWaveletDelta;
+import org.waveprotocol.box.server.persistence.protos.ProtoDeltaStoreDataSerializer;
+import org.waveprotocol.box.server.waveserver.AppliedDeltaUtil;
+import org.waveprotocol.box.server.waveserver.ByteStringMessage;
+import org.waveprotocol.box.server.waveserver.WaveletDeltaRecord;
+import org.waveprotocol.wave.federation.Proto.ProtocolAppliedWaveletDelta;
+import org.waveprotocol.wave.model.id.InvalidIdException;
+import org.waveprotocol.wave.model.id.ModernIdSerialiser;
+import org.waveprotocol.wave.model.id.WaveletName;
+import org.waveprotocol.wave.model.operation.wave.TransformedWaveletDelta;
+import org.waveprotocol.wave.model.version.HashedVersion;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+/**
+ * A record of a segment: either a delta of a wavelet or the deletion of a
+ * wavelet.
+ *
+ * On disk, a record is framed by the length of its payload and a CRC32 of the
+ * payload. The payload starts with the record type and the wavelet name,
+ * followed, for a delta, by its applied-at and resulting versions, the length
+ * of the applied delta, the applied delta and the transformed delta.
+ *
+ * The part of a record ahead of the deltas is its header. It is all that the
+ * segment index and hint files need.
+ */
+final class LogRecord {
+
+  static final byte DELTA = 1;
+  static final byte DELETE = 2;
+
+  /** Length of the frame ahead of each payload: payload length and CRC32. */
+  static final int FRAME_LENGTH = 8;
+
+  final byte type;
+  final WaveletName waveletName;
+  /** For a delta, its applied-at version, otherwise -1. */
+  final long appliedAtVersion;
+  /** For a delta, its resulting version, otherwise -1. */
+  final long resultingVersion;
+
+  LogRecord(byte type, WaveletName waveletName, long appliedAtVersion, long resultingVersion) {
+    this.type = type;
+    this.waveletName = waveletName;
+    this.appliedAtVersion = appliedAtVersion;
+    this.resultingVersion = resultingVersion;
+  }
+
+  /** Returns a framed record of a delta. */
+  static ByteBuffer encodeDelta(WaveletName waveletName, WaveletDeltaRecord delta)
+      throws IOException {
+    TransformedWaveletDelta transformed = delta.getTransformedDelta();
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    writeHeader(out, new LogRecord(DELTA, waveletName, transformed.getAppliedAtVersion(),
+        transformed.getResultingVersion().getVersion()));
+    byte[] applied =
+        (delta.getAppliedDelta() != null) ? delta.getAppliedDelta().getByteArray() : new byte[0];
+    out.writeInt(applied.length);
+    out.write(applied);
+    ProtoDeltaStoreDataSerializer.serialize(transformed).writeTo(out);
+    out.flush();
+    return frame(bytes.toByteArray());
+  }
+
+  /** Returns a framed record of the deletion of a wavelet. */
+  static ByteBuffer encodeDelete(WaveletName waveletName) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    writeHeader(out, new LogRecord(DELETE, waveletName, -1, -1));
+    out.flush();
+    return frame(bytes.toByteArray());
+  }
+
+  /**
+   * Returns the CRC32 of a payload, as stored in its frame.
+   */
+  static int checksum(ByteBuffer payload) {
+    CRC32 crc = new CRC32();
+    crc.update(payload.array(), payload.arrayOffset() + payload.position(), payload.remaining());
+    return (int) crc.getValue();
+  }
+
+  /** Reads the header of a payload. */
+  static LogRecord decodeHeader(ByteBuffer payload) throws IOException {
+    return readHeader(input(payload));
+  }
+
+  /** Reads the delta of a payload. */
+  static WaveletDeltaRecord decodeDelta(ByteBuffer payload) throws IOException {
+    DataInputStream in = input(payload);
+    LogRecord header = readHeader(in);
+    if (header.type != DELTA) {
+      throw new IOException("Not a delta record: " + header.type);
+    }
+    byte[] appliedBytes = new byte[in.readInt()];
+    in.readFully(appliedBytes);
+    try {
+      ByteStringMessage<ProtocolAppliedWaveletDelta> applied = (appliedBytes.length > 0)
+          ? ByteStringMessage.parseProtocolAppliedWaveletDelta(ByteString.copyFrom(appliedBytes))
+          : null;
+      TransformedWaveletDelta transformed =
+          ProtoDeltaStoreDataSerializer.deserialize(ProtoTransformedWaveletDelta.parseFrom(in));
+      HashedVersion appliedAt =
+          (applied != null) ? AppliedDeltaUtil.getHashedVersionAppliedAt(applied) : null;
+      return new WaveletDeltaRecord(appliedAt, applied, transformed);
+    } catch (InvalidProtocolBufferException e) {
+      throw new IOException(e);
+    }
+  }
+
+  /** Writes a header, as in payloads and hint files. */
+  static void writeHeader(DataOutput out, LogRecord record) throws IOException {
+    out.writeByte(record.type);
+    out.writeUTF(ModernIdSerialiser.INSTANCE.serialiseWaveId(record.waveletName.waveId));
+    out.writeUTF(ModernIdSerialiser.INSTANCE.serialiseWaveletId(record.waveletName.waveletId));
+    if (record.type == DELTA) {
+      out.writeLong(record.appliedAtVersion);
+      out.writeLong(record.resultingVersion);
+    }
+  }
+
+  /** Reads a header, as in payloads and hint files. */
+  static LogRecord readHeader(DataInput in) throws IOException {
+    byte type = in.readByte();
+    if (type != DELTA && type != DELETE) {
+      throw new IOException("Unknown record type " + type);
+    }
+    WaveletName waveletName;
+    try {
+      waveletName = WaveletName.of(ModernIdSerialiser.INSTANCE.deserialiseWaveId(in.readUTF()),
+          ModernIdSerialiser.INSTANCE.deserialiseWaveletId(in.readUTF()));
+    } catch (InvalidIdException e) {
+      throw new IOException(e);
+    }
+    if (type == DELTA) {
+      return new LogRecord(type, waveletName, in.readLong(), in.readLong());
+    } else {
+      return new LogRecord(type, waveletName, -1, -1);
+    }
+  }
+
+  private static ByteBuffer frame(byte[] payload) {
+    ByteBuffer frame = ByteBuffer.allocate(FRAME_LENGTH + payload.length);
+    frame.putInt(payload.length);
+    frame.putInt(checksum(ByteBuffer.wrap(payload)));
+    frame.put(payload);
+    frame.flip();
+    return frame;
+  }
+
+  private static DataInputStream input(ByteBuffer payload) {
+    return new DataInputStream(new ByteArrayInputStream(payload.array(),
+        payload.arrayOffset() + payload.position(), payload.remaining()));
+  }
+}
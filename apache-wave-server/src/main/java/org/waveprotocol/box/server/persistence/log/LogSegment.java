@@ -0,0 +1,317 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.waveprotocol.box.server.persistence.log;
+
+import org.waveprotocol.wave.util.logging.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.CRC32;
+
+/**
+ * One file of the log of a {@link LogDeltaStore}: a header followed by
+ * records, see {@link LogRecord}.
+ *
+ * Records are appended to the newest segment only. When that grows past the
+ * segment size it is sealed: synced, and given a hint file that lists the
+ * headers and positions of its records, so that recovery reads the hint
+ * instead of the segment. Reads are positional and may run concurrently with
+ * each other and with appends.
+ */
+final class LogSegment implements Closeable {
+
+  private static final Log LOG = Log.get(LogSegment.class);
+
+  static final String SEGMENT_SUFFIX = ".segment";
+  static final String HINT_SUFFIX = ".hint";
+  private static final String TEMP_SUFFIX = ".tmp";
+
+  private static final byte[] MAGIC = {'W', 'L', 'O', 'G'};
+  private static final int FORMAT_VERSION = 1;
+  static final int HEADER_LENGTH = 8;
+
+  /** Receives the records of a segment, in order. */
+  interface RecordVisitor {
+    void visit(LogRecord record, long offset, int length) throws IOException;
+  }
+
+  final int id;
+  final File file;
+  private final RandomAccessFile raf;
+  private final FileChannel channel;
+  /** The end of the last complete record. */
+  private volatile long size;
+
+  private LogSegment(int id, File file, RandomAccessFile raf, long size) {
+    this.id = id;
+    this.file = file;
+    this.raf = raf;
+    this.channel = raf.getChannel();
+    this.size = size;
+  }
+
+  static File segmentFile(File dir, int id) {
+    return new File(dir, String.format("%010d", id) + SEGMENT_SUFFIX);
+  }
+
+  static File hintFile(File dir, int id) {
+    return new File(dir, String.format("%010d", id) + HINT_SUFFIX);
+  }
+
+  /** Returns the id of a segment file, or -1 if the name is not one. */
+  static int idOf(String fileName) {
+    if (!fileName.endsWith(SEGMENT_SUFFIX)) {
+      return -1;
+    }
+    try {
+      return Integer.parseInt(fileName.substring(0, fileName.length() - SEGMENT_SUFFIX.length()));
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  /** Creates an empty segment. */
+  static LogSegment create(File dir, int id) throws IOException {
+    return createAt(segmentFile(dir, id), id);
+  }
+
+  /**
+   * Creates an empty segment in a file other than its own, for compaction to
+   * rename over the segment it replaces.
+   */
+  static LogSegment createAt(File file, int id) throws IOException {
+    RandomAccessFile raf = new RandomAccessFile(file, "rw");
+    raf.setLength(0);
+    raf.write(MAGIC);
+    raf.writeInt(FORMAT_VERSION);
+    return new LogSegment(id, file, raf, HEADER_LENGTH);
+  }
+
+  /**
+   * Opens an existing segment. Its size is unknown until it has been scanned
+   * or its hint read.
+   */
+  static LogSegment open(File file, int id) throws IOException {
+    RandomAccessFile raf = new RandomAccessFile(file, "rw");
+    byte[] magic = new byte[MAGIC.length];
+    try {
+      raf.readFully(magic);
+      if (!Arrays.equals(MAGIC, magic) || raf.readInt() != FORMAT_VERSION) {
+        throw new IOException("Not a delta log segment: " + file);
+      }
+    } catch (IOException e) {
+      raf.close();
+      throw e;
+    }
+    return new LogSegment(id, file, raf, raf.length());
+  }
+
+  long size() {
+    return size;
+  }
+
+  /**
+   * Appends a framed record. Appends must not run concurrently.
+   *
+   * @return the offset of the record.
+   */
+  long append(ByteBuffer frame) throws IOException {
+    long offset = size;
+    long position = offset;
+    while (frame.hasRemaining()) {
+      position += channel.write(frame, position);
+    }
+    size = position;
+    return offset;
+  }
+
+  /** Syncs the records appended so far to disk. */
+  void force() throws IOException {
+    channel.force(false);
+  }
+
+  /** Reads the payload of the record at an offset. */
+  ByteBuffer read(long offset, int length) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(length);
+    readFully(buffer, offset);
+    buffer.flip();
+    buffer.position(LogRecord.FRAME_LENGTH);
+    return buffer;
+  }
+
+  /**
+   * Reads every complete record of the segment, checking its checksum, and
+   * truncates whatever follows the last one, such as a record torn by a
+   * crash.
+   */
+  void scan(RecordVisitor visitor) throws IOException {
+    long fileLength = channel.size();
+    long offset = HEADER_LENGTH;
+    ByteBuffer frame = ByteBuffer.allocate(LogRecord.FRAME_LENGTH);
+    while (offset + LogRecord.FRAME_LENGTH <= fileLength) {
+      frame.clear();
+      readFully(frame, offset);
+      frame.flip();
+      int payloadLength = frame.getInt();
+      int checksum = frame.getInt();
+      if (payloadLength < 0 || offset + LogRecord.FRAME_LENGTH + payloadLength > fileLength) {
+        break;
+      }
+      ByteBuffer payload = ByteBuffer.allocate(payloadLength);
+      readFully(payload, offset + LogRecord.FRAME_LENGTH);
+      payload.flip();
+      if (LogRecord.checksum(payload) != checksum) {
+        break;
+      }
+      LogRecord record;
+      try {
+        record = LogRecord.decodeHeader(payload);
+      } catch (IOException e) {
+        break;
+      }
+      int length = LogRecord.FRAME_LENGTH + payloadLength;
+      visitor.visit(record, offset, length);
+      offset += length;
+    }
+    if (offset < fileLength) {
+      LOG.warning("Truncating " + (fileLength - offset) + " bytes of junk from " + file);
+      channel.truncate(offset);
+    }
+    size = offset;
+  }
+
+  /**
+   * Visits the records listed by the hint file of the segment.
+   *
+   * @return false if there is no valid hint file, in which case no record
+   *         has been visited.
+   */
+  boolean readHint(RecordVisitor visitor) throws IOException {
+    File hint = hintFile(file.getParentFile(), id);
+    if (!hint.exists()) {
+      return false;
+    }
+    // Read all entries first, so that a corrupt hint visits nothing.
+    LogRecord[] records;
+    long[] offsets;
+    int[] lengths;
+    long end;
+    CheckedInputStream checked =
+        new CheckedInputStream(new BufferedInputStream(new FileInputStream(hint)), new CRC32());
+    DataInputStream in = new DataInputStream(checked);
+    try {
+      int count = in.readInt();
+      records = new LogRecord[count];
+      offsets = new long[count];
+      lengths = new int[count];
+      for (int i = 0; i < count; i++) {
+        records[i] = LogRecord.readHeader(in);
+        offsets[i] = in.readLong();
+        lengths[i] = in.readInt();
+      }
+      end = in.readLong();
+      long expected = checked.getChecksum().getValue();
+      if (in.readLong() != expected || end != channel.size()) {
+        LOG.warning("Ignoring stale hint file " + hint);
+        return false;
+      }
+    } catch (EOFException e) {
+      LOG.warning("Ignoring truncated hint file " + hint);
+      return false;
+    } catch (IOException e) {
+      LOG.warning("Ignoring unreadable hint file " + hint, e);
+      return false;
+    } finally {
+      in.close();
+    }
+    for (int i = 0; i < records.length; i++) {
+      visitor.visit(records[i], offsets[i], lengths[i]);
+    }
+    size = end;
+    return true;
+  }
+
+  /**
+   * Syncs the segment and writes its hint file.
+   *
+   * @param records the headers of the records of the segment, in order.
+   */
+  void seal(LogRecord[] records, long[] offsets, int[] lengths, int count) throws IOException {
+    force();
+    File hint = hintFile(file.getParentFile(), id);
+    File temp = new File(hint.getPath() + TEMP_SUFFIX);
+    CheckedOutputStream checked =
+        new CheckedOutputStream(new BufferedOutputStream(new FileOutputStream(temp)), new CRC32());
+    DataOutputStream out = new DataOutputStream(checked);
+    try {
+      out.writeInt(count);
+      for (int i = 0; i < count; i++) {
+        LogRecord.writeHeader(out, records[i]);
+        out.writeLong(offsets[i]);
+        out.writeInt(lengths[i]);
+      }
+      out.writeLong(size);
+      out.flush();
+      out.writeLong(checked.getChecksum().getValue());
+    } finally {
+      out.close();
+    }
+    Files.move(temp.toPath(), hint.toPath(), StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /** Closes the segment and deletes its files. */
+  void delete() throws IOException {
+    close();
+    Files.deleteIfExists(hintFile(file.getParentFile(), id).toPath());
+    Files.deleteIfExists(file.toPath());
+  }
+
+  @Override
+  public void close() throws IOException {
+    raf.close();
+  }
+
+  private void readFully(ByteBuffer buffer, long position) throws IOException {
+    while (buffer.hasRemaining()) {
+      int n = channel.read(buffer, position);
+      if (n < 0) {
+        throw new EOFException("Unexpected end of " + file);
+      }
+      position += n;
+    }
+  }
+}
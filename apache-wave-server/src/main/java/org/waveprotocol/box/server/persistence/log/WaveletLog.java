@@ -0,0 +1,133 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.waveprotocol.box.server.persistence.log;
+
+import org.waveprotocol.wave.model.version.HashedVersion;
+
+import java.util.Arrays;
+
+/**
+ * The in-memory index of the deltas of one wavelet in a {@link LogDeltaStore}:
+ * for each delta, in version order, its applied-at and resulting versions and
+ * the segment, offset and length of its record.
+ *
+ * Not thread safe; the store guards it with its index lock.
+ */
+final class WaveletLog {
+
+  private static final int INITIAL_CAPACITY = 8;
+
+  private long[] appliedAt = new long[INITIAL_CAPACITY];
+  private long[] resulting = new long[INITIAL_CAPACITY];
+  /** Segment id in the high half, offset in the low half. */
+  private long[] locations = new long[INITIAL_CAPACITY];
+  private int[] lengths = new int[INITIAL_CAPACITY];
+  private int size = 0;
+
+  /**
+   * The hashed end version, or null until it is known. Readers fill it in
+   * under the read lock of the store, hence volatile.
+   */
+  private volatile HashedVersion endVersion;
+
+  static long location(int segmentId, long offset) {
+    return ((long) segmentId << 32) | offset;
+  }
+
+  static int segmentId(long location) {
+    return (int) (location >>> 32);
+  }
+
+  static long offset(long location) {
+    return location & 0xFFFFFFFFL;
+  }
+
+  int size() {
+    return size;
+  }
+
+  /** Returns the resulting version of the last delta, or 0 if there is none. */
+  long endVersionNumber() {
+    return size > 0 ? resulting[size - 1] : 0;
+  }
+
+  HashedVersion getEndVersion() {
+    return endVersion;
+  }
+
+  void setEndVersion(HashedVersion endVersion) {
+    this.endVersion = endVersion;
+  }
+
+  /**
+   * Adds a delta after the last one.
+   *
+   * @return false if the delta does not start at the end version.
+   */
+  boolean add(long appliedAtVersion, long resultingVersion, int segmentId, long offset,
+      int length) {
+    if (appliedAtVersion != endVersionNumber()) {
+      return false;
+    }
+    if (size == appliedAt.length) {
+      int capacity = size * 2;
+      appliedAt = Arrays.copyOf(appliedAt, capacity);
+      resulting = Arrays.copyOf(resulting, capacity);
+      locations = Arrays.copyOf(locations, capacity);
+      lengths = Arrays.copyOf(lengths, capacity);
+    }
+    appliedAt[size] = appliedAtVersion;
+    resulting[size] = resultingVersion;
+    locations[size] = location(segmentId, offset);
+    lengths[size] = length;
+    size++;
+    endVersion = null;
+    return true;
+  }
+
+  /** Returns the position of the delta applied at a version, or -1. */
+  int indexOfAppliedAt(long version) {
+    int i = Arrays.binarySearch(appliedAt, 0, size, version);
+    return i >= 0 ? i : -1;
+  }
+
+  /** Returns the position of the delta resulting in a version, or -1. */
+  int indexOfResulting(long version) {
+    int i = Arrays.binarySearch(resulting, 0, size, version);
+    return i >= 0 ? i : -1;
+  }
+
+  long appliedAt(int i) {
+    return appliedAt[i];
+  }
+
+  long location(int i) {
+    return locations[i];
+  }
+
+  int length(int i) {
+    return lengths[i];
+  }
+
+  /** Moves the record of a delta, after compaction. */
+  void relocate(int i, long location) {
+    locations[i] = location;
+  }
+}
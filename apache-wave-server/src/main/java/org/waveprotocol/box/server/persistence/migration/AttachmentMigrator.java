@@ -0,0 +1,93 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.waveprotocol.box.server.persistence.migration;
+
+import org.waveprotocol.box.attachment.AttachmentMetadata;
+import org.waveprotocol.box.server.persistence.AttachmentStore;
+import org.waveprotocol.box.server.persistence.AttachmentStore.AttachmentData;
+import org.waveprotocol.box.server.persistence.file.FileAttachmentStore;
+import org.waveprotocol.wave.media.model.AttachmentId;
+import org.waveprotocol.wave.util.logging.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * A utility class to copy all attachments, with their thumbnails and metadata,
+ * from a disk store to another store. The data, thumbnail and metadata of an
+ * attachment are each skipped if they are already in the target store, so an
+ * interrupted migration can be run again.
+ */
+public class AttachmentMigrator {
+
+  private static final Log LOG = Log.get(AttachmentMigrator.class);
+
+  private final FileAttachmentStore sourceStore;
+  private final AttachmentStore targetStore;
+
+  public AttachmentMigrator(FileAttachmentStore sourceStore, AttachmentStore targetStore) {
+    this.sourceStore = sourceStore;
+    this.targetStore = targetStore;
+  }
+
+  public void run() {
+    LOG.info("Starting attachment migration to " + targetStore.getClass().getSimpleName());
+    long startTime = System.currentTimeMillis();
+    try {
+      List<AttachmentId> ids = sourceStore.getAttachmentIds();
+      int count = 0;
+      for (AttachmentId id : ids) {
+        count++;
+        LOG.info("Migrating attachment " + count + "/" + ids.size() + " : " + id);
+        migrate(id);
+      }
+      LOG.info("Migration completed. Total time = "
+          + (System.currentTimeMillis() - startTime) + "ms");
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private void migrate(AttachmentId id) throws IOException {
+    AttachmentData data = sourceStore.getAttachment(id);
+    if (data != null && targetStore.getAttachment(id) == null) {
+      InputStream in = data.getInputStream();
+      try {
+        targetStore.storeAttachment(id, in);
+      } finally {
+        in.close();
+      }
+    }
+    AttachmentData thumbnail = sourceStore.getThumbnail(id);
+    if (thumbnail != null && targetStore.getThumbnail(id) == null) {
+      InputStream in = thumbnail.getInputStream();
+      try {
+        targetStore.storeThumbnail(id, in);
+      } finally {
+        in.close();
+      }
+    }
+    AttachmentMetadata metadata = sourceStore.getMetadata(id);
+    if (metadata != null && targetStore.getMetadata(id) == null) {
+      targetStore.storeMetadata(id, metadata);
+    }
+  }
+}
@@ -34,6 +34,7 @@ import org.waveprotocol.wave.util.logging.Log;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 
 /**
  *
@@ -118,6 +119,8 @@ public class DeltaMigrator {
             // get the previous delta, this is the appliedAt
             deltaResultingVersion = deltaRecord.getAppliedAtVersion();
           }
+          // Stores such as the log store require deltas in version order.
+          Collections.reverse(deltas);
           LOG.info("Appending " + deltasCount + "deltas to target");
           targetDeltas.append(deltas);
         }
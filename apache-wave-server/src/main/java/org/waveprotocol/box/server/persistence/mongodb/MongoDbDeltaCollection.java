@@ -19,11 +19,17 @@
 
 package org.waveprotocol.box.server.persistence.mongodb;
 
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.mongodb.BasicDBObject;
 import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
 import com.mongodb.DBObject;
+import com.mongodb.MongoException;
 import com.mongodb.WriteConcern;
 
+import org.waveprotocol.box.common.ListReceiver;
+import org.waveprotocol.box.common.Receiver;
 import org.waveprotocol.box.server.persistence.PersistenceException;
 import org.waveprotocol.box.server.waveserver.ByteStringMessage;
 import org.waveprotocol.box.server.waveserver.DeltaStore;
@@ -35,22 +41,46 @@ import org.waveprotocol.wave.model.version.HashedVersion;
 
 import java.io.IOException;
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 
 /**
  * A MongoDB based Delta Access implementation using a simple <b>deltas</b>
  * collection, storing a delta record per each MongoDb document.
  *
+ * Sequential lookups are read ahead: a lookup of the delta that follows the
+ * one last returned fetches the deltas after it in the same query, so that
+ * reading a wavelet's history in order, as on load, takes a round trip per
+ * {@link #READ_AHEAD} deltas rather than one per delta. Other lookups fetch
+ * only the delta asked for. Deltas read ahead are dropped as they are
+ * returned, and the rest on the next lookup that misses them.
+ *
  * @author pablojan@gmail.com (Pablo Ojanguren)
  *
  */
 public class MongoDbDeltaCollection implements DeltaStore.DeltasAccess {
 
+  /** Number of deltas fetched by a sequential lookup of one delta. */
+  static final int READ_AHEAD = 100;
+
   /** Wavelet name to work with. */
   private final WaveletName waveletName;
 
   /** MongoDB Collection object for delta storage */
   private final DBCollection deltaDbCollection;
 
+  /**
+   * The deltas of the last read ahead not returned yet, by applied at version.
+   * Guarded by itself.
+   */
+  private final Map<Long, WaveletDeltaRecord> readAhead = Maps.newHashMap();
+
+  /**
+   * The version the delta last returned by {@link #getDelta} results in, or
+   * -1. Guarded by {@link #readAhead}.
+   */
+  private long nextVersion = -1;
+
   /**
    * Construct a new Delta Access object for the wavelet
    *
@@ -84,7 +114,10 @@ public class MongoDbDeltaCollection implements DeltaStore.DeltasAccess {
   @Override
   public boolean isEmpty() {
 
-    return deltaDbCollection.count(createWaveletDBQuery()) == 0;
+    DBObject field = new BasicDBObject();
+    field.put("_id", 1);
+
+    return deltaDbCollection.findOne(createWaveletDBQuery(), field) == null;
   }
 
   @Override
@@ -111,19 +144,30 @@ public class MongoDbDeltaCollection implements DeltaStore.DeltasAccess {
   @Override
   public WaveletDeltaRecord getDelta(long version) throws IOException {
 
-    DBObject query = createWaveletDBQuery();
-    query.put(MongoDbDeltaStoreUtil.FIELD_TRANSFORMED_APPLIEDATVERSION, version);
-
-    DBObject result = deltaDbCollection.findOne(query);
-
-    WaveletDeltaRecord waveletDelta = null;
+    boolean sequential;
+    synchronized (readAhead) {
+      WaveletDeltaRecord delta = readAhead.remove(version);
+      if (delta != null) {
+        nextVersion = delta.getResultingVersion().getVersion();
+        return delta;
+      }
+      readAhead.clear();
+      sequential = (version == nextVersion);
+    }
 
-    if (result != null) try {
-      waveletDelta = MongoDbDeltaStoreUtil.deserializeWaveletDeltaRecord(result);
-    } catch (PersistenceException e) {
-      throw new IOException(e);
+    ListReceiver<WaveletDeltaRecord> deltas = new ListReceiver<WaveletDeltaRecord>();
+    readDeltas(version, Long.MAX_VALUE, sequential ? READ_AHEAD : 1, deltas);
+    if (deltas.isEmpty() || deltas.get(0).getTransformedDelta().getAppliedAtVersion() != version) {
+      return null;
     }
-    return waveletDelta;
+    WaveletDeltaRecord delta = deltas.get(0);
+    synchronized (readAhead) {
+      for (WaveletDeltaRecord next : deltas.subList(1, deltas.size())) {
+        readAhead.put(next.getTransformedDelta().getAppliedAtVersion(), next);
+      }
+      nextVersion = delta.getResultingVersion().getVersion();
+    }
+    return delta;
   }
 
   @Override
@@ -137,7 +181,7 @@ public class MongoDbDeltaCollection implements DeltaStore.DeltasAccess {
 
     if (result != null)
     try {
-      MongoDbDeltaStoreUtil.deserializeWaveletDeltaRecord(result);
+      waveletDelta = MongoDbDeltaStoreUtil.deserializeWaveletDeltaRecord(result);
     } catch (PersistenceException e) {
       throw new IOException(e);
     }
@@ -147,28 +191,15 @@ public class MongoDbDeltaCollection implements DeltaStore.DeltasAccess {
   @Override
   public HashedVersion getAppliedAtVersion(long version) throws IOException {
 
-    DBObject query = createWaveletDBQuery();
-    query.put(MongoDbDeltaStoreUtil.FIELD_TRANSFORMED_APPLIEDATVERSION, version);
-
-    DBObject result = deltaDbCollection.findOne(query);
-
-    if (result != null)
-      return MongoDbDeltaStoreUtil.deserializeHashedVersion((DBObject) result
-          .get(MongoDbDeltaStoreUtil.FIELD_APPLIEDATVERSION));
-    return null;
+    WaveletDeltaRecord delta = getDelta(version);
+    return (delta != null) ? delta.getAppliedAtVersion() : null;
   }
 
   @Override
   public HashedVersion getResultingVersion(long version) throws IOException {
-    DBObject query = createWaveletDBQuery();
-    query.put(MongoDbDeltaStoreUtil.FIELD_TRANSFORMED_APPLIEDATVERSION, version);
-
-    DBObject result = deltaDbCollection.findOne(query);
 
-    if (result != null)
-      return MongoDbDeltaStoreUtil.deserializeHashedVersion((DBObject) result
-          .get(MongoDbDeltaStoreUtil.FIELD_TRANSFORMED_RESULTINGVERSION));
-    return null;
+    WaveletDeltaRecord delta = getDelta(version);
+    return (delta != null) ? delta.getResultingVersion() : null;
   }
 
   @Override
@@ -186,20 +217,70 @@ public class MongoDbDeltaCollection implements DeltaStore.DeltasAccess {
     return (delta != null) ? delta.getTransformedDelta() : null;
   }
 
+  /**
+   * Streams the deltas applied at versions from a start version, inclusive, to
+   * an end version, exclusive, in version order, with one query.
+   *
+   * @param limit the maximum number of deltas to read, or 0 for no limit.
+   * @param receiver receives the deltas; reading stops when it returns false.
+   */
+  public void readDeltas(long startVersion, long endVersion, int limit,
+      Receiver<WaveletDeltaRecord> receiver) throws IOException {
+
+    DBObject range = new BasicDBObject();
+    range.put("$gte", startVersion);
+    range.put("$lt", endVersion);
+
+    DBObject query = createWaveletDBQuery();
+    query.put(MongoDbDeltaStoreUtil.FIELD_TRANSFORMED_APPLIEDATVERSION, range);
+
+    DBObject sort = new BasicDBObject();
+    sort.put(MongoDbDeltaStoreUtil.FIELD_TRANSFORMED_APPLIEDATVERSION, 1); // Ascending
+
+    DBCursor cursor = deltaDbCollection.find(query).sort(sort);
+    try {
+      if (limit > 0) {
+        cursor.limit(limit);
+        cursor.batchSize(limit);
+      }
+      while (cursor.hasNext()) {
+        if (!receiver.put(MongoDbDeltaStoreUtil.deserializeWaveletDeltaRecord(cursor.next()))) {
+          break;
+        }
+      }
+    } catch (PersistenceException e) {
+      throw new IOException(e);
+    } catch (MongoException e) {
+      throw new IOException(e);
+    } finally {
+      cursor.close();
+    }
+  }
+
   @Override
   public void close() throws IOException {
-    // Does nothing.
+    synchronized (readAhead) {
+      readAhead.clear();
+    }
   }
 
   @Override
   public void append(Collection<WaveletDeltaRecord> newDeltas) throws PersistenceException {
 
+    if (newDeltas.isEmpty()) {
+      return;
+    }
+    List<DBObject> documents = Lists.newArrayListWithCapacity(newDeltas.size());
     for (WaveletDeltaRecord delta : newDeltas) {
-      // Using Journaled Write Concern
-      // (http://docs.mongodb.org/manual/core/write-concern/#journaled)
-      deltaDbCollection.insert(MongoDbDeltaStoreUtil.serialize(delta,
-          waveletName.waveId.serialise(), waveletName.waveletId.serialise()),
-          WriteConcern.JOURNALED);
+      documents.add(MongoDbDeltaStoreUtil.serialize(delta,
+          waveletName.waveId.serialise(), waveletName.waveletId.serialise()));
+    }
+    try {
+      // One insert, so that the deltas share a journal commit. Using Journaled
+      // Write Concern (http://docs.mongodb.org/manual/core/write-concern/#journaled)
+      deltaDbCollection.insert(documents, WriteConcern.JOURNALED);
+    } catch (MongoException e) {
+      throw new PersistenceException(e);
     }
   }
 }
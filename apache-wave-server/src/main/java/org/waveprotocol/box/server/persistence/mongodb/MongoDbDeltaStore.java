@@ -23,7 +23,6 @@ import com.google.common.collect.ImmutableSet;
 import com.mongodb.BasicDBObject;
 import com.mongodb.DB;
 import com.mongodb.DBCollection;
-import com.mongodb.DBCursor;
 import com.mongodb.DBObject;
 import com.mongodb.MongoException;
 import com.mongodb.WriteConcern;
@@ -31,6 +30,7 @@ import com.mongodb.WriteConcern;
 import org.waveprotocol.box.common.ExceptionalIterator;
 import org.waveprotocol.box.server.persistence.FileNotFoundPersistenceException;
 import org.waveprotocol.box.server.persistence.PersistenceException;
+import org.waveprotocol.box.server.persistence.PersistenceStartException;
 import org.waveprotocol.box.server.waveserver.DeltaStore;
 import org.waveprotocol.wave.model.id.WaveId;
 import org.waveprotocol.wave.model.id.WaveIdImpl;
@@ -62,6 +62,32 @@ public class MongoDbDeltaStore implements DeltaStore {
    */
   public MongoDbDeltaStore(DB database) {
     this.database = database;
+    ensureIndexes();
+  }
+
+  /**
+   * Creates, if missing, the indexes of the deltas of a wavelet by applied at
+   * version and by resulting version, which serve lookups of single deltas,
+   * range reads and the end version of a wavelet. The first also serves
+   * {@link #lookup} and {@link #delete}.
+   */
+  private void ensureIndexes() {
+    DBObject byAppliedAt = new BasicDBObject();
+    byAppliedAt.put(MongoDbDeltaStoreUtil.FIELD_WAVE_ID, 1);
+    byAppliedAt.put(MongoDbDeltaStoreUtil.FIELD_WAVELET_ID, 1);
+    byAppliedAt.put(MongoDbDeltaStoreUtil.FIELD_TRANSFORMED_APPLIEDATVERSION, 1);
+
+    DBObject byResulting = new BasicDBObject();
+    byResulting.put(MongoDbDeltaStoreUtil.FIELD_WAVE_ID, 1);
+    byResulting.put(MongoDbDeltaStoreUtil.FIELD_WAVELET_ID, 1);
+    byResulting.put(MongoDbDeltaStoreUtil.FIELD_TRANSFORMED_RESULTINGVERSION_VERSION, 1);
+
+    try {
+      getDeltaDbCollection().ensureIndex(byAppliedAt);
+      getDeltaDbCollection().ensureIndex(byResulting);
+    } catch (MongoException e) {
+      throw new PersistenceStartException("Failed to index the deltas collection", e);
+    }
   }
 
   @Override
@@ -90,32 +116,25 @@ public class MongoDbDeltaStore implements DeltaStore {
   @Override
   public ImmutableSet<WaveletId> lookup(WaveId waveId) throws PersistenceException {
 
-
     DBObject query = new BasicDBObject();
     query.put(MongoDbDeltaStoreUtil.FIELD_WAVE_ID, waveId.serialise());
 
-    DBObject projection = new BasicDBObject();
-    projection.put(MongoDbDeltaStoreUtil.FIELD_WAVELET_ID, 1);
-
-    DBCursor cursor = null;
+    ImmutableSet.Builder<WaveletId> builder = ImmutableSet.builder();
 
     try {
-      cursor = getDeltaDbCollection().find(query, projection);
+
+      @SuppressWarnings("rawtypes")
+      List results =
+          getDeltaDbCollection().distinct(MongoDbDeltaStoreUtil.FIELD_WAVELET_ID, query);
+
+      for (Object o : results)
+        builder.add(WaveletIdImpl.deserialise((String) o));
+
     } catch (MongoException e) {
       throw new PersistenceException(e);
     }
 
-
-    if (cursor == null || !cursor.hasNext()) {
-      return ImmutableSet.of();
-    } else {
-      ImmutableSet.Builder<WaveletId> builder = ImmutableSet.builder();
-      for (DBObject waveletIdDBObject : cursor) {
-        builder.add(WaveletIdImpl.deserialise((String) waveletIdDBObject
-            .get(MongoDbDeltaStoreUtil.FIELD_WAVELET_ID)));
-      }
-      return builder.build();
-    }
+    return builder.build();
   }
 
   @Override
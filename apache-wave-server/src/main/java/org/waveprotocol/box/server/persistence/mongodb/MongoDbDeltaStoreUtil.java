@@ -255,7 +255,7 @@ public class MongoDbDeltaStoreUtil {
 
   private static DocOp deserializeDocOp(DBObject dbObject) throws PersistenceException {
     try {
-      return CoreWaveletOperationSerializer.deserialize(ProtocolDocumentOperation
+      return CoreWaveletOperationSerializer.deserializeApplied(ProtocolDocumentOperation
           .parseFrom(((byte[]) dbObject.get(FIELD_BYTES))));
     } catch (InvalidProtocolBufferException e) {
       throw new PersistenceException(e);
@@ -69,7 +69,8 @@ public class ProtoDeltaStoreDataSerializer {
       } else {
         context = new WaveletOperationContext(author, applicationTimestamp, 1);
       }
-      operations.add(CoreWaveletOperationSerializer.deserialize(delta.getOperation(i), context));
+      operations.add(
+          CoreWaveletOperationSerializer.deserializeApplied(delta.getOperation(i), context));
     }
     return new TransformedWaveletDelta(author, resultingVersion, applicationTimestamp, operations.build());
   }
@@ -19,22 +19,23 @@
 
 package org.waveprotocol.box.server.robots;
 
-import com.google.common.collect.Maps;
 import com.google.wave.api.InvalidRequestException;
 import com.google.wave.api.OperationType;
 
 import org.waveprotocol.box.server.robots.operations.OperationService;
 import org.waveprotocol.wave.util.logging.Log;
 
-import java.util.Map;
+import java.util.EnumMap;
 
 /**
  * Abstract class for registering and accessing {@link OperationService} to
- * execute operations for use in the Robot APIs. Note that this class is not
- * thread safe.
+ * execute operations for use in the Robot APIs. Services are kept in a table
+ * indexed by {@link OperationType}, so that a lookup per operation is a single
+ * array access.
  *
  * Implementations of this class are expected to define the way and moment when
- * operations are registered.
+ * operations are registered. Registering is not thread safe, lookups are safe
+ * once all services have been registered during construction.
  *
  * @author ljvderijk@google.com (Lennard de Rijk)
  */
@@ -42,7 +43,8 @@ public abstract class AbstractOperationServiceRegistry implements OperationServi
 
   private static Log LOG = Log.get(AbstractOperationServiceRegistry.class);
 
-  private Map<OperationType, OperationService> operationMap = Maps.newHashMap();
+  private final EnumMap<OperationType, OperationService> operationMap =
+      new EnumMap<OperationType, OperationService>(OperationType.class);
 
   public AbstractOperationServiceRegistry() {
   }
@@ -63,7 +65,6 @@ public abstract class AbstractOperationServiceRegistry implements OperationServi
    * @param service the {@link OperationService} to be registered
    */
   protected final void register(OperationType operation, OperationService service) {
-    // Do a put first so we can make it use a concurrent map if needed.
     OperationService oldValue = operationMap.put(operation, service);
     if (oldValue != null) {
       LOG.warning("The OperationService for " + operation.name() + " was overwritten");
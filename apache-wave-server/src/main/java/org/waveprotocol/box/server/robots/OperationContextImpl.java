@@ -64,10 +64,12 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Class which provides context for robot operations and gives access to the
- * results.
+ * results. Operations on different wavelets may use the context concurrently,
+ * operations on the same wavelet must be executed in order by a single thread.
  *
  * @author ljvderijk@google.com (Lennard de Rijk)
  */
@@ -82,7 +84,7 @@ public class OperationContextImpl implements OperationContext, OperationResults
   /**
    * Maps operation ID's to responses.
    */
-  private final Map<String, JsonRpcResponse> responses = Maps.newHashMap();
+  private final Map<String, JsonRpcResponse> responses = Maps.newConcurrentMap();
 
   /**
    * {@link WaveletProvider} that gives us access to wavelets.
@@ -103,14 +105,14 @@ public class OperationContextImpl implements OperationContext, OperationResults
   /**
    * The wavelets that have been opened in the lifespan of this context.
    */
-  private final Map<WaveletName, RobotWaveletData> openedWavelets = Maps.newHashMap();
+  private final Map<WaveletName, RobotWaveletData> openedWavelets = Maps.newConcurrentMap();
 
   /** Stores temporary blip ids -> real blip ids */
-  private final Map<String, String> tempBlipIdMap = Maps.newHashMap();
+  private final Map<String, String> tempBlipIdMap = Maps.newConcurrentMap();
   /** Stores temporary wavelet names -> real wavelet names */
-  private final Map<WaveletName, WaveletName> tempWaveletNameMap = Maps.newHashMap();
+  private final Map<WaveletName, WaveletName> tempWaveletNameMap = Maps.newConcurrentMap();
   /** Caches {@link ObservableConversationView}s */
-  private final Map<WaveletName, Map<ParticipantId, ObservableConversationView>>
+  private final ConcurrentMap<WaveletName, Map<ParticipantId, ObservableConversationView>>
   openedConversations;
 
   /** Used to create conversations. */
@@ -146,7 +148,7 @@ public class OperationContextImpl implements OperationContext, OperationResults
     this.converter = converter;
     this.conversationUtil = conversationUtil;
     this.boundWavelet = boundWavelet;
-    this.openedConversations = Maps.newHashMap();
+    this.openedConversations = Maps.newConcurrentMap();
 
     if (boundWavelet != null) {
       openedWavelets.put(boundWavelet.getWaveletName(), boundWavelet);
@@ -216,6 +218,9 @@ public class OperationContextImpl implements OperationContext, OperationResults
     if (waveId.getId().startsWith(TEMP_ID_MARKER)) {
       WaveletName tempWaveletName = WaveletName.of(waveId, waveletId);
       waveletName = tempWaveletNameMap.get(tempWaveletName);
+      if (waveletName == null) {
+        throw new InvalidRequestException("Wavelet " + tempWaveletName + " couldn't be retrieved");
+      }
     } else {
       waveletName = WaveletName.of(waveId, waveletId);
     }
@@ -263,13 +268,13 @@ public class OperationContextImpl implements OperationContext, OperationResults
       ParticipantId participant) throws InvalidRequestException {
     WaveletName waveletName = WaveletName.of(waveId, waveletId);
 
-    if (!openedConversations.containsKey(waveletName)) {
-      openedConversations.put(
-          waveletName, Maps.<ParticipantId, ObservableConversationView> newHashMap());
-    }
-
     Map<ParticipantId, ObservableConversationView> conversations =
         openedConversations.get(waveletName);
+    if (conversations == null) {
+      openedConversations.putIfAbsent(
+          waveletName, Maps.<ParticipantId, ObservableConversationView> newConcurrentMap());
+      conversations = openedConversations.get(waveletName);
+    }
 
     if (!conversations.containsKey(participant)) {
       OpBasedWavelet wavelet = openWavelet(waveId, waveletId, participant);
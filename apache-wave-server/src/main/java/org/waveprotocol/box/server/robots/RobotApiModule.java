@@ -19,7 +19,6 @@
 
 package org.waveprotocol.box.server.robots;
 
-import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.AbstractModule;
 import com.google.inject.Inject;
 import com.google.inject.Injector;
@@ -38,15 +37,19 @@ import net.oauth.SimpleOAuthValidator;
 
 import org.apache.commons.httpclient.HttpClient;
 import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
 import org.waveprotocol.box.server.CoreSettings;
+import org.waveprotocol.box.server.executor.ExecutorAnnotations.RobotConnectionExecutor;
+import org.waveprotocol.box.server.executor.ExecutorAnnotations.RobotGatewayExecutor;
 import org.waveprotocol.box.server.robots.active.ActiveApiOperationServiceRegistry;
 import org.waveprotocol.box.server.robots.dataapi.DataApiOAuthServlet;
 import org.waveprotocol.box.server.robots.dataapi.DataApiOperationServiceRegistry;
 import org.waveprotocol.box.server.robots.passive.RobotConnector;
+import org.waveprotocol.box.server.robots.passive.ThrottlingRobotConnection;
+import org.waveprotocol.box.stat.Statistic;
 
 import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ScheduledExecutorService;
 
 /**
  * Robot API Module.
@@ -55,8 +58,6 @@ import java.util.concurrent.ThreadFactory;
  */
 public class RobotApiModule extends AbstractModule {
 
-  private static final int NUMBER_OF_THREADS = 10;
-
   private static final String AUTHORIZE_TOKEN_PATH = "/OAuthAuthorizeToken";
   private static final String REQUEST_TOKEN_PATH = "/OAuthGetRequestToken";
   private static final String ACCESS_TOKEN_PATH = "/OAuthGetAccessToken";
@@ -87,22 +88,34 @@ public class RobotApiModule extends AbstractModule {
 
   @Provides
   @Singleton
-  protected RobotConnection provideRobotConnection() {
-    HttpClient httpClient = new HttpClient(new MultiThreadedHttpConnectionManager());
-
-    ThreadFactory threadFactory =
-        new ThreadFactoryBuilder().setNameFormat("RobotConnection").build();
-    return new HttpRobotConnection(
-        httpClient, Executors.newFixedThreadPool(NUMBER_OF_THREADS, threadFactory));
+  protected RobotConnection provideRobotConnection(
+      @RobotConnectionExecutor ScheduledExecutorService executor,
+      @Named(CoreSettings.ROBOT_CONNECTION_THREAD_COUNT) int threadCount,
+      @Named(CoreSettings.ROBOT_CONNECTION_MAX_PER_ROBOT) int maxPerRobot,
+      @Named(CoreSettings.ROBOT_CONNECTION_TIMEOUT_MS) int timeoutMs) {
+    // Keep connections to robots alive and bound how many of them a single
+    // robot can hold, so that a slow robot can't starve the others.
+    MultiThreadedHttpConnectionManager connectionManager =
+        new MultiThreadedHttpConnectionManager();
+    HttpConnectionManagerParams params = connectionManager.getParams();
+    params.setDefaultMaxConnectionsPerHost(maxPerRobot);
+    params.setMaxTotalConnections(Math.max(threadCount, maxPerRobot));
+    params.setConnectionTimeout(timeoutMs);
+    params.setSoTimeout(timeoutMs);
+    params.setStaleCheckingEnabled(true);
+    HttpClient httpClient = new HttpClient(connectionManager);
+
+    ThrottlingRobotConnection connection = new ThrottlingRobotConnection(
+        new HttpRobotConnection(httpClient, executor), maxPerRobot, timeoutMs);
+    Statistic.trackObject(connection);
+    return connection;
   }
 
   @Provides
   @Singleton
   @Named("GatewayExecutor")
-  protected Executor provideGatewayExecutor() {
-    ThreadFactory threadFactory =
-        new ThreadFactoryBuilder().setNameFormat("PassiveRobotRunner").build();
-    return Executors.newFixedThreadPool(NUMBER_OF_THREADS, threadFactory);
+  protected Executor provideGatewayExecutor(@RobotGatewayExecutor Executor executor) {
+    return executor;
   }
 
   @Provides
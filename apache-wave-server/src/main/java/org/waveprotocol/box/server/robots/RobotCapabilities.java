@@ -20,7 +20,7 @@
 package org.waveprotocol.box.server.robots;
 
 import com.google.common.base.Preconditions;
-import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
 import com.google.wave.api.ProtocolVersion;
 import com.google.wave.api.event.EventType;
 import com.google.wave.api.robot.Capability;
@@ -52,7 +52,8 @@ public class RobotCapabilities {
     Preconditions.checkNotNull(capabilitiesHash, "Capabilities hash may not be null");
     Preconditions.checkNotNull(version, "Version may not be null");
 
-    this.capabilities = ImmutableMap.copyOf(capabilitiesMap);
+    // Events are looked up per delta for every robot, keep them enum-indexed.
+    this.capabilities = Maps.immutableEnumMap(capabilitiesMap);
     this.capabilitiesHash = capabilitiesHash;
     this.version = version;
   }
@@ -33,6 +33,7 @@ import net.oauth.OAuthValidator;
 import net.oauth.server.HttpRequestMessage;
 
 import org.waveprotocol.box.server.account.AccountData;
+import org.waveprotocol.box.server.executor.ExecutorAnnotations.RobotOperationExecutor;
 import org.waveprotocol.box.server.persistence.AccountStore;
 import org.waveprotocol.box.server.persistence.PersistenceException;
 import org.waveprotocol.box.server.robots.OperationServiceRegistry;
@@ -44,6 +45,7 @@ import org.waveprotocol.wave.model.wave.ParticipantId;
 import org.waveprotocol.wave.util.logging.Log;
 
 import java.io.IOException;
+import java.util.concurrent.Executor;
 
 import javax.inject.Singleton;
 import javax.servlet.http.HttpServlet;
@@ -68,9 +70,10 @@ public class ActiveApiServlet extends BaseApiServlet {
       EventDataConverterManager converterManager, WaveletProvider waveletProvider,
       @Named("ActiveApiRegistry") OperationServiceRegistry operationRegistry,
       ConversationUtil conversationUtil, OAuthServiceProvider oAuthServiceProvider,
-      OAuthValidator validator, AccountStore accountStore) {
+      OAuthValidator validator, AccountStore accountStore,
+      @RobotOperationExecutor Executor operationExecutor) {
     super(robotSerializer, converterManager, waveletProvider, operationRegistry, conversationUtil,
-        validator);
+        validator, operationExecutor);
     this.oauthServiceProvider = oAuthServiceProvider;
     this.accountStore = accountStore;
   }
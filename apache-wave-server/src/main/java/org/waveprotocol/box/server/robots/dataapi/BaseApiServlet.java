@@ -26,13 +26,11 @@ import com.google.wave.api.OperationRequest;
 import com.google.wave.api.ProtocolVersion;
 import com.google.wave.api.RobotSerializer;
 import com.google.wave.api.data.converter.EventDataConverterManager;
-import com.google.wave.api.impl.GsonFactory;
 
 import net.oauth.OAuthAccessor;
 import net.oauth.OAuthException;
 import net.oauth.OAuthMessage;
 import net.oauth.OAuthValidator;
-import org.waveprotocol.box.server.robots.OperationContext;
 import org.waveprotocol.box.server.robots.OperationContextImpl;
 import org.waveprotocol.box.server.robots.OperationResults;
 import org.waveprotocol.box.server.robots.OperationServiceRegistry;
@@ -43,12 +41,12 @@ import org.waveprotocol.box.server.waveserver.WaveletProvider;
 import org.waveprotocol.wave.model.wave.ParticipantId;
 import org.waveprotocol.wave.util.logging.Log;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.net.URISyntaxException;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
@@ -75,20 +73,20 @@ public abstract class BaseApiServlet extends HttpServlet {
   private final OperationServiceRegistry operationRegistry;
   private final ConversationUtil conversationUtil;
   private final OAuthValidator validator;
-  
-  /** Holds incoming operation requests. */
-  private List<OperationRequest> operations;
+  /** Executes the operations of a bundle that touch different wavelets. */
+  private final Executor operationExecutor;
 
   public BaseApiServlet(RobotSerializer robotSerializer,
       EventDataConverterManager converterManager, WaveletProvider waveletProvider,
       OperationServiceRegistry operationRegistry, ConversationUtil conversationUtil,
-      OAuthValidator validator) {
+      OAuthValidator validator, Executor operationExecutor) {
     this.robotSerializer = robotSerializer;
     this.converterManager = converterManager;
     this.waveletProvider = waveletProvider;
     this.conversationUtil = conversationUtil;
     this.operationRegistry = operationRegistry;
     this.validator = validator;
+    this.operationExecutor = operationExecutor;
   }
 
   /**
@@ -115,60 +113,44 @@ public abstract class BaseApiServlet extends HttpServlet {
       return;
     }
 
-    String apiRequest;
+    // The operations are parsed straight from the request stream, as bundles
+    // of imported or exported deltas can be large. message.readBodyAsString()
+    // doesn't work anyway due to a NPE in the OAuth libraries.
+    List<OperationRequest> operations;
     try {
-      // message.readBodyAsString() doesn't work due to a NPE in the OAuth
-      // libraries.
-      BufferedReader reader = req.getReader();
-      apiRequest = reader.readLine();
-    } catch (IOException e) {
-      LOG.warning("Unable to read the incoming request", e);
-      throw e;
-    }
-
-    LOG.info("Received the following Json: " + apiRequest);
-    try {
-      operations = robotSerializer.deserializeOperations(apiRequest);
+      operations = robotSerializer.deserializeOperations(req.getReader());
     } catch (InvalidRequestException e) {
-      LOG.info("Unable to parse Json to list of OperationRequests: " + apiRequest);
+      LOG.info("Unable to parse Json to list of OperationRequests", e);
       resp.sendError(HttpServletResponse.SC_BAD_REQUEST,
-          "Unable to parse Json to list of OperationRequests: " + apiRequest);
+          "Unable to parse Json to list of OperationRequests: " + e.getMessage());
       return;
+    } catch (IOException e) {
+      LOG.warning("Unable to read the incoming request", e);
+      throw e;
     }
+    LOG.info("Received " + operations.size() + " operations");
 
     // Create an unbound context.
     ProtocolVersion version = OperationUtil.getProtocolVersion(operations);
     OperationContextImpl context = new OperationContextImpl(
         waveletProvider, converterManager.getEventDataConverter(version), conversationUtil);
 
-    executeOperations(context, operations, participant);
-    handleResults(context, resp, version);
-  }
-
-  /**
-   * Executes operations in the given context.
-   *
-   * @param context the context to perform the operations in.
-   * @param operations the operations to perform.
-   * @param author the author for which to perform the robot operations.
-   */
-  private void executeOperations(
-      OperationContext context, List<OperationRequest> operations, ParticipantId author) {
-    for (OperationRequest operation : operations) {
-      OperationUtil.executeOperation(operation, operationRegistry, context, author);
-    }
+    OperationUtil.executeOperations(
+        operations, operationRegistry, context, participant, operationExecutor);
+    handleResults(operations, context, resp, version);
   }
 
   /**
    * Handles an {@link OperationResults} by submitting the deltas that are
    * generated and writing a response to the robot.
    *
+   * @param operations the operations that have been performed.
    * @param results the results of the operations performed.
    * @param resp the servlet to write the response in.
    * @param version the version of the protocol to use for writing a response.
    * @throws IOException if the response can not be written.
    */
-  private void handleResults(
+  private void handleResults(List<OperationRequest> operations,
       OperationResults results, HttpServletResponse resp, ProtocolVersion version)
       throws IOException {
     OperationUtil.submitDeltas(results, waveletProvider, LOGGING_REQUEST_LISTENER);
@@ -182,17 +164,15 @@ public abstract class BaseApiServlet extends HttpServlet {
       responses.addLast(response);
     }
 
-    String jsonResponse =
-        robotSerializer.serialize(responses, GsonFactory.JSON_RPC_RESPONSE_LIST_TYPE, version);
-    LOG.info("Returning the following Json: " + jsonResponse);
-
-    // Write the response back through the HttpServlet
+    // Write the response back through the HttpServlet, serializing one
+    // response at a time.
     try {
+      resp.setStatus(HttpServletResponse.SC_OK);
       resp.setContentType(JSON_CONTENT_TYPE);
       PrintWriter writer = resp.getWriter();
-      writer.append(jsonResponse);
+      robotSerializer.serializeList(responses, JsonRpcResponse.class, version, writer);
       writer.flush();
-      resp.setStatus(HttpServletResponse.SC_OK);
+      LOG.info("Returned " + responses.size() + " responses");
     } catch (IOException e) {
       LOG.severe("IOException during writing of a response", e);
       throw e;
@@ -31,6 +31,7 @@ import net.oauth.OAuthProblemException;
 import net.oauth.OAuthValidator;
 import net.oauth.server.HttpRequestMessage;
 
+import org.waveprotocol.box.server.executor.ExecutorAnnotations.RobotOperationExecutor;
 import org.waveprotocol.box.server.robots.OperationServiceRegistry;
 import org.waveprotocol.box.server.robots.util.ConversationUtil;
 import org.waveprotocol.box.server.waveserver.WaveletProvider;
@@ -38,6 +39,7 @@ import org.waveprotocol.wave.model.wave.ParticipantId;
 import org.waveprotocol.wave.util.logging.Log;
 
 import java.io.IOException;
+import java.util.concurrent.Executor;
 
 import javax.inject.Singleton;
 import javax.servlet.http.HttpServlet;
@@ -61,9 +63,10 @@ public class DataApiServlet extends BaseApiServlet {
       EventDataConverterManager converterManager, WaveletProvider waveletProvider,
       @Named("DataApiRegistry") OperationServiceRegistry operationRegistry,
       ConversationUtil conversationUtil, OAuthValidator validator,
-      DataApiTokenContainer tokenContainer) {
+      DataApiTokenContainer tokenContainer,
+      @RobotOperationExecutor Executor operationExecutor) {
     super(robotSerializer, converterManager, waveletProvider, operationRegistry, conversationUtil,
-        validator);
+        validator, operationExecutor);
     this.tokenContainer = tokenContainer;
   }
   
@@ -0,0 +1,476 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.waveprotocol.box.server.robots.passive;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import org.waveprotocol.box.server.robots.util.ConversationUtil;
+import org.waveprotocol.box.server.util.WaveletDataUtil;
+import org.waveprotocol.wave.model.conversation.ConversationListenerImpl;
+import org.waveprotocol.wave.model.conversation.ObservableConversation;
+import org.waveprotocol.wave.model.conversation.ObservableConversationBlip;
+import org.waveprotocol.wave.model.conversation.WaveletBasedConversation;
+import org.waveprotocol.wave.model.document.DocHandler;
+import org.waveprotocol.wave.model.document.Doc.E;
+import org.waveprotocol.wave.model.document.Doc.N;
+import org.waveprotocol.wave.model.document.Doc.T;
+import org.waveprotocol.wave.model.document.ObservableDocument;
+import org.waveprotocol.wave.model.document.indexed.DocumentEvent;
+import org.waveprotocol.wave.model.document.indexed.DocumentEvent.AnnotationChanged;
+import org.waveprotocol.wave.model.id.WaveletName;
+import org.waveprotocol.wave.model.operation.OperationException;
+import org.waveprotocol.wave.model.operation.SilentOperationSink;
+import org.waveprotocol.wave.model.operation.wave.BasicWaveletOperationContextFactory;
+import org.waveprotocol.wave.model.operation.wave.TransformedWaveletDelta;
+import org.waveprotocol.wave.model.operation.wave.WaveletBlipOperation;
+import org.waveprotocol.wave.model.operation.wave.WaveletOperation;
+import org.waveprotocol.wave.model.version.HashedVersion;
+import org.waveprotocol.wave.model.wave.ObservableWavelet;
+import org.waveprotocol.wave.model.wave.ParticipantId;
+import org.waveprotocol.wave.model.wave.ParticipationHelper;
+import org.waveprotocol.wave.model.wave.data.ObservableWaveletData;
+import org.waveprotocol.wave.model.wave.opbased.OpBasedWavelet;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays the deltas of a {@link WaveletAndDeltas} against a conversation
+ * model once and records the changes as a robot-neutral stream of
+ * {@link RawEvent}s. The {@link EventGenerator} of every robot on the wavelet
+ * then filters that stream by its own capabilities, instead of every robot
+ * rebuilding and replaying the conversation on its own.
+ *
+ * <p>
+ * Extractions are cached by wavelet name and version range, so robots whose
+ * queues hold the same range of deltas share a single replay.
+ */
+public class DeltaEventExtractor {
+
+  /** Maximum number of extractions kept around for other robots. */
+  private static final int CACHE_SIZE = 100;
+
+  /** How long an extraction stays available for other robots. */
+  private static final int CACHE_EXPIRY_SECONDS = 60;
+
+  /**
+   * The kinds of changes recorded by the extractor.
+   */
+  public enum Kind {
+    PARTICIPANT_ADDED,
+    PARTICIPANT_REMOVED,
+    BLIP_ADDED,
+    BLIP_DELETED,
+    /** Only the first document change per blip in an extraction is recorded. */
+    DOCUMENT_CHANGED,
+    ANNOTATION_CHANGED
+  }
+
+  /**
+   * A single change observed while replaying the deltas, independent of the
+   * robot it will be delivered to.
+   */
+  public static final class RawEvent {
+    private final Kind kind;
+    private final String rootBlipId;
+    private final ParticipantId participant;
+    private final String blipId;
+    private final String annotationKey;
+    private final String annotationValue;
+
+    private RawEvent(Kind kind, String rootBlipId, ParticipantId participant, String blipId,
+        String annotationKey, String annotationValue) {
+      this.kind = kind;
+      this.rootBlipId = rootBlipId;
+      this.participant = participant;
+      this.blipId = blipId;
+      this.annotationKey = annotationKey;
+      this.annotationValue = annotationValue;
+    }
+
+    public Kind getKind() {
+      return kind;
+    }
+
+    /** Returns the id of the root blip at the time the change was observed. */
+    public String getRootBlipId() {
+      return rootBlipId;
+    }
+
+    /** Returns the participant added or removed, null for other kinds. */
+    public ParticipantId getParticipant() {
+      return participant;
+    }
+
+    /** Returns the blip the change applies to, null for participant changes. */
+    public String getBlipId() {
+      return blipId;
+    }
+
+    public String getAnnotationKey() {
+      return annotationKey;
+    }
+
+    public String getAnnotationValue() {
+      return annotationValue;
+    }
+  }
+
+  /**
+   * The changes observed for a single delta.
+   */
+  public static final class DeltaEvents {
+    private final ParticipantId author;
+    private final long timestamp;
+    private final List<RawEvent> events = Lists.newArrayList();
+    private String rootBlipIdAtEnd;
+
+    private DeltaEvents(ParticipantId author, long timestamp) {
+      this.author = author;
+      this.timestamp = timestamp;
+    }
+
+    public ParticipantId getAuthor() {
+      return author;
+    }
+
+    public long getTimestamp() {
+      return timestamp;
+    }
+
+    /** Returns the changes in the order in which they were observed. */
+    public List<RawEvent> getEvents() {
+      return events;
+    }
+
+    /** Returns the id of the root blip after the delta was applied. */
+    public String getRootBlipIdAtEnd() {
+      return rootBlipIdAtEnd;
+    }
+  }
+
+  /**
+   * The result of replaying a {@link WaveletAndDeltas}. The wavelet and
+   * conversation reflect the state after all deltas have been applied and
+   * must only be read while holding the lock on this object, since the
+   * extraction is shared between robot threads.
+   */
+  public static final class Extraction {
+    private final OpBasedWavelet wavelet;
+    private final ObservableConversation conversation;
+    private final List<DeltaEvents> deltas;
+
+    private Extraction(OpBasedWavelet wavelet, ObservableConversation conversation,
+        List<DeltaEvents> deltas) {
+      this.wavelet = wavelet;
+      this.conversation = conversation;
+      this.deltas = deltas;
+    }
+
+    public OpBasedWavelet getWavelet() {
+      return wavelet;
+    }
+
+    /** Returns the root conversation, or null if the wavelet has none. */
+    public ObservableConversation getConversation() {
+      return conversation;
+    }
+
+    public List<DeltaEvents> getDeltas() {
+      return deltas;
+    }
+  }
+
+  /**
+   * Identifies a replay by wavelet and the version range it covers.
+   */
+  private static final class ExtractionKey {
+    private final WaveletName waveletName;
+    private final long startVersion;
+    private final HashedVersion endVersion;
+
+    ExtractionKey(WaveletName waveletName, long startVersion, HashedVersion endVersion) {
+      this.waveletName = waveletName;
+      this.startVersion = startVersion;
+      this.endVersion = endVersion;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(waveletName, startVersion, endVersion);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof ExtractionKey)) {
+        return false;
+      }
+      ExtractionKey other = (ExtractionKey) obj;
+      return startVersion == other.startVersion && waveletName.equals(other.waveletName)
+          && endVersion.equals(other.endVersion);
+    }
+  }
+
+  /**
+   * Records conversation structure changes into the current delta.
+   */
+  private static class RecordingConversationListener extends ConversationListenerImpl {
+    private final ObservableConversation conversation;
+    private DeltaEvents current;
+
+    RecordingConversationListener(ObservableConversation conversation) {
+      this.conversation = conversation;
+    }
+
+    void deltaBegin(DeltaEvents delta) {
+      Preconditions.checkState(current == null, "DeltaEnd wasn't called");
+      current = delta;
+    }
+
+    void deltaEnd() {
+      current.rootBlipIdAtEnd = ConversationUtil.getRootBlipId(conversation);
+      current = null;
+    }
+
+    @Override
+    public void onParticipantAdded(ParticipantId participant) {
+      record(Kind.PARTICIPANT_ADDED, participant, null);
+    }
+
+    @Override
+    public void onParticipantRemoved(ParticipantId participant) {
+      record(Kind.PARTICIPANT_REMOVED, participant, null);
+    }
+
+    @Override
+    public void onBlipAdded(ObservableConversationBlip blip) {
+      record(Kind.BLIP_ADDED, null, blip.getId());
+    }
+
+    @Override
+    public void onBlipDeleted(ObservableConversationBlip blip) {
+      record(Kind.BLIP_DELETED, null, blip.getId());
+    }
+
+    private void record(Kind kind, ParticipantId participant, String blipId) {
+      current.events.add(new RawEvent(kind, ConversationUtil.getRootBlipId(conversation),
+          participant, blipId, null, null));
+    }
+  }
+
+  /**
+   * Records document changes of a single blip into the current delta.
+   */
+  private static class RecordingDocumentHandler implements DocHandler {
+    private final ObservableDocument doc;
+    private final String blipId;
+    private DeltaEvents current;
+    private boolean documentChangedRecorded;
+
+    RecordingDocumentHandler(ObservableDocument doc, String blipId) {
+      this.doc = doc;
+      this.blipId = blipId;
+    }
+
+    void setDelta(DeltaEvents delta) {
+      current = delta;
+    }
+
+    @Override
+    public void onDocumentEvents(EventBundle<N, E, T> event) {
+      for (DocumentEvent<N, E, T> eventComponent : event.getEventComponents()) {
+        if (eventComponent.getType() == DocumentEvent.Type.ANNOTATION_CHANGED) {
+          AnnotationChanged<N, E, T> annotationChanged =
+              (AnnotationChanged<N, E, T>) eventComponent;
+          current.events.add(new RawEvent(Kind.ANNOTATION_CHANGED, null, null, blipId,
+              annotationChanged.key, annotationChanged.newValue));
+        } else if (!documentChangedRecorded) {
+          current.events.add(new RawEvent(Kind.DOCUMENT_CHANGED, null, null, blipId, null, null));
+          documentChangedRecorded = true;
+        }
+      }
+    }
+  }
+
+  private final ConversationUtil conversationUtil;
+  private final Cache<ExtractionKey, Extraction> extractions;
+
+  /**
+   * Constructs a new {@link DeltaEventExtractor}.
+   *
+   * @param conversationUtil used to create conversations.
+   */
+  public DeltaEventExtractor(ConversationUtil conversationUtil) {
+    this.conversationUtil = conversationUtil;
+    this.extractions = CacheBuilder.newBuilder()
+        .maximumSize(CACHE_SIZE)
+        .expireAfterWrite(CACHE_EXPIRY_SECONDS, TimeUnit.SECONDS)
+        .<ExtractionKey, Extraction>build();
+  }
+
+  /**
+   * Returns the extraction for the given wavelet and deltas, replaying the
+   * deltas only if no robot has done so for the same version range yet.
+   *
+   * @param waveletAndDeltas the wavelet and deltas to extract events from.
+   * @throws IllegalStateException if the deltas fail to apply.
+   */
+  public Extraction extract(final WaveletAndDeltas waveletAndDeltas) {
+    // Empty sequences have nothing to replay and are not worth sharing.
+    if (waveletAndDeltas.getDeltas().isEmpty()) {
+      return replay(waveletAndDeltas);
+    }
+    ExtractionKey key = new ExtractionKey(
+        WaveletDataUtil.waveletNameOf(waveletAndDeltas.getSnapshotBeforeDeltas()),
+        waveletAndDeltas.getDeltas().getStartVersion(),
+        waveletAndDeltas.getDeltas().getEndVersion());
+    try {
+      return extractions.get(key, new Callable<Extraction>() {
+        @Override
+        public Extraction call() {
+          return replay(waveletAndDeltas);
+        }
+      });
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("Failed to extract events", e.getCause());
+    } catch (UncheckedExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * Returns the number of extractions currently shared between robots.
+   */
+  @VisibleForTesting
+  long cachedExtractionCount() {
+    return extractions.size();
+  }
+
+  /**
+   * Replays the deltas against a copy of the snapshot before the deltas.
+   */
+  private Extraction replay(WaveletAndDeltas waveletAndDeltas) {
+    ObservableWaveletData snapshot =
+        WaveletDataUtil.copyWavelet(waveletAndDeltas.getSnapshotBeforeDeltas());
+
+    // Sending any operations will cause an exception.
+    OpBasedWavelet wavelet =
+        new OpBasedWavelet(snapshot.getWaveId(), snapshot,
+            // This doesn't thrown an exception, the sinks will
+            new BasicWaveletOperationContextFactory(null),
+            ParticipationHelper.DEFAULT, SilentOperationSink.VOID, SilentOperationSink.VOID);
+
+    ObservableConversation conversation = getRootConversation(wavelet);
+    if (conversation == null) {
+      return new Extraction(wavelet, null, ImmutableList.<DeltaEvents>of());
+    }
+
+    RecordingConversationListener conversationListener =
+        new RecordingConversationListener(conversation);
+    conversation.addListener(conversationListener);
+
+    List<DeltaEvents> deltaEvents = Lists.newArrayList();
+    Map<String, RecordingDocumentHandler> docHandlers = Maps.newHashMap();
+    try {
+      for (TransformedWaveletDelta delta : waveletAndDeltas.getDeltas()) {
+        // TODO(ljvderijk): Set correct timestamp and hashed version once
+        // wavebus sends them along
+        DeltaEvents current = new DeltaEvents(delta.getAuthor(), 0L);
+        conversationListener.deltaBegin(current);
+
+        for (WaveletOperation op : delta) {
+          if (op instanceof WaveletBlipOperation) {
+            attachDocHandler(conversation, (WaveletBlipOperation) op, docHandlers, current);
+          }
+          op.apply(snapshot);
+        }
+        conversationListener.deltaEnd();
+        deltaEvents.add(current);
+      }
+    } catch (OperationException e) {
+      throw new IllegalStateException("Operation failed to apply when generating events", e);
+    } finally {
+      conversation.removeListener(conversationListener);
+      for (RecordingDocumentHandler docHandler : docHandlers.values()) {
+        docHandler.doc.removeListener(docHandler);
+      }
+    }
+    return new Extraction(wavelet, conversation, deltaEvents);
+  }
+
+  /**
+   * Attaches a doc handler to the blip the operation applies to, ignoring
+   * documents outside the conversation such as tags and robot data docs.
+   */
+  private static void attachDocHandler(ObservableConversation conversation,
+      WaveletBlipOperation op, Map<String, RecordingDocumentHandler> docHandlers,
+      DeltaEvents current) {
+    ObservableConversationBlip blip = conversation.getBlip(op.getBlipId());
+    if (blip != null) {
+      RecordingDocumentHandler docHandler = docHandlers.get(blip.getId());
+      if (docHandler == null) {
+        ObservableDocument doc = (ObservableDocument) blip.getContent();
+        docHandler = new RecordingDocumentHandler(doc, blip.getId());
+        doc.addListener(docHandler);
+        docHandlers.put(blip.getId(), docHandler);
+      }
+      docHandler.setDelta(current);
+    }
+  }
+
+  /**
+   * Returns the root conversation from the given wavelet. Or null if there is
+   * none.
+   *
+   * @param wavelet the wavelet to get the conversation from.
+   */
+  private ObservableConversation getRootConversation(ObservableWavelet wavelet) {
+    if (!WaveletBasedConversation.waveletHasConversation(wavelet)) {
+      // No conversation present, bail.
+      return null;
+    }
+
+    ObservableConversation conversation = conversationUtil.buildConversation(wavelet).getRoot();
+    if (conversation.getRootThread().getFirstBlip() == null) {
+      // No root blip is present, this will cause Robot API code
+      // to fail when resolving the context of events. This might be fixed later
+      // on by making changes to the ContextResolver.
+      return null;
+    }
+    return conversation;
+  }
+}
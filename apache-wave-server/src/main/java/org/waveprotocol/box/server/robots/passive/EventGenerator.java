@@ -19,10 +19,9 @@
 
 package org.waveprotocol.box.server.robots.passive;
 
-import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.google.wave.api.Context;
 import com.google.wave.api.data.converter.ContextResolver;
 import com.google.wave.api.data.converter.EventDataConverter;
@@ -40,37 +39,15 @@ import com.google.wave.api.impl.EventMessageBundleImpl;
 import com.google.wave.api.robot.Capability;
 import com.google.wave.api.robot.RobotName;
 
+import org.waveprotocol.box.server.robots.passive.DeltaEventExtractor.DeltaEvents;
+import org.waveprotocol.box.server.robots.passive.DeltaEventExtractor.Extraction;
+import org.waveprotocol.box.server.robots.passive.DeltaEventExtractor.RawEvent;
 import org.waveprotocol.box.server.robots.util.ConversationUtil;
-import org.waveprotocol.box.server.util.WaveletDataUtil;
-import org.waveprotocol.wave.model.conversation.Conversation;
-import org.waveprotocol.wave.model.conversation.ConversationBlip;
-import org.waveprotocol.wave.model.conversation.ConversationListenerImpl;
-import org.waveprotocol.wave.model.conversation.ObservableConversation;
-import org.waveprotocol.wave.model.conversation.ObservableConversationBlip;
-import org.waveprotocol.wave.model.conversation.WaveletBasedConversation;
-import org.waveprotocol.wave.model.document.DocHandler;
-import org.waveprotocol.wave.model.document.ObservableDocument;
-import org.waveprotocol.wave.model.document.Doc.E;
-import org.waveprotocol.wave.model.document.Doc.N;
-import org.waveprotocol.wave.model.document.Doc.T;
-import org.waveprotocol.wave.model.document.indexed.DocumentEvent;
-import org.waveprotocol.wave.model.document.indexed.DocumentEvent.AnnotationChanged;
-import org.waveprotocol.wave.model.operation.OperationException;
-import org.waveprotocol.wave.model.operation.SilentOperationSink;
-import org.waveprotocol.wave.model.operation.wave.BasicWaveletOperationContextFactory;
-import org.waveprotocol.wave.model.operation.wave.TransformedWaveletDelta;
-import org.waveprotocol.wave.model.operation.wave.WaveletBlipOperation;
-import org.waveprotocol.wave.model.operation.wave.WaveletOperation;
-import org.waveprotocol.wave.model.wave.ObservableWavelet;
 import org.waveprotocol.wave.model.wave.ParticipantId;
-import org.waveprotocol.wave.model.wave.ParticipationHelper;
-import org.waveprotocol.wave.model.wave.WaveletListener;
-import org.waveprotocol.wave.model.wave.data.ObservableWaveletData;
-import org.waveprotocol.wave.model.wave.opbased.OpBasedWavelet;
-import org.waveprotocol.wave.model.wave.opbased.WaveletListenerImpl;
 
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Generates Robot API Events from operations applied to a Wavelet.
@@ -91,224 +68,15 @@ import java.util.Map;
  * <li>WaveletTitleChanged (TBD)</li>
  * <li>BlipSubmitted (Will not be supported, submit ops will be phased out)</li>
  *
+ * <p>
+ * The deltas are replayed once per version range by the shared
+ * {@link DeltaEventExtractor}; this class only filters the extracted changes
+ * by the capabilities and identity of its robot.
+ *
  * @author ljvderijk@google.com (Lennard de Rijk)
  */
 public class EventGenerator {
 
-  private static class EventGeneratingWaveletListener extends WaveletListenerImpl {
-    @SuppressWarnings("unused")
-    private final Map<EventType, Capability> capabilities;
-
-    /**
-     * Creates a {@link WaveletListener} which will generate events according to
-     * the capabilities.
-     *
-     * @param capabilities the capabilities which we are interested in.
-     */
-    public EventGeneratingWaveletListener(Map<EventType, Capability> capabilities) {
-      this.capabilities = capabilities;
-    }
-    // TODO(ljvderijk): implement more events. This class should listen for
-    // non-conversational blip changes and robot data documents as indicated by
-    // IdConstants.ROBOT_PREFIX
-  }
-
-  private class EventGeneratingConversationListener extends ConversationListenerImpl {
-    private final Map<EventType, Capability> capabilities;
-    private final Conversation conversation;
-    private final EventMessageBundle messages;
-
-    // Event collectors
-    private final List<String> participantsAdded = Lists.newArrayList();
-    private final List<String> participantsRemoved = Lists.newArrayList();
-
-    // Changes for each delta
-    private ParticipantId deltaAuthor;
-    private Long deltaTimestamp;
-
-    /**
-     * Creates a {@link ObservableConversation.Listener} which will generate
-     * events according to the capabilities.
-     *
-     * @param conversation the conversation we are observing.
-     * @param capabilities the capabilities which we are interested in.
-     * @param messages the bundle to put the events in.
-     */
-    public EventGeneratingConversationListener(Conversation conversation,
-        Map<EventType, Capability> capabilities, EventMessageBundle messages, RobotName robotName) {
-      this.conversation = conversation;
-      this.capabilities = capabilities;
-      this.messages = messages;
-    }
-
-    /**
-     * Prepares this listener for events coming from a single delta.
-     *
-     * @param author the author of the delta.
-     * @param timestamp the timestamp of the delta.
-     */
-    public void deltaBegin(ParticipantId author, long timestamp) {
-      Preconditions.checkState(
-          deltaAuthor == null && deltaTimestamp == null, "DeltaEnd wasn't called");
-      Preconditions.checkNotNull(author, "Author should not be null");
-      Preconditions.checkNotNull(timestamp, "Timestamp should not be null");
-
-      deltaAuthor = author;
-      deltaTimestamp = timestamp;
-    }
-
-    @Override
-    public void onParticipantAdded(ParticipantId participant) {
-      if (capabilities.containsKey(EventType.WAVELET_PARTICIPANTS_CHANGED)) {
-        boolean removedBefore = participantsRemoved.remove(participant.getAddress());
-        if (!removedBefore) {
-          participantsAdded.add(participant.getAddress());
-        }
-      }
-
-      // This deviates from Google Wave production which always sends this
-      // event, even if it wasn't present in your capabilities.
-      if (capabilities.containsKey(EventType.WAVELET_SELF_ADDED) && participant.equals(robotId)) {
-        // The robot has been added
-        String rootBlipId = ConversationUtil.getRootBlipId(conversation);
-        WaveletSelfAddedEvent event = new WaveletSelfAddedEvent(
-            null, null, deltaAuthor.getAddress(), deltaTimestamp, rootBlipId);
-        addEvent(event, capabilities, rootBlipId, messages);
-      }
-    }
-
-    @Override
-    public void onParticipantRemoved(ParticipantId participant) {
-      if (capabilities.containsKey(EventType.WAVELET_PARTICIPANTS_CHANGED)) {
-        participantsRemoved.add(participant.getAddress());
-      }
-
-      if (capabilities.containsKey(EventType.WAVELET_SELF_REMOVED) && participant.equals(robotId)) {
-        String rootBlipId = ConversationUtil.getRootBlipId(conversation);
-        WaveletSelfRemovedEvent event = new WaveletSelfRemovedEvent(
-            null, null, deltaAuthor.getAddress(), deltaTimestamp, rootBlipId);
-        addEvent(event, capabilities, rootBlipId, messages);
-      }
-    }
-
-    @Override
-    public void onBlipAdded(ObservableConversationBlip blip) {
-      if (capabilities.containsKey(EventType.WAVELET_BLIP_CREATED)) {
-        String rootBlipId = ConversationUtil.getRootBlipId(conversation);
-        WaveletBlipCreatedEvent event = new WaveletBlipCreatedEvent(
-            null, null, deltaAuthor.getAddress(), deltaTimestamp, rootBlipId, blip.getId());
-        addEvent(event, capabilities, rootBlipId, messages);
-      }
-    }
-
-    @Override
-    public void onBlipDeleted(ObservableConversationBlip blip) {
-      if (capabilities.containsKey(EventType.WAVELET_BLIP_REMOVED)) {
-        String rootBlipId = ConversationUtil.getRootBlipId(conversation);
-        WaveletBlipRemovedEvent event = new WaveletBlipRemovedEvent(
-            null, null, deltaAuthor.getAddress(), deltaTimestamp, rootBlipId, blip.getId());
-        addEvent(event, capabilities, rootBlipId, messages);
-      }
-    }
-
-    /**
-     * Generates the events that are collected over the span of one delta.
-     */
-    public void deltaEnd() {
-      if (!participantsAdded.isEmpty() || !participantsRemoved.isEmpty()) {
-        String rootBlipId = ConversationUtil.getRootBlipId(conversation);
-
-        WaveletParticipantsChangedEvent event =
-            new WaveletParticipantsChangedEvent(null, null, deltaAuthor.getAddress(),
-                deltaTimestamp, rootBlipId, participantsAdded, participantsRemoved);
-        addEvent(event, capabilities, rootBlipId, messages);
-      }
-      clearOncePerDeltaCollectors();
-
-      deltaAuthor = null;
-      deltaTimestamp = null;
-    }
-
-    /**
-     * Clear the data structures responsible for collecting data for events that
-     * should only be fired once per delta.
-     */
-    private void clearOncePerDeltaCollectors() {
-      participantsAdded.clear();
-      participantsRemoved.clear();
-    }
-  }
-
-  private class EventGeneratingDocumentHandler implements DocHandler {
-
-    /** Public so we can manage the subscription */
-    public final ObservableDocument doc;
-
-    private final ConversationBlip blip;
-    private final Map<EventType, Capability> capabilities;
-    private final EventMessageBundle messages;
-    private ParticipantId deltaAuthor;
-    private Long deltaTimestamp;
-
-    /**
-     * Set to true if a {@link DocumentChangedEvent} has been generated by this
-     * handler.
-     */
-    private boolean documentChangedEventGenerated;
-
-    public EventGeneratingDocumentHandler(ObservableDocument doc, ConversationBlip blip,
-        Map<EventType, Capability> capabilities, EventMessageBundle messages,
-        ParticipantId deltaAuthor, Long deltaTimestamp) {
-      this.doc = doc;
-      this.blip = blip;
-      this.capabilities = capabilities;
-      this.messages = messages;
-      setAuthorAndTimeStamp(deltaAuthor, deltaTimestamp);
-    }
-
-    @Override
-    public void onDocumentEvents(EventBundle<N, E, T> event) {
-      Iterable<DocumentEvent<N, E, T>> eventComponents = event.getEventComponents();
-
-      for (DocumentEvent<N, E, T> eventComponent : eventComponents) {
-        if (eventComponent.getType() == DocumentEvent.Type.ANNOTATION_CHANGED) {
-          if (capabilities.containsKey(EventType.ANNOTATED_TEXT_CHANGED)) {
-            AnnotationChanged<N, E, T> anotationChangedEvent =
-                (AnnotationChanged<N, E, T>) eventComponent;
-            AnnotatedTextChangedEvent apiEvent =
-                new AnnotatedTextChangedEvent(null, null, deltaAuthor.getAddress(), deltaTimestamp,
-                    blip.getId(), anotationChangedEvent.key, anotationChangedEvent.newValue);
-            addEvent(apiEvent, capabilities, blip.getId(), messages);
-          }
-        } else {
-          if (capabilities.containsKey(EventType.DOCUMENT_CHANGED)
-              && !documentChangedEventGenerated) {
-            DocumentChangedEvent apiEvent = new DocumentChangedEvent(
-                null, null, deltaAuthor.getAddress(), deltaTimestamp, blip.getId());
-            addEvent(apiEvent, capabilities, blip.getId(), messages);
-            // Only one documentChangedEvent should be generated per bundle.
-            documentChangedEventGenerated = true;
-          }
-        }
-      }
-    }
-
-    /**
-     * Sets the author and timestamp for the events that will be coming in.
-     * Should be changed at least for every delta that will touch the document
-     * that the handler is listening to.
-     *
-     * @param author the author of the delta.
-     * @param timestamp the timestamp at which the delta is applied.
-     */
-    public void setAuthorAndTimeStamp(ParticipantId author, long timestamp) {
-      Preconditions.checkNotNull(author, "Author should not be null");
-      Preconditions.checkNotNull(timestamp, "Timestamp should not be null");
-      this.deltaAuthor = author;
-      this.deltaTimestamp = timestamp;
-    }
-  }
-
   /**
    * Adds an {@link Event} to the given {@link EventMessageBundle}.
    *
@@ -379,8 +147,8 @@ public class EventGenerator {
    */
   private final RobotName robotName;
 
-  /** Used to create conversations. */
-  private final ConversationUtil conversationUtil;
+  /** Replays deltas, possibly shared with the other robots on a wavelet. */
+  private final DeltaEventExtractor extractor;
 
   /**
    * Indicates that robot was removed from wavelet and thus event processing
@@ -391,14 +159,26 @@ public class EventGenerator {
   private final ParticipantId robotId;
 
   /**
-   * Constructs a new {@link EventGenerator} for the robot with the given name.
+   * Constructs a new {@link EventGenerator} for the robot with the given name,
+   * which replays deltas on its own.
    *
    * @param robotName the name of the robot.
    * @param conversationUtil used to create conversations.
    */
   public EventGenerator(RobotName robotName, ConversationUtil conversationUtil) {
+    this(robotName, new DeltaEventExtractor(conversationUtil));
+  }
+
+  /**
+   * Constructs a new {@link EventGenerator} for the robot with the given name.
+   *
+   * @param robotName the name of the robot.
+   * @param extractor the extractor which replays the deltas, shared between
+   *        the robots of a gateway.
+   */
+  public EventGenerator(RobotName robotName, DeltaEventExtractor extractor) {
     this.robotName = robotName;
-    this.conversationUtil = conversationUtil;
+    this.extractor = extractor;
     this.robotId = ParticipantId.ofUnsafe(robotName.toParticipantAddress());
   }
 
@@ -414,62 +194,79 @@ public class EventGenerator {
   public EventMessageBundle generateEvents(WaveletAndDeltas waveletAndDeltas,
       Map<EventType, Capability> capabilities, EventDataConverter converter) {
     EventMessageBundle messages = new EventMessageBundleImpl(robotName.toEmailAddress(), "");
-    ObservableWaveletData snapshot =
-        WaveletDataUtil.copyWavelet(waveletAndDeltas.getSnapshotBeforeDeltas());
-    isEventProcessingSuspended = !snapshot.getParticipants().contains(robotId);
+    isEventProcessingSuspended =
+        !waveletAndDeltas.getSnapshotBeforeDeltas().getParticipants().contains(robotId);
 
     if (robotName.hasProxyFor()) {
       // This robot is proxying so set the proxy field.
       messages.setProxyingFor(robotName.getProxyFor());
     }
 
-    // Sending any operations will cause an exception.
-    OpBasedWavelet wavelet =
-        new OpBasedWavelet(snapshot.getWaveId(), snapshot,
-            // This doesn't thrown an exception, the sinks will
-            new BasicWaveletOperationContextFactory(null),
-            ParticipationHelper.DEFAULT, SilentOperationSink.VOID, SilentOperationSink.VOID);
-
-    ObservableConversation conversation = getRootConversation(wavelet);
-
-    if (conversation == null) {
+    Extraction extraction = extractor.extract(waveletAndDeltas);
+    if (extraction.getConversation() == null) {
       return messages;
     }
 
-    // Start listening
-    EventGeneratingConversationListener conversationListener =
-        new EventGeneratingConversationListener(conversation, capabilities, messages, robotName);
-    conversation.addListener(conversationListener);
-    EventGeneratingWaveletListener waveletListener =
-        new EventGeneratingWaveletListener(capabilities);
-    wavelet.addListener(waveletListener);
-
-    Map<String, EventGeneratingDocumentHandler> docHandlers = Maps.newHashMap();
-    try {
-      for (TransformedWaveletDelta delta : waveletAndDeltas.getDeltas()) {
-        // TODO(ljvderijk): Set correct timestamp and hashed version once
-        // wavebus sends them along
-        long timestamp = 0L;
-        conversationListener.deltaBegin(delta.getAuthor(), timestamp);
-
-        for (WaveletOperation op : delta) {
-          // Check if we need to attach a doc handler.
-          if ((op instanceof WaveletBlipOperation)) {
-            attachDocHandler(conversation, op, docHandlers, capabilities, messages,
-                delta.getAuthor(), timestamp);
-          }
-          op.apply(snapshot);
+    Set<String> documentChangedBlips = Sets.newHashSet();
+    List<String> participantsAdded = Lists.newArrayList();
+    List<String> participantsRemoved = Lists.newArrayList();
+    for (DeltaEvents delta : extraction.getDeltas()) {
+      String author = delta.getAuthor().getAddress();
+      long timestamp = delta.getTimestamp();
+      for (RawEvent rawEvent : delta.getEvents()) {
+        switch (rawEvent.getKind()) {
+          case PARTICIPANT_ADDED:
+            onParticipantAdded(rawEvent, author, timestamp, capabilities, messages,
+                participantsAdded, participantsRemoved);
+            break;
+          case PARTICIPANT_REMOVED:
+            onParticipantRemoved(rawEvent, author, timestamp, capabilities, messages,
+                participantsRemoved);
+            break;
+          case BLIP_ADDED:
+            if (capabilities.containsKey(EventType.WAVELET_BLIP_CREATED)) {
+              addEvent(new WaveletBlipCreatedEvent(null, null, author, timestamp,
+                  rawEvent.getRootBlipId(), rawEvent.getBlipId()),
+                  capabilities, rawEvent.getRootBlipId(), messages);
+            }
+            break;
+          case BLIP_DELETED:
+            if (capabilities.containsKey(EventType.WAVELET_BLIP_REMOVED)) {
+              addEvent(new WaveletBlipRemovedEvent(null, null, author, timestamp,
+                  rawEvent.getRootBlipId(), rawEvent.getBlipId()),
+                  capabilities, rawEvent.getRootBlipId(), messages);
+            }
+            break;
+          case DOCUMENT_CHANGED:
+            // Only one documentChangedEvent should be generated per bundle.
+            if (capabilities.containsKey(EventType.DOCUMENT_CHANGED)
+                && documentChangedBlips.add(rawEvent.getBlipId())) {
+              addEvent(new DocumentChangedEvent(null, null, author, timestamp,
+                  rawEvent.getBlipId()), capabilities, rawEvent.getBlipId(), messages);
+            }
+            break;
+          case ANNOTATION_CHANGED:
+            if (capabilities.containsKey(EventType.ANNOTATED_TEXT_CHANGED)) {
+              addEvent(new AnnotatedTextChangedEvent(null, null, author, timestamp,
+                  rawEvent.getBlipId(), rawEvent.getAnnotationKey(),
+                  rawEvent.getAnnotationValue()), capabilities, rawEvent.getBlipId(), messages);
+            }
+            break;
+          default:
+            throw new IllegalStateException("Unknown event kind " + rawEvent.getKind());
         }
-        conversationListener.deltaEnd();
       }
-    } catch (OperationException e) {
-      throw new IllegalStateException("Operation failed to apply when generating events", e);
-    } finally {
-      conversation.removeListener(conversationListener);
-      wavelet.removeListener(waveletListener);
-      for (EventGeneratingDocumentHandler docHandler : docHandlers.values()) {
-        docHandler.doc.removeListener(docHandler);
+
+      // Participant changes are collected over the span of one delta.
+      if (!participantsAdded.isEmpty() || !participantsRemoved.isEmpty()) {
+        String rootBlipId = delta.getRootBlipIdAtEnd();
+        WaveletParticipantsChangedEvent event =
+            new WaveletParticipantsChangedEvent(null, null, author, timestamp, rootBlipId,
+                Lists.newArrayList(participantsAdded), Lists.newArrayList(participantsRemoved));
+        addEvent(event, capabilities, rootBlipId, messages);
       }
+      participantsAdded.clear();
+      participantsRemoved.clear();
     }
 
     if (messages.getEvents().isEmpty()) {
@@ -478,67 +275,50 @@ public class EventGenerator {
     }
 
     // Resolve the context of the bundle now that all events have been
-    // processed.
-    ContextResolver.resolveContext(messages, wavelet, conversation, converter);
+    // processed. The extraction may be shared with other robot threads.
+    synchronized (extraction) {
+      ContextResolver.resolveContext(
+          messages, extraction.getWavelet(), extraction.getConversation(), converter);
+    }
 
     return messages;
   }
 
-  /**
-   * Attaches a doc handler to the blip the operation applies to.
-   *
-   * @param conversation the conversation the op is to be applied to.
-   * @param op the op to be applied
-   * @param docHandlers the list of attached dochandlers.
-   * @param capabilities the capabilities of the robot.
-   * @param messages the bundle to put the generated events in.
-   * @param deltaAuthor the author of the events generated.
-   * @param timestamp the timestamp at which these events occurred.
-   */
-  private void attachDocHandler(ObservableConversation conversation, WaveletOperation op,
-      Map<String, EventGeneratingDocumentHandler> docHandlers,
+  private void onParticipantAdded(RawEvent rawEvent, String author, long timestamp,
       Map<EventType, Capability> capabilities, EventMessageBundle messages,
-      ParticipantId deltaAuthor, long timestamp) {
-    WaveletBlipOperation blipOp = (WaveletBlipOperation) op;
-    String blipId = blipOp.getBlipId();
-    // Ignoring the documents outside the conversation such as tags
-    // and robot data docs.
-    ObservableConversationBlip blip = conversation.getBlip(blipId);
-    if (blip != null) {
-      String blipId1 = blip.getId();
-
-      EventGeneratingDocumentHandler docHandler = docHandlers.get(blipId1);
-      if (docHandler == null) {
-        ObservableDocument doc = (ObservableDocument) blip.getContent();
-        docHandler = new EventGeneratingDocumentHandler(
-            doc, blip, capabilities, messages, deltaAuthor, timestamp);
-        doc.addListener(docHandler);
-        docHandlers.put(blipId1, docHandler);
-      } else {
-        docHandler.setAuthorAndTimeStamp(deltaAuthor, timestamp);
+      List<String> participantsAdded, List<String> participantsRemoved) {
+    ParticipantId participant = rawEvent.getParticipant();
+    if (capabilities.containsKey(EventType.WAVELET_PARTICIPANTS_CHANGED)) {
+      boolean removedBefore = participantsRemoved.remove(participant.getAddress());
+      if (!removedBefore) {
+        participantsAdded.add(participant.getAddress());
       }
     }
+
+    // This deviates from Google Wave production which always sends this
+    // event, even if it wasn't present in your capabilities.
+    if (capabilities.containsKey(EventType.WAVELET_SELF_ADDED) && participant.equals(robotId)) {
+      // The robot has been added
+      String rootBlipId = rawEvent.getRootBlipId();
+      WaveletSelfAddedEvent event =
+          new WaveletSelfAddedEvent(null, null, author, timestamp, rootBlipId);
+      addEvent(event, capabilities, rootBlipId, messages);
+    }
   }
 
-  /**
-   * Returns the root conversation from the given wavelet. Or null if there is
-   * none.
-   *
-   * @param wavelet the wavelet to get the conversation from.
-   */
-  private ObservableConversation getRootConversation(ObservableWavelet wavelet) {
-    if (!WaveletBasedConversation.waveletHasConversation(wavelet)) {
-      // No conversation present, bail.
-      return null;
+  private void onParticipantRemoved(RawEvent rawEvent, String author, long timestamp,
+      Map<EventType, Capability> capabilities, EventMessageBundle messages,
+      List<String> participantsRemoved) {
+    ParticipantId participant = rawEvent.getParticipant();
+    if (capabilities.containsKey(EventType.WAVELET_PARTICIPANTS_CHANGED)) {
+      participantsRemoved.add(participant.getAddress());
     }
 
-    ObservableConversation conversation = conversationUtil.buildConversation(wavelet).getRoot();
-    if (conversation.getRootThread().getFirstBlip() == null) {
-      // No root blip is present, this will cause Robot API code
-      // to fail when resolving the context of events. This might be fixed later
-      // on by making changes to the ContextResolver.
-      return null;
+    if (capabilities.containsKey(EventType.WAVELET_SELF_REMOVED) && participant.equals(robotId)) {
+      String rootBlipId = rawEvent.getRootBlipId();
+      WaveletSelfRemovedEvent event =
+          new WaveletSelfRemovedEvent(null, null, author, timestamp, rootBlipId);
+      addEvent(event, capabilities, rootBlipId, messages);
     }
-    return conversation;
   }
 }
@@ -20,6 +20,8 @@
 package org.waveprotocol.box.server.robots.passive;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.google.inject.Inject;
@@ -35,6 +37,7 @@ import org.waveprotocol.box.server.account.RobotAccountData;
 import org.waveprotocol.box.server.persistence.AccountStore;
 import org.waveprotocol.box.server.persistence.PersistenceException;
 import org.waveprotocol.box.server.robots.operations.NotifyOperationService;
+import org.waveprotocol.box.server.robots.register.RobotRegistrar;
 import org.waveprotocol.box.server.robots.util.ConversationUtil;
 import org.waveprotocol.box.server.waveserver.WaveBus;
 import org.waveprotocol.box.server.waveserver.WaveletProvider;
@@ -51,18 +54,28 @@ import org.waveprotocol.wave.util.logging.Log;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
 
 /**
  * Gateway for the Passive Robot API, this class can be subscribed to the
  * WaveBus and fires of separate threads to handle any updates for Robots.
+ * It also listens to the {@link RobotRegistrar} so that robots which are
+ * registered or unregistered are seen by the next update.
  *
  * @author ljvderijk@google.com (Lennard de Rijk)
  */
-public class RobotsGateway implements WaveBus.Subscriber {
+public class RobotsGateway implements WaveBus.Subscriber, RobotRegistrar.Listener {
 
   private static final Log LOG = Log.get(RobotsGateway.class);
 
+  /**
+   * How long a looked up account is reused. Every participant of a wavelet is
+   * looked up on every update, so this bounds the load on the account store.
+   */
+  private static final long ACCOUNT_CACHE_EXPIRY_SECONDS = 60;
+  private static final long ACCOUNT_CACHE_SIZE = 10000;
+
   private final WaveletProvider waveletProvider;
   private final AccountStore accountStore;
   private final EventDataConverterManager converterManager;
@@ -71,7 +84,19 @@ public class RobotsGateway implements WaveBus.Subscriber {
   private final Set<RobotName> runnableRobots = Sets.newHashSet();
   private final Executor executor;
   private final ConversationUtil conversationUtil;
-  private final NotifyOperationService notifyOpService;
+  /** The operation services, shared by all robots. */
+  private final OperationServiceRegistryImpl operationRegistry;
+  /**
+   * Recently looked up accounts. Missing accounts aren't cached, so a robot
+   * registered directly in the account store is seen by the next update.
+   */
+  private final Cache<ParticipantId, AccountData> accountCache =
+      CacheBuilder.newBuilder()
+          .maximumSize(ACCOUNT_CACHE_SIZE)
+          .expireAfterWrite(ACCOUNT_CACHE_EXPIRY_SECONDS, TimeUnit.SECONDS)
+          .build();
+  /** Replays each range of deltas once for all robots on a wavelet. */
+  private final DeltaEventExtractor eventExtractor;
 
   @Inject
   @VisibleForTesting
@@ -85,7 +110,8 @@ public class RobotsGateway implements WaveBus.Subscriber {
     this.connector = connector;
     this.executor = executor;
     this.conversationUtil = conversationUtil;
-    this.notifyOpService = notifyOpService;
+    this.operationRegistry = new OperationServiceRegistryImpl(notifyOpService);
+    this.eventExtractor = new DeltaEventExtractor(conversationUtil);
   }
 
   @Override
@@ -117,7 +143,7 @@ public class RobotsGateway implements WaveBus.Subscriber {
       ParticipantId robotId = ParticipantId.ofUnsafe(robotName.toEmailAddress());
       AccountData account;
       try {
-        account = accountStore.getAccount(robotId);
+        account = getAccount(robotId);
       } catch (PersistenceException e) {
         LOG.severe("Failed to retrieve the account data for " + robotId.getAddress(), e);
         continue;
@@ -158,14 +184,43 @@ public class RobotsGateway implements WaveBus.Subscriber {
    *        {@link RobotName}.
    */
   private Robot createNewRobot(RobotName robotName, RobotAccountData account) {
-    EventGenerator eventGenerator = new EventGenerator(robotName, conversationUtil);
+    EventGenerator eventGenerator = new EventGenerator(robotName, eventExtractor);
     RobotOperationApplicator operationApplicator =
         new RobotOperationApplicator(converterManager, waveletProvider,
-            new OperationServiceRegistryImpl(notifyOpService), conversationUtil);
+            operationRegistry, conversationUtil);
     return new Robot(robotName, account, this, connector, converterManager, waveletProvider,
         eventGenerator, operationApplicator);
   }
 
+  /**
+   * Returns the account of the given participant, looking it up in the
+   * {@link AccountStore} if it hasn't been looked up recently.
+   *
+   * @param participantId the participant to get the account for.
+   * @return the account or null if there is none.
+   * @throws PersistenceException if the account store failed.
+   */
+  private AccountData getAccount(ParticipantId participantId) throws PersistenceException {
+    AccountData account = accountCache.getIfPresent(participantId);
+    if (account == null) {
+      account = accountStore.getAccount(participantId);
+      if (account != null) {
+        accountCache.put(participantId, account);
+      }
+    }
+    return account;
+  }
+
+  @Override
+  public void onRegistrationSuccess(RobotAccountData account) {
+    accountCache.invalidate(account.getId());
+  }
+
+  @Override
+  public void onUnregistrationSuccess(RobotAccountData account) {
+    accountCache.invalidate(account.getId());
+  }
+
   /**
    * Updates a {@link Robot} with information about a waveletUpdate event.
    *
@@ -224,6 +279,7 @@ public class RobotsGateway implements WaveBus.Subscriber {
     String activeApiUrl = "";
     RobotAccountData newAccount = connector.fetchCapabilities(robot.getAccount(), activeApiUrl);
     accountStore.putAccount(newAccount);
+    accountCache.invalidateAll();
     robot.setAccount(newAccount);
   }
 }
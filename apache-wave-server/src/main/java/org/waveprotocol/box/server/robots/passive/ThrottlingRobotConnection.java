@@ -0,0 +1,240 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.waveprotocol.box.server.robots.passive;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.wave.api.robot.RobotConnection;
+import com.google.wave.api.robot.RobotConnectionException;
+
+import org.waveprotocol.box.server.stat.LatencyHistogram;
+import org.waveprotocol.box.stat.Stat;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link RobotConnection} that limits the number of requests in flight to
+ * each robot endpoint and records the latency of every request per endpoint.
+ * An endpoint is identified by the host and port of the robot url, so that a
+ * slow robot can't occupy every connection and thread of the gateway.
+ */
+public class ThrottlingRobotConnection implements RobotConnection {
+
+  /**
+   * Per endpoint concurrency budget and latency histogram.
+   */
+  private static class Endpoint {
+    final Semaphore permits;
+    final LatencyHistogram latency = new LatencyHistogram();
+
+    Endpoint(int maxConcurrentRequests) {
+      permits = new Semaphore(maxConcurrentRequests, true);
+    }
+  }
+
+  /**
+   * Renders the latency histograms of all endpoints, used as a tracked
+   * {@link Stat}.
+   */
+  private class LatencyReport {
+    @Override
+    public String toString() {
+      StringBuilder builder = new StringBuilder();
+      for (Map.Entry<String, LatencyHistogram> entry : getLatencies().entrySet()) {
+        builder.append(entry.getKey()).append(": ").append(entry.getValue()).append("; ");
+      }
+      return builder.toString();
+    }
+  }
+
+  private final RobotConnection delegate;
+  private final int maxConcurrentRequests;
+  private final long acquireTimeoutMs;
+  private final ConcurrentMap<String, Endpoint> endpoints =
+      new ConcurrentHashMap<String, Endpoint>();
+
+  @Stat(name = "robot-endpoint-latency",
+      help = "Latency of the requests sent to each robot endpoint")
+  private final LatencyReport latencyReport = new LatencyReport();
+
+  /**
+   * Constructs a new {@link ThrottlingRobotConnection}.
+   *
+   * @param delegate the connection which performs the requests.
+   * @param maxConcurrentRequests the maximum number of requests in flight to a
+   *        single endpoint.
+   * @param acquireTimeoutMs how long a request waits for a free slot before it
+   *        fails.
+   */
+  public ThrottlingRobotConnection(
+      RobotConnection delegate, int maxConcurrentRequests, long acquireTimeoutMs) {
+    Preconditions.checkArgument(maxConcurrentRequests > 0,
+        "The number of concurrent requests must be positive");
+    this.delegate = delegate;
+    this.maxConcurrentRequests = maxConcurrentRequests;
+    this.acquireTimeoutMs = acquireTimeoutMs;
+  }
+
+  @Override
+  public String get(String url) throws RobotConnectionException {
+    Endpoint endpoint = acquire(url);
+    long start = System.nanoTime();
+    try {
+      return delegate.get(url);
+    } finally {
+      release(endpoint, start);
+    }
+  }
+
+  @Override
+  public ListenableFuture<String> asyncGet(String url) throws RobotConnectionException {
+    Endpoint endpoint = acquire(url);
+    long start = System.nanoTime();
+    boolean submitted = false;
+    try {
+      ListenableFuture<String> future = delegate.asyncGet(url);
+      releaseOnCompletion(future, endpoint, start);
+      submitted = true;
+      return future;
+    } finally {
+      if (!submitted) {
+        release(endpoint, start);
+      }
+    }
+  }
+
+  @Override
+  public String postJson(String url, String jsonBody) throws RobotConnectionException {
+    Endpoint endpoint = acquire(url);
+    long start = System.nanoTime();
+    try {
+      return delegate.postJson(url, jsonBody);
+    } finally {
+      release(endpoint, start);
+    }
+  }
+
+  @Override
+  public ListenableFuture<String> asyncPostJson(String url, String jsonBody)
+      throws RobotConnectionException {
+    Endpoint endpoint = acquire(url);
+    long start = System.nanoTime();
+    boolean submitted = false;
+    try {
+      ListenableFuture<String> future = delegate.asyncPostJson(url, jsonBody);
+      releaseOnCompletion(future, endpoint, start);
+      submitted = true;
+      return future;
+    } finally {
+      if (!submitted) {
+        release(endpoint, start);
+      }
+    }
+  }
+
+  /**
+   * Returns a snapshot of the latency histograms keyed by endpoint.
+   */
+  public Map<String, LatencyHistogram> getLatencies() {
+    ImmutableSortedMap.Builder<String, LatencyHistogram> builder =
+        ImmutableSortedMap.naturalOrder();
+    for (Map.Entry<String, Endpoint> entry : endpoints.entrySet()) {
+      builder.put(entry.getKey(), entry.getValue().latency);
+    }
+    return builder.build();
+  }
+
+  /**
+   * Returns the number of requests currently in flight to the endpoint of the
+   * given url.
+   */
+  @VisibleForTesting
+  int getRequestsInFlight(String url) {
+    Endpoint endpoint = endpoints.get(endpointOf(url));
+    return endpoint == null ? 0 : maxConcurrentRequests - endpoint.permits.availablePermits();
+  }
+
+  /**
+   * Waits for a free slot at the endpoint of the given url.
+   *
+   * @throws RobotConnectionException if no slot became available in time.
+   */
+  private Endpoint acquire(String url) throws RobotConnectionException {
+    String key = endpointOf(url);
+    Endpoint endpoint = endpoints.get(key);
+    if (endpoint == null) {
+      Endpoint newEndpoint = new Endpoint(maxConcurrentRequests);
+      endpoint = endpoints.putIfAbsent(key, newEndpoint);
+      if (endpoint == null) {
+        endpoint = newEndpoint;
+      }
+    }
+    try {
+      if (!endpoint.permits.tryAcquire(acquireTimeoutMs, TimeUnit.MILLISECONDS)) {
+        throw new RobotConnectionException("Too many requests in flight to " + key
+            + ", gave up on " + url + " after " + acquireTimeoutMs + "ms");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RobotConnectionException("Interrupted while waiting to fetch " + url, e);
+    }
+    return endpoint;
+  }
+
+  private static void release(Endpoint endpoint, long start) {
+    endpoint.latency.recordSince(start);
+    endpoint.permits.release();
+  }
+
+  private static void releaseOnCompletion(
+      ListenableFuture<String> future, final Endpoint endpoint, final long start) {
+    future.addListener(new Runnable() {
+      @Override
+      public void run() {
+        release(endpoint, start);
+      }
+    }, MoreExecutors.sameThreadExecutor());
+  }
+
+  /**
+   * Returns the host and port of the given url, or the url itself if it can't
+   * be parsed.
+   */
+  private static String endpointOf(String url) {
+    try {
+      URI uri = new URI(url);
+      if (uri.getHost() == null) {
+        return url;
+      }
+      return uri.getPort() == -1 ? uri.getHost() : uri.getHost() + ":" + uri.getPort();
+    } catch (URISyntaxException e) {
+      return url;
+    }
+  }
+}
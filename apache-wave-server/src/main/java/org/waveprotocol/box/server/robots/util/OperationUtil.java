@@ -20,6 +20,10 @@
 package org.waveprotocol.box.server.robots.util;
 
 import com.google.common.base.Strings;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.google.wave.api.ApiIdSerializer;
 import com.google.wave.api.InvalidRequestException;
 import com.google.wave.api.JsonRpcConstant.ParamsProperty;
@@ -54,8 +58,15 @@ import org.waveprotocol.wave.model.wave.ParticipantId;
 import org.waveprotocol.wave.model.wave.opbased.OpBasedWavelet;
 import org.waveprotocol.wave.util.logging.Log;
 
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
 
 /**
  * {@link OperationRequest} utility methods.
@@ -66,6 +77,28 @@ public class OperationUtil {
 
   private static final Log LOG = Log.get(OperationUtil.class);
 
+  /**
+   * Operations that only read and modify the wavelet named by their
+   * {@link ParamsProperty#WAVE_ID} and {@link ParamsProperty#WAVELET_ID}, and
+   * so can be executed in parallel with operations on other wavelets.
+   */
+  private static final Set<OperationType> SINGLE_WAVELET_OPERATIONS = Sets.immutableEnumSet(
+      OperationType.WAVELET_ADD_PARTICIPANT_NEWSYNTAX,
+      OperationType.WAVELET_REMOVE_PARTICIPANT_NEWSYNTAX,
+      OperationType.WAVELET_APPEND_BLIP,
+      OperationType.WAVELET_SET_TITLE,
+      OperationType.BLIP_CONTINUE_THREAD,
+      OperationType.BLIP_CREATE_CHILD,
+      OperationType.BLIP_DELETE,
+      OperationType.DOCUMENT_APPEND_INLINE_BLIP,
+      OperationType.DOCUMENT_APPEND_MARKUP,
+      OperationType.DOCUMENT_INSERT_INLINE_BLIP,
+      OperationType.DOCUMENT_INSERT_INLINE_BLIP_AFTER_ELEMENT,
+      OperationType.DOCUMENT_MODIFY);
+
+  /** Prefix of fully qualified method names, as sent by some clients. */
+  private static final String WAVE_METHOD_PREFIX = "wave.";
+
   private OperationUtil() {
   }
 
@@ -157,8 +190,8 @@ public class OperationUtil {
     String methodName = operation.getMethod();
 
     // TODO(ljvderijk): This might be removed after the deserialization is fixed
-    if (methodName.startsWith("wave.")) {
-      methodName = methodName.replaceFirst("^wave[.]", "");
+    if (methodName.startsWith(WAVE_METHOD_PREFIX)) {
+      methodName = methodName.substring(WAVE_METHOD_PREFIX.length());
     }
     return OperationType.fromMethodName(methodName);
   }
@@ -189,6 +222,120 @@ public class OperationUtil {
     }
   }
 
+  /**
+   * Executes a bundle of {@link OperationRequest}s in the given context.
+   * Consecutive operations that only touch the wavelet named in their
+   * parameters are grouped per wavelet, and the groups of a run are executed
+   * in parallel on the given executor. Operations within a group keep their
+   * order, and every other operation is a barrier that is executed on its own
+   * after all operations before it have completed.
+   *
+   * <p>
+   * The context must allow operations on different wavelets to be executed
+   * concurrently if the executor isn't a same thread executor.
+   *
+   * @param operations the operations to be executed.
+   * @param operationRegistry the registry containing the operations that can be
+   *        performed.
+   * @param context the context in which the operations are to be executed.
+   * @param author the author of the operations.
+   * @param executor the executor to run groups of operations on.
+   */
+  public static void executeOperations(List<OperationRequest> operations,
+      OperationServiceRegistry operationRegistry, OperationContext context, ParticipantId author,
+      Executor executor) {
+    Map<WaveletName, List<OperationRequest>> groups = Maps.newLinkedHashMap();
+    for (OperationRequest operation : operations) {
+      WaveletName waveletName = getIndependentWaveletName(operation);
+      if (waveletName == null) {
+        executeGroups(groups.values(), operationRegistry, context, author, executor);
+        groups.clear();
+        executeOperation(operation, operationRegistry, context, author);
+      } else {
+        List<OperationRequest> group = groups.get(waveletName);
+        if (group == null) {
+          group = Lists.newArrayList();
+          groups.put(waveletName, group);
+        }
+        group.add(operation);
+      }
+    }
+    executeGroups(groups.values(), operationRegistry, context, author, executor);
+  }
+
+  /**
+   * Returns the name of the single wavelet the operation touches, or null if
+   * the operation may touch other state and so has to be executed in order
+   * with all other operations.
+   */
+  private static WaveletName getIndependentWaveletName(OperationRequest operation) {
+    if (!SINGLE_WAVELET_OPERATIONS.contains(getOperationType(operation))) {
+      return null;
+    }
+    String waveId = getOptionalParameter(operation, ParamsProperty.WAVE_ID);
+    String waveletId = getOptionalParameter(operation, ParamsProperty.WAVELET_ID);
+    if (waveId == null || waveletId == null) {
+      return null;
+    }
+    try {
+      return WaveletName.of(ApiIdSerializer.instance().deserialiseWaveId(waveId),
+          ApiIdSerializer.instance().deserialiseWaveletId(waveletId));
+    } catch (InvalidIdException e) {
+      // Let the operation fail in order.
+      return null;
+    }
+  }
+
+  /**
+   * Executes groups of operations on different wavelets in parallel, the
+   * last group runs on the calling thread. Returns when all groups are done.
+   */
+  private static void executeGroups(Collection<List<OperationRequest>> groups,
+      final OperationServiceRegistry operationRegistry, final OperationContext context,
+      final ParticipantId author, Executor executor) {
+    List<FutureTask<Void>> tasks = Lists.newArrayList();
+    Iterator<List<OperationRequest>> it = groups.iterator();
+    while (it.hasNext()) {
+      final List<OperationRequest> group = it.next();
+      if (!it.hasNext()) {
+        for (OperationRequest operation : group) {
+          executeOperation(operation, operationRegistry, context, author);
+        }
+        break;
+      }
+      FutureTask<Void> task = new FutureTask<Void>(new Runnable() {
+        @Override
+        public void run() {
+          for (OperationRequest operation : group) {
+            executeOperation(operation, operationRegistry, context, author);
+          }
+        }
+      }, null);
+      tasks.add(task);
+      executor.execute(task);
+    }
+    boolean interrupted = false;
+    try {
+      for (FutureTask<Void> task : tasks) {
+        while (true) {
+          try {
+            task.get();
+            break;
+          } catch (InterruptedException e) {
+            // The operations have to finish before the results are handled.
+            interrupted = true;
+          } catch (ExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+          }
+        }
+      }
+    } finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
   /**
    * Submits all deltas to the wavelet provider that are generated by the open
    * wavelets in the {@link OperationResults}.
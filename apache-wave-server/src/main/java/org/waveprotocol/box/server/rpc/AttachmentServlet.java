@@ -19,12 +19,15 @@
 
 package org.waveprotocol.box.server.rpc;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 import java.util.logging.Level;
 
 import org.apache.commons.fileupload.FileItem;
@@ -32,6 +35,7 @@ import org.apache.commons.fileupload.FileItemFactory;
 import org.apache.commons.fileupload.disk.DiskFileItemFactory;
 import org.apache.commons.fileupload.servlet.ServletFileUpload;
 import org.apache.commons.io.FilenameUtils;
+import org.eclipse.jetty.server.HttpOutput;
 import org.waveprotocol.box.server.authentication.SessionManager;
 import org.waveprotocol.box.server.waveserver.WaveletProvider;
 import org.waveprotocol.wave.model.id.InvalidIdException;
@@ -44,7 +48,6 @@ import com.google.inject.name.Named;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
-import java.util.Calendar;
 import java.util.List;
 
 import javax.servlet.ServletException;
@@ -56,6 +59,7 @@ import org.waveprotocol.box.attachment.AttachmentMetadata;
 import org.waveprotocol.box.server.CoreSettings;
 import org.waveprotocol.box.server.attachment.AttachmentService;
 import org.waveprotocol.box.server.persistence.AttachmentStore.AttachmentData;
+import org.waveprotocol.box.server.persistence.AttachmentStore.FileAttachmentData;
 import org.waveprotocol.box.server.persistence.AttachmentUtil;
 import org.waveprotocol.box.server.waveserver.WaveServerException;
 import org.waveprotocol.wave.media.model.AttachmentId;
@@ -79,6 +83,9 @@ public class AttachmentServlet extends HttpServlet {
 
   private static final Log LOG = Log.get(AttachmentServlet.class);
 
+  /** How long clients may reuse an attachment without revalidating it. */
+  private static final int CACHE_MAX_AGE_SECONDS = 7 * 24 * 60 * 60;
+
   private final AttachmentService service;
   private final WaveletProvider waveletProvider;
   private final SessionManager sessionManager;
@@ -134,11 +141,14 @@ public class AttachmentServlet extends HttpServlet {
     }
 
     if (metadata == null) {
-      metadata = service.buildAndStoreMetadataWithThumbnail(attachmentId, waveletName, fileName, null);
+      metadata = service.buildMetadataWithThumbnail(attachmentId, waveletName, fileName, null);
     }
 
     String contentType;
     AttachmentData data;
+    // Attachments and their thumbnails never change once stored, so their ids
+    // make strong validators. Pattern thumbnails get none.
+    String etag = null;
     if (request.getRequestURI().startsWith(ATTACHMENT_URL)) {
       contentType = metadata.getMimeType();
       data = service.getAttachment(attachmentId);
@@ -146,6 +156,7 @@ public class AttachmentServlet extends HttpServlet {
         response.sendError(HttpServletResponse.SC_NOT_FOUND);
         return;
       }
+      etag = makeEtag("a", attachmentId);
     } else if (request.getRequestURI().startsWith(THUMBNAIL_URL)) {
       if (metadata.hasImageMetadata()) {
         contentType = AttachmentService.THUMBNAIL_MIME_TYPE;
@@ -154,6 +165,7 @@ public class AttachmentServlet extends HttpServlet {
           response.sendError(HttpServletResponse.SC_NOT_FOUND);
           return;
         }
+        etag = makeEtag("t", attachmentId);
       } else {
         contentType = THUMBNAIL_PATTERN_FORMAT_NAME;
         data = getThumbnailByContentType(metadata.getMimeType());
@@ -167,12 +179,46 @@ public class AttachmentServlet extends HttpServlet {
       return;
     }
 
+    if (etag != null) {
+      response.setHeader("ETag", etag);
+      response.setHeader("Cache-Control", "private, max-age=" + CACHE_MAX_AGE_SECONDS);
+      if (etagMatches(request.getHeader("If-None-Match"), etag)) {
+        response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        return;
+      }
+    } else {
+      // A pattern may stand in for a thumbnail that is still being built.
+      response.setHeader("Cache-Control", "no-cache");
+    }
+
+    long size = data.getSize();
+    ByteRange range = null;
+    String ifRange = request.getHeader("If-Range");
+    if (ifRange == null || ifRange.trim().equals(etag)) {
+      range = ByteRange.parse(request.getHeader("Range"), size);
+    }
+    if (range == ByteRange.UNSATISFIABLE) {
+      response.setHeader("Content-Range", "bytes */" + size);
+      response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+      return;
+    }
+    long start = 0;
+    long length = size;
+    if (range != null) {
+      start = range.start;
+      length = range.length;
+      response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+      response.setHeader("Content-Range",
+          "bytes " + start + "-" + (start + length - 1) + "/" + size);
+    } else {
+      response.setStatus(HttpServletResponse.SC_OK);
+    }
+
     response.setContentType(contentType);
-    response.setContentLength((int)data.getSize());
+    response.setHeader("Content-Length", Long.toString(length));
+    response.setHeader("Accept-Ranges", "bytes");
     response.setHeader("Content-Disposition", "attachment; filename=\"" + metadata.getFileName() + "\"");
-    response.setStatus(HttpServletResponse.SC_OK);
-    response.setDateHeader("Last-Modified", Calendar.getInstance().getTimeInMillis());
-    AttachmentUtil.writeTo(data.getInputStream(), response.getOutputStream());
+    writeContent(data, start, length, response.getOutputStream());
 
     LOG.info("Fetched attachment with id '" + attachmentId + "'");
   }
@@ -251,6 +297,111 @@ public class AttachmentServlet extends HttpServlet {
     }
   }
 
+  /**
+   * Writes attachment data. Data held in a file is mapped and handed to Jetty,
+   * which writes it to the socket without copying it through the heap.
+   */
+  private static void writeContent(AttachmentData data, long start, long length,
+      OutputStream out) throws IOException {
+    if (data instanceof FileAttachmentData && out instanceof HttpOutput
+        && length <= Integer.MAX_VALUE) {
+      FileChannel channel =
+          new FileInputStream(((FileAttachmentData) data).getFile()).getChannel();
+      try {
+        ((HttpOutput) out).sendContent(channel.map(FileChannel.MapMode.READ_ONLY, start, length));
+      } finally {
+        channel.close();
+      }
+    } else {
+      AttachmentUtil.writeTo(data, start, length, out);
+    }
+  }
+
+  private static String makeEtag(String kind, AttachmentId attachmentId) {
+    return "\"" + kind + ":" + attachmentId.serialise().replace("\"", "") + "\"";
+  }
+
+  /**
+   * Whether an If-None-Match header matches an entity tag, by the weak
+   * comparison that the header calls for.
+   */
+  @VisibleForTesting
+  static boolean etagMatches(String ifNoneMatch, String etag) {
+    if (ifNoneMatch == null) {
+      return false;
+    }
+    for (String candidate : ifNoneMatch.split(",")) {
+      candidate = candidate.trim();
+      if (candidate.startsWith("W/")) {
+        candidate = candidate.substring(2);
+      }
+      if (candidate.equals("*") || candidate.equals(etag)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** A single byte range of a Range header. */
+  @VisibleForTesting
+  static final class ByteRange {
+    /** A range that starts past the end of the data. */
+    static final ByteRange UNSATISFIABLE = new ByteRange(-1, -1);
+
+    final long start;
+    final long length;
+
+    ByteRange(long start, long length) {
+      this.start = start;
+      this.length = length;
+    }
+
+    /**
+     * Parses a Range header against data of a size.
+     *
+     * @return the range, {@link #UNSATISFIABLE}, or null if the whole data is
+     *         to be sent: there is no header, it is malformed, or it asks for
+     *         several ranges, which are not supported.
+     */
+    static ByteRange parse(String header, long size) {
+      if (header == null || !header.startsWith("bytes=") || header.indexOf(',') >= 0) {
+        return null;
+      }
+      String spec = header.substring("bytes=".length()).trim();
+      int dash = spec.indexOf('-');
+      if (dash < 0) {
+        return null;
+      }
+      try {
+        String first = spec.substring(0, dash).trim();
+        String last = spec.substring(dash + 1).trim();
+        if (first.isEmpty()) {
+          // A suffix: the last bytes.
+          long suffix = Long.parseLong(last);
+          if (suffix < 0) {
+            return null;
+          }
+          if (suffix == 0 || size == 0) {
+            return UNSATISFIABLE;
+          }
+          long length = Math.min(suffix, size);
+          return new ByteRange(size - length, length);
+        }
+        long start = Long.parseLong(first);
+        long end = last.isEmpty() ? Long.MAX_VALUE : Long.parseLong(last);
+        if (start < 0 || end < start) {
+          return null;
+        }
+        if (start >= size) {
+          return UNSATISFIABLE;
+        }
+        return new ByteRange(start, Math.min(end, size - 1) - start + 1);
+      } catch (NumberFormatException e) {
+        return null;
+      }
+    }
+  }
+
   private static AttachmentId getAttachmentIdFromRequest(HttpServletRequest request) {
     if (request.getPathInfo().length() == 0) {
       return null;
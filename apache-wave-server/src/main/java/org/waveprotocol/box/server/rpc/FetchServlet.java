@@ -20,22 +20,28 @@
 package org.waveprotocol.box.server.rpc;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
 import com.google.inject.Inject;
 import com.google.protobuf.MessageLite;
 
-import org.waveprotocol.box.common.comms.WaveClientRpc.DocumentSnapshot;
 import org.waveprotocol.box.common.comms.WaveClientRpc.WaveViewSnapshot;
 import org.waveprotocol.box.server.authentication.SessionManager;
 import org.waveprotocol.box.server.common.SnapshotSerializer;
 import org.waveprotocol.box.server.frontend.CommittedWaveletSnapshot;
 import org.waveprotocol.box.server.rpc.ProtoSerializer.SerializationException;
+import org.waveprotocol.box.server.stat.MetricRegistry;
 import org.waveprotocol.box.server.waveserver.WaveServerException;
 import org.waveprotocol.box.server.waveserver.WaveletProvider;
 import org.waveprotocol.wave.model.id.ModernIdSerialiser;
 import org.waveprotocol.wave.model.id.WaveletId;
 import org.waveprotocol.wave.model.id.WaveletIdImpl;
 import org.waveprotocol.wave.model.id.WaveletName;
+import org.waveprotocol.wave.model.util.Pair;
+import org.waveprotocol.wave.model.version.HashedVersion;
 import org.waveprotocol.wave.model.wave.ParticipantId;
+import org.waveprotocol.wave.model.wave.data.ReadableBlipData;
 import org.waveprotocol.wave.model.wave.data.ReadableWaveletData;
 import org.waveprotocol.wave.model.waveref.InvalidWaveRefException;
 import org.waveprotocol.wave.model.waveref.WaveRef;
@@ -43,6 +49,7 @@ import org.waveprotocol.wave.util.escapers.jvm.JavaWaverefEncoder;
 import org.waveprotocol.wave.util.logging.Log;
 
 import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.inject.Singleton;
 import javax.servlet.http.HttpServlet;
@@ -61,24 +68,57 @@ import javax.servlet.http.HttpServletResponse;
  *
  *  The format of the returned information is the protobuf-JSON format used by
  * the websocket interface.
+ *
+ *  Responses carry the hashed version of the wavelet as their ETag, so
+ * browsers revalidate them and get a 304 while the wavelet is unchanged. The
+ * encoded responses are cached by waveref and version, so fetching an
+ * unchanged snapshot again doesn't serialize it again. Cache hits, misses,
+ * 304s and the characters they saved are exported through the
+ * {@link MetricRegistry}.
  */
 @SuppressWarnings("serial")
 @Singleton
 public final class FetchServlet extends HttpServlet {
   private static final Log LOG = Log.get(FetchServlet.class);
 
+  /** The maximum number of characters of encoded snapshots kept. */
+  private static final long MAX_CACHED_CHARS = 16 * 1024 * 1024;
+
   @Inject
   public FetchServlet(
       WaveletProvider waveletProvider, ProtoSerializer serializer, SessionManager sessionManager) {
     this.waveletProvider = waveletProvider;
     this.serializer = serializer;
     this.sessionManager = sessionManager;
+    registerGauges();
   }
 
   private final ProtoSerializer serializer;
   private final WaveletProvider waveletProvider;
   private final SessionManager sessionManager;
 
+  /**
+   * The encoded snapshots, by waveref and the version of the wavelet they were
+   * encoded at. Entries of old versions are never hit again and are evicted
+   * as newer ones are added.
+   */
+  private final Cache<Pair<WaveRef, HashedVersion>, String> encodedSnapshots =
+      CacheBuilder.newBuilder()
+          .maximumWeight(MAX_CACHED_CHARS)
+          .weigher(new Weigher<Pair<WaveRef, HashedVersion>, String>() {
+            @Override
+            public int weigh(Pair<WaveRef, HashedVersion> key, String json) {
+              return json.length();
+            }
+          })
+          .build();
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong notModified = new AtomicLong();
+  private final AtomicLong charsNotEncoded = new AtomicLong();
+  private final AtomicLong charsNotSent = new AtomicLong();
+
   /**
    * Create an http response to the fetch query. Main entrypoint for this class.
    */
@@ -101,30 +141,54 @@ public final class FetchServlet extends HttpServlet {
       return;
     }
 
-    renderSnapshot(waveref, user, response);
+    renderSnapshot(waveref, user, req.getHeader("If-None-Match"), response);
   }
 
-  private void serializeObjectToServlet(MessageLite message, HttpServletResponse dest)
-      throws IOException {
-    if (message == null) {
-      // Snapshot is null. It would be nice to 404 here, but we can't let
-      // clients guess valid wavelet ids that they're not authorized to access.
-      dest.sendError(HttpServletResponse.SC_FORBIDDEN);
-    } else {
-      dest.setStatus(HttpServletResponse.SC_OK);
-      dest.setContentType("application/json");
-
-      // This is a hack to make sure the fetched data is fresh.
-      // TODO(josephg): Change this so that browsers can cache wave snapshots. Probably need:
-      // 'Cache-Control: must-revalidate, private' and an ETag with the wave[let]'s version.
-      dest.setHeader("Cache-Control", "no-store");
+  /**
+   * Returns the entity tag of the snapshots of a wavelet at a version.
+   */
+  @VisibleForTesting
+  static String getEntityTag(HashedVersion version) {
+    return "\"" + version + "\"";
+  }
 
-      try {
-        dest.getWriter().append(serializer.toJson(message).toString());
-      } catch (SerializationException e) {
-        throw new IOException(e);
+  /**
+   * Returns whether the value of an If-None-Match header matches an entity
+   * tag. Weak tags match too, as the header only takes weak comparison.
+   */
+  @VisibleForTesting
+  static boolean matchesEntityTag(String ifNoneMatch, String etag) {
+    if (ifNoneMatch == null) {
+      return false;
+    }
+    for (String tag : ifNoneMatch.split(",")) {
+      tag = tag.trim();
+      if (tag.startsWith("W/")) {
+        tag = tag.substring(2);
+      }
+      if (tag.equals("*") || tag.equals(etag)) {
+        return true;
       }
     }
+    return false;
+  }
+
+  private void writeJson(String json, String etag, HttpServletResponse dest) throws IOException {
+    dest.setStatus(HttpServletResponse.SC_OK);
+    dest.setContentType("application/json");
+    if (etag != null) {
+      setCacheHeaders(etag, dest);
+    } else {
+      dest.setHeader("Cache-Control", "no-store");
+    }
+    dest.getWriter().append(json);
+  }
+
+  private static void setCacheHeaders(String etag, HttpServletResponse dest) {
+    // Browsers may keep the snapshot, but must check it is still current
+    // before using it.
+    dest.setHeader("Cache-Control", "private, max-age=0, must-revalidate");
+    dest.setHeader("ETag", etag);
   }
 
   /**
@@ -132,11 +196,12 @@ public final class FetchServlet extends HttpServlet {
    *
    * @param waveref The referenced wave. Could be a whole wave, a wavelet or
    *        just a document.
+   * @param ifNoneMatch The If-None-Match header of the request, or null.
    * @param dest The servlet response to render the snapshot out to.
    * @throws IOException
    */
-  private void renderSnapshot(WaveRef waveref, ParticipantId requester, HttpServletResponse dest)
-      throws IOException {
+  private void renderSnapshot(WaveRef waveref, ParticipantId requester, String ifNoneMatch,
+      HttpServletResponse dest) throws IOException {
     // TODO(josephg): Its currently impossible to fetch all wavelets inside a
     // wave that are visible to the user. Until this is fixed, if no wavelet is
     // specified we'll just return the conv+root.
@@ -156,34 +221,119 @@ public final class FetchServlet extends HttpServlet {
     } catch (WaveServerException e) {
       throw new IOException(e);
     }
-    if (committedSnapshot != null) {
-      ReadableWaveletData snapshot = committedSnapshot.snapshot;
-      if (waveref.hasDocumentId()) {
-        // We have a wavelet id and document id. Find the document in the
-        // snapshot and return it.
-        DocumentSnapshot docSnapshot = null;
-        for (String docId : snapshot.getDocumentIds()) {
-          if (docId.equals(waveref.getDocumentId())) {
-            docSnapshot = SnapshotSerializer.serializeDocument(snapshot.getDocument(docId));
-            break;
-          }
-        }
-        serializeObjectToServlet(docSnapshot, dest);
-      } else if (waveref.hasWaveletId()) {
-        // We have a wavelet id. Pull up the wavelet snapshot and return it.
-        serializeObjectToServlet(SnapshotSerializer.serializeWavelet(snapshot,
-            snapshot.getHashedVersion()), dest);
-      } else {
-        // Wrap the conv+root we fetched earlier in a WaveSnapshot object and
-        // send it.
-        WaveViewSnapshot waveSnapshot = WaveViewSnapshot.newBuilder()
-            .setWaveId(ModernIdSerialiser.INSTANCE.serialiseWaveId(waveref.getWaveId()))
-            .addWavelet(SnapshotSerializer.serializeWavelet(snapshot, snapshot.getHashedVersion()))
-            .build();
-        serializeObjectToServlet(waveSnapshot, dest);
+    if (committedSnapshot == null) {
+      // Snapshot is null. It would be nice to 404 here, but we can't let
+      // clients guess valid wavelet ids that they're not authorized to access.
+      dest.sendError(HttpServletResponse.SC_FORBIDDEN);
+      return;
+    }
+
+    ReadableWaveletData snapshot = committedSnapshot.snapshot;
+    HashedVersion version = snapshot.getHashedVersion();
+    String etag = getEntityTag(version);
+    Pair<WaveRef, HashedVersion> key = Pair.of(waveref, version);
+    if (matchesEntityTag(ifNoneMatch, etag)) {
+      notModified.incrementAndGet();
+      String json = encodedSnapshots.getIfPresent(key);
+      if (json != null) {
+        charsNotSent.addAndGet(json.length());
       }
-    } else {
+      dest.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+      setCacheHeaders(etag, dest);
+      return;
+    }
+
+    String json = encodedSnapshots.getIfPresent(key);
+    if (json != null) {
+      hits.incrementAndGet();
+      charsNotEncoded.addAndGet(json.length());
+      writeJson(json, etag, dest);
+      return;
+    }
+    misses.incrementAndGet();
+    MessageLite message = serializeSnapshot(waveref, snapshot);
+    if (message == null) {
+      // The document doesn't exist. As above, don't tell it apart from one
+      // the requester may not access.
       dest.sendError(HttpServletResponse.SC_FORBIDDEN);
+      return;
     }
+    try {
+      json = serializer.toJson(message).toString();
+    } catch (SerializationException e) {
+      throw new IOException(e);
+    }
+    if (version.equals(snapshot.getHashedVersion())) {
+      encodedSnapshots.put(key, json);
+      writeJson(json, etag, dest);
+    } else {
+      // The wavelet changed while it was serialized, so the snapshot may not
+      // match any one version. Send it, but neither cache nor tag it.
+      writeJson(json, null, dest);
+    }
+  }
+
+  /**
+   * Serializes the part of a wavelet snapshot a waveref refers to, or returns
+   * null if the referenced document doesn't exist.
+   */
+  private static MessageLite serializeSnapshot(WaveRef waveref, ReadableWaveletData snapshot) {
+    if (waveref.hasDocumentId()) {
+      // We have a wavelet id and document id. Find the document in the
+      // snapshot and return it.
+      ReadableBlipData document = snapshot.getDocument(waveref.getDocumentId());
+      return document != null ? SnapshotSerializer.serializeDocument(document) : null;
+    } else if (waveref.hasWaveletId()) {
+      // We have a wavelet id. Pull up the wavelet snapshot and return it.
+      return SnapshotSerializer.serializeWavelet(snapshot, snapshot.getHashedVersion());
+    } else {
+      // Wrap the conv+root we fetched earlier in a WaveSnapshot object and
+      // send it.
+      return WaveViewSnapshot.newBuilder()
+          .setWaveId(ModernIdSerialiser.INSTANCE.serialiseWaveId(waveref.getWaveId()))
+          .addWavelet(SnapshotSerializer.serializeWavelet(snapshot, snapshot.getHashedVersion()))
+          .build();
+    }
+  }
+
+  private void registerGauges() {
+    MetricRegistry.registerGauge("fetch", "cache_hits", new MetricRegistry.Gauge() {
+      @Override
+      public long getValue() {
+        return hits.get();
+      }
+    });
+    MetricRegistry.registerGauge("fetch", "cache_misses", new MetricRegistry.Gauge() {
+      @Override
+      public long getValue() {
+        return misses.get();
+      }
+    });
+    MetricRegistry.registerGauge("fetch", "cache_hit_percent", new MetricRegistry.Gauge() {
+      @Override
+      public long getValue() {
+        long hitCount = hits.get();
+        long total = hitCount + misses.get();
+        return total == 0 ? 0 : hitCount * 100 / total;
+      }
+    });
+    MetricRegistry.registerGauge("fetch", "not_modified", new MetricRegistry.Gauge() {
+      @Override
+      public long getValue() {
+        return notModified.get();
+      }
+    });
+    MetricRegistry.registerGauge("fetch", "chars_not_encoded", new MetricRegistry.Gauge() {
+      @Override
+      public long getValue() {
+        return charsNotEncoded.get();
+      }
+    });
+    MetricRegistry.registerGauge("fetch", "chars_not_sent", new MetricRegistry.Gauge() {
+      @Override
+      public long getValue() {
+        return charsNotSent.get();
+      }
+    });
   }
 }
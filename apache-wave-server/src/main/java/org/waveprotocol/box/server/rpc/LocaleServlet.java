@@ -76,6 +76,7 @@ public final class LocaleServlet extends HttpServlet {
       }
       humanAccount.setLocale(locale);
       accountStore.putAccount(humanAccount);
+      sessionManager.invalidateLoggedInAccount(req.getSession(false));
     } catch (PersistenceException ex) {
       throw new IOException(ex);
     }
@@ -47,8 +47,12 @@ import org.waveprotocol.box.common.comms.proto.WaveViewSnapshotProtoImpl;
 import org.waveprotocol.box.common.comms.proto.WaveletSnapshotProtoImpl;
 import org.waveprotocol.box.profile.ProfilesProto.ProfileResponse;
 import org.waveprotocol.box.profile.proto.ProfileResponseProtoImpl;
+import org.waveprotocol.box.search.SearchProto.SearchRequest;
 import org.waveprotocol.box.search.SearchProto.SearchResponse;
+import org.waveprotocol.box.search.SearchProto.SearchUpdate;
+import org.waveprotocol.box.search.proto.SearchRequestProtoImpl;
 import org.waveprotocol.box.search.proto.SearchResponseProtoImpl;
+import org.waveprotocol.box.search.proto.SearchUpdateProtoImpl;
 import org.waveprotocol.box.server.rpc.Rpc.CancelRpc;
 import org.waveprotocol.box.server.rpc.Rpc.RpcFinished;
 import org.waveprotocol.box.server.rpc.proto.CancelRpcProtoImpl;
@@ -158,7 +162,9 @@ public final class ProtoSerializer {
     add(CancelRpc.class, CancelRpcProtoImpl.class);
     add(RpcFinished.class, RpcFinishedProtoImpl.class);
 
+    add(SearchRequest.class, SearchRequestProtoImpl.class);
     add(SearchResponse.class, SearchResponseProtoImpl.class);
+    add(SearchUpdate.class, SearchUpdateProtoImpl.class);
     add(ProfileResponse.class, ProfileResponseProtoImpl.class);
 
     add(AttachmentsResponse.class, AttachmentsResponseProtoImpl.class);
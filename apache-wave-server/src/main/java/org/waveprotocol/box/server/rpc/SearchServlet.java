@@ -87,7 +87,7 @@ public class SearchServlet extends AbstractSearchServlet {
   /**
    * Copies data from {@link Digest} into {@link SearchResponse.Digest}.
    */
-  private static SearchResponse.Digest serializeDigest(Digest searchResultDigest) {
+  public static SearchResponse.Digest serializeDigest(Digest searchResultDigest) {
     SearchResponse.Digest.Builder digestBuilder = SearchResponse.Digest.newBuilder();
     digestBuilder.setBlipCount(searchResultDigest.getBlipCount());
     digestBuilder.setLastModified(searchResultDigest.getLastModified());
@@ -71,6 +71,7 @@ import org.waveprotocol.box.server.persistence.file.FileUtils;
 import org.waveprotocol.box.server.rpc.atmosphere.AtmosphereChannel;
 import org.waveprotocol.box.server.rpc.atmosphere.AtmosphereClientInterceptor;
 import org.waveprotocol.box.server.executor.ExecutorAnnotations.ClientServerExecutor;
+import org.waveprotocol.box.server.stat.MetricRegistry;
 import org.waveprotocol.box.server.util.NetUtils;
 import org.waveprotocol.wave.model.util.Pair;
 import org.waveprotocol.wave.model.wave.ParticipantId;
@@ -148,7 +149,13 @@ public class ServerRpcProvider {
 
     WebSocketConnection(ParticipantId loggedInUser, ServerRpcProvider provider) {
       super(loggedInUser, provider);
-      socketChannel = new WebSocketChannelImpl(this);
+      socketChannel = new WebSocketChannelImpl(this, new Runnable() {
+        @Override
+        public void run() {
+          // Streaming RPCs, such as live searches, end with the socket.
+          cancelActiveRpcs();
+        }
+      });
       LOG.info("New websocket connection set up for user " + loggedInUser);
       expectMessages(socketChannel);
     }
@@ -223,6 +230,19 @@ public class ServerRpcProvider {
 
     protected abstract void sendMessage(int sequenceNo, Message message);
 
+    /**
+     * Cancels the RPCs still active on this connection.
+     */
+    protected void cancelActiveRpcs() {
+      for (ServerRpcController controller : activeRpcs.values()) {
+        try {
+          controller.cancel();
+        } catch (IllegalStateException e) {
+          // Already cancelled by the client.
+        }
+      }
+    }
+
     private ParticipantId authenticate(String token) {
       HttpSession session = provider.sessionManager.getSessionFromToken(token);
       ParticipantId user = provider.sessionManager.getLoggedInUser(session);
@@ -233,10 +253,13 @@ public class ServerRpcProvider {
     public void message(final int sequenceNo, Message message) {
       final String messageName = "/" + message.getClass().getSimpleName();
       final Timer profilingTimer = Timing.startRequest(messageName);
+      final long startNanos = System.nanoTime();
       if (message instanceof Rpc.CancelRpc) {
         final ServerRpcController controller = activeRpcs.get(sequenceNo);
         if (controller == null) {
-          throw new IllegalStateException("Trying to cancel an RPC that is not active!");
+          // The RPC may have finished while the request to cancel it was on
+          // its way, as with a live search closed by the server.
+          LOG.fine("Ignoring cancel of RPC " + sequenceNo + ", which is not active");
         } else {
           LOG.info("Cancelling open RPC " + sequenceNo);
           controller.cancel();
@@ -288,6 +311,10 @@ public class ServerRpcProvider {
                       }
                       sendMessage(sequenceNo, message);
                       if (profilingTimer != null) {
+                        if (profilingTimer.isActive()) {
+                          // Streaming rpcs are timed up to their first response.
+                          MetricRegistry.recordSince(messageName, startNanos);
+                        }
                         Timing.stop(profilingTimer);
                       }
                     }
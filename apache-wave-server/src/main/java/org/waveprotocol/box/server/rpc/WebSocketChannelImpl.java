@@ -39,10 +39,19 @@ import java.io.IOException;
 public class WebSocketChannelImpl extends WebSocketChannel {
   private static final Log LOG = Log.get(WebSocketChannelImpl.class);
 
+  private final Runnable closeListener;
   private Session session;
 
   public WebSocketChannelImpl(ProtoCallback callback) {
+    this(callback, null);
+  }
+
+  /**
+   * @param closeListener run when the websocket is closed, or null
+   */
+  public WebSocketChannelImpl(ProtoCallback callback, Runnable closeListener) {
     super(callback);
+    this.closeListener = closeListener;
   }
 
   @OnWebSocketConnect
@@ -63,6 +72,9 @@ public class WebSocketChannelImpl extends WebSocketChannel {
     synchronized (this) {
       session = null;
     }
+    if (closeListener != null) {
+      closeListener.run();
+    }
   }
 
   @Override
@@ -0,0 +1,182 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.waveprotocol.box.server.stat;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of latencies in nanoseconds. Every power of two is
+ * split in {@link #SUB_BUCKETS} linear buckets, so percentiles are reported as
+ * the upper bound of a bucket that is at most a quarter of its value wide.
+ * Samples are striped by thread over several arrays, so that threads which
+ * record at the same time rarely contend on the same counters.
+ */
+public class LatencyHistogram {
+
+  private static final int SUB_BUCKET_BITS = 2;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+  /** Samples of 2^MAX_EXPONENT nanoseconds (about 4.9 hours) or more share the last bucket. */
+  private static final int MAX_EXPONENT = 44;
+
+  static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+  /** Each stripe holds its buckets followed by its sample count and total. */
+  private static final int STRIPE_LENGTH = BUCKETS + 2;
+  private static final int STRIPES =
+      Integer.highestOneBit(Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+  private final AtomicLongArray stripes = new AtomicLongArray(STRIPES * STRIPE_LENGTH);
+  private final AtomicLong maxNanos = new AtomicLong();
+
+  /**
+   * Records a single sample.
+   *
+   * @param nanos the duration of the sample in nanoseconds.
+   */
+  public void record(long nanos) {
+    if (nanos < 0) {
+      nanos = 0;
+    }
+    int offset = ((int) Thread.currentThread().getId() & (STRIPES - 1)) * STRIPE_LENGTH;
+    stripes.incrementAndGet(offset + bucketOf(nanos));
+    stripes.incrementAndGet(offset + BUCKETS);
+    stripes.addAndGet(offset + BUCKETS + 1, nanos);
+    long max = maxNanos.get();
+    while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+      max = maxNanos.get();
+    }
+  }
+
+  /**
+   * Records a single sample that started at the given {@link System#nanoTime()}.
+   */
+  public void recordSince(long startNanos) {
+    record(System.nanoTime() - startNanos);
+  }
+
+  public long getCount() {
+    return sumOfStripes(BUCKETS);
+  }
+
+  public long getTotalNanos() {
+    return sumOfStripes(BUCKETS + 1);
+  }
+
+  public long getMaxNanos() {
+    return maxNanos.get();
+  }
+
+  /**
+   * Returns the upper bound in nanoseconds below which the given fraction of
+   * the samples fall, or 0 if nothing has been recorded.
+   *
+   * @param fraction the percentile as a fraction between 0 and 1.
+   */
+  public long getPercentileNanos(double fraction) {
+    long[] counts = new long[BUCKETS];
+    addCountsTo(counts);
+    return percentileOf(counts, fraction, getMaxNanos());
+  }
+
+  @Override
+  public String toString() {
+    return "n=" + getCount()
+        + " p50=" + formatMillis(getPercentileNanos(0.5))
+        + " p95=" + formatMillis(getPercentileNanos(0.95))
+        + " p99=" + formatMillis(getPercentileNanos(0.99))
+        + " p999=" + formatMillis(getPercentileNanos(0.999))
+        + " max=" + formatMillis(getMaxNanos());
+  }
+
+  /**
+   * Adds the number of samples per bucket to the given array, which should
+   * have {@link #BUCKETS} elements.
+   */
+  void addCountsTo(long[] counts) {
+    for (int stripe = 0; stripe < STRIPES; stripe++) {
+      int offset = stripe * STRIPE_LENGTH;
+      for (int i = 0; i < BUCKETS; i++) {
+        counts[i] += stripes.get(offset + i);
+      }
+    }
+  }
+
+  /**
+   * Returns the percentile of samples counted per bucket, capped by the
+   * largest sample.
+   */
+  static long percentileOf(long[] counts, double fraction, long maxNanos) {
+    long total = 0;
+    for (long count : counts) {
+      total += count;
+    }
+    if (total == 0) {
+      return 0;
+    }
+    long threshold = Math.max(1, (long) Math.ceil(fraction * total));
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += counts[i];
+      if (seen >= threshold) {
+        return Math.min(upperBoundOf(i), maxNanos);
+      }
+    }
+    return maxNanos;
+  }
+
+  static String formatMillis(long nanos) {
+    return String.format("%.3fms", nanos / (double) TimeUnit.MILLISECONDS.toNanos(1));
+  }
+
+  private long sumOfStripes(int index) {
+    long sum = 0;
+    for (int stripe = 0; stripe < STRIPES; stripe++) {
+      sum += stripes.get(stripe * STRIPE_LENGTH + index);
+    }
+    return sum;
+  }
+
+  private static int bucketOf(long nanos) {
+    if (nanos < SUB_BUCKETS) {
+      return (int) nanos;
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+    if (exponent > MAX_EXPONENT) {
+      return BUCKETS - 1;
+    }
+    int shift = exponent - SUB_BUCKET_BITS;
+    int subBucket = (int) (nanos >>> shift) & (SUB_BUCKETS - 1);
+    return (shift + 1) * SUB_BUCKETS + subBucket;
+  }
+
+  private static long upperBoundOf(int bucket) {
+    if (bucket >= BUCKETS - 1) {
+      return Long.MAX_VALUE;
+    }
+    int shift = bucket / SUB_BUCKETS - 1;
+    if (shift < 0) {
+      return bucket;
+    }
+    long lowerBound = ((long) (SUB_BUCKETS + bucket % SUB_BUCKETS)) << shift;
+    return lowerBound + (1L << shift) - 1;
+  }
+}
@@ -0,0 +1,163 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.waveprotocol.box.server.stat;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableSortedMap;
+
+import java.io.PrintWriter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Server wide registry of latency histograms and gauges, rendered in the
+ * plain text exposition format understood by metric scrapers such as
+ * Prometheus.
+ *
+ * <p>
+ * Timers are keyed by a name that must come from a bounded set, such as a
+ * method or message name, never a url or an id.
+ */
+public class MetricRegistry {
+
+  /**
+   * A value that is read when the metrics are rendered.
+   */
+  public interface Gauge {
+    long getValue();
+  }
+
+  private static final String PREFIX = "wave_";
+  private static final double[] QUANTILES = {0.5, 0.95, 0.99, 0.999};
+  private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+  private static final ConcurrentMap<String, WindowedHistogram> timers =
+      new ConcurrentHashMap<String, WindowedHistogram>();
+  private static final ConcurrentMap<String, ConcurrentMap<String, Gauge>> gauges =
+      new ConcurrentHashMap<String, ConcurrentMap<String, Gauge>>();
+
+  private MetricRegistry() {
+  }
+
+  /**
+   * Returns the timer with the given name, creating it if needed.
+   */
+  public static WindowedHistogram getTimer(String name) {
+    WindowedHistogram timer = timers.get(name);
+    if (timer == null) {
+      WindowedHistogram newTimer = new WindowedHistogram();
+      timer = timers.putIfAbsent(name, newTimer);
+      if (timer == null) {
+        timer = newTimer;
+      }
+    }
+    return timer;
+  }
+
+  /**
+   * Records a sample for the timer with the given name.
+   *
+   * @param name the name of the timer.
+   * @param startNanos the {@link System#nanoTime()} at which the timed work
+   *        started.
+   */
+  public static void recordSince(String name, long startNanos) {
+    getTimer(name).recordSince(startNanos);
+  }
+
+  /**
+   * Registers a gauge, replacing an earlier gauge of the same family and name.
+   *
+   * @param family the metric the gauge belongs to, for example
+   *        {@code executor_queued}.
+   * @param name the name of the measured object within the family.
+   * @param gauge the gauge.
+   */
+  public static void registerGauge(String family, String name, Gauge gauge) {
+    ConcurrentMap<String, Gauge> members = gauges.get(family);
+    if (members == null) {
+      ConcurrentMap<String, Gauge> newMembers = new ConcurrentHashMap<String, Gauge>();
+      members = gauges.putIfAbsent(family, newMembers);
+      if (members == null) {
+        members = newMembers;
+      }
+    }
+    members.put(name, gauge);
+  }
+
+  /**
+   * Writes all timers and gauges. Quantiles cover the recent window of every
+   * timer, the sum and count cover its lifetime.
+   */
+  public static void render(PrintWriter writer) {
+    String timerFamily = PREFIX + "timer_seconds";
+    writer.append("# HELP ").append(timerFamily)
+        .append(" Latency of timed operations, quantiles over the last minute.\n");
+    writer.append("# TYPE ").append(timerFamily).append(" summary\n");
+    for (Map.Entry<String, WindowedHistogram> entry :
+        ImmutableSortedMap.copyOf(timers).entrySet()) {
+      String label = "name=\"" + escape(entry.getKey()) + "\"";
+      WindowedHistogram timer = entry.getValue();
+      for (double quantile : QUANTILES) {
+        writeSample(writer, timerFamily, label + ",quantile=\"" + quantile + "\"",
+            seconds(timer.getWindowPercentileNanos(quantile)));
+      }
+      writeSample(writer, timerFamily + "_sum", label,
+          seconds(timer.getLifetime().getTotalNanos()));
+      writeSample(writer, timerFamily + "_count", label,
+          String.valueOf(timer.getLifetime().getCount()));
+    }
+
+    for (Map.Entry<String, ConcurrentMap<String, Gauge>> family :
+        ImmutableSortedMap.copyOf(gauges).entrySet()) {
+      String familyName = PREFIX + family.getKey();
+      writer.append("# TYPE ").append(familyName).append(" gauge\n");
+      for (Map.Entry<String, Gauge> entry :
+          ImmutableSortedMap.copyOf(family.getValue()).entrySet()) {
+        writeSample(writer, familyName, "name=\"" + escape(entry.getKey()) + "\"",
+            String.valueOf(entry.getValue().getValue()));
+      }
+    }
+    writer.flush();
+  }
+
+  /**
+   * Removes all timers and gauges.
+   */
+  @VisibleForTesting
+  static void clear() {
+    timers.clear();
+    gauges.clear();
+  }
+
+  private static void writeSample(PrintWriter writer, String family, String labels,
+      String value) {
+    writer.append(family).append('{').append(labels).append("} ").append(value).append('\n');
+  }
+
+  private static String seconds(long nanos) {
+    return String.valueOf(nanos / NANOS_PER_SECOND);
+  }
+
+  private static String escape(String labelValue) {
+    return labelValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+  }
+}
@@ -69,6 +69,7 @@ public class StatuszServlet extends HttpServlet {
     writer.write("<a href=\"?show=" + SHOW_SESSION_MEASUREMENTS + "\">Session measurements</a>");
     writer.write(" | <a href=\"?show=" + SHOW_GLOBAL_MEASUREMENTS + "\">Global measurements</a>");
     writer.write(" | <a href=\"?show=" + SHOW_STATS + "\">Stats</a>");
+    writer.write(" | <a href=\"" + MetricszServlet.METRICS_URL + "\">Metrics</a>");
   }
 
   protected void writeSessionMeasurements(PrintWriter writer) {
@@ -41,6 +41,7 @@ import org.waveprotocol.box.stat.Timing;
  */
 @Singleton
 public class TimingFilter implements Filter {
+  private static final String HTTP_REQUEST_TIMER = "HttpRequest";
 
   @Inject
   TimingFilter() {
@@ -51,9 +52,12 @@ public class TimingFilter implements Filter {
       throws IOException, ServletException {
     HttpServletRequest req = (HttpServletRequest) request;
     Timer timer = Timing.startRequest(req.getRequestURI());
+    long start = System.nanoTime();
     try {
       chain.doFilter(req, response);
     } finally {
+      // Urls are unbounded, so all requests share one histogram.
+      MetricRegistry.recordSince(HTTP_REQUEST_TIMER, start);
       Timing.stop(timer);
     }
   }
@@ -63,9 +63,11 @@ public class TimingInterceptor implements MethodInterceptor {
     } else {
       timer = Timing.start(name, timed.threshold());
     }
+    long start = System.nanoTime();
     try {
       return methodInvocation.proceed();
     } finally {
+      MetricRegistry.recordSince(name, start);
       Timing.stop(timer);
     }
   }
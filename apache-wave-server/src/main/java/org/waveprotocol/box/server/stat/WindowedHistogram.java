@@ -0,0 +1,160 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.waveprotocol.box.server.stat;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Ticker;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A {@link LatencyHistogram} over the whole lifetime of the server, together
+ * with percentiles over a sliding window of recent samples. The window is made
+ * of a ring of slots which are replaced once they have aged out, so the window
+ * covers between {@code slots - 1} and {@code slots} slot durations.
+ */
+public class WindowedHistogram {
+
+  /** The samples recorded during a single slot of the window. */
+  private static class Slot {
+    final long index;
+    final LatencyHistogram histogram = new LatencyHistogram();
+
+    Slot(long index) {
+      this.index = index;
+    }
+  }
+
+  private final LatencyHistogram lifetime = new LatencyHistogram();
+  private final AtomicReferenceArray<Slot> slots;
+  private final long slotNanos;
+  private final Ticker ticker;
+
+  /**
+   * Constructs a histogram with a sliding window of one minute.
+   */
+  public WindowedHistogram() {
+    this(6, 10, TimeUnit.SECONDS, Ticker.systemTicker());
+  }
+
+  @VisibleForTesting
+  WindowedHistogram(int slotCount, long slotDuration, TimeUnit unit, Ticker ticker) {
+    Preconditions.checkArgument(slotCount > 0, "There must be at least one slot");
+    this.slots = new AtomicReferenceArray<Slot>(slotCount);
+    this.slotNanos = unit.toNanos(slotDuration);
+    this.ticker = ticker;
+  }
+
+  /**
+   * Records a single sample.
+   *
+   * @param nanos the duration of the sample in nanoseconds.
+   */
+  public void record(long nanos) {
+    lifetime.record(nanos);
+    currentSlot().histogram.record(nanos);
+  }
+
+  /**
+   * Records a single sample that started at the given {@link System#nanoTime()}.
+   */
+  public void recordSince(long startNanos) {
+    record(System.nanoTime() - startNanos);
+  }
+
+  /**
+   * Returns the histogram of all samples.
+   */
+  public LatencyHistogram getLifetime() {
+    return lifetime;
+  }
+
+  /**
+   * Returns the number of samples in the sliding window.
+   */
+  public long getWindowCount() {
+    long count = 0;
+    long current = currentIndex();
+    for (int i = 0; i < slots.length(); i++) {
+      Slot slot = slots.get(i);
+      if (isInWindow(slot, current)) {
+        count += slot.histogram.getCount();
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Returns the given percentile of the samples in the sliding window in
+   * nanoseconds, or 0 if there were no recent samples.
+   *
+   * @param fraction the percentile as a fraction between 0 and 1.
+   */
+  public long getWindowPercentileNanos(double fraction) {
+    long[] counts = new long[LatencyHistogram.BUCKETS];
+    long max = 0;
+    long current = currentIndex();
+    for (int i = 0; i < slots.length(); i++) {
+      Slot slot = slots.get(i);
+      if (isInWindow(slot, current)) {
+        slot.histogram.addCountsTo(counts);
+        max = Math.max(max, slot.histogram.getMaxNanos());
+      }
+    }
+    return LatencyHistogram.percentileOf(counts, fraction, max);
+  }
+
+  @Override
+  public String toString() {
+    return "recent: n=" + getWindowCount()
+        + " p50=" + LatencyHistogram.formatMillis(getWindowPercentileNanos(0.5))
+        + " p99=" + LatencyHistogram.formatMillis(getWindowPercentileNanos(0.99))
+        + "; all: " + lifetime;
+  }
+
+  private long currentIndex() {
+    return ticker.read() / slotNanos;
+  }
+
+  private boolean isInWindow(Slot slot, long currentIndex) {
+    return slot != null && slot.index > currentIndex - slots.length();
+  }
+
+  /**
+   * Returns the slot for the current time, replacing the slot that has aged
+   * out if needed. Samples recorded in a replaced slot at the same time are
+   * dropped from the window.
+   */
+  private Slot currentSlot() {
+    long index = currentIndex();
+    int position = (int) (((index % slots.length()) + slots.length()) % slots.length());
+    while (true) {
+      Slot slot = slots.get(position);
+      if (slot != null && slot.index >= index) {
+        return slot;
+      }
+      Slot newSlot = new Slot(index);
+      if (slots.compareAndSet(position, slot, newSlot)) {
+        return newSlot;
+      }
+    }
+  }
+}
@@ -0,0 +1,86 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.waveprotocol.box.server.util.collect;
+
+import org.waveprotocol.wave.model.util.CollectionFactory;
+import org.waveprotocol.wave.model.util.CollectionUtils;
+import org.waveprotocol.wave.model.util.IdentityMap;
+import org.waveprotocol.wave.model.util.IdentitySet;
+import org.waveprotocol.wave.model.util.IntMap;
+import org.waveprotocol.wave.model.util.NumberMap;
+import org.waveprotocol.wave.model.util.NumberPriorityQueue;
+import org.waveprotocol.wave.model.util.StringMap;
+import org.waveprotocol.wave.model.util.StringSet;
+
+import java.util.Queue;
+
+/**
+ * The collection factory of the server, the JVM counterpart of the
+ * client's JSO collections. String and number keyed collections are the
+ * open-addressing ones of this package, which need a fraction of the memory
+ * of the HashMap backed ones; the rest come from
+ * {@link CollectionUtils#getHashCollectionFactory()}.
+ *
+ * Installed with {@link CollectionUtils#setDefaultCollectionFactory}.
+ */
+public final class CompactCollectionFactory implements CollectionFactory {
+
+  private final CollectionFactory hashFactory = CollectionUtils.getHashCollectionFactory();
+
+  @Override
+  public <V> StringMap<V> createStringMap() {
+    return new CompactStringMap<V>();
+  }
+
+  @Override
+  public <V> NumberMap<V> createNumberMap() {
+    return new OpenNumberMap<V>();
+  }
+
+  @Override
+  public <V> IntMap<V> createIntMap() {
+    return new OpenIntMap<V>();
+  }
+
+  @Override
+  public StringSet createStringSet() {
+    return new CompactStringSet();
+  }
+
+  @Override
+  public <T> IdentitySet<T> createIdentitySet() {
+    return hashFactory.createIdentitySet();
+  }
+
+  @Override
+  public <E> Queue<E> createQueue() {
+    return hashFactory.createQueue();
+  }
+
+  @Override
+  public NumberPriorityQueue createPriorityQueue() {
+    return hashFactory.createPriorityQueue();
+  }
+
+  @Override
+  public <K, V> IdentityMap<K, V> createIdentityMap() {
+    return hashFactory.createIdentityMap();
+  }
+}
@@ -0,0 +1,323 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.waveprotocol.box.server.util.collect;
+
+import org.waveprotocol.wave.model.util.Preconditions;
+import org.waveprotocol.wave.model.util.ReadableStringMap;
+import org.waveprotocol.wave.model.util.ReadableStringSet;
+import org.waveprotocol.wave.model.util.StringMap;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A {@link StringMap} in two arrays, one of keys and one of values, with no
+ * entry objects. A null key marks a free slot.
+ *
+ * @param <V> type of values in the map
+ */
+public final class CompactStringMap<V> extends OpenHashTable implements StringMap<V> {
+
+  private static final String[] NO_KEYS = {};
+  private static final Object[] NO_VALUES = {};
+
+  private String[] keys = NO_KEYS;
+  private Object[] values = NO_VALUES;
+
+  /** Returns the slot of a key, or -1 if it is not in the map. */
+  private int find(String key) {
+    Preconditions.checkNotNull(key, "StringMap cannot contain null keys");
+    if (size == 0) {
+      return -1;
+    }
+    int hash = key.hashCode();
+    for (int i = mix(hash) & mask; ; i = (i + 1) & mask) {
+      String k = keys[i];
+      if (k == null) {
+        return -1;
+      } else if (k == key || (k.hashCode() == hash && k.equals(key))) {
+        return i;
+      }
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private V valueAt(int slot) {
+    return (V) values[slot];
+  }
+
+  @Override
+  public void put(String key, V value) {
+    int slot = find(key);
+    if (slot >= 0) {
+      values[slot] = value;
+      return;
+    }
+    reserveOne();
+    insert(key, value);
+    size++;
+    modCount++;
+  }
+
+  /** Stores an entry whose key is not in the map, in an allocated table. */
+  private void insert(String key, Object value) {
+    int i = mix(key.hashCode()) & mask;
+    while (keys[i] != null) {
+      i = (i + 1) & mask;
+    }
+    keys[i] = key;
+    values[i] = value;
+  }
+
+  @Override
+  public void remove(String key) {
+    int slot = find(key);
+    if (slot >= 0) {
+      removeAt(slot);
+    }
+  }
+
+  @Override
+  public void putAll(ReadableStringMap<V> pairsToAdd) {
+    pairsToAdd.each(new ProcV<V>() {
+      @Override
+      public void apply(String key, V value) {
+        put(key, value);
+      }
+    });
+  }
+
+  @Override
+  public void putAll(Map<String, V> sourceMap) {
+    Preconditions.checkArgument(!sourceMap.containsKey(null),
+        "Source map must not contain a null key");
+    for (Map.Entry<String, V> entry : sourceMap.entrySet()) {
+      put(entry.getKey(), entry.getValue());
+    }
+  }
+
+  @Override
+  public void clear() {
+    keys = NO_KEYS;
+    values = NO_VALUES;
+    mask = -1;
+    size = 0;
+    modCount++;
+  }
+
+  @Override
+  public void filter(EntryFilter<? super V> filter) {
+    if (size == 0) {
+      return;
+    }
+    int start = someFreeSlot();
+    for (int n = 1; n <= mask; ) {
+      int slot = (start + n) & mask;
+      if (keys[slot] != null && !filter.apply(keys[slot], valueAt(slot))) {
+        // An entry from later in the scan may have moved into the slot.
+        removeAt(slot);
+      } else {
+        n++;
+      }
+    }
+  }
+
+  @Override
+  public V getExisting(String key) {
+    int slot = find(key);
+    if (slot < 0) {
+      // Not using Preconditions.checkState to avoid unecessary string concatenation
+      throw new IllegalStateException("getExisting: Key '" + key + "' is not in map");
+    }
+    return valueAt(slot);
+  }
+
+  @Override
+  public V get(String key, V defaultValue) {
+    int slot = find(key);
+    return slot >= 0 ? valueAt(slot) : defaultValue;
+  }
+
+  @Override
+  public V get(String key) {
+    return get(key, null);
+  }
+
+  @Override
+  public boolean containsKey(String key) {
+    return find(key) >= 0;
+  }
+
+  @Override
+  public String someKey() {
+    for (String key : keys) {
+      if (key != null) {
+        return key;
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  @Override
+  public void each(ProcV<? super V> callback) {
+    int expectedModCount = modCount;
+    String[] keys = this.keys;
+    for (int i = 0; i < keys.length; i++) {
+      if (keys[i] != null) {
+        callback.apply(keys[i], valueAt(i));
+        checkModCount(expectedModCount);
+      }
+    }
+  }
+
+  @Override
+  public int countEntries() {
+    return size;
+  }
+
+  @Override
+  public ReadableStringSet keySet() {
+    return new ReadableStringSet() {
+      @Override
+      public boolean contains(String s) {
+        return containsKey(s);
+      }
+
+      @Override
+      public String someElement() {
+        return someKey();
+      }
+
+      @Override
+      public boolean isEmpty() {
+        return size == 0;
+      }
+
+      @Override
+      public void each(final Proc callback) {
+        CompactStringMap.this.each(new ProcV<V>() {
+          @Override
+          public void apply(String key, V value) {
+            callback.apply(key);
+          }
+        });
+      }
+
+      @Override
+      public boolean isSubsetOf(ReadableStringSet other) {
+        for (String key : keys) {
+          if (key != null && !other.contains(key)) {
+            return false;
+          }
+        }
+        return true;
+      }
+
+      @Override
+      public boolean isSubsetOf(Set<String> other) {
+        for (String key : keys) {
+          if (key != null && !other.contains(key)) {
+            return false;
+          }
+        }
+        return true;
+      }
+
+      @Override
+      public int countEntries() {
+        return size;
+      }
+
+      @Override
+      public String toString() {
+        final StringBuilder b = new StringBuilder("[");
+        CompactStringMap.this.each(new ProcV<V>() {
+          @Override
+          public void apply(String key, V value) {
+            if (b.length() > 1) {
+              b.append(", ");
+            }
+            b.append(key);
+          }
+        });
+        return b.append(']').toString();
+      }
+    };
+  }
+
+  @Override
+  boolean isFree(int slot) {
+    return keys[slot] == null;
+  }
+
+  @Override
+  int hashAt(int slot) {
+    return mix(keys[slot].hashCode());
+  }
+
+  @Override
+  void moveSlot(int from, int to) {
+    keys[to] = keys[from];
+    values[to] = values[from];
+  }
+
+  @Override
+  void freeSlot(int slot) {
+    keys[slot] = null;
+    values[slot] = null;
+  }
+
+  @Override
+  void rehash(int capacity) {
+    String[] oldKeys = keys;
+    Object[] oldValues = values;
+    keys = new String[capacity];
+    values = new Object[capacity];
+    mask = capacity - 1;
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldKeys[i] != null) {
+        insert(oldKeys[i], oldValues[i]);
+      }
+    }
+  }
+
+  @Override
+  public String toString() {
+    final StringBuilder b = new StringBuilder("{");
+    each(new ProcV<V>() {
+      @Override
+      public void apply(String key, V value) {
+        if (b.length() > 1) {
+          b.append(", ");
+        }
+        b.append(key).append('=').append(value);
+      }
+    });
+    return b.append('}').toString();
+  }
+
+  // NOTE: equals() and hashCode() are not implemented, as they are not for
+  // the other StringMap implementations.
+}
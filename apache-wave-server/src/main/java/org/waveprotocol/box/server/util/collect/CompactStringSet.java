@@ -0,0 +1,235 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.waveprotocol.box.server.util.collect;
+
+import org.waveprotocol.wave.model.util.Preconditions;
+import org.waveprotocol.wave.model.util.ReadableStringSet;
+import org.waveprotocol.wave.model.util.StringSet;
+
+import java.util.Set;
+
+/**
+ * A {@link StringSet} in a single array of elements, in which null marks a
+ * free slot.
+ */
+public final class CompactStringSet extends OpenHashTable implements StringSet {
+
+  private static final String[] NO_ELEMENTS = {};
+
+  private String[] elements = NO_ELEMENTS;
+
+  /** Returns the slot of an element, or -1 if it is not in the set. */
+  private int find(String s) {
+    Preconditions.checkNotNull(s, "StringSet cannot contain null values");
+    if (size == 0) {
+      return -1;
+    }
+    int hash = s.hashCode();
+    for (int i = mix(hash) & mask; ; i = (i + 1) & mask) {
+      String e = elements[i];
+      if (e == null) {
+        return -1;
+      } else if (e == s || (e.hashCode() == hash && e.equals(s))) {
+        return i;
+      }
+    }
+  }
+
+  @Override
+  public void add(String s) {
+    if (find(s) >= 0) {
+      return;
+    }
+    reserveOne();
+    insert(s);
+    size++;
+    modCount++;
+  }
+
+  /** Stores an element that is not in the set, in an allocated table. */
+  private void insert(String s) {
+    int i = mix(s.hashCode()) & mask;
+    while (elements[i] != null) {
+      i = (i + 1) & mask;
+    }
+    elements[i] = s;
+  }
+
+  @Override
+  public void remove(String s) {
+    int slot = find(s);
+    if (slot >= 0) {
+      removeAt(slot);
+    }
+  }
+
+  @Override
+  public void clear() {
+    elements = NO_ELEMENTS;
+    mask = -1;
+    size = 0;
+    modCount++;
+  }
+
+  @Override
+  public void addAll(ReadableStringSet stringsToAdd) {
+    stringsToAdd.each(new Proc() {
+      @Override
+      public void apply(String element) {
+        add(element);
+      }
+    });
+  }
+
+  @Override
+  public void removeAll(ReadableStringSet stringsToRemove) {
+    if (stringsToRemove == this) {
+      clear();
+      return;
+    }
+    stringsToRemove.each(new Proc() {
+      @Override
+      public void apply(String element) {
+        remove(element);
+      }
+    });
+  }
+
+  @Override
+  public void filter(StringPredicate filter) {
+    if (size == 0) {
+      return;
+    }
+    int start = someFreeSlot();
+    for (int n = 1; n <= mask; ) {
+      int slot = (start + n) & mask;
+      if (elements[slot] != null && !filter.apply(elements[slot])) {
+        // An element from later in the scan may have moved into the slot.
+        removeAt(slot);
+      } else {
+        n++;
+      }
+    }
+  }
+
+  @Override
+  public boolean contains(String s) {
+    return find(s) >= 0;
+  }
+
+  @Override
+  public String someElement() {
+    for (String e : elements) {
+      if (e != null) {
+        return e;
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  @Override
+  public void each(Proc callback) {
+    int expectedModCount = modCount;
+    String[] elements = this.elements;
+    for (int i = 0; i < elements.length; i++) {
+      if (elements[i] != null) {
+        callback.apply(elements[i]);
+        checkModCount(expectedModCount);
+      }
+    }
+  }
+
+  @Override
+  public boolean isSubsetOf(ReadableStringSet other) {
+    for (String e : elements) {
+      if (e != null && !other.contains(e)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public boolean isSubsetOf(Set<String> other) {
+    for (String e : elements) {
+      if (e != null && !other.contains(e)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public int countEntries() {
+    return size;
+  }
+
+  @Override
+  boolean isFree(int slot) {
+    return elements[slot] == null;
+  }
+
+  @Override
+  int hashAt(int slot) {
+    return mix(elements[slot].hashCode());
+  }
+
+  @Override
+  void moveSlot(int from, int to) {
+    elements[to] = elements[from];
+  }
+
+  @Override
+  void freeSlot(int slot) {
+    elements[slot] = null;
+  }
+
+  @Override
+  void rehash(int capacity) {
+    String[] oldElements = elements;
+    elements = new String[capacity];
+    mask = capacity - 1;
+    for (String e : oldElements) {
+      if (e != null) {
+        insert(e);
+      }
+    }
+  }
+
+  @Override
+  public String toString() {
+    final StringBuilder b = new StringBuilder("[");
+    each(new Proc() {
+      @Override
+      public void apply(String element) {
+        if (b.length() > 1) {
+          b.append(", ");
+        }
+        b.append(element);
+      }
+    });
+    return b.append(']').toString();
+  }
+}
@@ -0,0 +1,127 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.waveprotocol.box.server.util.collect;
+
+import java.util.ConcurrentModificationException;
+
+/**
+ * Bookkeeping shared by the open-addressing collections of this package.
+ *
+ * Entries live in parallel arrays whose length is zero or a power of two, and
+ * are found by linear probing from the slot their hash selects. Removing an
+ * entry shifts the rest of its probe run back rather than leaving a tombstone,
+ * so lookups never have to skip removed entries. Tables are allocated on the
+ * first insertion, which keeps the many empty collections of the document
+ * model down to the size of their header.
+ */
+abstract class OpenHashTable {
+
+  /** The capacity of a table when it is first allocated. */
+  static final int MIN_CAPACITY = 4;
+
+  /**
+   * Stands in for null values in maps with primitive keys, which mark free
+   * slots with a null value.
+   */
+  static final Object NULL_VALUE = new Object();
+
+  /** The number of entries. */
+  int size;
+
+  /** Capacity minus one, or -1 while the table is unallocated. */
+  int mask = -1;
+
+  /** Counts insertions and removals, to detect them during iteration. */
+  int modCount;
+
+  /** Spreads the bits of a hash code, as tables use its low bits only. */
+  static int mix(int hash) {
+    int h = hash * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+  /** Returns true if the slot holds no entry. */
+  abstract boolean isFree(int slot);
+
+  /** Returns the mixed hash of the key in an occupied slot. */
+  abstract int hashAt(int slot);
+
+  /** Moves the entry of slot {@code from} into the free slot {@code to}. */
+  abstract void moveSlot(int from, int to);
+
+  /** Removes the entry of a slot, dropping references to its key and value. */
+  abstract void freeSlot(int slot);
+
+  /**
+   * Replaces the arrays with ones of the given capacity, sets {@link #mask}
+   * and inserts every entry again.
+   */
+  abstract void rehash(int capacity);
+
+  final int capacity() {
+    return mask + 1;
+  }
+
+  /** Grows the table if one more entry would fill more than 3/4 of it. */
+  final void reserveOne() {
+    int capacity = capacity();
+    if (capacity == 0) {
+      rehash(MIN_CAPACITY);
+    } else if ((size + 1) * 4 > capacity * 3) {
+      rehash(capacity * 2);
+    }
+  }
+
+  /** Removes the entry in an occupied slot. */
+  final void removeAt(int slot) {
+    modCount++;
+    size--;
+    int hole = slot;
+    for (int i = (hole + 1) & mask; !isFree(i); i = (i + 1) & mask) {
+      int home = hashAt(i) & mask;
+      // An entry may fill the hole unless its home slot is cyclically in (hole, i].
+      boolean stays = hole <= i ? (hole < home && home <= i) : (hole < home || home <= i);
+      if (!stays) {
+        moveSlot(i, hole);
+        hole = i;
+      }
+    }
+    freeSlot(hole);
+  }
+
+  /**
+   * Returns a free slot of an allocated table. A scan that starts right after
+   * it can remove the entries it visits: the entries that {@link #removeAt}
+   * shifts back then come from later in the scan, never from earlier.
+   */
+  final int someFreeSlot() {
+    int slot = 0;
+    while (!isFree(slot)) {
+      slot++;
+    }
+    return slot;
+  }
+
+  final void checkModCount(int expected) {
+    if (modCount != expected) {
+      throw new ConcurrentModificationException();
+    }
+  }
+}
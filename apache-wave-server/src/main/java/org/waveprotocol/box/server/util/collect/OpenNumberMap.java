@@ -0,0 +1,238 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.waveprotocol.box.server.util.collect;
+
+import org.waveprotocol.wave.model.util.NumberMap;
+import org.waveprotocol.wave.model.util.ReadableNumberMap;
+
+import java.util.Map;
+
+/**
+ * A {@link NumberMap} with unboxed keys, kept as the bits of the doubles in a
+ * long array beside an array of values. Keys compare as {@link Double#equals}
+ * does, as they do in the HashMap backed NumberMap. A null value marks a
+ * free slot; null values put into the map are stored as
+ * {@link OpenHashTable#NULL_VALUE}.
+ *
+ * @param <V> type of values in the map
+ */
+public final class OpenNumberMap<V> extends OpenHashTable implements NumberMap<V> {
+
+  private static final long[] NO_KEYS = {};
+  private static final Object[] NO_VALUES = {};
+
+  private long[] keys = NO_KEYS;
+  private Object[] values = NO_VALUES;
+
+  /** Returns the slot of a key, or -1 if it is not in the map. */
+  private int find(double key) {
+    if (size == 0) {
+      return -1;
+    }
+    long bits = Double.doubleToLongBits(key);
+    for (int i = hash(bits) & mask; values[i] != null; i = (i + 1) & mask) {
+      if (keys[i] == bits) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static int hash(long bits) {
+    return mix((int) (bits ^ (bits >>> 32)));
+  }
+
+  @SuppressWarnings("unchecked")
+  private V valueAt(int slot) {
+    Object value = values[slot];
+    return value == NULL_VALUE ? null : (V) value;
+  }
+
+  @Override
+  public void put(double key, V value) {
+    Object stored = value == null ? NULL_VALUE : value;
+    int slot = find(key);
+    if (slot >= 0) {
+      values[slot] = stored;
+      return;
+    }
+    reserveOne();
+    insert(Double.doubleToLongBits(key), stored);
+    size++;
+    modCount++;
+  }
+
+  /** Stores an entry whose key is not in the map, in an allocated table. */
+  private void insert(long bits, Object stored) {
+    int i = hash(bits) & mask;
+    while (values[i] != null) {
+      i = (i + 1) & mask;
+    }
+    keys[i] = bits;
+    values[i] = stored;
+  }
+
+  @Override
+  public void remove(double key) {
+    int slot = find(key);
+    if (slot >= 0) {
+      removeAt(slot);
+    }
+  }
+
+  @Override
+  public void putAll(ReadableNumberMap<V> pairsToAdd) {
+    pairsToAdd.each(new ProcV<V>() {
+      @Override
+      public void apply(double key, V value) {
+        put(key, value);
+      }
+    });
+  }
+
+  @Override
+  public void putAll(Map<Double, V> sourceMap) {
+    for (Map.Entry<Double, V> entry : sourceMap.entrySet()) {
+      put(entry.getKey(), entry.getValue());
+    }
+  }
+
+  @Override
+  public void clear() {
+    keys = NO_KEYS;
+    values = NO_VALUES;
+    mask = -1;
+    size = 0;
+    modCount++;
+  }
+
+  @Override
+  public void filter(EntryFilter<V> filter) {
+    if (size == 0) {
+      return;
+    }
+    int start = someFreeSlot();
+    for (int n = 1; n <= mask; ) {
+      int slot = (start + n) & mask;
+      if (values[slot] != null && !filter.apply(Double.longBitsToDouble(keys[slot]), valueAt(slot))) {
+        // An entry from later in the scan may have moved into the slot.
+        removeAt(slot);
+      } else {
+        n++;
+      }
+    }
+  }
+
+  @Override
+  public V getExisting(double key) {
+    int slot = find(key);
+    assert slot >= 0;
+    return slot >= 0 ? valueAt(slot) : null;
+  }
+
+  @Override
+  public V get(double key, V defaultValue) {
+    int slot = find(key);
+    return slot >= 0 ? valueAt(slot) : defaultValue;
+  }
+
+  @Override
+  public V get(double key) {
+    return get(key, null);
+  }
+
+  @Override
+  public boolean containsKey(double key) {
+    return find(key) >= 0;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  @Override
+  public void each(ProcV<V> callback) {
+    int expectedModCount = modCount;
+    long[] keys = this.keys;
+    Object[] values = this.values;
+    for (int i = 0; i < values.length; i++) {
+      if (values[i] != null) {
+        callback.apply(Double.longBitsToDouble(keys[i]), valueAt(i));
+        checkModCount(expectedModCount);
+      }
+    }
+  }
+
+  @Override
+  public int countEntries() {
+    return size;
+  }
+
+  @Override
+  boolean isFree(int slot) {
+    return values[slot] == null;
+  }
+
+  @Override
+  int hashAt(int slot) {
+    return hash(keys[slot]);
+  }
+
+  @Override
+  void moveSlot(int from, int to) {
+    keys[to] = keys[from];
+    values[to] = values[from];
+  }
+
+  @Override
+  void freeSlot(int slot) {
+    values[slot] = null;
+  }
+
+  @Override
+  void rehash(int capacity) {
+    long[] oldKeys = keys;
+    Object[] oldValues = values;
+    keys = new long[capacity];
+    values = new Object[capacity];
+    mask = capacity - 1;
+    for (int i = 0; i < oldValues.length; i++) {
+      if (oldValues[i] != null) {
+        insert(oldKeys[i], oldValues[i]);
+      }
+    }
+  }
+
+  @Override
+  public String toString() {
+    final StringBuilder b = new StringBuilder("{");
+    each(new ProcV<V>() {
+      @Override
+      public void apply(double key, V value) {
+        if (b.length() > 1) {
+          b.append(", ");
+        }
+        b.append(key).append('=').append(value);
+      }
+    });
+    return b.append('}').toString();
+  }
+}
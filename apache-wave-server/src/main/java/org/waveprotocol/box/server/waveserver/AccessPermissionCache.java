@@ -0,0 +1,110 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.waveprotocol.box.server.waveserver;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Maps;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import org.waveprotocol.box.common.DeltaSequence;
+import org.waveprotocol.wave.model.id.WaveletName;
+import org.waveprotocol.wave.model.operation.wave.AddParticipant;
+import org.waveprotocol.wave.model.operation.wave.RemoveParticipant;
+import org.waveprotocol.wave.model.operation.wave.TransformedWaveletDelta;
+import org.waveprotocol.wave.model.operation.wave.WaveletOperation;
+import org.waveprotocol.wave.model.version.HashedVersion;
+import org.waveprotocol.wave.model.wave.ParticipantId;
+import org.waveprotocol.wave.model.wave.data.ReadableWaveletData;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Remembers for a short while whether participants may access wavelets, so
+ * that requests for many resources of a wavelet, such as a page of attachment
+ * thumbnails, don't each wait for the wavelet and take its lock.
+ *
+ * The decisions for a wavelet are dropped when a participant is added to or
+ * removed from it. Other deltas don't change who has access, so decisions are
+ * kept across versions until they expire.
+ */
+@Singleton
+public class AccessPermissionCache implements WaveBus.Subscriber {
+
+  /** The number of seconds a decision is kept. */
+  private static final int EXPIRY_SECONDS = 60;
+
+  /** The maximum number of wavelets with cached decisions. */
+  private static final int MAX_WAVELETS = 10000;
+
+  private static final Callable<ConcurrentMap<ParticipantId, Boolean>> NEW_DECISIONS =
+      new Callable<ConcurrentMap<ParticipantId, Boolean>>() {
+        @Override
+        public ConcurrentMap<ParticipantId, Boolean> call() {
+          return Maps.newConcurrentMap();
+        }
+      };
+
+  private final Cache<WaveletName, ConcurrentMap<ParticipantId, Boolean>> decisions =
+      CacheBuilder.newBuilder()
+          .expireAfterWrite(EXPIRY_SECONDS, TimeUnit.SECONDS)
+          .maximumSize(MAX_WAVELETS)
+          .build();
+
+  @Inject
+  public AccessPermissionCache(WaveBus waveBus) {
+    waveBus.subscribe(this);
+  }
+
+  /**
+   * Returns the cached access decisions for a wavelet, by participant. New
+   * decisions should be added to the returned map, and the map should be
+   * taken before the decision is made: if participants change in between, the
+   * map is dropped from the cache along with the decision.
+   */
+  public ConcurrentMap<ParticipantId, Boolean> getDecisions(WaveletName waveletName) {
+    try {
+      return decisions.get(waveletName, NEW_DECISIONS);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  @Override
+  public void waveletUpdate(ReadableWaveletData wavelet, DeltaSequence deltas) {
+    for (TransformedWaveletDelta delta : deltas) {
+      for (WaveletOperation op : delta) {
+        if (op instanceof AddParticipant || op instanceof RemoveParticipant) {
+          decisions.invalidate(WaveletName.of(wavelet.getWaveId(), wavelet.getWaveletId()));
+          return;
+        }
+      }
+    }
+  }
+
+  @Override
+  public void waveletCommitted(WaveletName waveletName, HashedVersion version) {
+    // No op.
+  }
+}
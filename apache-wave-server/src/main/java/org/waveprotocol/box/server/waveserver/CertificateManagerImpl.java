@@ -73,7 +73,8 @@ public class CertificateManagerImpl implements CertificateManager {
    * Map of signer ids to requests for the signer info for those ids.  Each signer id is mapped to
    * a multimap: a domain mapped to a list of callbacks for that domain, called when the signer info
    * is available for the signer id.  It is arranged by domain to facilitate the optimisation where
-   * exactly 1 signer request is sent per domain.
+   * exactly 1 signer request is sent per domain.  Guarded by itself; the callbacks and requests are
+   * run without holding it.
    */
   private final Map<ByteString, Multimap<String, SignerInfoPrefetchResultListener>>
       signerInfoRequests;
@@ -161,7 +162,7 @@ public class CertificateManagerImpl implements CertificateManager {
   private void verifySingleSignature(ByteStringMessage<ProtocolWaveletDelta> delta,
       ProtocolSignature signature, String domain)
       throws SignatureException, UnknownSignerException {
-    verifier.verify(delta.getByteString().toByteArray(), signature, domain);
+    verifier.verify(delta.getByteString().asReadOnlyByteBuffer(), signature, domain);
   }
 
   /**
@@ -196,14 +197,14 @@ public class CertificateManagerImpl implements CertificateManager {
   }
 
   @Override
-  public synchronized void storeSignerInfo(ProtocolSignerInfo signerInfo)
+  public void storeSignerInfo(ProtocolSignerInfo signerInfo)
       throws SignatureException {
     verifier.verifySignerInfo(new SignerInfo(signerInfo));
     certPathStore.putSignerInfo(signerInfo);
   }
 
   @Override
-  public synchronized ProtocolSignerInfo retrieveSignerInfo(ByteString signerId) {
+  public ProtocolSignerInfo retrieveSignerInfo(ByteString signerId) {
     SignerInfo signerInfo;
     try {
       signerInfo = certPathStore.getSignerInfo(signerId.toByteArray());
@@ -222,7 +223,7 @@ public class CertificateManagerImpl implements CertificateManager {
   }
 
   @Override
-  public synchronized void prefetchDeltaSignerInfo(WaveletFederationProvider provider,
+  public void prefetchDeltaSignerInfo(WaveletFederationProvider provider,
       ByteString signerId, WaveletName waveletName, HashedVersion deltaEndVersion,
       SignerInfoPrefetchResultListener callback) {
     ProtocolSignerInfo signerInfo = retrieveSignerInfo(signerId);
@@ -237,23 +238,27 @@ public class CertificateManagerImpl implements CertificateManager {
   /**
    * Enqueue a signer info request for a signed delta on a given domain.
    */
-  private synchronized void enqueueSignerInfoRequest(final WaveletFederationProvider provider,
+  private void enqueueSignerInfoRequest(final WaveletFederationProvider provider,
       final ByteString signerId, final WaveletName waveletName,
       HashedVersion deltaEndVersion, SignerInfoPrefetchResultListener callback) {
     final String domain = waveletName.waveletId.getDomain();
-    Multimap<String, SignerInfoPrefetchResultListener> domainCallbacks =
-        signerInfoRequests.get(signerId);
+    boolean firstForDomain;
+    synchronized (signerInfoRequests) {
+      Multimap<String, SignerInfoPrefetchResultListener> domainCallbacks =
+          signerInfoRequests.get(signerId);
+
+      if (domainCallbacks == null) {
+        domainCallbacks = ArrayListMultimap.create();
+        signerInfoRequests.put(signerId, domainCallbacks);
+      }
 
-    if (domainCallbacks == null) {
-      domainCallbacks = ArrayListMultimap.create();
-      signerInfoRequests.put(signerId, domainCallbacks);
+      // The thing is, we need to add multiple callbacks for the same domain, but we only want to
+      // have one outstanding request per domain
+      domainCallbacks.put(domain, callback);
+      firstForDomain = domainCallbacks.get(domain).size() == 1;
     }
 
-    // The thing is, we need to add multiple callbacks for the same domain, but we only want to
-    // have one outstanding request per domain
-    domainCallbacks.put(domain, callback);
-
-    if (domainCallbacks.get(domain).size() == 1) {
+    if (firstForDomain) {
         provider.getDeltaSignerInfo(signerId, waveletName,
             (deltaEndVersion == null)
                 ? null : CoreWaveletOperationSerializer.serialize(deltaEndVersion),
@@ -282,8 +287,16 @@ public class CertificateManagerImpl implements CertificateManager {
    * @param signerId to dequeue requests for
    * @param error if there was an error, null for success
    */
-  private synchronized void dequeueSignerInfoRequest(ByteString signerId, FederationError error) {
-    List<String> domains = ImmutableList.copyOf(signerInfoRequests.get(signerId).keySet());
+  private void dequeueSignerInfoRequest(ByteString signerId, FederationError error) {
+    List<String> domains;
+    synchronized (signerInfoRequests) {
+      Multimap<String, SignerInfoPrefetchResultListener> domainListeners =
+          signerInfoRequests.get(signerId);
+      if (domainListeners == null) {
+        return;
+      }
+      domains = ImmutableList.copyOf(domainListeners.keySet());
+    }
     for (String domain : domains) {
       dequeueSignerInfoRequestForDomain(signerId, error, domain);
     }
@@ -296,29 +309,33 @@ public class CertificateManagerImpl implements CertificateManager {
    * @param error if there was an error, null for success
    * @param domain to dequeue the signer requests for
    */
-  private synchronized void dequeueSignerInfoRequestForDomain(ByteString signerId,
+  private void dequeueSignerInfoRequestForDomain(ByteString signerId,
       FederationError error, String domain) {
-    Multimap<String, SignerInfoPrefetchResultListener> domainListeners =
-        signerInfoRequests.get(signerId);
-    if (domainListeners == null) {
-      LOG.info("There are no domain listeners for signer " + signerId + " domain "+ domain);
-      return;
-    } else {
-      LOG.info("Dequeuing " + domainListeners.size() + " listeners for domain " + domain);
+    List<SignerInfoPrefetchResultListener> listeners;
+    synchronized (signerInfoRequests) {
+      Multimap<String, SignerInfoPrefetchResultListener> domainListeners =
+          signerInfoRequests.get(signerId);
+      if (domainListeners == null) {
+        LOG.info("There are no domain listeners for signer " + signerId + " domain "+ domain);
+        return;
+      } else {
+        LOG.info("Dequeuing " + domainListeners.size() + " listeners for domain " + domain);
+      }
+
+      listeners = ImmutableList.copyOf(domainListeners.removeAll(domain));
+      if (domainListeners.isEmpty()) {
+        // No listeners for any domains, delete the signer id for the overall map
+        signerInfoRequests.remove(signerId);
+      }
     }
 
-    for (SignerInfoPrefetchResultListener listener : domainListeners.get(domain)) {
+    ProtocolSignerInfo signerInfo = (error == null) ? retrieveSignerInfo(signerId) : null;
+    for (SignerInfoPrefetchResultListener listener : listeners) {
       if (error == null) {
-        listener.onSuccess(retrieveSignerInfo(signerId));
+        listener.onSuccess(signerInfo);
       } else {
         listener.onFailure(error);
       }
     }
-
-    domainListeners.removeAll(domain);
-    if (domainListeners.isEmpty()) {
-      // No listeners for any domains, delete the signer id for the overall map
-      signerInfoRequests.remove(signerId);
-    }
   }
 }
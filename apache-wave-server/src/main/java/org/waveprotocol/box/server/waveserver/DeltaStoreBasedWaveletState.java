@@ -32,6 +32,7 @@ import com.google.common.util.concurrent.ListenableFutureTask;
 import org.waveprotocol.box.common.ListReceiver;
 import org.waveprotocol.box.common.Receiver;
 import org.waveprotocol.box.server.persistence.PersistenceException;
+import org.waveprotocol.box.server.stat.MetricRegistry;
 import org.waveprotocol.box.server.util.WaveletDataUtil;
 import org.waveprotocol.wave.federation.Proto.ProtocolAppliedWaveletDelta;
 import org.waveprotocol.wave.model.id.IdURIEncoderDecoder;
@@ -55,6 +56,8 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentNavigableMap;
 import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
@@ -78,6 +81,35 @@ class DeltaStoreBasedWaveletState implements WaveletState {
   private static final HashedVersionFactory HASH_FACTORY =
       new HashedVersionFactoryImpl(URI_CODEC);
 
+  /**
+   * Number of persisted deltas kept in memory after a flush, so that clients
+   * catching up on recent history are served without going to storage.
+   */
+  @VisibleForTesting
+  static final int RETAINED_PERSISTED_DELTAS = 64;
+
+  /** Bounds of the adaptive size of one append to the delta store. */
+  private static final long MIN_BATCH_BYTES = 16 * 1024;
+  private static final long MAX_BATCH_BYTES = 4 * 1024 * 1024;
+
+  /**
+   * Appends slower than this shrink the batch size, appends of full batches
+   * faster than half of it grow the batch size.
+   */
+  private static final long TARGET_APPEND_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+  /** Number of deltas cached by all wavelet states. */
+  private static final AtomicLong totalCachedDeltas = new AtomicLong();
+
+  static {
+    MetricRegistry.registerGauge("wavelet_cached_deltas", "total", new MetricRegistry.Gauge() {
+      @Override
+      public long getValue() {
+        return totalCachedDeltas.get();
+      }
+    });
+  }
+
   private static final Function<WaveletDeltaRecord, TransformedWaveletDelta> TRANSFORMED =
       new Function<WaveletDeltaRecord, TransformedWaveletDelta>() {
         @Override
@@ -168,9 +200,9 @@ class DeltaStoreBasedWaveletState implements WaveletState {
   private static WaveletDeltaRecord getDelta(WaveletDeltaRecordReader reader,
       ConcurrentNavigableMap<HashedVersion, WaveletDeltaRecord> cachedDeltas,
       HashedVersion version) throws IOException {
-    WaveletDeltaRecord delta = reader.getDelta(version.getVersion());
-    if (delta == null && cachedDeltas != null) {
-      delta = cachedDeltas.get(version);
+    WaveletDeltaRecord delta = (cachedDeltas != null) ? cachedDeltas.get(version) : null;
+    if (delta == null) {
+      delta = reader.getDelta(version.getVersion());
     }
     return delta;
   }
@@ -191,10 +223,16 @@ class DeltaStoreBasedWaveletState implements WaveletState {
   /** The persist task that will be executed next. */
   private ListenableFutureTask<Void> nextPersistTask = null;
 
+  /**
+   * Size in bytes above which the persister starts a new append. Only the
+   * persister task reads and writes it.
+   */
+  private long batchLimitBytes = 256 * 1024;
+
   /**
    * Processes the persist task and checks if there is another task to do when
    * one task is done. In such a case, it writes all waiting to be persisted
-   * deltas to persistent storage in one operation.
+   * deltas to persistent storage, in as few appends as the batch size allows.
    */
   private final Callable<Void> persisterTask = new Callable<Void>() {
     @Override
@@ -211,15 +249,22 @@ class DeltaStoreBasedWaveletState implements WaveletState {
         // Done, version is already persisted.
         version = last;
       } else {
-        ImmutableList.Builder<WaveletDeltaRecord> deltas = ImmutableList.builder();
         HashedVersion v = (last == null) ? versionZero : last;
-        do {
-          WaveletDeltaRecord d = cachedDeltas.get(v);
-          deltas.add(d);
-          v = d.getResultingVersion();
-        } while (v.getVersion() < version.getVersion());
+        for (;;) {
+          v = appendBatch(v, version);
+          if (v.getVersion() >= version.getVersion()) {
+            break;
+          }
+          // Publish each batch, so that a long backlog can be flushed as it
+          // is written.
+          synchronized (persistLock) {
+            Preconditions.checkState(last == lastPersistedVersion.get(),
+                "lastPersistedVersion changed while we were writing to storage");
+            lastPersistedVersion.set(v);
+            last = v;
+          }
+        }
         Preconditions.checkState(v.equals(version));
-        deltasAccess.append(deltas.build());
       }
       synchronized (persistLock) {
         Preconditions.checkState(last == lastPersistedVersion.get(),
@@ -230,8 +275,8 @@ class DeltaStoreBasedWaveletState implements WaveletState {
           nextPersistTask = null;
         } else {
           latestVersionToPersist = null;
-          }
         }
+      }
       return null;
     }
   };
@@ -306,6 +351,8 @@ class DeltaStoreBasedWaveletState implements WaveletState {
       return null;
     } else if (version == snapshot.getVersion()) {
       return snapshot.getHashedVersion();
+    } else if (cachedEntry != null) {
+      return cachedEntry.getKey();
     } else {
       WaveletDeltaRecord delta;
       try {
@@ -313,11 +360,7 @@ class DeltaStoreBasedWaveletState implements WaveletState {
       } catch (IOException e) {
         throw new RuntimeIOException(new IOException(format("Version : %d", version), e));
       }
-      if (delta == null && cachedEntry != null) {
-        return cachedEntry.getKey();
-      } else {
-       return delta != null ? delta.getAppliedAtVersion() : null;
-      }
+      return delta != null ? delta.getAppliedAtVersion() : null;
     }
   }
 
@@ -450,6 +493,7 @@ class DeltaStoreBasedWaveletState implements WaveletState {
 
     // Now that we built the snapshot without any exceptions, we record the delta.
     cachedDeltas.put(deltaRecord.getAppliedAtVersion(), deltaRecord);
+    totalCachedDeltas.incrementAndGet();
   }
 
   @Override
@@ -482,14 +526,80 @@ class DeltaStoreBasedWaveletState implements WaveletState {
 
   @Override
   public void flush(HashedVersion version) {
-    cachedDeltas.remove(cachedDeltas.lowerKey(version));
+    HashedVersion persisted = lastPersistedVersion.get();
+    if (persisted == null) {
+      return;
+    }
+    // The persister still needs the deltas past the persisted version, which
+    // may be behind the given one if persistence failed.
+    HashedVersion end = (version.getVersion() <= persisted.getVersion()) ? version : persisted;
+    // Keep the newest persisted deltas, counting back from the end.
+    HashedVersion cutoff = null;
+    int retained = 0;
+    for (HashedVersion key : cachedDeltas.headMap(end, false).descendingKeySet()) {
+      if (retained++ == RETAINED_PERSISTED_DELTAS) {
+        cutoff = key;
+        break;
+      }
+    }
+    if (cutoff != null) {
+      int removed = 0;
+      for (Map.Entry<HashedVersion, WaveletDeltaRecord> first = cachedDeltas.firstEntry();
+          first != null && first.getKey().compareTo(cutoff) <= 0;
+          first = cachedDeltas.firstEntry()) {
+        cachedDeltas.remove(first.getKey());
+        removed++;
+      }
+      totalCachedDeltas.addAndGet(-removed);
+    }
     if (LOG.isFineLoggable()) {
-      LOG.fine("Flushed deltas up to version " + version);
+      LOG.fine("Flushed deltas up to version " + end + ", " + cachedDeltas.size() + " cached");
     }
   }
 
+  @Override
+  public int getCachedDeltaCount() {
+    return cachedDeltas.size();
+  }
+
   @Override
   public void close() {
+    totalCachedDeltas.addAndGet(-cachedDeltas.size());
+    cachedDeltas.clear();
+  }
+
+  /**
+   * Writes the cached deltas from a version towards an end version in one
+   * append of about the batch size, and adapts the batch size to how long the
+   * append took.
+   *
+   * @return the version the written deltas end at.
+   */
+  private HashedVersion appendBatch(HashedVersion from, HashedVersion end)
+      throws PersistenceException {
+    ImmutableList.Builder<WaveletDeltaRecord> batch = ImmutableList.builder();
+    long bytes = 0;
+    HashedVersion v = from;
+    do {
+      WaveletDeltaRecord d = cachedDeltas.get(v);
+      batch.add(d);
+      bytes += d.getAppliedDelta().getByteString().size();
+      v = d.getResultingVersion();
+    } while (v.getVersion() < end.getVersion() && bytes < batchLimitBytes);
+    long start = System.nanoTime();
+    deltasAccess.append(batch.build());
+    long elapsed = System.nanoTime() - start;
+    if (elapsed > TARGET_APPEND_NANOS) {
+      batchLimitBytes = Math.max(MIN_BATCH_BYTES, batchLimitBytes / 2);
+    } else if (bytes >= batchLimitBytes && elapsed < TARGET_APPEND_NANOS / 2) {
+      batchLimitBytes = Math.min(MAX_BATCH_BYTES, batchLimitBytes * 2);
+    }
+    return v;
+  }
+
+  @VisibleForTesting
+  void setBatchLimitBytes(long batchLimitBytes) {
+    this.batchLimitBytes = batchLimitBytes;
   }
 
   /**
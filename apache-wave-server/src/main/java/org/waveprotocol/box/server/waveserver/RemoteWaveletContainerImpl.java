@@ -24,7 +24,10 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
 import com.google.common.util.concurrent.SettableFuture;
 import com.google.protobuf.ByteString;
 import com.google.protobuf.InvalidProtocolBufferException;
@@ -52,11 +55,10 @@ import org.waveprotocol.wave.model.operation.wave.WaveletDelta;
 import org.waveprotocol.wave.model.version.HashedVersion;
 import org.waveprotocol.wave.util.logging.Log;
 
-import java.util.ArrayList;
 import java.util.List;
-import java.util.Iterator;
 import java.util.Map;
 import java.util.NavigableMap;
+import java.util.concurrent.Callable;
 import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -68,6 +70,15 @@ import java.util.concurrent.atomic.AtomicInteger;
 class RemoteWaveletContainerImpl extends WaveletContainerImpl implements RemoteWaveletContainer {
   private static final Log LOG = Log.get(RemoteWaveletContainerImpl.class);
 
+  /**
+   * The estimated size, in bytes, of the history requested from the hosting
+   * server at a time. A longer gap is filled by consecutive requests.
+   */
+  private static final long HISTORY_REQUEST_LENGTH_LIMIT = 1 << 20;
+
+  /** Executor the signatures of incoming deltas are verified on. */
+  private final Executor verificationExecutor;
+
   /**
    * Stores all pending deltas for this wavelet, whose insertions would cause
    * discontiguous blocks of deltas. This must only be accessed under writeLock.
@@ -83,15 +94,32 @@ class RemoteWaveletContainerImpl extends WaveletContainerImpl implements RemoteW
   private HashedVersion pendingCommitVersion;
 
   /**
-   * Create a new RemoteWaveletContainerImpl. Just pass through to the parent
-   * constructor.
+   * Whether a history request for this wavelet is in flight. Only one is
+   * issued at a time; once its response has been handled, the next one is
+   * derived from the deltas still pending. This must only be accessed under
+   * writeLock.
+   */
+  private boolean historyRequestPending = false;
+
+  /**
+   * Results of the updates whose deltas wait in pendingDeltas for missing
+   * history. This must only be accessed under writeLock.
+   */
+  private final List<SettableFuture<Void>> updatesAwaitingHistory = Lists.newArrayList();
+
+  /**
+   * Create a new RemoteWaveletContainerImpl.
+   *
+   * @param verificationExecutor executor the signatures of incoming deltas are
+   *        verified on, in parallel.
    */
   public RemoteWaveletContainerImpl(WaveletName waveletName, WaveletNotificationSubscriber notifiee,
       ListenableFuture<? extends WaveletState> waveletStateFuture,
-      Executor storageContinuationExecutor) {
+      Executor storageContinuationExecutor, Executor verificationExecutor) {
     // We pass here null for waveDomain because you have to be explicit
     // participant on remote wavelet to have access permission.
     super(waveletName, notifiee, waveletStateFuture, null, storageContinuationExecutor);
+    this.verificationExecutor = verificationExecutor;
   }
 
   @Override
@@ -99,7 +127,7 @@ class RemoteWaveletContainerImpl extends WaveletContainerImpl implements RemoteW
       final String domain, final WaveletFederationProvider federationProvider,
       final CertificateManager certificateManager) {
     SettableFuture<Void> futureResult = SettableFuture.create();
-    internalUpdate(deltas, domain, federationProvider, certificateManager, futureResult);
+    internalUpdate(deltas, domain, federationProvider, certificateManager, futureResult, false);
     return futureResult;
   }
 
@@ -149,9 +177,16 @@ class RemoteWaveletContainerImpl extends WaveletContainerImpl implements RemoteW
     }
   }
 
+  /**
+   * Parses, verifies and applies incoming deltas.
+   *
+   * @param historyResponse whether the deltas are the response to this
+   *        wavelet's pending history request
+   */
   private void internalUpdate(final List<ByteString> deltas,
       final String domain, final WaveletFederationProvider federationProvider,
-      final CertificateManager certificateManager, final SettableFuture<Void> futureResult) {
+      final CertificateManager certificateManager, final SettableFuture<Void> futureResult,
+      final boolean historyResponse) {
     // Turn raw serialised ByteStrings in to a more useful representation
     final List<ByteStringMessage<ProtocolAppliedWaveletDelta>> appliedDeltas = Lists.newArrayList();
     for (ByteString delta : deltas) {
@@ -165,8 +200,12 @@ class RemoteWaveletContainerImpl extends WaveletContainerImpl implements RemoteW
         } finally {
           releaseWriteLock();
         }
-        futureResult.setException(new FederationException(
-            FederationErrors.badRequest("Invalid applied delta protocol buffer")));
+        FederationError error =
+            FederationErrors.badRequest("Invalid applied delta protocol buffer");
+        if (historyResponse) {
+          failHistoryRequest(error);
+        }
+        futureResult.setException(new FederationException(error));
         return;
       }
     }
@@ -178,8 +217,8 @@ class RemoteWaveletContainerImpl extends WaveletContainerImpl implements RemoteW
       @Override
       public void run() {
         if (numSignerInfoPrefetched.decrementAndGet() == 0) {
-          internalUpdateAfterSignerInfoRetrieval(
-              appliedDeltas, domain, federationProvider, certificateManager, futureResult);
+          verifyDeltas(appliedDeltas, domain, federationProvider, certificateManager,
+              futureResult, historyResponse);
         }
       }
     };
@@ -218,10 +257,66 @@ class RemoteWaveletContainerImpl extends WaveletContainerImpl implements RemoteW
     countDown.run();
   }
 
-  private void internalUpdateAfterSignerInfoRetrieval(
+  /**
+   * Verifies the signatures of the deltas in parallel on the verification
+   * executor, outside of the wavelet lock, and then applies them.
+   */
+  private void verifyDeltas(
+      final List<ByteStringMessage<ProtocolAppliedWaveletDelta>> appliedDeltas,
+      final String domain, final WaveletFederationProvider federationProvider,
+      final CertificateManager certificateManager, final SettableFuture<Void> futureResult,
+      final boolean historyResponse) {
+    List<ListenableFuture<Void>> verifications =
+        Lists.newArrayListWithCapacity(appliedDeltas.size());
+    for (final ByteStringMessage<ProtocolAppliedWaveletDelta> appliedDelta : appliedDeltas) {
+      ListenableFutureTask<Void> verification = ListenableFutureTask.create(new Callable<Void>() {
+        @Override
+        public Void call() throws WaveServerException {
+          verifyDelta(appliedDelta, domain, certificateManager);
+          return null;
+        }
+      });
+      verificationExecutor.execute(verification);
+      verifications.add(verification);
+    }
+    Futures.addCallback(Futures.allAsList(verifications), new FutureCallback<List<Void>>() {
+      @Override
+      public void onSuccess(List<Void> result) {
+        internalUpdateAfterVerification(appliedDeltas, domain, federationProvider,
+            certificateManager, futureResult, historyResponse);
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        LOG.warning("Update failure", t);
+        FederationError error = FederationErrors.badRequest(t.getMessage());
+        if (historyResponse) {
+          failHistoryRequest(error);
+        }
+        futureResult.setException(new FederationException(error));
+      }
+    });
+  }
+
+  private void verifyDelta(ByteStringMessage<ProtocolAppliedWaveletDelta> appliedDelta,
+      String domain, CertificateManager certificateManager) throws WaveServerException {
+    try {
+      certificateManager.verifyDelta(appliedDelta.getMessage().getSignedOriginalDelta());
+    } catch (SignatureException e) {
+      LOG.warning("Verification failure for " + domain + " incoming " + getWaveletName(), e);
+      throw new WaveServerException("Verification failure", e);
+    } catch (UnknownSignerException e) {
+      LOG.severe("Unknown signer for " + domain + " incoming " + getWaveletName() +
+          ", this is BAD! We were supposed to have prefetched it!", e);
+      throw new WaveServerException("Unknown signer", e);
+    }
+  }
+
+  private void internalUpdateAfterVerification(
       List<ByteStringMessage<ProtocolAppliedWaveletDelta>> appliedDeltas,
       final String domain, final WaveletFederationProvider federationProvider,
-      final CertificateManager certificateManager, final SettableFuture<Void> futureResult) {
+      final CertificateManager certificateManager, final SettableFuture<Void> futureResult,
+      boolean historyResponse) {
 
     try {
       awaitLoad();
@@ -234,40 +329,22 @@ class RemoteWaveletContainerImpl extends WaveletContainerImpl implements RemoteW
       return;
     }
 
-    LOG.info("Passed signer info check, now applying all " + appliedDeltas.size() + " deltas");
+    LOG.info("Passed signature check, now applying all " + appliedDeltas.size() + " deltas");
+    // The history to request once the lock is released, if any.
+    HashedVersion historyStart = null;
+    HashedVersion historyEnd = null;
     acquireWriteLock();
     try {
+      if (historyResponse) {
+        historyRequestPending = false;
+      }
       checkStateOk(); // TODO(soren): if CORRUPTED, throw away wavelet and start again
       HashedVersion expectedVersion = getCurrentVersion();
-      boolean haveRequestedHistory = false;
-
-      // Verify signatures of all deltas
-      for (ByteStringMessage<ProtocolAppliedWaveletDelta> appliedDelta : appliedDeltas) {
-        try {
-          certificateManager.verifyDelta(appliedDelta.getMessage().getSignedOriginalDelta());
-        } catch (SignatureException e) {
-          LOG.warning("Verification failure for " + domain + " incoming " + getWaveletName(), e);
-          throw new WaveServerException("Verification failure", e);
-        } catch (UnknownSignerException e) {
-          LOG.severe("Unknown signer for " + domain + " incoming " + getWaveletName() +
-              ", this is BAD! We were supposed to have prefetched it!", e);
-          throw new WaveServerException("Unknown signer", e);
-        }
-      }
 
       // Insert all available deltas into pendingDeltas.
       for (ByteStringMessage<ProtocolAppliedWaveletDelta> appliedDelta : appliedDeltas) {
         LOG.info("Delta incoming: " + appliedDelta);
 
-        // Log any illformed signed original deltas. TODO: Check if this can be removed.
-        try {
-          ProtocolWaveletDelta actualDelta = ProtocolWaveletDelta.parseFrom(
-              appliedDelta.getMessage().getSignedOriginalDelta().getDelta());
-          LOG.info("actual delta: " + actualDelta);
-        } catch (InvalidProtocolBufferException e) {
-          e.printStackTrace();
-        }
-
         HashedVersion appliedAt;
         try {
           appliedAt = AppliedDeltaUtil.getHashedVersionAppliedAt(appliedDelta);
@@ -280,7 +357,7 @@ class RemoteWaveletContainerImpl extends WaveletContainerImpl implements RemoteW
         pendingDeltas.put(appliedAt, appliedDelta);
       }
 
-      // Traverse pendingDeltas while we have any to process.
+      // Apply the contiguous run of pending deltas, in order, as one batch.
       ImmutableList.Builder<WaveletDeltaRecord> resultingDeltas = ImmutableList.builder();
       while (pendingDeltas.size() > 0) {
         Map.Entry<HashedVersion, ByteStringMessage<ProtocolAppliedWaveletDelta>> first =
@@ -293,38 +370,19 @@ class RemoteWaveletContainerImpl extends WaveletContainerImpl implements RemoteW
           LOG.info("current appliedAt: " + appliedAt.getVersion() + " expected: " + expectedVersion.getVersion());
         }
 
-        // If we don't have the right version it implies there is a history we need, so set up a
-        // callback to request it and fall out of this update
+        // If we don't have the right version it implies there is a history we need. Request it
+        // unless a request is already in flight, whose response will lead to the next one.
         if (appliedAt.getVersion() > expectedVersion.getVersion()) {
-          LOG.info("Missing history from " + expectedVersion.getVersion() + "-"
-              + appliedAt.getVersion() + ", requesting from upstream for " + getWaveletName());
-
-          if (federationProvider != null) {
-            // TODO: only one request history should be pending at any one time?
-            // We should derive a new one whenever the active one is finished,
-            // based on the current state of pendingDeltas.
-            federationProvider.requestHistory(getWaveletName(), domain,
-                CoreWaveletOperationSerializer.serialize(expectedVersion),
-                CoreWaveletOperationSerializer.serialize(appliedAt),
-                -1,
-                new HistoryResponseListener() {
-                    @Override
-                    public void onFailure(FederationError error) {
-                      LOG.severe("Callback failure: " + error);
-                    }
-
-                    @Override
-                    public void onSuccess(List<ByteString> deltaList,
-                        ProtocolHashedVersion lastCommittedVersion, long versionTruncatedAt) {
-                      LOG.info("Got response callback: " + getWaveletName() + ", lcv "
-                          + lastCommittedVersion + " deltaList length = " + deltaList.size());
-
-                      // Try updating again with the new history
-                      internalUpdate(deltaList, domain, federationProvider, certificateManager,
-                          futureResult);
-                    }
-                });
-            haveRequestedHistory = true;
+          if (historyRequestPending) {
+            LOG.info("Missing history from " + expectedVersion.getVersion() + "-"
+                + appliedAt.getVersion() + " for " + getWaveletName()
+                + ", awaiting the pending history request");
+          } else if (federationProvider != null) {
+            LOG.info("Missing history from " + expectedVersion.getVersion() + "-"
+                + appliedAt.getVersion() + ", requesting from upstream for " + getWaveletName());
+            historyRequestPending = true;
+            historyStart = expectedVersion;
+            historyEnd = appliedAt;
           } else {
             LOG.severe("History request resulted in non-contiguous deltas!");
           }
@@ -364,7 +422,6 @@ class RemoteWaveletContainerImpl extends WaveletContainerImpl implements RemoteW
             throw new WaveServerException("Couldn't apply authoritative delta", e);
           }
 
-          // TODO: does waveletData update?
           expectedVersion = getCurrentVersion();
         } else {
           LOG.warning("Got delta from the past: " + appliedDelta);
@@ -373,7 +430,7 @@ class RemoteWaveletContainerImpl extends WaveletContainerImpl implements RemoteW
         pendingDeltas.remove(appliedAt);
       }
 
-      commitAndNotifyResultingDeltas(resultingDeltas, futureResult);
+      commitAndNotifyResultingDeltas(resultingDeltas.build(), futureResult);
 
     } catch (WaveServerException e) {
       LOG.warning("Update failure", e);
@@ -384,29 +441,96 @@ class RemoteWaveletContainerImpl extends WaveletContainerImpl implements RemoteW
     } finally {
       releaseWriteLock();
     }
+
+    if (historyStart != null) {
+      requestHistory(historyStart, historyEnd, domain, federationProvider, certificateManager,
+          futureResult);
+    }
   }
 
   /**
-   * Commits the resulting deltas, notifying the server of them.
+   * Requests the history between two versions from the hosting server, and
+   * applies it when it arrives. Must be called without the lock held, since
+   * the response may be delivered on the calling thread.
+   */
+  private void requestHistory(HashedVersion startVersion, HashedVersion endVersion,
+      final String domain, final WaveletFederationProvider federationProvider,
+      final CertificateManager certificateManager, final SettableFuture<Void> futureResult) {
+    federationProvider.requestHistory(getWaveletName(), domain,
+        CoreWaveletOperationSerializer.serialize(startVersion),
+        CoreWaveletOperationSerializer.serialize(endVersion),
+        HISTORY_REQUEST_LENGTH_LIMIT,
+        new HistoryResponseListener() {
+            @Override
+            public void onFailure(FederationError error) {
+              LOG.severe("Callback failure: " + error);
+              failHistoryRequest(error);
+            }
+
+            @Override
+            public void onSuccess(List<ByteString> deltaList,
+                ProtocolHashedVersion lastCommittedVersion, long versionTruncatedAt) {
+              LOG.info("Got response callback: " + getWaveletName() + ", lcv "
+                  + lastCommittedVersion + " deltaList length = " + deltaList.size());
+
+              // Try updating again with the new history
+              internalUpdate(deltaList, domain, federationProvider, certificateManager,
+                  futureResult, true);
+            }
+        });
+  }
+
+  /**
+   * Ends the pending history request after it or its response failed, and
+   * fails the updates that were waiting for it. Must be called without the
+   * lock held.
+   */
+  private void failHistoryRequest(FederationError error) {
+    List<SettableFuture<Void>> failed;
+    acquireWriteLock();
+    try {
+      historyRequestPending = false;
+      failed = ImmutableList.copyOf(updatesAwaitingHistory);
+      updatesAwaitingHistory.clear();
+    } finally {
+      releaseWriteLock();
+    }
+    for (SettableFuture<Void> update : failed) {
+      update.setException(new FederationException(error));
+    }
+  }
+
+  /**
+   * Notifies the server of the resulting deltas and completes the updates
+   * whose deltas have all been applied. Must be called with writelock held.
    * Assumes that everything in resultingDeltas is now in-order, since
    * even if the original stream was non-contiguous, we have requestedHistory.
    * Even if not, it is still safe to commit up to the fragmented point.
    */
   private void commitAndNotifyResultingDeltas(
-      ImmutableList.Builder<WaveletDeltaRecord> resultingDeltas,
+      ImmutableList<WaveletDeltaRecord> resultingDeltas,
       final SettableFuture<Void> futureResult) {
-    if(!resultingDeltas.build().isEmpty()) {
-      notifyOfDeltas(resultingDeltas.build(), ImmutableSet.<String>of());
-      futureResult.set(null);
+    if (!resultingDeltas.isEmpty()) {
+      notifyOfDeltas(resultingDeltas, ImmutableSet.<String>of());
+    } else {
+      LOG.info("No deltas in list (fetching history?)");
+    }
 
-      //Attempt to run any pending commit
-      if(pendingCommit) {
-        releaseWriteLock();
-        commit(pendingCommitVersion);
-        acquireWriteLock();
+    if (pendingDeltas.isEmpty()) {
+      futureResult.set(null);
+      for (SettableFuture<Void> update : updatesAwaitingHistory) {
+        update.set(null);
       }
+      updatesAwaitingHistory.clear();
     } else {
-      LOG.info("No deltas in list (fetching history?), ignoring callback");
+      updatesAwaitingHistory.add(futureResult);
+    }
+
+    //Attempt to run any pending commit
+    if (!resultingDeltas.isEmpty() && pendingCommit) {
+      releaseWriteLock();
+      commit(pendingCommitVersion);
+      acquireWriteLock();
     }
   }
 
@@ -0,0 +1,382 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.waveprotocol.box.server.waveserver;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import org.waveprotocol.box.common.DeltaSequence;
+import org.waveprotocol.box.server.util.WaveletDataUtil;
+import org.waveprotocol.wave.model.document.operation.AnnotationBoundaryMap;
+import org.waveprotocol.wave.model.document.operation.Attributes;
+import org.waveprotocol.wave.model.document.operation.DocInitializationCursor;
+import org.waveprotocol.wave.model.id.IdConstants;
+import org.waveprotocol.wave.model.id.IdUtil;
+import org.waveprotocol.wave.model.id.WaveId;
+import org.waveprotocol.wave.model.id.WaveletId;
+import org.waveprotocol.wave.model.id.WaveletName;
+import org.waveprotocol.wave.model.operation.wave.TransformedWaveletDelta;
+import org.waveprotocol.wave.model.operation.wave.WaveletBlipOperation;
+import org.waveprotocol.wave.model.operation.wave.WaveletOperation;
+import org.waveprotocol.wave.model.supplement.PrimitiveSupplement;
+import org.waveprotocol.wave.model.supplement.WaveletBasedSupplement;
+import org.waveprotocol.wave.model.util.Pair;
+import org.waveprotocol.wave.model.version.HashedVersion;
+import org.waveprotocol.wave.model.wave.ParticipantId;
+import org.waveprotocol.wave.model.wave.data.ObservableWaveletData;
+import org.waveprotocol.wave.model.wave.data.ReadableBlipData;
+import org.waveprotocol.wave.model.wave.data.ReadableWaveletData;
+import org.waveprotocol.wave.model.wave.opbased.OpBasedWavelet;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.Nullable;
+
+/**
+ * Keeps per-user unread counts of conversational wavelets, so that search
+ * digests need not build a {@code SupplementedWave} and test every blip.
+ *
+ * The store holds two kinds of summaries: the blips of a conversational
+ * wavelet with their last-modified versions, and the read versions a user's
+ * user-data wavelet records for a wave. Both are taken from snapshots the
+ * first time a digest asks for them, and are then kept up to date from the
+ * {@link WaveBus}: an update re-reads only the documents its deltas touched,
+ * and re-reads the conversation manifest only when that changes. The unread
+ * count of a user is cached against the pair of summaries it was computed
+ * from, so a search over unchanged waves looks each count up in constant
+ * time.
+ *
+ * A blip is counted when it is reachable through the manifest and has a
+ * document, as it is by the conversation model, and is unread under the
+ * rules of {@code SupplementImpl#isBlipUnread}.
+ */
+@Singleton
+public class UnreadSummaryStore implements WaveBus.Subscriber {
+
+  private static final int MAX_CONVERSATIONS = 10000;
+  private static final int MAX_READ_STATES = 50000;
+
+  private static final String BLIP_TAG = "blip";
+  private static final String BLIP_ID_ATTR = "id";
+
+  /** State read from a wavelet at some version. */
+  private abstract static class Summary {
+    final long version;
+
+    Summary(long version) {
+      this.version = version;
+    }
+  }
+
+  /** The blips of a conversational wavelet, by id, with their last-modified versions. */
+  @VisibleForTesting
+  static final class ConversationSummary extends Summary {
+    final ImmutableMap<String, Integer> blipVersions;
+
+    ConversationSummary(long version, ImmutableMap<String, Integer> blipVersions) {
+      super(version);
+      this.blipVersions = blipVersions;
+    }
+  }
+
+  /** The read versions of a user in one wave. */
+  @VisibleForTesting
+  static final class ReadSummary extends Summary {
+    /** The read state of a user without a user-data wavelet. */
+    static final ReadSummary NONE = new ReadSummary(-1,
+        ImmutableMap.<WaveletId, Integer>of(),
+        ImmutableMap.<WaveletId, ImmutableMap<String, Integer>>of(),
+        Maps.<WaveletId, UnreadCount>newConcurrentMap());
+
+    final ImmutableMap<WaveletId, Integer> waveletVersions;
+    final ImmutableMap<WaveletId, ImmutableMap<String, Integer>> blipVersions;
+    /** Unread counts computed from this read state, by conversational wavelet. */
+    final ConcurrentMap<WaveletId, UnreadCount> unreadCounts;
+
+    ReadSummary(long version, ImmutableMap<WaveletId, Integer> waveletVersions,
+        ImmutableMap<WaveletId, ImmutableMap<String, Integer>> blipVersions,
+        ConcurrentMap<WaveletId, UnreadCount> unreadCounts) {
+      super(version);
+      this.waveletVersions = waveletVersions;
+      this.blipVersions = blipVersions;
+      this.unreadCounts = unreadCounts;
+    }
+
+    /** Returns this read state at a later version, sharing its cached counts. */
+    ReadSummary atVersion(long newVersion) {
+      return new ReadSummary(newVersion, waveletVersions, blipVersions, unreadCounts);
+    }
+  }
+
+  /** An unread count, and the blip versions it was computed from. */
+  private static final class UnreadCount {
+    final ImmutableMap<String, Integer> blipVersions;
+    final int count;
+
+    UnreadCount(ImmutableMap<String, Integer> blipVersions, int count) {
+      this.blipVersions = blipVersions;
+      this.count = count;
+    }
+  }
+
+  private final ConcurrentMap<WaveletName, ConversationSummary> conversations;
+  private final ConcurrentMap<Pair<WaveId, ParticipantId>, ReadSummary> readStates;
+
+  @Inject
+  public UnreadSummaryStore() {
+    Cache<WaveletName, ConversationSummary> conversationCache =
+        CacheBuilder.newBuilder().maximumSize(MAX_CONVERSATIONS).build();
+    Cache<Pair<WaveId, ParticipantId>, ReadSummary> readStateCache =
+        CacheBuilder.newBuilder().maximumSize(MAX_READ_STATES).build();
+    this.conversations = conversationCache.asMap();
+    this.readStates = readStateCache.asMap();
+  }
+
+  /**
+   * Returns the number of unread blips of a conversational wavelet for a user.
+   * The snapshots are read only if the store has nothing as recent for them.
+   *
+   * @param user the user whose read state counts.
+   * @param conversation a snapshot of the conversational wavelet.
+   * @param udw a snapshot of the user's user-data wavelet in the wave, or null
+   *        if there is none.
+   */
+  public int getUnreadCount(ParticipantId user, ReadableWaveletData conversation,
+      @Nullable ObservableWaveletData udw) {
+    WaveletName name = WaveletName.of(conversation.getWaveId(), conversation.getWaveletId());
+    ConversationSummary summary = conversations.get(name);
+    if (summary == null || summary.version < conversation.getVersion()) {
+      summary = summarizeConversation(conversation);
+      storeIfNewer(conversations, name, summary);
+    }
+
+    Pair<WaveId, ParticipantId> key = Pair.of(conversation.getWaveId(), user);
+    ReadSummary read = readStates.get(key);
+    long udwVersion = udw != null ? udw.getVersion() : -1;
+    if (read == null || read.version < udwVersion) {
+      read = udw != null ? summarizeReadState(udw) : ReadSummary.NONE;
+      storeIfNewer(readStates, key, read);
+    }
+    return unreadCount(conversation.getWaveletId(), summary, read);
+  }
+
+  @Override
+  public void waveletUpdate(ReadableWaveletData wavelet, DeltaSequence deltas) {
+    WaveletId waveletId = wavelet.getWaveletId();
+    if (IdUtil.isConversationalId(waveletId)) {
+      WaveletName name = WaveletName.of(wavelet.getWaveId(), waveletId);
+      ConversationSummary summary = conversations.get(name);
+      // Wavelets no digest has asked for are left alone until one does.
+      if (summary != null && summary.version < wavelet.getVersion()) {
+        replace(conversations, name, summary,
+            updateConversation(summary, wavelet, touchedDocuments(deltas)));
+      }
+    } else if (IdUtil.isUserDataWavelet(waveletId)) {
+      Pair<WaveId, ParticipantId> key = Pair.of(wavelet.getWaveId(), wavelet.getCreator());
+      ReadSummary read = readStates.get(key);
+      if (read != null && read.version < wavelet.getVersion()) {
+        ReadSummary updated =
+            touchedDocuments(deltas).contains(WaveletBasedSupplement.READSTATE_DOCUMENT)
+            ? summarizeReadState(wavelet)
+            : read.atVersion(wavelet.getVersion());
+        replace(readStates, key, read, updated);
+      }
+    }
+  }
+
+  @Override
+  public void waveletCommitted(WaveletName waveletName, HashedVersion version) {
+    // No op.
+  }
+
+  /**
+   * Stores a summary unless one of at least the same version is stored
+   * already.
+   */
+  private static <K, V extends Summary> void storeIfNewer(ConcurrentMap<K, V> map, K key,
+      V value) {
+    while (true) {
+      V current = map.putIfAbsent(key, value);
+      if (current == null) {
+        return;
+      }
+      if (current.version >= value.version || map.replace(key, current, value)) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Replaces a summary that an update was computed from. If a digest has
+   * stored another one meanwhile, both are dropped, to be read again from a
+   * snapshot when next needed.
+   */
+  private static <K, V> void replace(ConcurrentMap<K, V> map, K key, V expected, V updated) {
+    if (!map.replace(key, expected, updated)) {
+      map.remove(key);
+    }
+  }
+
+  private static Set<String> touchedDocuments(DeltaSequence deltas) {
+    Set<String> documents = Sets.newHashSet();
+    for (TransformedWaveletDelta delta : deltas) {
+      for (WaveletOperation op : delta) {
+        if (op instanceof WaveletBlipOperation) {
+          documents.add(((WaveletBlipOperation) op).getBlipId());
+        }
+      }
+    }
+    return documents;
+  }
+
+  /**
+   * Brings a conversation summary up to date with a wavelet. Only the touched
+   * blips are read again, unless the set of blips may have changed.
+   */
+  @VisibleForTesting
+  static ConversationSummary updateConversation(ConversationSummary summary,
+      ReadableWaveletData wavelet, Set<String> touchedDocuments) {
+    if (touchedDocuments.contains(IdConstants.MANIFEST_DOCUMENT_ID)) {
+      return summarizeConversation(wavelet);
+    }
+    Map<String, Integer> blipVersions = null;
+    for (String documentId : touchedDocuments) {
+      if (!IdUtil.isBlipId(documentId)) {
+        continue;
+      }
+      ReadableBlipData blip = wavelet.getDocument(documentId);
+      if (!summary.blipVersions.containsKey(documentId) || blip == null) {
+        // A blip of the manifest may have gained its document, or lost it.
+        return summarizeConversation(wavelet);
+      }
+      if (blipVersions == null) {
+        blipVersions = Maps.newHashMap(summary.blipVersions);
+      }
+      blipVersions.put(documentId, (int) blip.getLastModifiedVersion());
+    }
+    return new ConversationSummary(wavelet.getVersion(), blipVersions == null
+        ? summary.blipVersions : ImmutableMap.copyOf(blipVersions));
+  }
+
+  /** Reads the blips of a conversational wavelet from its manifest. */
+  @VisibleForTesting
+  static ConversationSummary summarizeConversation(final ReadableWaveletData wavelet) {
+    final Map<String, Integer> blipVersions = Maps.newLinkedHashMap();
+    ReadableBlipData manifest = wavelet.getDocument(IdConstants.MANIFEST_DOCUMENT_ID);
+    if (manifest != null) {
+      manifest.getContent().asOperation().apply(new DocInitializationCursor() {
+        /** For each open element, whether the blips inside it are reachable. */
+        private final Deque<Boolean> reachable = new ArrayDeque<Boolean>();
+
+        @Override
+        public void elementStart(String type, Attributes attrs) {
+          boolean inside = reachable.isEmpty() || reachable.peek();
+          if (inside && BLIP_TAG.equals(type)) {
+            String id = attrs.get(BLIP_ID_ATTR);
+            ReadableBlipData blip = id != null ? wavelet.getDocument(id) : null;
+            // The conversation model skips blips without a document, and
+            // with them their replies.
+            inside = blip != null;
+            if (inside) {
+              blipVersions.put(id, (int) blip.getLastModifiedVersion());
+            }
+          }
+          reachable.push(inside);
+        }
+
+        @Override
+        public void elementEnd() {
+          reachable.pop();
+        }
+
+        @Override
+        public void characters(String chars) {
+        }
+
+        @Override
+        public void annotationBoundary(AnnotationBoundaryMap map) {
+        }
+      });
+    }
+    return new ConversationSummary(wavelet.getVersion(), ImmutableMap.copyOf(blipVersions));
+  }
+
+  /**
+   * Reads the read versions of a user-data wavelet. The supplement is built on
+   * a copy, as the documents of a wavelet may only be wrapped once and the
+   * caller's may be already.
+   */
+  @VisibleForTesting
+  static ReadSummary summarizeReadState(ReadableWaveletData udw) {
+    PrimitiveSupplement supplement = WaveletBasedSupplement.create(
+        OpBasedWavelet.createReadOnly(WaveletDataUtil.copyWavelet(udw)));
+    ImmutableMap.Builder<WaveletId, Integer> waveletVersions = ImmutableMap.builder();
+    ImmutableMap.Builder<WaveletId, ImmutableMap<String, Integer>> blipVersions =
+        ImmutableMap.builder();
+    for (WaveletId waveletId : supplement.getReadWavelets()) {
+      waveletVersions.put(waveletId, supplement.getLastReadWaveletVersion(waveletId));
+      ImmutableMap.Builder<String, Integer> blips = ImmutableMap.builder();
+      for (String blipId : supplement.getReadBlips(waveletId)) {
+        blips.put(blipId, supplement.getLastReadBlipVersion(waveletId, blipId));
+      }
+      blipVersions.put(waveletId, blips.build());
+    }
+    return new ReadSummary(udw.getVersion(), waveletVersions.build(), blipVersions.build(),
+        Maps.<WaveletId, UnreadCount>newConcurrentMap());
+  }
+
+  @VisibleForTesting
+  static int unreadCount(WaveletId waveletId, ConversationSummary summary, ReadSummary read) {
+    Integer waveletRead = read.waveletVersions.get(waveletId);
+    ImmutableMap<String, Integer> blipsRead = read.blipVersions.get(waveletId);
+    if (waveletRead == null && blipsRead == null) {
+      // Nothing of the wavelet has been read.
+      return summary.blipVersions.size();
+    }
+    UnreadCount cached = read.unreadCounts.get(waveletId);
+    if (cached != null && cached.blipVersions == summary.blipVersions) {
+      return cached.count;
+    }
+    int count = 0;
+    for (Map.Entry<String, Integer> blip : summary.blipVersions.entrySet()) {
+      int modified = blip.getValue();
+      Integer blipRead = blipsRead != null ? blipsRead.get(blip.getKey()) : null;
+      if (isUnread(blipRead, modified) && isUnread(waveletRead, modified)) {
+        count++;
+      }
+    }
+    read.unreadCounts.put(waveletId, new UnreadCount(summary.blipVersions, count));
+    return count;
+  }
+
+  private static boolean isUnread(Integer read, int modified) {
+    return read == null || read == PrimitiveSupplement.NO_VERSION || read < modified;
+  }
+}
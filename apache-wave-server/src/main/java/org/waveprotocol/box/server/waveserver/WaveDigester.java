@@ -64,13 +64,25 @@ import java.util.List;
 public class WaveDigester {
 
   private final ConversationUtil conversationUtil;
+  /** Source of unread counts, or null to count with a supplement. */
+  private final UnreadSummaryStore unreadSummaries;
   private static final int DIGEST_SNIPPET_LENGTH = 140;
   private static final int PARTICIPANTS_SNIPPET_LENGTH = 5;
   private static final String EMPTY_WAVELET_TITLE = "";
 
   @Inject
+  public WaveDigester(ConversationUtil conversationUtil, UnreadSummaryStore unreadSummaries) {
+    this.conversationUtil = conversationUtil;
+    this.unreadSummaries = unreadSummaries;
+  }
+
+  /**
+   * Creates a digester that counts unread blips by building the supplement
+   * of every wave.
+   */
   public WaveDigester(ConversationUtil conversationUtil) {
     this.conversationUtil = conversationUtil;
+    this.unreadSummaries = null;
   }
 
   public SearchResult generateSearchResult(ParticipantId participant, String query,
@@ -115,17 +127,22 @@ public class WaveDigester {
 
     ObservableWaveletData convWavelet = root != null ? root : other;
     SupplementedWave supplement = null;
+    int unreadCount = 0;
     ObservableConversationView conversations = null;
     if (convWavelet != null) {
       OpBasedWavelet wavelet = OpBasedWavelet.createReadOnly(convWavelet);
       if (WaveletBasedConversation.waveletHasConversation(wavelet)) {
         conversations = conversationUtil.buildConversation(wavelet);
-        supplement = buildSupplement(participant, conversations, udw);
+        if (unreadSummaries != null) {
+          unreadCount = unreadSummaries.getUnreadCount(participant, convWavelet, udw);
+        } else {
+          supplement = buildSupplement(participant, conversations, udw);
+        }
       }
     }
     if (conversations != null) {
       // This is a conversational wave. Produce a conversational digest.
-      digest = generateDigest(conversations, supplement, convWavelet);
+      digest = generateDigest(conversations, supplement, unreadCount, convWavelet);
     } else {
       // It is unknown how to present this wave.
       digest = generateEmptyorUnknownDigest(wave);
@@ -146,6 +163,15 @@ public class WaveDigester {
    */
   Digest generateDigest(ObservableConversationView conversations, SupplementedWave supplement,
       WaveletData rawWaveletData) {
+    return generateDigest(conversations, supplement, 0, rawWaveletData);
+  }
+
+  /**
+   * Produces a digest for a set of conversations, with the unread blips
+   * counted by the supplement if there is one, or else the given count.
+   */
+  private Digest generateDigest(ObservableConversationView conversations,
+      SupplementedWave supplement, int unreadCount, WaveletData rawWaveletData) {
     ObservableConversation rootConversation = conversations.getRoot();
     ObservableConversationBlip firstBlip = null;
     if ((rootConversation != null) && (rootConversation.getRootThread() != null)
@@ -174,11 +200,10 @@ public class WaveDigester {
         break;
       }
     }
-    int unreadCount = 0;
     int blipCount = 0;
     long lastModified = -1;
     for (ConversationBlip blip : BlipIterators.breadthFirst(rootConversation)) {
-      if (supplement.isUnread(blip)) {
+      if (supplement != null && supplement.isUnread(blip)) {
         unreadCount++;
       }
       lastModified = Math.max(blip.getLastModifiedTime(), lastModified);
@@ -63,6 +63,7 @@ import org.waveprotocol.wave.util.logging.Log;
 
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicInteger;
 import org.waveprotocol.box.server.executor.ExecutorAnnotations;
@@ -81,6 +82,7 @@ public class WaveServerImpl implements WaveletProvider, ReadableWaveletDataProvi
   private final CertificateManager certificateManager;
   private final WaveletFederationProvider federationRemote;
   private final WaveMap waveMap;
+  private final AccessPermissionCache accessCache;
   private boolean initialized = false;
 
   //
@@ -386,6 +388,20 @@ public class WaveServerImpl implements WaveletProvider, ReadableWaveletDataProvi
   public boolean checkAccessPermission(WaveletName waveletName, ParticipantId participantId)
       throws WaveServerException {
     Preconditions.checkState(initialized, "Wave server not yet initialized");
+    if (participantId == null) {
+      return checkWaveletAccessPermission(waveletName, participantId);
+    }
+    ConcurrentMap<ParticipantId, Boolean> decisions = accessCache.getDecisions(waveletName);
+    Boolean allowed = decisions.get(participantId);
+    if (allowed == null) {
+      allowed = checkWaveletAccessPermission(waveletName, participantId);
+      decisions.put(participantId, allowed);
+    }
+    return allowed;
+  }
+
+  private boolean checkWaveletAccessPermission(WaveletName waveletName,
+      ParticipantId participantId) throws WaveServerException {
     WaveletContainer wavelet = getWavelet(waveletName);
     return wavelet != null && wavelet.checkAccessPermission(participantId);
   }
@@ -398,15 +414,18 @@ public class WaveServerImpl implements WaveletProvider, ReadableWaveletDataProvi
    *        domains this wave server regards as local wavelets.
    * @param federationRemote federation remote interface
    * @param waveMap records the waves and wavelets in memory
+   * @param accessCache remembers recent access permission decisions
    */
   @Inject
   WaveServerImpl(@ListenerExecutor Executor listenerExecutor,
       CertificateManager certificateManager,
-      @FederationRemoteBridge WaveletFederationProvider federationRemote, WaveMap waveMap) {
+      @FederationRemoteBridge WaveletFederationProvider federationRemote, WaveMap waveMap,
+      AccessPermissionCache accessCache) {
     this.listenerExecutor = listenerExecutor;
     this.certificateManager = certificateManager;
     this.federationRemote = federationRemote;
     this.waveMap = waveMap;
+    this.accessCache = accessCache;
 
     LOG.info("Wave Server configured to host local domains: "
         + certificateManager.getLocalDomains());
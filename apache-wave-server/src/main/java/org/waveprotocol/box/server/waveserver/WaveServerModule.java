@@ -52,6 +52,7 @@ import org.waveprotocol.wave.util.escapers.jvm.JavaUrlCodec;
 import java.util.concurrent.Callable;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
+import org.waveprotocol.box.server.executor.ExecutorAnnotations.DeltaVerificationExecutor;
 import org.waveprotocol.box.server.executor.ExecutorAnnotations.StorageContinuationExecutor;
 import org.waveprotocol.box.server.executor.ExecutorAnnotations.WaveletLoadExecutor;
 
@@ -66,16 +67,19 @@ public class WaveServerModule extends AbstractModule {
 
   private final Executor waveletLoadExecutor;
   private final Executor storageContinuationExecutor;
+  private final Executor deltaVerificationExecutor;
   private final boolean enableFederation;
 
 
   @Inject
   WaveServerModule(@Named(CoreSettings.ENABLE_FEDERATION) boolean enableFederation,
       @WaveletLoadExecutor Executor waveletLoadExecutor,
-      @StorageContinuationExecutor Executor storageContinuationExecutor) {
+      @StorageContinuationExecutor Executor storageContinuationExecutor,
+      @DeltaVerificationExecutor Executor deltaVerificationExecutor) {
     this.enableFederation = enableFederation;
     this.waveletLoadExecutor = waveletLoadExecutor;
     this.storageContinuationExecutor = storageContinuationExecutor;
+    this.deltaVerificationExecutor = deltaVerificationExecutor;
   }
 
   @Override
@@ -92,7 +96,7 @@ public class WaveServerModule extends AbstractModule {
 
     try {
       bind(WaveSignatureVerifier.class).toConstructor(WaveSignatureVerifier.class.getConstructor(
-          WaveCertPathValidator.class, CertPathStore.class));
+          WaveCertPathValidator.class, CertPathStore.class, TimeSource.class));
       bind(VerifiedCertChainCache.class).to(DefaultCacheImpl.class).in(Singleton.class);
       bind(DefaultCacheImpl.class).toConstructor(
           DefaultCacheImpl.class.getConstructor(TimeSource.class));
@@ -137,7 +141,7 @@ public class WaveServerModule extends AbstractModule {
           WaveletName waveletName, String waveDomain) {
         return new RemoteWaveletContainerImpl(waveletName, notifiee, loadWaveletState(
             waveletLoadExecutor, deltaStore, waveletName, waveletLoadExecutor),
-            storageContinuationExecutor);
+            storageContinuationExecutor, deltaVerificationExecutor);
       }
     };
   }
@@ -0,0 +1,302 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.waveprotocol.box.server.waveserver;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+
+import org.waveprotocol.box.common.DeltaSequence;
+import org.waveprotocol.box.server.CoreSettings;
+import org.waveprotocol.box.server.executor.ExecutorAnnotations.PreloadExecutor;
+import org.waveprotocol.box.server.stat.MetricRegistry;
+import org.waveprotocol.wave.model.id.InvalidIdException;
+import org.waveprotocol.wave.model.id.ModernIdSerialiser;
+import org.waveprotocol.wave.model.id.WaveId;
+import org.waveprotocol.wave.model.id.WaveletId;
+import org.waveprotocol.wave.model.id.WaveletName;
+import org.waveprotocol.wave.model.version.HashedVersion;
+import org.waveprotocol.wave.model.wave.data.ReadableWaveletData;
+import org.waveprotocol.wave.util.logging.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loads the most recently modified waves into memory when the server starts,
+ * so that their first readers don't wait for them to be read from storage.
+ *
+ * While the server runs, the preloader follows the wave bus and keeps the ids
+ * and modification times of the most recently modified waves, which it writes
+ * to a file at most once a minute. At the next start the waves in the file
+ * that were modified recently enough are loaded on the preload executor, whose
+ * thread count bounds the number of waves being loaded at once. The server
+ * accepts traffic meanwhile. Progress is logged, and exported through the
+ * {@link MetricRegistry} along with the time it took to load all the waves.
+ */
+@Singleton
+public class WaveletPreloader implements WaveBus.Subscriber {
+
+  private static final Log LOG = Log.get(WaveletPreloader.class);
+
+  /** The minimum number of milliseconds between writes of the waves file. */
+  private static final long SAVE_INTERVAL_MS = TimeUnit.MINUTES.toMillis(1);
+
+  /** The number of preloaded waves between progress messages. */
+  private static final int PROGRESS_INTERVAL = 100;
+
+  private final WaveletProvider waveletProvider;
+  private final Executor preloadExecutor;
+  private final File wavesFile;
+  private final int waveCount;
+  private final long maxAgeMs;
+
+  /**
+   * The last modified time of the most recently modified waves, least recently
+   * modified first. Guarded by itself.
+   */
+  private final LinkedHashMap<WaveId, Long> recentWaves;
+
+  private final AtomicBoolean saveScheduled = new AtomicBoolean();
+  private volatile long lastSaveMs;
+
+  private final AtomicInteger totalWaves = new AtomicInteger();
+  private final AtomicInteger loadedWaves = new AtomicInteger();
+  private final AtomicInteger failedWaves = new AtomicInteger();
+  private volatile long startNanos;
+  private volatile long readyMs = -1;
+
+  @Inject
+  public WaveletPreloader(WaveletProvider waveletProvider, WaveBus waveBus,
+      @PreloadExecutor Executor preloadExecutor,
+      @Named(CoreSettings.PRELOAD_WAVES_FILE) String wavesFile,
+      @Named(CoreSettings.PRELOAD_WAVE_COUNT) final int waveCount,
+      @Named(CoreSettings.PRELOAD_MAX_AGE_DAYS) int maxAgeDays) {
+    this.waveletProvider = waveletProvider;
+    this.preloadExecutor = preloadExecutor;
+    this.wavesFile = new File(wavesFile);
+    this.waveCount = waveCount;
+    this.maxAgeMs = TimeUnit.DAYS.toMillis(maxAgeDays);
+    this.recentWaves = new LinkedHashMap<WaveId, Long>() {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<WaveId, Long> eldest) {
+        return size() > waveCount;
+      }
+    };
+    waveBus.subscribe(this);
+    registerGauges();
+  }
+
+  /**
+   * Starts loading the waves recorded at the last run, returning once they are
+   * queued on the preload executor.
+   */
+  public void start() {
+    List<WaveId> waves = readWavesFile();
+    if (waves.isEmpty()) {
+      LOG.info("No recently modified waves to preload");
+      readyMs = 0;
+      return;
+    }
+    LOG.info("Preloading " + waves.size() + " recently modified waves");
+    totalWaves.set(waves.size());
+    startNanos = System.nanoTime();
+    for (final WaveId waveId : waves) {
+      preloadExecutor.execute(new Runnable() {
+        @Override
+        public void run() {
+          preload(waveId);
+        }
+      });
+    }
+  }
+
+  /** Returns the number of milliseconds it took to preload, or -1 if it's not done. */
+  public long getReadyMs() {
+    return readyMs;
+  }
+
+  @Override
+  public void waveletUpdate(ReadableWaveletData wavelet, DeltaSequence deltas) {
+    if (waveCount == 0) {
+      return;
+    }
+    synchronized (recentWaves) {
+      // Removing first moves the wave to the most recent end.
+      recentWaves.remove(wavelet.getWaveId());
+      recentWaves.put(wavelet.getWaveId(), wavelet.getLastModifiedTime());
+    }
+    if (System.currentTimeMillis() - lastSaveMs >= SAVE_INTERVAL_MS
+        && saveScheduled.compareAndSet(false, true)) {
+      preloadExecutor.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            writeWavesFile();
+          } finally {
+            lastSaveMs = System.currentTimeMillis();
+            saveScheduled.set(false);
+          }
+        }
+      });
+    }
+  }
+
+  @Override
+  public void waveletCommitted(WaveletName waveletName, HashedVersion version) {
+    // No op.
+  }
+
+  private void preload(WaveId waveId) {
+    try {
+      for (WaveletId waveletId : waveletProvider.getWaveletIds(waveId)) {
+        // Loads the wavelet into memory.
+        waveletProvider.getSnapshot(WaveletName.of(waveId, waveletId));
+      }
+      loadedWaves.incrementAndGet();
+    } catch (WaveServerException | RuntimeException e) {
+      LOG.warning("Failed to preload wave " + waveId, e);
+      failedWaves.incrementAndGet();
+    }
+    int done = loadedWaves.get() + failedWaves.get();
+    if (done == totalWaves.get()) {
+      readyMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+      LOG.info("Preloaded " + loadedWaves.get() + " waves in " + readyMs + "ms, "
+          + failedWaves.get() + " failed");
+    } else if (done % PROGRESS_INTERVAL == 0) {
+      LOG.info("Preloaded " + done + "/" + totalWaves.get() + " waves");
+    }
+  }
+
+  /**
+   * Reads the waves file, returning the waves modified recently enough, most
+   * recently modified first. The waves are also recorded again, so that they
+   * are kept if the server is restarted before they are modified.
+   */
+  @VisibleForTesting
+  List<WaveId> readWavesFile() {
+    List<WaveId> waves = Lists.newArrayList();
+    if (waveCount == 0 || !wavesFile.exists()) {
+      return waves;
+    }
+    List<String> lines;
+    try {
+      lines = Files.readAllLines(wavesFile.toPath(), Charsets.UTF_8);
+    } catch (IOException e) {
+      LOG.warning("Failed to read the recently modified waves from " + wavesFile, e);
+      return waves;
+    }
+    long oldestMs = System.currentTimeMillis() - maxAgeMs;
+    Map<WaveId, Long> recorded = Maps.newLinkedHashMap();
+    for (String line : lines) {
+      String[] fields = line.trim().split(" ");
+      if (fields.length != 2) {
+        continue;
+      }
+      try {
+        WaveId waveId = ModernIdSerialiser.INSTANCE.deserialiseWaveId(fields[0]);
+        long lastModifiedMs = Long.parseLong(fields[1]);
+        if (lastModifiedMs >= oldestMs && waves.size() < waveCount) {
+          waves.add(waveId);
+          recorded.put(waveId, lastModifiedMs);
+        }
+      } catch (InvalidIdException | NumberFormatException e) {
+        LOG.warning("Skipping invalid line in " + wavesFile + ": " + line);
+      }
+    }
+    synchronized (recentWaves) {
+      for (WaveId waveId : Lists.reverse(Lists.newArrayList(recorded.keySet()))) {
+        if (!recentWaves.containsKey(waveId)) {
+          recentWaves.put(waveId, recorded.get(waveId));
+        }
+      }
+    }
+    return waves;
+  }
+
+  /**
+   * Writes the recently modified waves, most recently modified first, to a
+   * temporary file which then replaces the waves file.
+   */
+  @VisibleForTesting
+  void writeWavesFile() {
+    List<String> lines = Lists.newArrayList();
+    synchronized (recentWaves) {
+      for (Map.Entry<WaveId, Long> entry : recentWaves.entrySet()) {
+        lines.add(ModernIdSerialiser.INSTANCE.serialiseWaveId(entry.getKey()) + " "
+            + entry.getValue());
+      }
+    }
+    try {
+      File dir = wavesFile.getAbsoluteFile().getParentFile();
+      dir.mkdirs();
+      File tmp = File.createTempFile("waves", null, dir);
+      try {
+        Files.write(tmp.toPath(), Lists.reverse(lines), Charsets.UTF_8);
+        Files.move(tmp.toPath(), wavesFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+      } finally {
+        tmp.delete();
+      }
+    } catch (IOException e) {
+      LOG.warning("Failed to write the recently modified waves to " + wavesFile, e);
+    }
+  }
+
+  private void registerGauges() {
+    MetricRegistry.registerGauge("preload", "waves_total", new MetricRegistry.Gauge() {
+      @Override
+      public long getValue() {
+        return totalWaves.get();
+      }
+    });
+    MetricRegistry.registerGauge("preload", "waves_loaded", new MetricRegistry.Gauge() {
+      @Override
+      public long getValue() {
+        return loadedWaves.get();
+      }
+    });
+    MetricRegistry.registerGauge("preload", "waves_failed", new MetricRegistry.Gauge() {
+      @Override
+      public long getValue() {
+        return failedWaves.get();
+      }
+    });
+    MetricRegistry.registerGauge("preload", "ready_ms", new MetricRegistry.Gauge() {
+      @Override
+      public long getValue() {
+        return readyMs;
+      }
+    });
+  }
+}
@@ -135,9 +135,17 @@ interface WaveletState {
    */
   ListenableFuture<Void> persist(HashedVersion version);
 
-  /** Flushes persisted delta from memory. */
+  /**
+   * Flushes persisted deltas up to the given version from memory. An
+   * implementation may keep the most recent of them for history requests.
+   */
   void flush(HashedVersion version);
 
+  /**
+   * @return the number of deltas held in memory.
+   */
+  int getCachedDeltaCount();
+
   /**
    * Closes the object. No other methods on the object should be invoked after
    * this class.
@@ -22,6 +22,7 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 
 import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
 import java.util.Collection;
 import java.util.List;
 import java.util.logging.Level;
@@ -113,6 +114,21 @@ public class Statistic {
     }
   }
 
+  /**
+   * Tracks all instance fields of an object marked with a {@link Stat}
+   * annotation.
+   *
+   * @param ref the object to track.
+   */
+  public static void trackObject(Object ref) {
+    for (Field field : ref.getClass().getDeclaredFields()) {
+      Stat stat = field.getAnnotation(Stat.class);
+      if (stat != null && !Modifier.isStatic(field.getModifiers())) {
+        trackedStats.add(new FieldEntry(stat, field, ref));
+      }
+    }
+  }
+
   /**
    * @return the collection of tracked stats.
    */
@@ -19,9 +19,14 @@
 
 package org.waveprotocol.wave.crypto;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Sets;
+
 import org.apache.commons.codec.binary.Base64;
 import org.waveprotocol.wave.federation.Proto.ProtocolSignature;
 
+import java.nio.ByteBuffer;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.security.Signature;
@@ -29,12 +34,18 @@ import java.security.cert.CertificateParsingException;
 import java.security.cert.X509Certificate;
 import java.util.Collection;
 import java.util.List;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
  * A class capable of verifying signatures, by looking up certificate chains in
  * a store, and using a caching cert chain validator.
+ *
+ * Signers whose cert chain has been validated are kept in a bounded cache,
+ * keyed by signer id, until the first certificate of their chain expires.
+ * Verifying a signature of such a signer skips the store lookup and the chain
+ * validation, and takes no lock.
  */
 public class WaveSignatureVerifier {
 
@@ -44,6 +55,29 @@ public class WaveSignatureVerifier {
   // 2 represents an AlternativeSubjectName of type DNS
   private static final Integer ALT_NAME_TYPE_DNS = Integer.valueOf(2);
 
+  // Maximum number of verified signers to keep.
+  private static final int VERIFIED_SIGNER_CACHE_SIZE = 1024;
+
+  /**
+   * A signer whose cert chain has been validated, and the authorities that its
+   * target certificate has been found to be issued to.
+   */
+  private static class VerifiedSigner {
+    private final X509Certificate certificate;
+    private final long expireMillis;
+    private final Set<String> authorities = Sets.newConcurrentHashSet();
+
+    VerifiedSigner(SignerInfo signer) {
+      List<X509Certificate> certs = signer.getCertificates();
+      long expireMillis = Long.MAX_VALUE;
+      for (X509Certificate cert : certs) {
+        expireMillis = Math.min(expireMillis, cert.getNotAfter().getTime());
+      }
+      this.certificate = certs.get(0);
+      this.expireMillis = expireMillis;
+    }
+  }
+
   // The cert chain validator. This object can tell us whether a given cert
   // chain checks out ok.
   private final WaveCertPathValidator pathValidator;
@@ -52,9 +86,23 @@ public class WaveSignatureVerifier {
   // cert chains.
   private final CertPathStore pathStore;
 
+  // source for current time, so that expiration of cached signers can be
+  // checked
+  private final TimeSource timeSource;
+
+  // Signers whose cert chain checked out, by signer id.
+  private final Cache<ByteBuffer, VerifiedSigner> verifiedSigners =
+      CacheBuilder.newBuilder().maximumSize(VERIFIED_SIGNER_CACHE_SIZE).build();
+
   public WaveSignatureVerifier(WaveCertPathValidator validator, CertPathStore store) {
+    this(validator, store, new DefaultTimeSource());
+  }
+
+  public WaveSignatureVerifier(WaveCertPathValidator validator, CertPathStore store,
+      TimeSource timeSource) {
     this.pathValidator = validator;
     this.pathStore = store;
+    this.timeSource = timeSource;
   }
 
   /**
@@ -72,16 +120,25 @@ public class WaveSignatureVerifier {
    */
   public void verify(byte[] signedPayload, ProtocolSignature signatureInfo,
       String authority) throws SignatureException, UnknownSignerException {
+    verify(ByteBuffer.wrap(signedPayload), signatureInfo, authority);
+  }
 
-    SignerInfo signer = pathStore.getSignerInfo(
-        signatureInfo.getSignerId().toByteArray());
-
-    if (signer == null) {
-      throw new UnknownSignerException("could not find information about signer "
-          + Base64.encodeBase64(signatureInfo.getSignerId().toByteArray()));
-    }
+  /**
+   * Verifies the signature on some signed payload, without copying it.
+   * @param signedPayload the payload on which we're verifiying the signature,
+   *   from its position to its limit. The buffer is consumed.
+   * @param signatureInfo the signature provided with the payload.
+   * @param authority name of the authority that we expect the target
+   *   certificate to be issued to.
+   *
+   * @throws SignatureException if the signature can't be verified.
+   * @throws UnknownSignerException if we can't find the cert chain in the local
+   *   cert-path store.
+   */
+  public void verify(ByteBuffer signedPayload, ProtocolSignature signatureInfo,
+      String authority) throws SignatureException, UnknownSignerException {
 
-    verifySignerInfo(signer);
+    VerifiedSigner signer = getVerifiedSigner(signatureInfo.getSignerId().toByteArray());
 
     Signature verifier;
     try {
@@ -92,7 +149,7 @@ public class WaveSignatureVerifier {
           signatureInfo.getSignatureAlgorithm().toString(), e);
     }
 
-    X509Certificate cert = signer.getCertificates().get(0);
+    X509Certificate cert = signer.certificate;
 
     try {
       verifier.initVerify(cert);
@@ -117,7 +174,39 @@ public class WaveSignatureVerifier {
       throw new SignatureException(e);
     }
 
-    verifyMatchingAuthority(authority, cert);
+    if (!signer.authorities.contains(authority)) {
+      verifyMatchingAuthority(authority, cert);
+      signer.authorities.add(authority);
+    }
+  }
+
+  /**
+   * Returns the signer with the given id, validating its cert chain unless it
+   * has been validated before and none of its certificates has expired since.
+   *
+   * @throws SignatureException if the cert chain of the signer doesn't verify.
+   * @throws UnknownSignerException if the signer is not in the cert-path store.
+   */
+  private VerifiedSigner getVerifiedSigner(byte[] signerId)
+      throws SignatureException, UnknownSignerException {
+    ByteBuffer key = ByteBuffer.wrap(signerId);
+    VerifiedSigner verified = verifiedSigners.getIfPresent(key);
+    if (verified != null && timeSource.currentTimeMillis() < verified.expireMillis) {
+      return verified;
+    }
+
+    SignerInfo signer = pathStore.getSignerInfo(signerId);
+
+    if (signer == null) {
+      throw new UnknownSignerException("could not find information about signer "
+          + Base64.encodeBase64(signerId));
+    }
+
+    verifySignerInfo(signer);
+
+    verified = new VerifiedSigner(signer);
+    verifiedSigners.put(key, verified);
+    return verified;
   }
 
   /**
@@ -37,6 +37,7 @@ public class FederationSettings {
   public static final String XMPP_DISCO_FAILED_EXPIRY_SECS = "xmpp_disco_failed_expiry_secs";
   public static final String XMPP_DISCO_SUCCESSFUL_EXPIRY_SECS = "xmpp_disco_successful_expiry_secs";
   public static final String XMPP_JID = "xmpp_jid";
+  public static final String XMPP_UPDATE_BATCH_WINDOW_MS = "xmpp_update_batch_window_ms";
 
   public static final String CERTIFICATE_PRIVATE_KEY = "certificate_private_key";
   public static final String CERTIFICATE_FILES = "certificate_files";
@@ -71,6 +72,11 @@ public class FederationSettings {
   @Setting(name = XMPP_JID)
   private static String xmppJid;
 
+  @Setting(name = XMPP_UPDATE_BATCH_WINDOW_MS, defaultValue = "50",
+      description = "How long wavelet updates to a remote domain are queued and coalesced"
+      + " before they are sent. 0 sends every update right away.")
+  private static int xmppUpdateBatchWindowMs;
+
   @Setting(name = CERTIFICATE_PRIVATE_KEY)
   private static String certificatePrivKey;
 
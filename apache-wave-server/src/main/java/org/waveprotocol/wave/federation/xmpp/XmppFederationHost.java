@@ -58,6 +58,7 @@ public class XmppFederationHost implements WaveletFederationListener.Factory {
   private final WaveletFederationProvider waveletProvider;
   private final XmppDisco disco;
   private final String jid;
+  private final int updateBatchWindowMs;
 
   private XmppManager manager = null;
 
@@ -68,10 +69,19 @@ public class XmppFederationHost implements WaveletFederationListener.Factory {
       CacheBuilder.newBuilder().build(new CacheLoader<String, WaveletFederationListener>() {
     @Override
     public WaveletFederationListener load(String domain) {
-      return new XmppFederationHostForDomain(domain, manager, disco, jid);
+      return new XmppFederationHostForDomain(domain, manager, disco, jid, updateBatchWindowMs);
     }
   });
 
+  /**
+   * Constructor for a host that sends every update to a remote domain as soon
+   * as it is made.
+   */
+  public XmppFederationHost(WaveletFederationProvider waveletProvider, XmppDisco disco,
+      String jid) {
+    this(waveletProvider, disco, jid, 0);
+  }
+
   /**
    * Constructor. Note that {@link #setManager} must be called before this class
    * is ready to use.
@@ -80,13 +90,17 @@ public class XmppFederationHost implements WaveletFederationListener.Factory {
    *        wavelet server.
    * @param disco           used for discovery
    * @param jid             this server's local JID
+   * @param updateBatchWindowMs how long updates to a remote domain are queued
+   *        before they are sent, in milliseconds
    */
   @Inject
   public XmppFederationHost(@FederationHostBridge WaveletFederationProvider waveletProvider,
-      XmppDisco disco, @Named(FederationSettings.XMPP_JID) String jid) {
+      XmppDisco disco, @Named(FederationSettings.XMPP_JID) String jid,
+      @Named(FederationSettings.XMPP_UPDATE_BATCH_WINDOW_MS) int updateBatchWindowMs) {
     this.waveletProvider = waveletProvider;
     this.disco = disco;
     this.jid = jid;
+    this.updateBatchWindowMs = updateBatchWindowMs;
   }
 
   /**
@@ -19,11 +19,15 @@
 
 package org.waveprotocol.wave.federation.xmpp;
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.inject.Inject;
 import com.google.inject.name.Named;
 import com.google.protobuf.ByteString;
 
 import org.dom4j.Element;
+import org.waveprotocol.box.server.stat.MetricRegistry;
 import org.waveprotocol.wave.federation.FederationErrors;
 import org.waveprotocol.wave.federation.FederationSettings;
 import org.waveprotocol.wave.federation.WaveletFederationListener;
@@ -35,6 +39,9 @@ import org.xmpp.packet.Message;
 import org.xmpp.packet.Packet;
 
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -42,6 +49,10 @@ import java.util.logging.Logger;
  * An instance of this class is created on demand for outgoing
  * messages to another wave Federation Remote. The wave server asks
  * the XmppFederationHost to create these.
+ *
+ * Updates are queued for a short window, during which the deltas and commit
+ * notices for the same wavelet are coalesced. The queue is then sent as one
+ * message, with one item per wavelet and one timeout for the whole batch.
  */
 class XmppFederationHostForDomain implements WaveletFederationListener {
 
@@ -51,18 +62,72 @@ class XmppFederationHostForDomain implements WaveletFederationListener {
   // Timeout for outstanding listener updates sent over XMPP.
   private static final int XMPP_LISTENER_TIMEOUT = 30;
 
+  // Size of the queued applied deltas, in bytes, at which the queue is sent
+  // without waiting for the window to end. This keeps stanzas well below the
+  // size limits of common XMPP servers.
+  private static final int MAX_BATCH_DELTA_BYTES = 32 * 1024;
+
+  /**
+   * The queued updates to one wavelet.
+   */
+  private static class PendingUpdate {
+    final List<ByteString> deltas = Lists.newArrayList();
+    ProtocolHashedVersion committedVersion = null;
+    final List<WaveletUpdateCallback> callbacks = Lists.newArrayList();
+    int updateCount = 0;
+  }
+
   private final String remoteDomain;
   private final XmppManager manager;
   private final String jid;
   private final XmppDisco disco;
+  private final int batchWindowMs;
+
+  // Queued updates by wavelet, in the order the wavelets were first updated.
+  // Guarded by this, as are the fields below.
+  private final Map<WaveletName, PendingUpdate> pending = Maps.newLinkedHashMap();
+  private int pendingDeltaBytes = 0;
+  private long batchStartNanos;
+  private boolean flushScheduled = false;
 
+  // Number of updates queued or sent and not yet acknowledged.
+  private final AtomicInteger outstandingUpdates = new AtomicInteger();
+
+  private final Runnable flushTask = new Runnable() {
+    @Override
+    public void run() {
+      flush();
+    }
+  };
+
+  /**
+   * Creates a host that sends every update as soon as it is made.
+   */
   @Inject
   public XmppFederationHostForDomain(final String domain, XmppManager manager,
       XmppDisco disco, @Named(FederationSettings.XMPP_JID) String jid) {
+    this(domain, manager, disco, jid, 0);
+  }
+
+  /**
+   * @param batchWindowMs how long, in milliseconds, updates are queued before
+   *        they are sent; 0 sends every update as soon as it is made
+   */
+  public XmppFederationHostForDomain(String domain, XmppManager manager,
+      XmppDisco disco, String jid, int batchWindowMs) {
     this.remoteDomain = domain;
     this.manager = manager;
     this.jid = jid;
     this.disco = disco;
+    this.batchWindowMs = batchWindowMs;
+
+    MetricRegistry.registerGauge("federation_outstanding_updates", domain,
+        new MetricRegistry.Gauge() {
+          @Override
+          public long getValue() {
+            return outstandingUpdates.get();
+          }
+        });
   }
 
   @Override
@@ -78,10 +143,9 @@ class XmppFederationHostForDomain implements WaveletFederationListener {
   }
 
   /**
-   * Sends a wavelet update message on behalf of the wave server. This
-   * method just triggers a disco lookup (which may be cached) and
-   * sets up a callback to call the real method that does the work.
-   * This method may contain applied deltas, a commit notice, or both.
+   * Queues a wavelet update message on behalf of the wave server. The queue
+   * is sent once the batch window ends, or right away once it holds enough
+   * deltas. This method may contain applied deltas, a commit notice, or both.
    *
    * @param waveletName the wavelet name
    * @param deltaList the deltas to include in the message, or null
@@ -95,10 +159,68 @@ class XmppFederationHostForDomain implements WaveletFederationListener {
           "version notice, for the target wavelet: " + waveletName);
     }
 
+    boolean flushNow;
+    synchronized (this) {
+      if (pending.isEmpty()) {
+        batchStartNanos = System.nanoTime();
+      }
+      PendingUpdate update = pending.get(waveletName);
+      if (update == null) {
+        update = new PendingUpdate();
+        pending.put(waveletName, update);
+      }
+      if (deltaList != null) {
+        for (ByteString delta : deltaList) {
+          update.deltas.add(delta);
+          pendingDeltaBytes += delta.size();
+        }
+      }
+      // Only the latest commit notice is of interest to the remote.
+      if (committedVersion != null && (update.committedVersion == null
+          || committedVersion.getVersion() > update.committedVersion.getVersion())) {
+        update.committedVersion = committedVersion;
+      }
+      if (callback != null) {
+        update.callbacks.add(callback);
+      }
+      update.updateCount++;
+      outstandingUpdates.incrementAndGet();
+
+      flushNow = batchWindowMs <= 0 || pendingDeltaBytes >= MAX_BATCH_DELTA_BYTES;
+      if (!flushNow && !flushScheduled) {
+        flushScheduled = true;
+        manager.schedule(flushTask, batchWindowMs, TimeUnit.MILLISECONDS);
+      }
+    }
+    if (flushNow) {
+      flush();
+    }
+  }
+
+  /**
+   * Sends all queued updates as one batch. This method just triggers a disco
+   * lookup (which may be cached) and sets up a callback to call the real
+   * method that does the work.
+   */
+  @VisibleForTesting
+  void flush() {
+    final Map<WaveletName, PendingUpdate> batch;
+    final long startNanos;
+    synchronized (this) {
+      flushScheduled = false;
+      if (pending.isEmpty()) {
+        return;
+      }
+      batch = Maps.newLinkedHashMap(pending);
+      startNanos = batchStartNanos;
+      pending.clear();
+      pendingDeltaBytes = 0;
+    }
+
     disco.discoverRemoteJid(remoteDomain, new SuccessFailCallback<String, String>() {
       @Override
       public void onSuccess(String remoteJid) {
-        internalWaveletUpdate(waveletName, deltaList, committedVersion, callback, remoteJid);
+        internalWaveletUpdate(batch, startNanos, remoteJid);
       }
 
       @Override
@@ -106,25 +228,26 @@ class XmppFederationHostForDomain implements WaveletFederationListener {
         if (LOG.isLoggable(Level.FINE)) {
           LOG.fine("Disco failed for remote domain " + remoteDomain + ", update not sent");
         }
-        callback.onFailure(FederationErrors.newFederationError(
-            FederationError.Code.RESOURCE_CONSTRAINT, errorMessage));
+        FederationError error = FederationErrors.newFederationError(
+            FederationError.Code.RESOURCE_CONSTRAINT, errorMessage);
+        for (PendingUpdate update : batch.values()) {
+          complete(update, error);
+        }
       }
     });
   }
 
   /**
-   * Sends a wavelet update message on behalf of the wave server once disco is
-   * complete. This method may contain applied deltas, a commit notice, or both.
+   * Sends a batch of wavelet updates on behalf of the wave server once disco
+   * is complete. Each wavelet is sent as one item, which may contain applied
+   * deltas, a commit notice, or both.
    *
-   * @param waveletName      the wavelet name
-   * @param deltaList        the deltas to include in the message, or null
-   * @param committedVersion last committed version to include, or null
-   * @param callback         callback to invoke on delivery success/failure
-   * @param remoteJid        the remote JID to send the update to
+   * @param batch       the updates to send, by wavelet
+   * @param startNanos  the time the first update of the batch was queued at
+   * @param remoteJid   the remote JID to send the update to
    */
-  private void internalWaveletUpdate(final WaveletName waveletName,
-      final List<ByteString> deltaList, final ProtocolHashedVersion committedVersion,
-      final WaveletUpdateCallback callback, String remoteJid) {
+  private void internalWaveletUpdate(Map<WaveletName, PendingUpdate> batch,
+      final long startNanos, String remoteJid) {
     Message message = new Message();
     message.setType(Message.Type.normal);
     message.setFrom(jid);
@@ -132,44 +255,69 @@ class XmppFederationHostForDomain implements WaveletFederationListener {
     message.setID(XmppUtil.generateUniqueId());
     message.addChildElement("request", XmppNamespace.NAMESPACE_XMPP_RECEIPTS);
 
-    final String encodedWaveletName;
-    try {
-      encodedWaveletName = XmppUtil.waveletNameCodec.waveletNameToURI(waveletName);
-    } catch (EncodingException e) {
-      callback.onFailure(FederationErrors.badRequest("Bad wavelet name " + waveletName));
-      return;
-    }
+    Element itemsElement = message.addChildElement("event", XmppNamespace.NAMESPACE_PUBSUB_EVENT)
+        .addElement("items");
+    final List<PendingUpdate> sent = Lists.newArrayList();
+    for (Map.Entry<WaveletName, PendingUpdate> entry : batch.entrySet()) {
+      WaveletName waveletName = entry.getKey();
+      PendingUpdate update = entry.getValue();
+      final String encodedWaveletName;
+      try {
+        encodedWaveletName = XmppUtil.waveletNameCodec.waveletNameToURI(waveletName);
+      } catch (EncodingException e) {
+        complete(update, FederationErrors.badRequest("Bad wavelet name " + waveletName));
+        continue;
+      }
 
-    Element itemElement = message.addChildElement("event", XmppNamespace.NAMESPACE_PUBSUB_EVENT)
-        .addElement("items").addElement("item");
-    if (deltaList != null) {
-      for (ByteString delta : deltaList) {
-        Element waveletUpdate =
-            itemElement.addElement("wavelet-update", XmppNamespace.NAMESPACE_WAVE_SERVER)
-                .addAttribute("wavelet-name", encodedWaveletName);
+      Element waveletUpdate = itemsElement.addElement("item")
+          .addElement("wavelet-update", XmppNamespace.NAMESPACE_WAVE_SERVER)
+          .addAttribute("wavelet-name", encodedWaveletName);
+      for (ByteString delta : update.deltas) {
         waveletUpdate.addElement("applied-delta").addCDATA(Base64Util.encode(delta.toByteArray()));
       }
+      if (update.committedVersion != null) {
+        waveletUpdate.addElement("commit-notice").addAttribute("version",
+            Long.toString(update.committedVersion.getVersion())).addAttribute("history-hash",
+            Base64Util.encode(update.committedVersion.getHistoryHash()));
+      }
+      sent.add(update);
     }
-    if (committedVersion != null) {
-      Element waveletUpdate =
-          itemElement.addElement("wavelet-update", XmppNamespace.NAMESPACE_WAVE_SERVER)
-              .addAttribute("wavelet-name", encodedWaveletName);
-      waveletUpdate.addElement("commit-notice").addAttribute("version",
-          Long.toString(committedVersion.getVersion())).addAttribute("history-hash",
-          Base64Util.encode(committedVersion.getHistoryHash()));
+    if (sent.isEmpty()) {
+      return;
     }
 
     // Send the generated message through to the foreign XMPP server.
     manager.send(message, new PacketCallback() {
       @Override
       public void error(FederationError error) {
-        callback.onFailure(error);
+        for (PendingUpdate update : sent) {
+          complete(update, error);
+        }
       }
 
       @Override
       public void run(Packet packet) {
-        callback.onSuccess();
+        MetricRegistry.recordSince("federation_update_batch:" + remoteDomain, startNanos);
+        for (PendingUpdate update : sent) {
+          complete(update, null);
+        }
       }
     }, XMPP_LISTENER_TIMEOUT);
   }
+
+  /**
+   * Invokes the callbacks of a sent or failed update.
+   *
+   * @param error the failure, or null on success
+   */
+  private void complete(PendingUpdate update, FederationError error) {
+    outstandingUpdates.addAndGet(-update.updateCount);
+    for (WaveletUpdateCallback callback : update.callbacks) {
+      if (error == null) {
+        callback.onSuccess();
+      } else {
+        callback.onFailure(error);
+      }
+    }
+  }
 }
@@ -231,6 +231,14 @@ public class XmppManager implements IncomingPacketHandler {
     }
   }
 
+  /**
+   * Runs the given task once after the given delay, on the thread that times
+   * out outgoing calls. The task should be short.
+   */
+  void schedule(Runnable task, long delay, TimeUnit unit) {
+    timeoutExecutor.schedule(task, delay, unit);
+  }
+
   /**
    * Cause an immediate timeout for the given packet, which is presumed to have
    * already been sent via {@link #send}.
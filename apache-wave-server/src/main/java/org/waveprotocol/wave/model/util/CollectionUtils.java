@@ -134,8 +134,16 @@ public class CollectionUtils {
 
     @Override
     public void putAll(ReadableStringMap<V> pairsToAdd) {
-      // TODO(ohler): check instanceof here and implement a fallback.
-      backend.putAll(((StringMapAdapter<V>) pairsToAdd).backend);
+      if (pairsToAdd instanceof StringMapAdapter) {
+        backend.putAll(((StringMapAdapter<V>) pairsToAdd).backend);
+      } else {
+        pairsToAdd.each(new ProcV<V>() {
+          @Override
+          public void apply(String key, V value) {
+            put(key, value);
+          }
+        });
+      }
     }
 
     @Override
@@ -258,8 +266,16 @@ public class CollectionUtils {
 
     @Override
     public void putAll(ReadableNumberMap<V> pairsToAdd) {
-      // TODO(ohler): check instanceof here and implement a fallback.
-      backend.putAll(((NumberMapAdapter<V>) pairsToAdd).backend);
+      if (pairsToAdd instanceof NumberMapAdapter) {
+        backend.putAll(((NumberMapAdapter<V>) pairsToAdd).backend);
+      } else {
+        pairsToAdd.each(new ProcV<V>() {
+          @Override
+          public void apply(double key, V value) {
+            put(key, value);
+          }
+        });
+      }
     }
 
     @Override
@@ -362,8 +378,16 @@ public class CollectionUtils {
 
     @Override
     public void putAll(ReadableIntMap<V> pairsToAdd) {
-      // TODO(ohler): check instanceof here and implement a fallback.
-      backend.putAll(((IntMapAdapter<V>) pairsToAdd).backend);
+      if (pairsToAdd instanceof IntMapAdapter) {
+        backend.putAll(((IntMapAdapter<V>) pairsToAdd).backend);
+      } else {
+        pairsToAdd.each(new ProcV<V>() {
+          @Override
+          public void apply(int key, V value) {
+            put(key, value);
+          }
+        });
+      }
     }
 
     @Override
@@ -515,12 +539,30 @@ public class CollectionUtils {
 
     @Override
     public void addAll(ReadableStringSet set) {
-      backend.addAll(((StringSetAdapter) set).backend);
+      if (set instanceof StringSetAdapter) {
+        backend.addAll(((StringSetAdapter) set).backend);
+      } else {
+        set.each(new Proc() {
+          @Override
+          public void apply(String element) {
+            add(element);
+          }
+        });
+      }
     }
 
     @Override
     public void removeAll(ReadableStringSet set) {
-      backend.removeAll(((StringSetAdapter) set).backend);
+      if (set instanceof StringSetAdapter) {
+        backend.removeAll(((StringSetAdapter) set).backend);
+      } else {
+        set.each(new Proc() {
+          @Override
+          public void apply(String element) {
+            remove(element);
+          }
+        });
+      }
     }
 
     @Override
@@ -0,0 +1,174 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.waveprotocol.box.search;
+
+import org.waveprotocol.box.search.SearchResponse.Digest;
+import org.waveprotocol.wave.communication.Blob;
+import org.waveprotocol.wave.communication.ProtoEnums;
+import java.util.List;
+
+/**
+ * Model interface for SearchUpdate.
+ *
+ * Generated from org/waveprotocol/box/search/search.proto. Do not edit.
+ */
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+public interface SearchUpdate {
+
+  /** Does a deep copy from model. */
+  void copyFrom(SearchUpdate model);
+
+  /**
+   * Tests if this model is equal to another object.
+   * "Equal" is recursively defined as:
+   * <ul>
+   * <li>both objects implement this interface,</li>
+   * <li>all corresponding primitive fields of both objects have the same value, and</li>
+   * <li>all corresponding nested-model fields of both objects are "equal".</li>
+   * </ul>
+   *
+   * This is a coarser equivalence than provided by the equals() methods. Two
+   * objects may not be equal() to each other, but may be isEqualTo() each other.
+   */
+  boolean isEqualTo(Object o);
+
+  /**
+   * Licensed to the Apache Software Foundation (ASF) under one
+   * or more contributor license agreements. See the NOTICE file
+   * distributed with this work for additional information
+   * regarding copyright ownership. The ASF licenses this file
+   * to you under the Apache License, Version 2.0 (the
+   * "License"); you may not use this file except in compliance
+   * with the License. You may obtain a copy of the License at
+   *
+   * http://www.apache.org/licenses/LICENSE-2.0
+   *
+   * Unless required by applicable law or agreed to in writing,
+   * software distributed under the License is distributed on an
+   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+   * KIND, either express or implied. See the License for the
+   * specific language governing permissions and limitations
+   * under the License.
+   */
+
+  /** Returns totalResults, or null if hasn't been set. */
+  int getTotalResults();
+
+  /** Sets totalResults. */
+  void setTotalResults(int totalResults);
+
+  /**
+   * Licensed to the Apache Software Foundation (ASF) under one
+   * or more contributor license agreements. See the NOTICE file
+   * distributed with this work for additional information
+   * regarding copyright ownership. The ASF licenses this file
+   * to you under the Apache License, Version 2.0 (the
+   * "License"); you may not use this file except in compliance
+   * with the License. You may obtain a copy of the License at
+   *
+   * http://www.apache.org/licenses/LICENSE-2.0
+   *
+   * Unless required by applicable law or agreed to in writing,
+   * software distributed under the License is distributed on an
+   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+   * KIND, either express or implied. See the License for the
+   * specific language governing permissions and limitations
+   * under the License.
+   */
+
+  /** Returns waveIds, or null if hasn't been set. */
+  List<String> getWaveIds();
+
+  /** Adds an element to waveIds. */
+  void addWaveIds(String value);
+
+  /** Adds a list of elements to waveIds. */
+  void addAllWaveIds(List<String> waveIds);
+
+  /** Returns the nth element of waveIds. */
+  String getWaveIds(int n);
+
+  /** Sets the nth element of waveIds. */
+  void setWaveIds(int n, String value);
+
+  /** Returns the length of waveIds. */
+  int getWaveIdsSize();
+
+  /** Clears waveIds. */
+  void clearWaveIds();
+
+  /**
+   * Licensed to the Apache Software Foundation (ASF) under one
+   * or more contributor license agreements. See the NOTICE file
+   * distributed with this work for additional information
+   * regarding copyright ownership. The ASF licenses this file
+   * to you under the Apache License, Version 2.0 (the
+   * "License"); you may not use this file except in compliance
+   * with the License. You may obtain a copy of the License at
+   *
+   * http://www.apache.org/licenses/LICENSE-2.0
+   *
+   * Unless required by applicable law or agreed to in writing,
+   * software distributed under the License is distributed on an
+   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+   * KIND, either express or implied. See the License for the
+   * specific language governing permissions and limitations
+   * under the License.
+   */
+
+  /** Returns digests, or null if hasn't been set. */
+  List<? extends Digest> getDigests();
+
+  /** Adds an element to digests. */
+  void addDigests(Digest value);
+
+  /** Adds a list of elements to digests. */
+  void addAllDigests(List<? extends Digest> digests);
+
+  /** Returns the nth element of digests. */
+  Digest getDigests(int n);
+
+  /** Sets the nth element of digests. */
+  void setDigests(int n, Digest value);
+
+  /** Returns the length of digests. */
+  int getDigestsSize();
+
+  /** Clears digests. */
+  void clearDigests();
+}
\ No newline at end of file
@@ -0,0 +1,306 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.waveprotocol.box.search.jso;
+
+import static org.waveprotocol.wave.communication.gwt.JsonHelper.*;
+import com.google.gwt.core.client.*;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+import org.waveprotocol.box.search.SearchResponse.Digest;
+import org.waveprotocol.box.search.jso.SearchResponseJsoImpl.DigestJsoImpl;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+import org.waveprotocol.box.search.SearchUpdate;
+import org.waveprotocol.box.search.SearchUpdateUtil;
+import org.waveprotocol.wave.communication.Blob;
+import org.waveprotocol.wave.communication.ProtoEnums;
+import org.waveprotocol.wave.communication.gwt.*;
+import org.waveprotocol.wave.communication.json.*;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Client implementation of SearchUpdate backed by a GWT JavaScriptObject.
+ *
+ * Generated from org/waveprotocol/box/search/search.proto. Do not edit.
+ */
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+/** We have to use fully-qualified name of the GsonSerializable class here in order to make it
+ * visible in case of nested classes.
+ */
+public final class SearchUpdateJsoImpl extends org.waveprotocol.wave.communication.gwt.JsonMessage
+    implements SearchUpdate {
+  private static final String keyTotalResults = "1";
+  private static final String keyWaveIds = "2";
+  private static final String keyDigests = "3";
+  protected SearchUpdateJsoImpl() {
+  }
+
+  public static SearchUpdateJsoImpl create() {
+    SearchUpdateJsoImpl instance = (SearchUpdateJsoImpl) JsonMessage.createJsonMessage();
+    // Force all lists to start with an empty list rather than no property for
+    // the list. This is so that the native JS equality works, since (obviously)
+    // {} != {"foo": []} while in the context of messages they should be.
+    instance.clearWaveIds();
+    instance.clearDigests();
+    return instance;
+  }
+
+  @Override
+  public void copyFrom(SearchUpdate message) {
+    super.copyFrom((SearchUpdateJsoImpl) message);
+  }
+
+  /**
+   * Licensed to the Apache Software Foundation (ASF) under one
+   * or more contributor license agreements. See the NOTICE file
+   * distributed with this work for additional information
+   * regarding copyright ownership. The ASF licenses this file
+   * to you under the Apache License, Version 2.0 (the
+   * "License"); you may not use this file except in compliance
+   * with the License. You may obtain a copy of the License at
+   *
+   * http://www.apache.org/licenses/LICENSE-2.0
+   *
+   * Unless required by applicable law or agreed to in writing,
+   * software distributed under the License is distributed on an
+   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+   * KIND, either express or implied. See the License for the
+   * specific language governing permissions and limitations
+   * under the License.
+   */
+
+  @Override
+  public int getTotalResults() {
+    return hasProperty(this, keyTotalResults) ? getPropertyAsInteger(this, keyTotalResults) : 0;
+  }
+
+  @Override
+  public void setTotalResults(int value) {
+    setPropertyAsInteger(this, keyTotalResults, value);
+  }
+
+  /**
+   * Licensed to the Apache Software Foundation (ASF) under one
+   * or more contributor license agreements. See the NOTICE file
+   * distributed with this work for additional information
+   * regarding copyright ownership. The ASF licenses this file
+   * to you under the Apache License, Version 2.0 (the
+   * "License"); you may not use this file except in compliance
+   * with the License. You may obtain a copy of the License at
+   *
+   * http://www.apache.org/licenses/LICENSE-2.0
+   *
+   * Unless required by applicable law or agreed to in writing,
+   * software distributed under the License is distributed on an
+   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+   * KIND, either express or implied. See the License for the
+   * specific language governing permissions and limitations
+   * under the License.
+   */
+
+  @Override
+  public List<String> getWaveIds() {
+    initArray(this, keyWaveIds);
+    List<String> list = new ArrayList<String>();
+    for (int i = 0; i < getWaveIdsSize(); i++) {
+      list.add(getWaveIds(i));
+    }
+    return list;
+  }
+
+  @Override
+  public void addAllWaveIds(List<String> values) {
+    for (String value : values) {
+      addWaveIds(value);
+    }
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+      public String getWaveIds(int n) {
+    initArray(this, keyWaveIds);
+    JsArrayString array = getPropertyAsObject(this, keyWaveIds).cast();
+    if (n < 0) throw new IllegalArgumentException("index " + n + " < 0");
+    if (array.length() <= n) throw new IllegalArgumentException("index " + n + ">= array length " + array.length());
+    return array.get(n);
+  }
+
+  @Override
+  public void setWaveIds(int n, String value) {
+    if (n < 0) throw new IllegalArgumentException("index " + n + " < 0");
+    initArray(this, keyWaveIds);
+    ((JsArrayString) getPropertyAsObject(this, keyWaveIds)).set(n, value);
+  }
+
+  @Override
+  public int getWaveIdsSize() {
+    return hasProperty(this, keyWaveIds) ? ((JsArray<?>) getPropertyAsObject(this, keyWaveIds)).length() : 0;
+  }
+
+  @Override
+  public void addWaveIds(String value) {
+    initArray(this, keyWaveIds);
+    ((JsArrayString) getPropertyAsObject(this, keyWaveIds)).push(value);
+  }
+
+  @Override
+  public void clearWaveIds() {
+    clearArray(this, keyWaveIds);
+  }
+
+  /**
+   * Licensed to the Apache Software Foundation (ASF) under one
+   * or more contributor license agreements. See the NOTICE file
+   * distributed with this work for additional information
+   * regarding copyright ownership. The ASF licenses this file
+   * to you under the Apache License, Version 2.0 (the
+   * "License"); you may not use this file except in compliance
+   * with the License. You may obtain a copy of the License at
+   *
+   * http://www.apache.org/licenses/LICENSE-2.0
+   *
+   * Unless required by applicable law or agreed to in writing,
+   * software distributed under the License is distributed on an
+   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+   * KIND, either express or implied. See the License for the
+   * specific language governing permissions and limitations
+   * under the License.
+   */
+
+  @Override
+  public List<DigestJsoImpl> getDigests() {
+    initArray(this, keyDigests);
+    List<DigestJsoImpl> list = new ArrayList<DigestJsoImpl>();
+    for (int i = 0; i < getDigestsSize(); i++) {
+      list.add(getDigests(i));
+    }
+    return list;
+  }
+
+  @Override
+  public void addAllDigests(List<? extends Digest> models) {
+    for (Digest model : models) {
+      addDigests(model);
+    }
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+      public DigestJsoImpl getDigests(int n) {
+    initArray(this, keyDigests);
+    JsArray<DigestJsoImpl> array = getPropertyAsObject(this, keyDigests).cast();
+    if (n < 0) throw new IllegalArgumentException("index " + n + " < 0");
+    if (array.length() <= n) throw new IllegalArgumentException("index " + n + ">= array length " + array.length());
+    return array.get(n);
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+      public void setDigests(int n, Digest model) {
+    if (n < 0) throw new IllegalArgumentException("index " + n + " < 0");
+    initArray(this, keyDigests);
+    ((JsArray<DigestJsoImpl>) getPropertyAsObject(this, keyDigests)).set(n, (DigestJsoImpl) model);
+  }
+
+  @Override
+  public int getDigestsSize() {
+    return hasProperty(this, keyDigests) ? ((JsArray<?>) getPropertyAsObject(this, keyDigests)).length() : 0;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+      public void addDigests(Digest model) {
+    initArray(this, keyDigests);
+    ((JsArray<DigestJsoImpl>) getPropertyAsObject(this, keyDigests)).push((DigestJsoImpl) model);
+  }
+
+  @Override
+  public void clearDigests() {
+    clearArray(this, keyDigests);
+  }
+
+  @Override
+  public boolean isEqualTo(Object o) {
+    if (o instanceof SearchUpdateJsoImpl) {
+      return nativeIsEqualTo(o);
+    } else if (o instanceof SearchUpdate) {
+      return SearchUpdateUtil.isEqual(this, (SearchUpdate) o);
+    } else {
+      return false;
+    }
+  }
+
+}
\ No newline at end of file
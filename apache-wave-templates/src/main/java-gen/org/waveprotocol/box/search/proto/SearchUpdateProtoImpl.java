@@ -0,0 +1,622 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.waveprotocol.box.search.proto;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+import org.waveprotocol.box.search.SearchResponse.Digest;
+import org.waveprotocol.box.search.proto.SearchResponseProtoImpl.DigestProtoImpl;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+import org.waveprotocol.box.search.SearchUpdate;
+import org.waveprotocol.box.search.SearchUpdateUtil;
+import org.waveprotocol.wave.communication.Blob;
+import org.waveprotocol.wave.communication.Codec;
+import org.waveprotocol.wave.communication.ProtoEnums;
+import org.waveprotocol.wave.communication.proto.Int52;
+import org.waveprotocol.wave.communication.proto.ProtoWrapper;
+import org.waveprotocol.wave.communication.gson.GsonException;
+import org.waveprotocol.wave.communication.gson.GsonSerializable;
+import org.waveprotocol.wave.communication.gson.GsonUtil;
+import org.waveprotocol.wave.communication.json.RawStringData;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import com.google.protobuf.ByteString;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Server implementation of SearchUpdate.
+ *
+ * Generated from org/waveprotocol/box/search/search.proto. Do not edit.
+ */
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+// NOTE(kalman): It would be nicer to add a proto serialisation
+// utility rather than having this class at all.
+public final class SearchUpdateProtoImpl
+    implements SearchUpdate,
+// Note: fully-qualified path is required for GsonSerializable and ProtoWrapper.
+// An import of it is not resolved correctly from inner classes.
+// This appears to be a javac bug. The Eclipse compiler handles it fine.
+org.waveprotocol.wave.communication.gson.GsonSerializable,
+org.waveprotocol.wave.communication.proto.ProtoWrapper<org.waveprotocol.box.search.SearchProto.SearchUpdate> {
+  private org.waveprotocol.box.search.SearchProto.SearchUpdate proto = null;
+  private org.waveprotocol.box.search.SearchProto.SearchUpdate.Builder protoBuilder = org.waveprotocol.box.search.SearchProto.SearchUpdate.newBuilder();
+  public SearchUpdateProtoImpl() {
+  }
+
+  public SearchUpdateProtoImpl(org.waveprotocol.box.search.SearchProto.SearchUpdate proto) {
+    this.proto = proto;
+  }
+
+  public SearchUpdateProtoImpl(SearchUpdate message) {
+    copyFrom(message);
+  }
+
+  @Override
+  public org.waveprotocol.box.search.SearchProto.SearchUpdate getPB() {
+    switchToProto();
+    return proto;
+  }
+
+  @Override
+  public void setPB(org.waveprotocol.box.search.SearchProto.SearchUpdate proto) {
+    this.proto = proto;
+    this.protoBuilder = null;
+  }
+
+  @Override
+  public void copyFrom(SearchUpdate message) {
+
+    /**
+     * Licensed to the Apache Software Foundation (ASF) under one
+     * or more contributor license agreements. See the NOTICE file
+     * distributed with this work for additional information
+     * regarding copyright ownership. The ASF licenses this file
+     * to you under the Apache License, Version 2.0 (the
+     * "License"); you may not use this file except in compliance
+     * with the License. You may obtain a copy of the License at
+     *
+     * http://www.apache.org/licenses/LICENSE-2.0
+     *
+     * Unless required by applicable law or agreed to in writing,
+     * software distributed under the License is distributed on an
+     * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+     * KIND, either express or implied. See the License for the
+     * specific language governing permissions and limitations
+     * under the License.
+     */
+    setTotalResults(message.getTotalResults());
+
+    /**
+     * Licensed to the Apache Software Foundation (ASF) under one
+     * or more contributor license agreements. See the NOTICE file
+     * distributed with this work for additional information
+     * regarding copyright ownership. The ASF licenses this file
+     * to you under the Apache License, Version 2.0 (the
+     * "License"); you may not use this file except in compliance
+     * with the License. You may obtain a copy of the License at
+     *
+     * http://www.apache.org/licenses/LICENSE-2.0
+     *
+     * Unless required by applicable law or agreed to in writing,
+     * software distributed under the License is distributed on an
+     * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+     * KIND, either express or implied. See the License for the
+     * specific language governing permissions and limitations
+     * under the License.
+     */
+    clearWaveIds();
+    for (String field : message.getWaveIds()) {
+      addWaveIds(field);
+    }
+
+    /**
+     * Licensed to the Apache Software Foundation (ASF) under one
+     * or more contributor license agreements. See the NOTICE file
+     * distributed with this work for additional information
+     * regarding copyright ownership. The ASF licenses this file
+     * to you under the Apache License, Version 2.0 (the
+     * "License"); you may not use this file except in compliance
+     * with the License. You may obtain a copy of the License at
+     *
+     * http://www.apache.org/licenses/LICENSE-2.0
+     *
+     * Unless required by applicable law or agreed to in writing,
+     * software distributed under the License is distributed on an
+     * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+     * KIND, either express or implied. See the License for the
+     * specific language governing permissions and limitations
+     * under the License.
+     */
+    clearDigests();
+    for (Digest field : message.getDigests()) {
+      addDigests(new DigestProtoImpl(field));
+    }
+  }
+
+  /**
+   * Licensed to the Apache Software Foundation (ASF) under one
+   * or more contributor license agreements. See the NOTICE file
+   * distributed with this work for additional information
+   * regarding copyright ownership. The ASF licenses this file
+   * to you under the Apache License, Version 2.0 (the
+   * "License"); you may not use this file except in compliance
+   * with the License. You may obtain a copy of the License at
+   *
+   * http://www.apache.org/licenses/LICENSE-2.0
+   *
+   * Unless required by applicable law or agreed to in writing,
+   * software distributed under the License is distributed on an
+   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+   * KIND, either express or implied. See the License for the
+   * specific language governing permissions and limitations
+   * under the License.
+   */
+
+  @Override
+  public int getTotalResults() {
+    switchToProto();
+    return proto.getTotalResults();
+  }
+
+  @Override
+  public void setTotalResults(int value) {
+    switchToProtoBuilder();
+    protoBuilder.setTotalResults(value);
+  }
+
+  /**
+   * Licensed to the Apache Software Foundation (ASF) under one
+   * or more contributor license agreements. See the NOTICE file
+   * distributed with this work for additional information
+   * regarding copyright ownership. The ASF licenses this file
+   * to you under the Apache License, Version 2.0 (the
+   * "License"); you may not use this file except in compliance
+   * with the License. You may obtain a copy of the License at
+   *
+   * http://www.apache.org/licenses/LICENSE-2.0
+   *
+   * Unless required by applicable law or agreed to in writing,
+   * software distributed under the License is distributed on an
+   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+   * KIND, either express or implied. See the License for the
+   * specific language governing permissions and limitations
+   * under the License.
+   */
+
+  @Override
+  public List<String> getWaveIds() {
+    switchToProto();
+    return Collections.unmodifiableList(proto.getWaveIdsList());
+  }
+
+  @Override
+  public void addAllWaveIds(List<String> values) {
+    switchToProtoBuilder();
+    protoBuilder.addAllWaveIds(values);
+  }
+
+  @Override
+  public String getWaveIds(int n) {
+    switchToProto();
+    return proto.getWaveIds(n);
+  }
+
+  @Override
+  public void setWaveIds(int n, String value) {
+    switchToProtoBuilder();
+    protoBuilder.setWaveIds(n, value);
+  }
+
+  @Override
+  public int getWaveIdsSize() {
+    switchToProto();
+    return proto.getWaveIdsCount();
+  }
+
+  @Override
+  public void addWaveIds(String value) {
+    switchToProtoBuilder();
+    protoBuilder.addWaveIds(value);
+  }
+
+  @Override
+  public void clearWaveIds() {
+    switchToProtoBuilder();
+    protoBuilder.clearWaveIds();
+  }
+
+  /**
+   * Licensed to the Apache Software Foundation (ASF) under one
+   * or more contributor license agreements. See the NOTICE file
+   * distributed with this work for additional information
+   * regarding copyright ownership. The ASF licenses this file
+   * to you under the Apache License, Version 2.0 (the
+   * "License"); you may not use this file except in compliance
+   * with the License. You may obtain a copy of the License at
+   *
+   * http://www.apache.org/licenses/LICENSE-2.0
+   *
+   * Unless required by applicable law or agreed to in writing,
+   * software distributed under the License is distributed on an
+   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+   * KIND, either express or implied. See the License for the
+   * specific language governing permissions and limitations
+   * under the License.
+   */
+
+  @Override
+  public List<DigestProtoImpl> getDigests() {
+    switchToProto();
+    List<DigestProtoImpl> list = new ArrayList<DigestProtoImpl>();
+    for (int i = 0; i < getDigestsSize(); i++) {
+      DigestProtoImpl message = new DigestProtoImpl(proto.getDigests(i));
+      list.add(message);
+    }
+    return list;
+  }
+
+  @Override
+  public void addAllDigests(List<? extends Digest> values) {
+    for (Digest message : values) {
+      addDigests(message);
+    }
+  }
+
+  @Override
+  public DigestProtoImpl getDigests(int n) {
+    switchToProto();
+    return new DigestProtoImpl(proto.getDigests(n));
+  }
+
+  @Override
+  public void setDigests(int n, Digest value) {
+    switchToProtoBuilder();
+    protoBuilder.setDigests(n, getOrCreateDigestProtoImpl(value).getPB());
+  }
+
+  @Override
+  public int getDigestsSize() {
+    switchToProto();
+    return proto.getDigestsCount();
+  }
+
+  @Override
+  public void addDigests(Digest value) {
+    switchToProtoBuilder();
+    protoBuilder.addDigests(getOrCreateDigestProtoImpl(value).getPB());
+  }
+
+  @Override
+  public void clearDigests() {
+    switchToProtoBuilder();
+    protoBuilder.clearDigests();
+  }
+
+  /**
+   * Licensed to the Apache Software Foundation (ASF) under one
+   * or more contributor license agreements. See the NOTICE file
+   * distributed with this work for additional information
+   * regarding copyright ownership. The ASF licenses this file
+   * to you under the Apache License, Version 2.0 (the
+   * "License"); you may not use this file except in compliance
+   * with the License. You may obtain a copy of the License at
+   *
+   * http://www.apache.org/licenses/LICENSE-2.0
+   *
+   * Unless required by applicable law or agreed to in writing,
+   * software distributed under the License is distributed on an
+   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+   * KIND, either express or implied. See the License for the
+   * specific language governing permissions and limitations
+   * under the License.
+   */
+
+  /** Get or create a DigestProtoImpl from a Digest. */
+  private DigestProtoImpl getOrCreateDigestProtoImpl(Digest message) {
+    if (message instanceof DigestProtoImpl) {
+      return (DigestProtoImpl) message;
+    } else {
+      DigestProtoImpl messageImpl = new DigestProtoImpl();
+      messageImpl.copyFrom(message);
+      return messageImpl;
+    }
+  }
+
+  private void switchToProto() {
+    if (proto == null) {
+      proto = protoBuilder.build();
+      protoBuilder = null;
+    }
+  }
+
+  private void switchToProtoBuilder() {
+    if (protoBuilder == null) {
+      protoBuilder = (proto == null)
+          ? org.waveprotocol.box.search.SearchProto.SearchUpdate.newBuilder()
+          : org.waveprotocol.box.search.SearchProto.SearchUpdate.newBuilder(proto);
+      proto = null;
+    }
+  }
+
+  private void invalidateAll() {
+    proto = null;
+    protoBuilder = org.waveprotocol.box.search.SearchProto.SearchUpdate.newBuilder();
+  }
+
+  @Override
+  public JsonElement toGson(RawStringData raw, Gson gson) {
+    JsonObject json = new JsonObject();
+
+    /**
+     * Licensed to the Apache Software Foundation (ASF) under one
+     * or more contributor license agreements. See the NOTICE file
+     * distributed with this work for additional information
+     * regarding copyright ownership. The ASF licenses this file
+     * to you under the Apache License, Version 2.0 (the
+     * "License"); you may not use this file except in compliance
+     * with the License. You may obtain a copy of the License at
+     *
+     * http://www.apache.org/licenses/LICENSE-2.0
+     *
+     * Unless required by applicable law or agreed to in writing,
+     * software distributed under the License is distributed on an
+     * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+     * KIND, either express or implied. See the License for the
+     * specific language governing permissions and limitations
+     * under the License.
+     */
+    json.add("1", new JsonPrimitive(getTotalResults()));
+
+    /**
+     * Licensed to the Apache Software Foundation (ASF) under one
+     * or more contributor license agreements. See the NOTICE file
+     * distributed with this work for additional information
+     * regarding copyright ownership. The ASF licenses this file
+     * to you under the Apache License, Version 2.0 (the
+     * "License"); you may not use this file except in compliance
+     * with the License. You may obtain a copy of the License at
+     *
+     * http://www.apache.org/licenses/LICENSE-2.0
+     *
+     * Unless required by applicable law or agreed to in writing,
+     * software distributed under the License is distributed on an
+     * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+     * KIND, either express or implied. See the License for the
+     * specific language governing permissions and limitations
+     * under the License.
+     */
+    {
+      JsonArray array = new JsonArray();
+      for (int i = 0; i < getWaveIdsSize(); i++) {
+        array.add(new JsonPrimitive(getWaveIds(i)));
+      }
+      json.add("2", array);
+    }
+
+    /**
+     * Licensed to the Apache Software Foundation (ASF) under one
+     * or more contributor license agreements. See the NOTICE file
+     * distributed with this work for additional information
+     * regarding copyright ownership. The ASF licenses this file
+     * to you under the Apache License, Version 2.0 (the
+     * "License"); you may not use this file except in compliance
+     * with the License. You may obtain a copy of the License at
+     *
+     * http://www.apache.org/licenses/LICENSE-2.0
+     *
+     * Unless required by applicable law or agreed to in writing,
+     * software distributed under the License is distributed on an
+     * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+     * KIND, either express or implied. See the License for the
+     * specific language governing permissions and limitations
+     * under the License.
+     */
+    {
+      JsonArray array = new JsonArray();
+      for (int i = 0; i < getDigestsSize(); i++) {
+        JsonElement elem = ((GsonSerializable) getDigests(i)).toGson(raw, gson);
+        // NOTE(kalman): if multistage parsing worked, split point would go here.
+        array.add(elem);
+      }
+      json.add("3", array);
+    }
+    return json;
+  }
+
+  @Override
+  public void fromGson(JsonElement json, Gson gson, RawStringData raw) throws GsonException {
+    JsonObject jsonObject = json.getAsJsonObject();
+    // NOTE: always check with has(...) as the json might not have all required
+    // fields set; however these (obviously) will need to be set by other means
+    // before accessing this object.
+    invalidateAll();
+
+    /**
+     * Licensed to the Apache Software Foundation (ASF) under one
+     * or more contributor license agreements. See the NOTICE file
+     * distributed with this work for additional information
+     * regarding copyright ownership. The ASF licenses this file
+     * to you under the Apache License, Version 2.0 (the
+     * "License"); you may not use this file except in compliance
+     * with the License. You may obtain a copy of the License at
+     *
+     * http://www.apache.org/licenses/LICENSE-2.0
+     *
+     * Unless required by applicable law or agreed to in writing,
+     * software distributed under the License is distributed on an
+     * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+     * KIND, either express or implied. See the License for the
+     * specific language governing permissions and limitations
+     * under the License.
+     */
+    if (jsonObject.has("1")) {
+      JsonElement elem = jsonObject.get("1");
+      setTotalResults(elem.getAsInt());
+    }
+
+    /**
+     * Licensed to the Apache Software Foundation (ASF) under one
+     * or more contributor license agreements. See the NOTICE file
+     * distributed with this work for additional information
+     * regarding copyright ownership. The ASF licenses this file
+     * to you under the Apache License, Version 2.0 (the
+     * "License"); you may not use this file except in compliance
+     * with the License. You may obtain a copy of the License at
+     *
+     * http://www.apache.org/licenses/LICENSE-2.0
+     *
+     * Unless required by applicable law or agreed to in writing,
+     * software distributed under the License is distributed on an
+     * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+     * KIND, either express or implied. See the License for the
+     * specific language governing permissions and limitations
+     * under the License.
+     */
+    if (jsonObject.has("2")) {
+      JsonElement elem = jsonObject.get("2");
+      {
+        JsonArray array = elem.getAsJsonArray();
+        for (int i = 0; i < array.size(); i++) {
+          addWaveIds(array.get(i).getAsString());
+        }
+      }
+    }
+
+    /**
+     * Licensed to the Apache Software Foundation (ASF) under one
+     * or more contributor license agreements. See the NOTICE file
+     * distributed with this work for additional information
+     * regarding copyright ownership. The ASF licenses this file
+     * to you under the Apache License, Version 2.0 (the
+     * "License"); you may not use this file except in compliance
+     * with the License. You may obtain a copy of the License at
+     *
+     * http://www.apache.org/licenses/LICENSE-2.0
+     *
+     * Unless required by applicable law or agreed to in writing,
+     * software distributed under the License is distributed on an
+     * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+     * KIND, either express or implied. See the License for the
+     * specific language governing permissions and limitations
+     * under the License.
+     */
+    if (jsonObject.has("3")) {
+      JsonElement elem = jsonObject.get("3");
+      {
+        JsonArray array = elem.getAsJsonArray();
+        for (int i = 0; i < array.size(); i++) {
+          DigestProtoImpl payload = new DigestProtoImpl();
+          GsonUtil.extractJsonObject(payload, array.get(i), gson, raw);
+          addDigests(payload);
+        }
+      }
+    }
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    } else if (o instanceof SearchUpdateProtoImpl) {
+      return getPB().equals(((SearchUpdateProtoImpl) o).getPB());
+    } else {
+      return false;
+    }
+  }
+
+  @Override
+  public boolean isEqualTo(Object o) {
+    if (equals(o)) {
+      return true;
+    } else if (o instanceof SearchUpdate) {
+      return SearchUpdateUtil.isEqual(this, (SearchUpdate) o);
+    } else {
+      return false;
+    }
+  }
+
+  @Override
+  public int hashCode() {
+    return getPB().hashCode();
+  }
+
+  @Override
+  public String toString() {
+    return getPB().toString();
+  }
+
+}
\ No newline at end of file
@@ -3744,6 +3744,1450 @@ public final class SearchProto {
     // @@protoc_insertion_point(class_scope:search.SearchResponse)
   }
 
+  public interface SearchUpdateOrBuilder
+      extends com.google.protobuf.MessageOrBuilder {
+
+    // required int32 totalResults = 1;
+    /**
+     * <code>required int32 totalResults = 1;</code>
+     *
+     * <pre>
+     * The total number of results to the query (not necessarily all returned).
+     * </pre>
+     */
+    boolean hasTotalResults();
+    /**
+     * <code>required int32 totalResults = 1;</code>
+     *
+     * <pre>
+     * The total number of results to the query (not necessarily all returned).
+     * </pre>
+     */
+    int getTotalResults();
+
+    // repeated string waveIds = 2;
+    /**
+     * <code>repeated string waveIds = 2;</code>
+     *
+     * <pre>
+     * The serialized ids of the waves in the segment, in order.
+     * </pre>
+     */
+    java.util.List<java.lang.String>
+    getWaveIdsList();
+    /**
+     * <code>repeated string waveIds = 2;</code>
+     *
+     * <pre>
+     * The serialized ids of the waves in the segment, in order.
+     * </pre>
+     */
+    int getWaveIdsCount();
+    /**
+     * <code>repeated string waveIds = 2;</code>
+     *
+     * <pre>
+     * The serialized ids of the waves in the segment, in order.
+     * </pre>
+     */
+    java.lang.String getWaveIds(int index);
+    /**
+     * <code>repeated string waveIds = 2;</code>
+     *
+     * <pre>
+     * The serialized ids of the waves in the segment, in order.
+     * </pre>
+     */
+    com.google.protobuf.ByteString
+        getWaveIdsBytes(int index);
+
+    // repeated .search.SearchResponse.Digest digests = 3;
+    /**
+     * <code>repeated .search.SearchResponse.Digest digests = 3;</code>
+     *
+     * <pre>
+     * The digests of the waves in the segment that are new or have changed
+     * since the previous update.
+     * </pre>
+     */
+    java.util.List<org.waveprotocol.box.search.SearchProto.SearchResponse.Digest> 
+        getDigestsList();
+    /**
+     * <code>repeated .search.SearchResponse.Digest digests = 3;</code>
+     *
+     * <pre>
+     * The digests of the waves in the segment that are new or have changed
+     * since the previous update.
+     * </pre>
+     */
+    org.waveprotocol.box.search.SearchProto.SearchResponse.Digest getDigests(int index);
+    /**
+     * <code>repeated .search.SearchResponse.Digest digests = 3;</code>
+     *
+     * <pre>
+     * The digests of the waves in the segment that are new or have changed
+     * since the previous update.
+     * </pre>
+     */
+    int getDigestsCount();
+    /**
+     * <code>repeated .search.SearchResponse.Digest digests = 3;</code>
+     *
+     * <pre>
+     * The digests of the waves in the segment that are new or have changed
+     * since the previous update.
+     * </pre>
+     */
+    java.util.List<? extends org.waveprotocol.box.search.SearchProto.SearchResponse.DigestOrBuilder> 
+        getDigestsOrBuilderList();
+    /**
+     * <code>repeated .search.SearchResponse.Digest digests = 3;</code>
+     *
+     * <pre>
+     * The digests of the waves in the segment that are new or have changed
+     * since the previous update.
+     * </pre>
+     */
+    org.waveprotocol.box.search.SearchProto.SearchResponse.DigestOrBuilder getDigestsOrBuilder(
+        int index);
+  }
+  /**
+   * Protobuf type {@code search.SearchUpdate}
+   */
+  public static final class SearchUpdate extends
+      com.google.protobuf.GeneratedMessage
+      implements SearchUpdateOrBuilder {
+    // Use SearchUpdate.newBuilder() to construct.
+    private SearchUpdate(com.google.protobuf.GeneratedMessage.Builder<?> builder) {
+      super(builder);
+      this.unknownFields = builder.getUnknownFields();
+    }
+    private SearchUpdate(boolean noInit) { this.unknownFields = com.google.protobuf.UnknownFieldSet.getDefaultInstance(); }
+
+    private static final SearchUpdate defaultInstance;
+    public static SearchUpdate getDefaultInstance() {
+      return defaultInstance;
+    }
+
+    public SearchUpdate getDefaultInstanceForType() {
+      return defaultInstance;
+    }
+
+    private final com.google.protobuf.UnknownFieldSet unknownFields;
+    @java.lang.Override
+    public final com.google.protobuf.UnknownFieldSet
+        getUnknownFields() {
+      return this.unknownFields;
+    }
+    private SearchUpdate(
+        com.google.protobuf.CodedInputStream input,
+        com.google.protobuf.ExtensionRegistryLite extensionRegistry)
+        throws com.google.protobuf.InvalidProtocolBufferException {
+      initFields();
+      int mutable_bitField0_ = 0;
+      com.google.protobuf.UnknownFieldSet.Builder unknownFields =
+          com.google.protobuf.UnknownFieldSet.newBuilder();
+      try {
+        boolean done = false;
+        while (!done) {
+          int tag = input.readTag();
+          switch (tag) {
+            case 0:
+              done = true;
+              break;
+            default: {
+              if (!parseUnknownField(input, unknownFields,
+                                     extensionRegistry, tag)) {
+                done = true;
+              }
+              break;
+            }
+            case 8: {
+              bitField0_ |= 0x00000001;
+              totalResults_ = input.readInt32();
+              break;
+            }
+            case 18: {
+              if (!((mutable_bitField0_ & 0x00000002) == 0x00000002)) {
+                waveIds_ = new com.google.protobuf.LazyStringArrayList();
+                mutable_bitField0_ |= 0x00000002;
+              }
+              waveIds_.add(input.readBytes());
+              break;
+            }
+            case 26: {
+              if (!((mutable_bitField0_ & 0x00000004) == 0x00000004)) {
+                digests_ = new java.util.ArrayList<org.waveprotocol.box.search.SearchProto.SearchResponse.Digest>();
+                mutable_bitField0_ |= 0x00000004;
+              }
+              digests_.add(input.readMessage(org.waveprotocol.box.search.SearchProto.SearchResponse.Digest.PARSER, extensionRegistry));
+              break;
+            }
+          }
+        }
+      } catch (com.google.protobuf.InvalidProtocolBufferException e) {
+        throw e.setUnfinishedMessage(this);
+      } catch (java.io.IOException e) {
+        throw new com.google.protobuf.InvalidProtocolBufferException(
+            e.getMessage()).setUnfinishedMessage(this);
+      } finally {
+        if (((mutable_bitField0_ & 0x00000002) == 0x00000002)) {
+          waveIds_ = new com.google.protobuf.UnmodifiableLazyStringList(waveIds_);
+        }
+        if (((mutable_bitField0_ & 0x00000004) == 0x00000004)) {
+          digests_ = java.util.Collections.unmodifiableList(digests_);
+        }
+        this.unknownFields = unknownFields.build();
+        makeExtensionsImmutable();
+      }
+    }
+    public static final com.google.protobuf.Descriptors.Descriptor
+        getDescriptor() {
+      return org.waveprotocol.box.search.SearchProto.internal_static_search_SearchUpdate_descriptor;
+    }
+
+    protected com.google.protobuf.GeneratedMessage.FieldAccessorTable
+        internalGetFieldAccessorTable() {
+      return org.waveprotocol.box.search.SearchProto.internal_static_search_SearchUpdate_fieldAccessorTable
+          .ensureFieldAccessorsInitialized(
+              org.waveprotocol.box.search.SearchProto.SearchUpdate.class, org.waveprotocol.box.search.SearchProto.SearchUpdate.Builder.class);
+    }
+
+    public static com.google.protobuf.Parser<SearchUpdate> PARSER =
+        new com.google.protobuf.AbstractParser<SearchUpdate>() {
+      public SearchUpdate parsePartialFrom(
+          com.google.protobuf.CodedInputStream input,
+          com.google.protobuf.ExtensionRegistryLite extensionRegistry)
+          throws com.google.protobuf.InvalidProtocolBufferException {
+        return new SearchUpdate(input, extensionRegistry);
+      }
+    };
+
+    @java.lang.Override
+    public com.google.protobuf.Parser<SearchUpdate> getParserForType() {
+      return PARSER;
+    }
+
+    private int bitField0_;
+    // required int32 totalResults = 1;
+    public static final int TOTALRESULTS_FIELD_NUMBER = 1;
+    private int totalResults_;
+    /**
+     * <code>required int32 totalResults = 1;</code>
+     *
+     * <pre>
+     * The total number of results to the query (not necessarily all returned).
+     * </pre>
+     */
+    public boolean hasTotalResults() {
+      return ((bitField0_ & 0x00000001) == 0x00000001);
+    }
+    /**
+     * <code>required int32 totalResults = 1;</code>
+     *
+     * <pre>
+     * The total number of results to the query (not necessarily all returned).
+     * </pre>
+     */
+    public int getTotalResults() {
+      return totalResults_;
+    }
+
+    // repeated string waveIds = 2;
+    public static final int WAVEIDS_FIELD_NUMBER = 2;
+    private com.google.protobuf.LazyStringList waveIds_;
+    /**
+     * <code>repeated string waveIds = 2;</code>
+     *
+     * <pre>
+     * The serialized ids of the waves in the segment, in order.
+     * </pre>
+     */
+    public java.util.List<java.lang.String>
+        getWaveIdsList() {
+      return waveIds_;
+    }
+    /**
+     * <code>repeated string waveIds = 2;</code>
+     *
+     * <pre>
+     * The serialized ids of the waves in the segment, in order.
+     * </pre>
+     */
+    public int getWaveIdsCount() {
+      return waveIds_.size();
+    }
+    /**
+     * <code>repeated string waveIds = 2;</code>
+     *
+     * <pre>
+     * The serialized ids of the waves in the segment, in order.
+     * </pre>
+     */
+    public java.lang.String getWaveIds(int index) {
+      return waveIds_.get(index);
+    }
+    /**
+     * <code>repeated string waveIds = 2;</code>
+     *
+     * <pre>
+     * The serialized ids of the waves in the segment, in order.
+     * </pre>
+     */
+    public com.google.protobuf.ByteString
+        getWaveIdsBytes(int index) {
+      return waveIds_.getByteString(index);
+    }
+
+    // repeated .search.SearchResponse.Digest digests = 3;
+    public static final int DIGESTS_FIELD_NUMBER = 3;
+    private java.util.List<org.waveprotocol.box.search.SearchProto.SearchResponse.Digest> digests_;
+    /**
+     * <code>repeated .search.SearchResponse.Digest digests = 3;</code>
+     *
+     * <pre>
+     * The digests of the waves in the segment that are new or have changed
+     * since the previous update.
+     * </pre>
+     */
+    public java.util.List<org.waveprotocol.box.search.SearchProto.SearchResponse.Digest> getDigestsList() {
+      return digests_;
+    }
+    /**
+     * <code>repeated .search.SearchResponse.Digest digests = 3;</code>
+     *
+     * <pre>
+     * The digests of the waves in the segment that are new or have changed
+     * since the previous update.
+     * </pre>
+     */
+    public java.util.List<? extends org.waveprotocol.box.search.SearchProto.SearchResponse.DigestOrBuilder> 
+        getDigestsOrBuilderList() {
+      return digests_;
+    }
+    /**
+     * <code>repeated .search.SearchResponse.Digest digests = 3;</code>
+     *
+     * <pre>
+     * The digests of the waves in the segment that are new or have changed
+     * since the previous update.
+     * </pre>
+     */
+    public int getDigestsCount() {
+      return digests_.size();
+    }
+    /**
+     * <code>repeated .search.SearchResponse.Digest digests = 3;</code>
+     *
+     * <pre>
+     * The digests of the waves in the segment that are new or have changed
+     * since the previous update.
+     * </pre>
+     */
+    public org.waveprotocol.box.search.SearchProto.SearchResponse.Digest getDigests(int index) {
+      return digests_.get(index);
+    }
+    /**
+     * <code>repeated .search.SearchResponse.Digest digests = 3;</code>
+     *
+     * <pre>
+     * The digests of the waves in the segment that are new or have changed
+     * since the previous update.
+     * </pre>
+     */
+    public org.waveprotocol.box.search.SearchProto.SearchResponse.DigestOrBuilder getDigestsOrBuilder(
+        int index) {
+      return digests_.get(index);
+    }
+
+    private void initFields() {
+      totalResults_ = 0;
+      waveIds_ = com.google.protobuf.LazyStringArrayList.EMPTY;
+      digests_ = java.util.Collections.emptyList();
+    }
+    private byte memoizedIsInitialized = -1;
+    public final boolean isInitialized() {
+      byte isInitialized = memoizedIsInitialized;
+      if (isInitialized != -1) return isInitialized == 1;
+
+      if (!hasTotalResults()) {
+        memoizedIsInitialized = 0;
+        return false;
+      }
+      for (int i = 0; i < getDigestsCount(); i++) {
+        if (!getDigests(i).isInitialized()) {
+          memoizedIsInitialized = 0;
+          return false;
+        }
+      }
+      memoizedIsInitialized = 1;
+      return true;
+    }
+
+    public void writeTo(com.google.protobuf.CodedOutputStream output)
+                        throws java.io.IOException {
+      getSerializedSize();
+      if (((bitField0_ & 0x00000001) == 0x00000001)) {
+        output.writeInt32(1, totalResults_);
+      }
+      for (int i = 0; i < waveIds_.size(); i++) {
+        output.writeBytes(2, waveIds_.getByteString(i));
+      }
+      for (int i = 0; i < digests_.size(); i++) {
+        output.writeMessage(3, digests_.get(i));
+      }
+      getUnknownFields().writeTo(output);
+    }
+
+    private int memoizedSerializedSize = -1;
+    public int getSerializedSize() {
+      int size = memoizedSerializedSize;
+      if (size != -1) return size;
+
+      size = 0;
+      if (((bitField0_ & 0x00000001) == 0x00000001)) {
+        size += com.google.protobuf.CodedOutputStream
+          .computeInt32Size(1, totalResults_);
+      }
+      {
+        int dataSize = 0;
+        for (int i = 0; i < waveIds_.size(); i++) {
+          dataSize += com.google.protobuf.CodedOutputStream
+            .computeBytesSizeNoTag(waveIds_.getByteString(i));
+        }
+        size += dataSize;
+        size += 1 * getWaveIdsList().size();
+      }
+      for (int i = 0; i < digests_.size(); i++) {
+        size += com.google.protobuf.CodedOutputStream
+          .computeMessageSize(3, digests_.get(i));
+      }
+      size += getUnknownFields().getSerializedSize();
+      memoizedSerializedSize = size;
+      return size;
+    }
+
+    private static final long serialVersionUID = 0L;
+    @java.lang.Override
+    protected java.lang.Object writeReplace()
+        throws java.io.ObjectStreamException {
+      return super.writeReplace();
+    }
+
+    public static org.waveprotocol.box.search.SearchProto.SearchUpdate parseFrom(
+        com.google.protobuf.ByteString data)
+        throws com.google.protobuf.InvalidProtocolBufferException {
+      return PARSER.parseFrom(data);
+    }
+    public static org.waveprotocol.box.search.SearchProto.SearchUpdate parseFrom(
+        com.google.protobuf.ByteString data,
+        com.google.protobuf.ExtensionRegistryLite extensionRegistry)
+        throws com.google.protobuf.InvalidProtocolBufferException {
+      return PARSER.parseFrom(data, extensionRegistry);
+    }
+    public static org.waveprotocol.box.search.SearchProto.SearchUpdate parseFrom(byte[] data)
+        throws com.google.protobuf.InvalidProtocolBufferException {
+      return PARSER.parseFrom(data);
+    }
+    public static org.waveprotocol.box.search.SearchProto.SearchUpdate parseFrom(
+        byte[] data,
+        com.google.protobuf.ExtensionRegistryLite extensionRegistry)
+        throws com.google.protobuf.InvalidProtocolBufferException {
+      return PARSER.parseFrom(data, extensionRegistry);
+    }
+    public static org.waveprotocol.box.search.SearchProto.SearchUpdate parseFrom(java.io.InputStream input)
+        throws java.io.IOException {
+      return PARSER.parseFrom(input);
+    }
+    public static org.waveprotocol.box.search.SearchProto.SearchUpdate parseFrom(
+        java.io.InputStream input,
+        com.google.protobuf.ExtensionRegistryLite extensionRegistry)
+        throws java.io.IOException {
+      return PARSER.parseFrom(input, extensionRegistry);
+    }
+    public static org.waveprotocol.box.search.SearchProto.SearchUpdate parseDelimitedFrom(java.io.InputStream input)
+        throws java.io.IOException {
+      return PARSER.parseDelimitedFrom(input);
+    }
+    public static org.waveprotocol.box.search.SearchProto.SearchUpdate parseDelimitedFrom(
+        java.io.InputStream input,
+        com.google.protobuf.ExtensionRegistryLite extensionRegistry)
+        throws java.io.IOException {
+      return PARSER.parseDelimitedFrom(input, extensionRegistry);
+    }
+    public static org.waveprotocol.box.search.SearchProto.SearchUpdate parseFrom(
+        com.google.protobuf.CodedInputStream input)
+        throws java.io.IOException {
+      return PARSER.parseFrom(input);
+    }
+    public static org.waveprotocol.box.search.SearchProto.SearchUpdate parseFrom(
+        com.google.protobuf.CodedInputStream input,
+        com.google.protobuf.ExtensionRegistryLite extensionRegistry)
+        throws java.io.IOException {
+      return PARSER.parseFrom(input, extensionRegistry);
+    }
+
+    public static Builder newBuilder() { return Builder.create(); }
+    public Builder newBuilderForType() { return newBuilder(); }
+    public static Builder newBuilder(org.waveprotocol.box.search.SearchProto.SearchUpdate prototype) {
+      return newBuilder().mergeFrom(prototype);
+    }
+    public Builder toBuilder() { return newBuilder(this); }
+
+    @java.lang.Override
+    protected Builder newBuilderForType(
+        com.google.protobuf.GeneratedMessage.BuilderParent parent) {
+      Builder builder = new Builder(parent);
+      return builder;
+    }
+    /**
+     * Protobuf type {@code search.SearchUpdate}
+     */
+    public static final class Builder extends
+        com.google.protobuf.GeneratedMessage.Builder<Builder>
+       implements org.waveprotocol.box.search.SearchProto.SearchUpdateOrBuilder {
+      public static final com.google.protobuf.Descriptors.Descriptor
+          getDescriptor() {
+        return org.waveprotocol.box.search.SearchProto.internal_static_search_SearchUpdate_descriptor;
+      }
+
+      protected com.google.protobuf.GeneratedMessage.FieldAccessorTable
+          internalGetFieldAccessorTable() {
+        return org.waveprotocol.box.search.SearchProto.internal_static_search_SearchUpdate_fieldAccessorTable
+            .ensureFieldAccessorsInitialized(
+                org.waveprotocol.box.search.SearchProto.SearchUpdate.class, org.waveprotocol.box.search.SearchProto.SearchUpdate.Builder.class);
+      }
+
+      // Construct using org.waveprotocol.box.search.SearchProto.SearchUpdate.newBuilder()
+      private Builder() {
+        maybeForceBuilderInitialization();
+      }
+
+      private Builder(
+          com.google.protobuf.GeneratedMessage.BuilderParent parent) {
+        super(parent);
+        maybeForceBuilderInitialization();
+      }
+      private void maybeForceBuilderInitialization() {
+        if (com.google.protobuf.GeneratedMessage.alwaysUseFieldBuilders) {
+          getDigestsFieldBuilder();
+        }
+      }
+      private static Builder create() {
+        return new Builder();
+      }
+
+      public Builder clear() {
+        super.clear();
+        totalResults_ = 0;
+        bitField0_ = (bitField0_ & ~0x00000001);
+        waveIds_ = com.google.protobuf.LazyStringArrayList.EMPTY;
+        bitField0_ = (bitField0_ & ~0x00000002);
+        if (digestsBuilder_ == null) {
+          digests_ = java.util.Collections.emptyList();
+          bitField0_ = (bitField0_ & ~0x00000004);
+        } else {
+          digestsBuilder_.clear();
+        }
+        return this;
+      }
+
+      public Builder clone() {
+        return create().mergeFrom(buildPartial());
+      }
+
+      public com.google.protobuf.Descriptors.Descriptor
+          getDescriptorForType() {
+        return org.waveprotocol.box.search.SearchProto.internal_static_search_SearchUpdate_descriptor;
+      }
+
+      public org.waveprotocol.box.search.SearchProto.SearchUpdate getDefaultInstanceForType() {
+        return org.waveprotocol.box.search.SearchProto.SearchUpdate.getDefaultInstance();
+      }
+
+      public org.waveprotocol.box.search.SearchProto.SearchUpdate build() {
+        org.waveprotocol.box.search.SearchProto.SearchUpdate result = buildPartial();
+        if (!result.isInitialized()) {
+          throw newUninitializedMessageException(result);
+        }
+        return result;
+      }
+
+      public org.waveprotocol.box.search.SearchProto.SearchUpdate buildPartial() {
+        org.waveprotocol.box.search.SearchProto.SearchUpdate result = new org.waveprotocol.box.search.SearchProto.SearchUpdate(this);
+        int from_bitField0_ = bitField0_;
+        int to_bitField0_ = 0;
+        if (((from_bitField0_ & 0x00000001) == 0x00000001)) {
+          to_bitField0_ |= 0x00000001;
+        }
+        result.totalResults_ = totalResults_;
+        if (((bitField0_ & 0x00000002) == 0x00000002)) {
+          waveIds_ = new com.google.protobuf.UnmodifiableLazyStringList(
+              waveIds_);
+          bitField0_ = (bitField0_ & ~0x00000002);
+        }
+        result.waveIds_ = waveIds_;
+        if (digestsBuilder_ == null) {
+          if (((bitField0_ & 0x00000004) == 0x00000004)) {
+            digests_ = java.util.Collections.unmodifiableList(digests_);
+            bitField0_ = (bitField0_ & ~0x00000004);
+          }
+          result.digests_ = digests_;
+        } else {
+          result.digests_ = digestsBuilder_.build();
+        }
+        result.bitField0_ = to_bitField0_;
+        onBuilt();
+        return result;
+      }
+
+      public Builder mergeFrom(com.google.protobuf.Message other) {
+        if (other instanceof org.waveprotocol.box.search.SearchProto.SearchUpdate) {
+          return mergeFrom((org.waveprotocol.box.search.SearchProto.SearchUpdate)other);
+        } else {
+          super.mergeFrom(other);
+          return this;
+        }
+      }
+
+      public Builder mergeFrom(org.waveprotocol.box.search.SearchProto.SearchUpdate other) {
+        if (other == org.waveprotocol.box.search.SearchProto.SearchUpdate.getDefaultInstance()) return this;
+        if (other.hasTotalResults()) {
+          setTotalResults(other.getTotalResults());
+        }
+        if (!other.waveIds_.isEmpty()) {
+          if (waveIds_.isEmpty()) {
+            waveIds_ = other.waveIds_;
+            bitField0_ = (bitField0_ & ~0x00000002);
+          } else {
+            ensureWaveIdsIsMutable();
+            waveIds_.addAll(other.waveIds_);
+          }
+          onChanged();
+        }
+        if (digestsBuilder_ == null) {
+          if (!other.digests_.isEmpty()) {
+            if (digests_.isEmpty()) {
+              digests_ = other.digests_;
+              bitField0_ = (bitField0_ & ~0x00000004);
+            } else {
+              ensureDigestsIsMutable();
+              digests_.addAll(other.digests_);
+            }
+            onChanged();
+          }
+        } else {
+          if (!other.digests_.isEmpty()) {
+            if (digestsBuilder_.isEmpty()) {
+              digestsBuilder_.dispose();
+              digestsBuilder_ = null;
+              digests_ = other.digests_;
+              bitField0_ = (bitField0_ & ~0x00000004);
+              digestsBuilder_ = 
+                com.google.protobuf.GeneratedMessage.alwaysUseFieldBuilders ?
+                   getDigestsFieldBuilder() : null;
+            } else {
+              digestsBuilder_.addAllMessages(other.digests_);
+            }
+          }
+        }
+        this.mergeUnknownFields(other.getUnknownFields());
+        return this;
+      }
+
+      public final boolean isInitialized() {
+        if (!hasTotalResults()) {
+          
+          return false;
+        }
+        for (int i = 0; i < getDigestsCount(); i++) {
+          if (!getDigests(i).isInitialized()) {
+            
+            return false;
+          }
+        }
+        return true;
+      }
+
+      public Builder mergeFrom(
+          com.google.protobuf.CodedInputStream input,
+          com.google.protobuf.ExtensionRegistryLite extensionRegistry)
+          throws java.io.IOException {
+        org.waveprotocol.box.search.SearchProto.SearchUpdate parsedMessage = null;
+        try {
+          parsedMessage = PARSER.parsePartialFrom(input, extensionRegistry);
+        } catch (com.google.protobuf.InvalidProtocolBufferException e) {
+          parsedMessage = (org.waveprotocol.box.search.SearchProto.SearchUpdate) e.getUnfinishedMessage();
+          throw e;
+        } finally {
+          if (parsedMessage != null) {
+            mergeFrom(parsedMessage);
+          }
+        }
+        return this;
+      }
+      private int bitField0_;
+
+      // required int32 totalResults = 1;
+      private int totalResults_ ;
+      /**
+       * <code>required int32 totalResults = 1;</code>
+       *
+       * <pre>
+       * The total number of results to the query (not necessarily all returned).
+       * </pre>
+       */
+      public boolean hasTotalResults() {
+        return ((bitField0_ & 0x00000001) == 0x00000001);
+      }
+      /**
+       * <code>required int32 totalResults = 1;</code>
+       *
+       * <pre>
+       * The total number of results to the query (not necessarily all returned).
+       * </pre>
+       */
+      public int getTotalResults() {
+        return totalResults_;
+      }
+      /**
+       * <code>required int32 totalResults = 1;</code>
+       *
+       * <pre>
+       * The total number of results to the query (not necessarily all returned).
+       * </pre>
+       */
+      public Builder setTotalResults(int value) {
+        bitField0_ |= 0x00000001;
+        totalResults_ = value;
+        onChanged();
+        return this;
+      }
+      /**
+       * <code>required int32 totalResults = 1;</code>
+       *
+       * <pre>
+       * The total number of results to the query (not necessarily all returned).
+       * </pre>
+       */
+      public Builder clearTotalResults() {
+        bitField0_ = (bitField0_ & ~0x00000001);
+        totalResults_ = 0;
+        onChanged();
+        return this;
+      }
+
+      // repeated string waveIds = 2;
+      private com.google.protobuf.LazyStringList waveIds_ = com.google.protobuf.LazyStringArrayList.EMPTY;
+      private void ensureWaveIdsIsMutable() {
+        if (!((bitField0_ & 0x00000002) == 0x00000002)) {
+          waveIds_ = new com.google.protobuf.LazyStringArrayList(waveIds_);
+          bitField0_ |= 0x00000002;
+         }
+      }
+      /**
+       * <code>repeated string waveIds = 2;</code>
+       *
+       * <pre>
+       * The serialized ids of the waves in the segment, in order.
+       * </pre>
+       */
+      public java.util.List<java.lang.String>
+          getWaveIdsList() {
+        return java.util.Collections.unmodifiableList(waveIds_);
+      }
+      /**
+       * <code>repeated string waveIds = 2;</code>
+       *
+       * <pre>
+       * The serialized ids of the waves in the segment, in order.
+       * </pre>
+       */
+      public int getWaveIdsCount() {
+        return waveIds_.size();
+      }
+      /**
+       * <code>repeated string waveIds = 2;</code>
+       *
+       * <pre>
+       * The serialized ids of the waves in the segment, in order.
+       * </pre>
+       */
+      public java.lang.String getWaveIds(int index) {
+        return waveIds_.get(index);
+      }
+      /**
+       * <code>repeated string waveIds = 2;</code>
+       *
+       * <pre>
+       * The serialized ids of the waves in the segment, in order.
+       * </pre>
+       */
+      public com.google.protobuf.ByteString
+          getWaveIdsBytes(int index) {
+        return waveIds_.getByteString(index);
+      }
+      /**
+       * <code>repeated string waveIds = 2;</code>
+       *
+       * <pre>
+       * The serialized ids of the waves in the segment, in order.
+       * </pre>
+       */
+      public Builder setWaveIds(
+          int index, java.lang.String value) {
+        if (value == null) {
+    throw new NullPointerException();
+  }
+  ensureWaveIdsIsMutable();
+        waveIds_.set(index, value);
+        onChanged();
+        return this;
+      }
+      /**
+       * <code>repeated string waveIds = 2;</code>
+       *
+       * <pre>
+       * The serialized ids of the waves in the segment, in order.
+       * </pre>
+       */
+      public Builder addWaveIds(
+          java.lang.String value) {
+        if (value == null) {
+    throw new NullPointerException();
+  }
+  ensureWaveIdsIsMutable();
+        waveIds_.add(value);
+        onChanged();
+        return this;
+      }
+      /**
+       * <code>repeated string waveIds = 2;</code>
+       *
+       * <pre>
+       * The serialized ids of the waves in the segment, in order.
+       * </pre>
+       */
+      public Builder addAllWaveIds(
+          java.lang.Iterable<java.lang.String> values) {
+        ensureWaveIdsIsMutable();
+        super.addAll(values, waveIds_);
+        onChanged();
+        return this;
+      }
+      /**
+       * <code>repeated string waveIds = 2;</code>
+       *
+       * <pre>
+       * The serialized ids of the waves in the segment, in order.
+       * </pre>
+       */
+      public Builder clearWaveIds() {
+        waveIds_ = com.google.protobuf.LazyStringArrayList.EMPTY;
+        bitField0_ = (bitField0_ & ~0x00000002);
+        onChanged();
+        return this;
+      }
+      /**
+       * <code>repeated string waveIds = 2;</code>
+       *
+       * <pre>
+       * The serialized ids of the waves in the segment, in order.
+       * </pre>
+       */
+      public Builder addWaveIdsBytes(
+          com.google.protobuf.ByteString value) {
+        if (value == null) {
+    throw new NullPointerException();
+  }
+  ensureWaveIdsIsMutable();
+        waveIds_.add(value);
+        onChanged();
+        return this;
+      }
+
+      // repeated .search.SearchResponse.Digest digests = 3;
+      private java.util.List<org.waveprotocol.box.search.SearchProto.SearchResponse.Digest> digests_ =
+        java.util.Collections.emptyList();
+      private void ensureDigestsIsMutable() {
+        if (!((bitField0_ & 0x00000004) == 0x00000004)) {
+          digests_ = new java.util.ArrayList<org.waveprotocol.box.search.SearchProto.SearchResponse.Digest>(digests_);
+          bitField0_ |= 0x00000004;
+         }
+      }
+
+      private com.google.protobuf.RepeatedFieldBuilder<
+          org.waveprotocol.box.search.SearchProto.SearchResponse.Digest, org.waveprotocol.box.search.SearchProto.SearchResponse.Digest.Builder, org.waveprotocol.box.search.SearchProto.SearchResponse.DigestOrBuilder> digestsBuilder_;
+
+      /**
+       * <code>repeated .search.SearchResponse.Digest digests = 3;</code>
+       *
+       * <pre>
+       * The digests of the waves in the segment that are new or have changed
+       * since the previous update.
+       * </pre>
+       */
+      public java.util.List<org.waveprotocol.box.search.SearchProto.SearchResponse.Digest> getDigestsList() {
+        if (digestsBuilder_ == null) {
+          return java.util.Collections.unmodifiableList(digests_);
+        } else {
+          return digestsBuilder_.getMessageList();
+        }
+      }
+      /**
+       * <code>repeated .search.SearchResponse.Digest digests = 3;</code>
+       *
+       * <pre>
+       * The digests of the waves in the segment that are new or have changed
+       * since the previous update.
+       * </pre>
+       */
+      public int getDigestsCount() {
+        if (digestsBuilder_ == null) {
+          return digests_.size();
+        } else {
+          return digestsBuilder_.getCount();
+        }
+      }
+      /**
+       * <code>repeated .search.SearchResponse.Digest digests = 3;</code>
+       *
+       * <pre>
+       * The digests of the waves in the segment that are new or have changed
+       * since the previous update.
+       * </pre>
+       */
+      public org.waveprotocol.box.search.SearchProto.SearchResponse.Digest getDigests(int index) {
+        if (digestsBuilder_ == null) {
+          return digests_.get(index);
+        } else {
+          return digestsBuilder_.getMessage(index);
+        }
+      }
+      /**
+       * <code>repeated .search.SearchResponse.Digest digests = 3;</code>
+       *
+       * <pre>
+       * The digests of the waves in the segment that are new or have changed
+       * since the previous update.
+       * </pre>
+       */
+      public Builder setDigests(
+          int index, org.waveprotocol.box.search.SearchProto.SearchResponse.Digest value) {
+        if (digestsBuilder_ == null) {
+          if (value == null) {
+            throw new NullPointerException();
+          }
+          ensureDigestsIsMutable();
+          digests_.set(index, value);
+          onChanged();
+        } else {
+          digestsBuilder_.setMessage(index, value);
+        }
+        return this;
+      }
+      /**
+       * <code>repeated .search.SearchResponse.Digest digests = 3;</code>
+       *
+       * <pre>
+       * The digests of the waves in the segment that are new or have changed
+       * since the previous update.
+       * </pre>
+       */
+      public Builder setDigests(
+          int index, org.waveprotocol.box.search.SearchProto.SearchResponse.Digest.Builder builderForValue) {
+        if (digestsBuilder_ == null) {
+          ensureDigestsIsMutable();
+          digests_.set(index, builderForValue.build());
+          onChanged();
+        } else {
+          digestsBuilder_.setMessage(index, builderForValue.build());
+        }
+        return this;
+      }
+      /**
+       * <code>repeated .search.SearchResponse.Digest digests = 3;</code>
+       *
+       * <pre>
+       * The digests of the waves in the segment that are new or have changed
+       * since the previous update.
+       * </pre>
+       */
+      public Builder addDigests(org.waveprotocol.box.search.SearchProto.SearchResponse.Digest value) {
+        if (digestsBuilder_ == null) {
+          if (value == null) {
+            throw new NullPointerException();
+          }
+          ensureDigestsIsMutable();
+          digests_.add(value);
+          onChanged();
+        } else {
+          digestsBuilder_.addMessage(value);
+        }
+        return this;
+      }
+      /**
+       * <code>repeated .search.SearchResponse.Digest digests = 3;</code>
+       *
+       * <pre>
+       * The digests of the waves in the segment that are new or have changed
+       * since the previous update.
+       * </pre>
+       */
+      public Builder addDigests(
+          int index, org.waveprotocol.box.search.SearchProto.SearchResponse.Digest value) {
+        if (digestsBuilder_ == null) {
+          if (value == null) {
+            throw new NullPointerException();
+          }
+          ensureDigestsIsMutable();
+          digests_.add(index, value);
+          onChanged();
+        } else {
+          digestsBuilder_.addMessage(index, value);
+        }
+        return this;
+      }
+      /**
+       * <code>repeated .search.SearchResponse.Digest digests = 3;</code>
+       *
+       * <pre>
+       * The digests of the waves in the segment that are new or have changed
+       * since the previous update.
+       * </pre>
+       */
+      public Builder addDigests(
+          org.waveprotocol.box.search.SearchProto.SearchResponse.Digest.Builder builderForValue) {
+        if (digestsBuilder_ == null) {
+          ensureDigestsIsMutable();
+          digests_.add(builderForValue.build());
+          onChanged();
+        } else {
+          digestsBuilder_.addMessage(builderForValue.build());
+        }
+        return this;
+      }
+      /**
+       * <code>repeated .search.SearchResponse.Digest digests = 3;</code>
+       *
+       * <pre>
+       * The digests of the waves in the segment that are new or have changed
+       * since the previous update.
+       * </pre>
+       */
+      public Builder addDigests(
+          int index, org.waveprotocol.box.search.SearchProto.SearchResponse.Digest.Builder builderForValue) {
+        if (digestsBuilder_ == null) {
+          ensureDigestsIsMutable();
+          digests_.add(index, builderForValue.build());
+          onChanged();
+        } else {
+          digestsBuilder_.addMessage(index, builderForValue.build());
+        }
+        return this;
+      }
+      /**
+       * <code>repeated .search.SearchResponse.Digest digests = 3;</code>
+       *
+       * <pre>
+       * The digests of the waves in the segment that are new or have changed
+       * since the previous update.
+       * </pre>
+       */
+      public Builder addAllDigests(
+          java.lang.Iterable<? extends org.waveprotocol.box.search.SearchProto.SearchResponse.Digest> values) {
+        if (digestsBuilder_ == null) {
+          ensureDigestsIsMutable();
+          super.addAll(values, digests_);
+          onChanged();
+        } else {
+          digestsBuilder_.addAllMessages(values);
+        }
+        return this;
+      }
+      /**
+       * <code>repeated .search.SearchResponse.Digest digests = 3;</code>
+       *
+       * <pre>
+       * The digests of the waves in the segment that are new or have changed
+       * since the previous update.
+       * </pre>
+       */
+      public Builder clearDigests() {
+        if (digestsBuilder_ == null) {
+          digests_ = java.util.Collections.emptyList();
+          bitField0_ = (bitField0_ & ~0x00000004);
+          onChanged();
+        } else {
+          digestsBuilder_.clear();
+        }
+        return this;
+      }
+      /**
+       * <code>repeated .search.SearchResponse.Digest digests = 3;</code>
+       *
+       * <pre>
+       * The digests of the waves in the segment that are new or have changed
+       * since the previous update.
+       * </pre>
+       */
+      public Builder removeDigests(int index) {
+        if (digestsBuilder_ == null) {
+          ensureDigestsIsMutable();
+          digests_.remove(index);
+          onChanged();
+        } else {
+          digestsBuilder_.remove(index);
+        }
+        return this;
+      }
+      /**
+       * <code>repeated .search.SearchResponse.Digest digests = 3;</code>
+       *
+       * <pre>
+       * The digests of the waves in the segment that are new or have changed
+       * since the previous update.
+       * </pre>
+       */
+      public org.waveprotocol.box.search.SearchProto.SearchResponse.Digest.Builder getDigestsBuilder(
+          int index) {
+        return getDigestsFieldBuilder().getBuilder(index);
+      }
+      /**
+       * <code>repeated .search.SearchResponse.Digest digests = 3;</code>
+       *
+       * <pre>
+       * The digests of the waves in the segment that are new or have changed
+       * since the previous update.
+       * </pre>
+       */
+      public org.waveprotocol.box.search.SearchProto.SearchResponse.DigestOrBuilder getDigestsOrBuilder(
+          int index) {
+        if (digestsBuilder_ == null) {
+          return digests_.get(index);  } else {
+          return digestsBuilder_.getMessageOrBuilder(index);
+        }
+      }
+      /**
+       * <code>repeated .search.SearchResponse.Digest digests = 3;</code>
+       *
+       * <pre>
+       * The digests of the waves in the segment that are new or have changed
+       * since the previous update.
+       * </pre>
+       */
+      public java.util.List<? extends org.waveprotocol.box.search.SearchProto.SearchResponse.DigestOrBuilder> 
+           getDigestsOrBuilderList() {
+        if (digestsBuilder_ != null) {
+          return digestsBuilder_.getMessageOrBuilderList();
+        } else {
+          return java.util.Collections.unmodifiableList(digests_);
+        }
+      }
+      /**
+       * <code>repeated .search.SearchResponse.Digest digests = 3;</code>
+       *
+       * <pre>
+       * The digests of the waves in the segment that are new or have changed
+       * since the previous update.
+       * </pre>
+       */
+      public org.waveprotocol.box.search.SearchProto.SearchResponse.Digest.Builder addDigestsBuilder() {
+        return getDigestsFieldBuilder().addBuilder(
+            org.waveprotocol.box.search.SearchProto.SearchResponse.Digest.getDefaultInstance());
+      }
+      /**
+       * <code>repeated .search.SearchResponse.Digest digests = 3;</code>
+       *
+       * <pre>
+       * The digests of the waves in the segment that are new or have changed
+       * since the previous update.
+       * </pre>
+       */
+      public org.waveprotocol.box.search.SearchProto.SearchResponse.Digest.Builder addDigestsBuilder(
+          int index) {
+        return getDigestsFieldBuilder().addBuilder(
+            index, org.waveprotocol.box.search.SearchProto.SearchResponse.Digest.getDefaultInstance());
+      }
+      /**
+       * <code>repeated .search.SearchResponse.Digest digests = 3;</code>
+       *
+       * <pre>
+       * The digests of the waves in the segment that are new or have changed
+       * since the previous update.
+       * </pre>
+       */
+      public java.util.List<org.waveprotocol.box.search.SearchProto.SearchResponse.Digest.Builder> 
+           getDigestsBuilderList() {
+        return getDigestsFieldBuilder().getBuilderList();
+      }
+      private com.google.protobuf.RepeatedFieldBuilder<
+          org.waveprotocol.box.search.SearchProto.SearchResponse.Digest, org.waveprotocol.box.search.SearchProto.SearchResponse.Digest.Builder, org.waveprotocol.box.search.SearchProto.SearchResponse.DigestOrBuilder> 
+          getDigestsFieldBuilder() {
+        if (digestsBuilder_ == null) {
+          digestsBuilder_ = new com.google.protobuf.RepeatedFieldBuilder<
+              org.waveprotocol.box.search.SearchProto.SearchResponse.Digest, org.waveprotocol.box.search.SearchProto.SearchResponse.Digest.Builder, org.waveprotocol.box.search.SearchProto.SearchResponse.DigestOrBuilder>(
+                  digests_,
+                  ((bitField0_ & 0x00000004) == 0x00000004),
+                  getParentForChildren(),
+                  isClean());
+          digests_ = null;
+        }
+        return digestsBuilder_;
+      }
+
+      // @@protoc_insertion_point(builder_scope:search.SearchUpdate)
+    }
+
+    static {
+      defaultInstance = new SearchUpdate(true);
+      defaultInstance.initFields();
+    }
+
+    // @@protoc_insertion_point(class_scope:search.SearchUpdate)
+  }
+
+  /**
+   * Protobuf service {@code search.ProtocolSearchRpc}
+   *
+   * <pre>
+   **
+   * Provides live search results.
+   *
+   * The response stream starts with an update holding every digest in the
+   * requested segment of the results. After that an update is sent whenever the
+   * segment changes, holding only the digests that are new or have changed.
+   * </pre>
+   */
+  public static abstract class ProtocolSearchRpc
+      implements com.google.protobuf.Service {
+    protected ProtocolSearchRpc() {}
+
+    public interface Interface {
+      /**
+       * <code>rpc Search(.search.SearchRequest) returns (.search.SearchUpdate);</code>
+       */
+      public abstract void search(
+          com.google.protobuf.RpcController controller,
+          org.waveprotocol.box.search.SearchProto.SearchRequest request,
+          com.google.protobuf.RpcCallback<org.waveprotocol.box.search.SearchProto.SearchUpdate> done);
+
+    }
+
+    public static com.google.protobuf.Service newReflectiveService(
+        final Interface impl) {
+      return new ProtocolSearchRpc() {
+        @java.lang.Override
+        public  void search(
+            com.google.protobuf.RpcController controller,
+            org.waveprotocol.box.search.SearchProto.SearchRequest request,
+            com.google.protobuf.RpcCallback<org.waveprotocol.box.search.SearchProto.SearchUpdate> done) {
+          impl.search(controller, request, done);
+        }
+
+      };
+    }
+
+    public static com.google.protobuf.BlockingService
+        newReflectiveBlockingService(final BlockingInterface impl) {
+      return new com.google.protobuf.BlockingService() {
+        public final com.google.protobuf.Descriptors.ServiceDescriptor
+            getDescriptorForType() {
+          return getDescriptor();
+        }
+
+        public final com.google.protobuf.Message callBlockingMethod(
+            com.google.protobuf.Descriptors.MethodDescriptor method,
+            com.google.protobuf.RpcController controller,
+            com.google.protobuf.Message request)
+            throws com.google.protobuf.ServiceException {
+          if (method.getService() != getDescriptor()) {
+            throw new java.lang.IllegalArgumentException(
+              "Service.callBlockingMethod() given method descriptor for " +
+              "wrong service type.");
+          }
+          switch(method.getIndex()) {
+            case 0:
+              return impl.search(controller, (org.waveprotocol.box.search.SearchProto.SearchRequest)request);
+            default:
+              throw new java.lang.AssertionError("Can't get here.");
+          }
+        }
+
+        public final com.google.protobuf.Message
+            getRequestPrototype(
+            com.google.protobuf.Descriptors.MethodDescriptor method) {
+          if (method.getService() != getDescriptor()) {
+            throw new java.lang.IllegalArgumentException(
+              "Service.getRequestPrototype() given method " +
+              "descriptor for wrong service type.");
+          }
+          switch(method.getIndex()) {
+            case 0:
+              return org.waveprotocol.box.search.SearchProto.SearchRequest.getDefaultInstance();
+            default:
+              throw new java.lang.AssertionError("Can't get here.");
+          }
+        }
+
+        public final com.google.protobuf.Message
+            getResponsePrototype(
+            com.google.protobuf.Descriptors.MethodDescriptor method) {
+          if (method.getService() != getDescriptor()) {
+            throw new java.lang.IllegalArgumentException(
+              "Service.getResponsePrototype() given method " +
+              "descriptor for wrong service type.");
+          }
+          switch(method.getIndex()) {
+            case 0:
+              return org.waveprotocol.box.search.SearchProto.SearchUpdate.getDefaultInstance();
+            default:
+              throw new java.lang.AssertionError("Can't get here.");
+          }
+        }
+
+      };
+    }
+
+    /**
+     * <code>rpc Search(.search.SearchRequest) returns (.search.SearchUpdate);</code>
+     */
+    public abstract void search(
+        com.google.protobuf.RpcController controller,
+        org.waveprotocol.box.search.SearchProto.SearchRequest request,
+        com.google.protobuf.RpcCallback<org.waveprotocol.box.search.SearchProto.SearchUpdate> done);
+
+    public static final
+        com.google.protobuf.Descriptors.ServiceDescriptor
+        getDescriptor() {
+      return org.waveprotocol.box.search.SearchProto.getDescriptor().getServices().get(0);
+    }
+    public final com.google.protobuf.Descriptors.ServiceDescriptor
+        getDescriptorForType() {
+      return getDescriptor();
+    }
+
+    public final void callMethod(
+        com.google.protobuf.Descriptors.MethodDescriptor method,
+        com.google.protobuf.RpcController controller,
+        com.google.protobuf.Message request,
+        com.google.protobuf.RpcCallback<
+          com.google.protobuf.Message> done) {
+      if (method.getService() != getDescriptor()) {
+        throw new java.lang.IllegalArgumentException(
+          "Service.callMethod() given method descriptor for wrong " +
+          "service type.");
+      }
+      switch(method.getIndex()) {
+        case 0:
+          this.search(controller, (org.waveprotocol.box.search.SearchProto.SearchRequest)request,
+            com.google.protobuf.RpcUtil.<org.waveprotocol.box.search.SearchProto.SearchUpdate>specializeCallback(
+              done));
+          return;
+        default:
+          throw new java.lang.AssertionError("Can't get here.");
+      }
+    }
+
+    public final com.google.protobuf.Message
+        getRequestPrototype(
+        com.google.protobuf.Descriptors.MethodDescriptor method) {
+      if (method.getService() != getDescriptor()) {
+        throw new java.lang.IllegalArgumentException(
+          "Service.getRequestPrototype() given method " +
+          "descriptor for wrong service type.");
+      }
+      switch(method.getIndex()) {
+        case 0:
+          return org.waveprotocol.box.search.SearchProto.SearchRequest.getDefaultInstance();
+        default:
+          throw new java.lang.AssertionError("Can't get here.");
+      }
+    }
+
+    public final com.google.protobuf.Message
+        getResponsePrototype(
+        com.google.protobuf.Descriptors.MethodDescriptor method) {
+      if (method.getService() != getDescriptor()) {
+        throw new java.lang.IllegalArgumentException(
+          "Service.getResponsePrototype() given method " +
+          "descriptor for wrong service type.");
+      }
+      switch(method.getIndex()) {
+        case 0:
+          return org.waveprotocol.box.search.SearchProto.SearchUpdate.getDefaultInstance();
+        default:
+          throw new java.lang.AssertionError("Can't get here.");
+      }
+    }
+
+    public static Stub newStub(
+        com.google.protobuf.RpcChannel channel) {
+      return new Stub(channel);
+    }
+
+    public static final class Stub extends org.waveprotocol.box.search.SearchProto.ProtocolSearchRpc implements Interface {
+      private Stub(com.google.protobuf.RpcChannel channel) {
+        this.channel = channel;
+      }
+
+      private final com.google.protobuf.RpcChannel channel;
+
+      public com.google.protobuf.RpcChannel getChannel() {
+        return channel;
+      }
+
+      public  void search(
+          com.google.protobuf.RpcController controller,
+          org.waveprotocol.box.search.SearchProto.SearchRequest request,
+          com.google.protobuf.RpcCallback<org.waveprotocol.box.search.SearchProto.SearchUpdate> done) {
+        channel.callMethod(
+          getDescriptor().getMethods().get(0),
+          controller,
+          request,
+          org.waveprotocol.box.search.SearchProto.SearchUpdate.getDefaultInstance(),
+          com.google.protobuf.RpcUtil.generalizeCallback(
+            done,
+            org.waveprotocol.box.search.SearchProto.SearchUpdate.class,
+            org.waveprotocol.box.search.SearchProto.SearchUpdate.getDefaultInstance()));
+      }
+    }
+
+    public static BlockingInterface newBlockingStub(
+        com.google.protobuf.BlockingRpcChannel channel) {
+      return new BlockingStub(channel);
+    }
+
+    public interface BlockingInterface {
+      public org.waveprotocol.box.search.SearchProto.SearchUpdate search(
+          com.google.protobuf.RpcController controller,
+          org.waveprotocol.box.search.SearchProto.SearchRequest request)
+          throws com.google.protobuf.ServiceException;
+    }
+
+    private static final class BlockingStub implements BlockingInterface {
+      private BlockingStub(com.google.protobuf.BlockingRpcChannel channel) {
+        this.channel = channel;
+      }
+
+      private final com.google.protobuf.BlockingRpcChannel channel;
+
+      public org.waveprotocol.box.search.SearchProto.SearchUpdate search(
+          com.google.protobuf.RpcController controller,
+          org.waveprotocol.box.search.SearchProto.SearchRequest request)
+          throws com.google.protobuf.ServiceException {
+        return (org.waveprotocol.box.search.SearchProto.SearchUpdate) channel.callBlockingMethod(
+          getDescriptor().getMethods().get(0),
+          controller,
+          request,
+          org.waveprotocol.box.search.SearchProto.SearchUpdate.getDefaultInstance());
+      }
+
+    }
+
+    // @@protoc_insertion_point(class_scope:search.ProtocolSearchRpc)
+  }
+
   private static com.google.protobuf.Descriptors.Descriptor
     internal_static_search_SearchRequest_descriptor;
   private static
@@ -3759,6 +5203,11 @@ public final class SearchProto {
   private static
     com.google.protobuf.GeneratedMessage.FieldAccessorTable
       internal_static_search_SearchResponse_Digest_fieldAccessorTable;
+  private static com.google.protobuf.Descriptors.Descriptor
+    internal_static_search_SearchUpdate_descriptor;
+  private static
+    com.google.protobuf.GeneratedMessage.FieldAccessorTable
+      internal_static_search_SearchUpdate_fieldAccessorTable;
 
   public static com.google.protobuf.Descriptors.FileDescriptor
       getDescriptor() {
@@ -3769,16 +5218,22 @@ public final class SearchProto {
   static {
     java.lang.String[] descriptorData = {
       "\n(org/waveprotocol/box/search/search.pro" +
-      "to\022\006search\"A\n\rSearchRequest\022\r\n\005query\030\001 \002" +
-      "(\t\022\r\n\005index\030\002 \002(\005\022\022\n\nnumResults\030\003 \002(\005\"\204\002" +
-      "\n\016SearchResponse\022\r\n\005query\030\001 \002(\t\022\024\n\014total" +
-      "Results\030\002 \002(\005\022.\n\007digests\030\003 \003(\0132\035.search." +
-      "SearchResponse.Digest\032\234\001\n\006Digest\022\r\n\005titl" +
-      "e\030\001 \002(\t\022\017\n\007snippet\030\002 \002(\t\022\016\n\006waveId\030\003 \002(\t" +
-      "\022\024\n\014lastModified\030\004 \002(\003\022\023\n\013unreadCount\030\005 " +
-      "\002(\005\022\021\n\tblipCount\030\006 \002(\005\022\024\n\014participants\030\007" +
-      " \003(\t\022\016\n\006author\030\010 \002(\tB*\n\033org.waveprotocol",
-      ".box.searchB\013SearchProto"
+      "to\022\006search\032)org/waveprotocol/box/server/" +
+      "rpc/rpc.proto\"A\n\rSearchRequest\022\r\n\005query\030" +
+      "\001 \002(\t\022\r\n\005index\030\002 \002(\005\022\022\n\nnumResults\030\003 \002(\005" +
+      "\"\204\002\n\016SearchResponse\022\r\n\005query\030\001 \002(\t\022\024\n\014to" +
+      "talResults\030\002 \002(\005\022.\n\007digests\030\003 \003(\0132\035.sear" +
+      "ch.SearchResponse.Digest\032\234\001\n\006Digest\022\r\n\005t" +
+      "itle\030\001 \002(\t\022\017\n\007snippet\030\002 \002(\t\022\016\n\006waveId\030\003 " +
+      "\002(\t\022\024\n\014lastModified\030\004 \002(\003\022\023\n\013unreadCount" +
+      "\030\005 \002(\005\022\021\n\tblipCount\030\006 \002(\005\022\024\n\014participant",
+      "s\030\007 \003(\t\022\016\n\006author\030\010 \002(\t\"e\n\014SearchUpdate\022" +
+      "\024\n\014totalResults\030\001 \002(\005\022\017\n\007waveIds\030\002 \003(\t\022." +
+      "\n\007digests\030\003 \003(\0132\035.search.SearchResponse." +
+      "Digest2O\n\021ProtocolSearchRpc\022:\n\006Search\022\025." +
+      "search.SearchRequest\032\024.search.SearchUpda" +
+      "te\"\003\330>\001B-\n\033org.waveprotocol.box.searchB\013" +
+      "SearchProto\210\001\001"
     };
     com.google.protobuf.Descriptors.FileDescriptor.InternalDescriptorAssigner assigner =
       new com.google.protobuf.Descriptors.FileDescriptor.InternalDescriptorAssigner() {
@@ -3803,12 +5258,22 @@ public final class SearchProto {
             com.google.protobuf.GeneratedMessage.FieldAccessorTable(
               internal_static_search_SearchResponse_Digest_descriptor,
               new java.lang.String[] { "Title", "Snippet", "WaveId", "LastModified", "UnreadCount", "BlipCount", "Participants", "Author", });
-          return null;
+          internal_static_search_SearchUpdate_descriptor =
+            getDescriptor().getMessageTypes().get(2);
+          internal_static_search_SearchUpdate_fieldAccessorTable = new
+            com.google.protobuf.GeneratedMessage.FieldAccessorTable(
+              internal_static_search_SearchUpdate_descriptor,
+              new java.lang.String[] { "TotalResults", "WaveIds", "Digests", });
+          com.google.protobuf.ExtensionRegistry registry =
+            com.google.protobuf.ExtensionRegistry.newInstance();
+          registry.add(org.waveprotocol.box.server.rpc.Rpc.isStreamingRpc);
+          return registry;
         }
       };
     com.google.protobuf.Descriptors.FileDescriptor
       .internalBuildGeneratedFileFrom(descriptorData,
         new com.google.protobuf.Descriptors.FileDescriptor[] {
+          org.waveprotocol.box.server.rpc.Rpc.getDescriptor(),
         }, assigner);
   }
 
@@ -0,0 +1,122 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.google.wave.api;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
+import com.google.common.io.ByteStreams;
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.wave.api.JsonRpcConstant.ParamsProperty;
+import com.google.wave.api.OperationRequest.Parameter;
+import com.google.wave.api.impl.GsonFactory;
+
+import junit.framework.TestCase;
+
+import org.waveprotocol.wave.model.testing.BenchmarkRunner;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.List;
+
+/**
+ * Compares reading a 10 MB operation bundle, and writing its responses, as
+ * whole strings with streaming them through {@link RobotSerializer}. The
+ * string paths include the copies a servlet makes between the request and
+ * response streams and strings, and the string read parses the whole bundle
+ * into a JSON tree before converting each operation, as the serializer did
+ * before it streamed. Run with {@code ant benchmark}.
+ */
+public class RobotSerializerBenchmark extends TestCase {
+
+  /** The number of operations in the bundle, each with 1 KB of content. */
+  private static final int OPERATIONS = 10 * 1024;
+
+  private final RobotSerializer serializer = RobotSerializerTest.newSerializer();
+  private final Gson gson = new GsonFactory().create();
+  private byte[] bundle;
+  private List<JsonRpcResponse> responses;
+
+  @Override
+  protected void setUp() throws Exception {
+    String content = Strings.repeat("x", 1024);
+    List<OperationRequest> operations = Lists.newArrayList();
+    responses = Lists.newArrayList();
+    for (int i = 0; i < OPERATIONS; i++) {
+      OperationRequest operation = new OperationRequest("document.appendMarkup", "op" + i,
+          "example.com!w+" + i, "example.com!conv+root", "b+" + i);
+      operation.addParameter(Parameter.of(ParamsProperty.CONTENT, content));
+      operations.add(operation);
+      responses.add(JsonRpcResponse.error("op" + i, content));
+    }
+    bundle = serializer.serializeOperations(operations).getBytes("UTF-8");
+  }
+
+  public void testDeserializeOperations() throws Exception {
+    BenchmarkRunner.run(getClass(), "deserializeString", OPERATIONS, new BenchmarkRunner.Task() {
+      @Override
+      public Object run() throws Exception {
+        InputStreamReader in =
+            new InputStreamReader(new ByteArrayInputStream(bundle), "UTF-8");
+        StringBuilder json = new StringBuilder();
+        char[] buffer = new char[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+          json.append(buffer, 0, read);
+        }
+        List<OperationRequest> operations = Lists.newArrayList();
+        for (JsonElement operation : serializer.parse(json.toString()).getAsJsonArray()) {
+          operations.add(gson.fromJson(operation, OperationRequest.class));
+        }
+        return operations;
+      }
+    });
+    BenchmarkRunner.run(getClass(), "deserializeStream", OPERATIONS, new BenchmarkRunner.Task() {
+      @Override
+      public Object run() throws Exception {
+        return serializer.deserializeOperations(
+            new InputStreamReader(new ByteArrayInputStream(bundle), "UTF-8"));
+      }
+    });
+  }
+
+  public void testSerializeResponses() throws Exception {
+    BenchmarkRunner.run(getClass(), "serializeString", OPERATIONS, new BenchmarkRunner.Task() {
+      @Override
+      public Object run() throws Exception {
+        Writer out = new OutputStreamWriter(ByteStreams.nullOutputStream(), "UTF-8");
+        out.append(serializer.serialize(
+            responses, GsonFactory.JSON_RPC_RESPONSE_LIST_TYPE, ProtocolVersion.DEFAULT));
+        out.flush();
+        return out;
+      }
+    });
+    BenchmarkRunner.run(getClass(), "serializeStream", OPERATIONS, new BenchmarkRunner.Task() {
+      @Override
+      public Object run() throws Exception {
+        Writer out = new OutputStreamWriter(ByteStreams.nullOutputStream(), "UTF-8");
+        serializer.serializeList(responses, JsonRpcResponse.class, ProtocolVersion.DEFAULT, out);
+        return out;
+      }
+    });
+  }
+}
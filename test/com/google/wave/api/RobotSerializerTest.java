@@ -0,0 +1,101 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.google.wave.api;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import com.google.gson.Gson;
+import com.google.wave.api.JsonRpcConstant.ParamsProperty;
+import com.google.wave.api.impl.GsonFactory;
+
+import junit.framework.TestCase;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.List;
+import java.util.NavigableMap;
+
+/**
+ * Tests for the streaming methods of {@link RobotSerializer}.
+ */
+public class RobotSerializerTest extends TestCase {
+
+  private static final String NOTIFY =
+      "{\"id\":\"op1\",\"method\":\"robot.notify\",\"params\":{\"protocolVersion\":\"0.22\"}}";
+  private static final String APPEND = "{\"id\":\"op2\",\"method\":\"document.appendMarkup\","
+      + "\"params\":{\"waveId\":\"example.com!w+1\",\"content\":\"<b>hi</b>\"}}";
+
+  private RobotSerializer serializer;
+
+  @Override
+  protected void setUp() throws Exception {
+    serializer = newSerializer();
+  }
+
+  static RobotSerializer newSerializer() {
+    NavigableMap<ProtocolVersion, Gson> gsons = Maps.newTreeMap();
+    gsons.put(ProtocolVersion.V2_2, new GsonFactory().create());
+    return new RobotSerializer(gsons, ProtocolVersion.DEFAULT);
+  }
+
+  public void testDeserializeBundleFromReader() throws Exception {
+    List<OperationRequest> operations =
+        serializer.deserializeOperations(new StringReader("[" + NOTIFY + "," + APPEND + "]"));
+    assertEquals(2, operations.size());
+    assertEquals("op1", operations.get(0).getId());
+    assertEquals("document.appendMarkup", operations.get(1).getMethod());
+    assertEquals("example.com!w+1", operations.get(1).getWaveId());
+    assertEquals("<b>hi</b>", operations.get(1).getParameter(ParamsProperty.CONTENT));
+  }
+
+  public void testDeserializeSingleOperationFromReader() throws Exception {
+    List<OperationRequest> operations = serializer.deserializeOperations(new StringReader(APPEND));
+    assertEquals(1, operations.size());
+    assertEquals("op2", operations.get(0).getId());
+  }
+
+  public void testDeserializeEmptyDocument() throws Exception {
+    assertTrue(serializer.deserializeOperations(new StringReader(" ")).isEmpty());
+    assertTrue(serializer.deserializeOperations(new StringReader("[]")).isEmpty());
+  }
+
+  public void testDeserializeInvalidBundlesFails() throws Exception {
+    for (String json : new String[] {"[" + NOTIFY, "[1]", "{\"id\":", NOTIFY + " " + APPEND,
+        "{\"id\":\"op1\",\"params\":{}}"}) {
+      try {
+        serializer.deserializeOperations(new StringReader(json));
+        fail("Expected an InvalidRequestException for " + json);
+      } catch (InvalidRequestException e) {
+        // Expected.
+      }
+    }
+  }
+
+  public void testSerializeListMatchesSerialize() throws Exception {
+    List<JsonRpcResponse> responses = ImmutableList.of(
+        JsonRpcResponse.error("op1", "failed"), JsonRpcResponse.error("op2", "also failed"));
+
+    StringWriter out = new StringWriter();
+    serializer.serializeList(responses, JsonRpcResponse.class, ProtocolVersion.DEFAULT, out);
+    assertEquals(serializer.serialize(
+        responses, GsonFactory.JSON_RPC_RESPONSE_LIST_TYPE, ProtocolVersion.DEFAULT),
+        out.toString());
+  }
+}
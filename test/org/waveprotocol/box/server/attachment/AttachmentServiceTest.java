@@ -0,0 +1,137 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.waveprotocol.box.server.attachment;
+
+import com.google.common.collect.Lists;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+
+import junit.framework.TestCase;
+
+import org.waveprotocol.box.attachment.AttachmentMetadata;
+import org.waveprotocol.box.server.executor.ExecutorAnnotations.AttachmentExecutor;
+import org.waveprotocol.box.server.persistence.AttachmentStore;
+import org.waveprotocol.box.server.persistence.file.FileAttachmentStore;
+import org.waveprotocol.box.server.persistence.file.FileUtils;
+import org.waveprotocol.wave.media.model.AttachmentId;
+import org.waveprotocol.wave.media.model.AttachmentIdImpl;
+import org.waveprotocol.wave.model.id.WaveId;
+import org.waveprotocol.wave.model.id.WaveletId;
+import org.waveprotocol.wave.model.id.WaveletName;
+import org.waveprotocol.wave.model.wave.ParticipantId;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Tests for {@link AttachmentService}.
+ */
+public class AttachmentServiceTest extends TestCase {
+
+  private static final AttachmentId ATTACHMENT_ID = new AttachmentIdImpl("example.com", "id1");
+  private static final WaveletName WAVELET_NAME =
+      WaveletName.of(WaveId.of("example.com", "w+1"), WaveletId.of("example.com", "conv+root"));
+  private static final ParticipantId CREATOR = ParticipantId.ofUnsafe("joe@example.com");
+
+  /** Tasks given to the attachment executor, run when the test asks. */
+  private final List<Runnable> tasks = Lists.newArrayList();
+  private File path;
+  private AttachmentStore store;
+  private AttachmentService service;
+
+  @Override
+  protected void setUp() throws Exception {
+    path = FileUtils.createTemporaryDirectory();
+    store = new FileAttachmentStore(path.getAbsolutePath());
+    final Executor executor = new Executor() {
+      @Override
+      public void execute(Runnable task) {
+        tasks.add(task);
+      }
+    };
+    service = Guice.createInjector(new AbstractModule() {
+      @Override
+      protected void configure() {
+        bind(AttachmentStore.class).toInstance(store);
+        bind(Executor.class).annotatedWith(AttachmentExecutor.class).toInstance(executor);
+      }
+    }).getInstance(AttachmentService.class);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    org.apache.commons.io.FileUtils.deleteDirectory(path);
+  }
+
+  public void testImageMetadataAndThumbnailAreBuiltInBackground() throws Exception {
+    service.storeAttachment(ATTACHMENT_ID, new ByteArrayInputStream(makePng(1000, 500)),
+        WAVELET_NAME, "picture.png", CREATOR);
+
+    AttachmentMetadata pending = service.getMetadata(ATTACHMENT_ID);
+    assertFalse(pending.hasImageMetadata());
+    assertEquals(AttachmentService.THUMBNAIL_PATTERN_WIDTH,
+        pending.getThumbnailMetadata().getWidth());
+    assertNull(service.getThumbnail(ATTACHMENT_ID));
+    assertNull(store.getMetadata(ATTACHMENT_ID));
+
+    runTasks();
+
+    AttachmentMetadata metadata = service.getMetadata(ATTACHMENT_ID);
+    assertEquals(1000, metadata.getImageMetadata().getWidth());
+    assertEquals(500, metadata.getImageMetadata().getHeight());
+    assertEquals(200, metadata.getThumbnailMetadata().getWidth());
+    assertEquals(100, metadata.getThumbnailMetadata().getHeight());
+    assertEquals(CREATOR.getAddress(), metadata.getCreator());
+    assertNotNull(service.getThumbnail(ATTACHMENT_ID));
+    assertNotNull(store.getMetadata(ATTACHMENT_ID));
+  }
+
+  public void testOtherFilesKeepPatternThumbnail() throws Exception {
+    service.storeAttachment(ATTACHMENT_ID, new ByteArrayInputStream(new byte[] {1, 2, 3}),
+        WAVELET_NAME, "notes.txt", CREATOR);
+    runTasks();
+
+    AttachmentMetadata metadata = store.getMetadata(ATTACHMENT_ID);
+    assertFalse(metadata.hasImageMetadata());
+    assertEquals(3, metadata.getSize());
+    assertEquals(AttachmentService.THUMBNAIL_PATTERN_HEIGHT,
+        metadata.getThumbnailMetadata().getHeight());
+    assertNull(service.getThumbnail(ATTACHMENT_ID));
+  }
+
+  private void runTasks() {
+    for (Runnable task : tasks) {
+      task.run();
+    }
+    tasks.clear();
+  }
+
+  private static byte[] makePng(int width, int height) throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB), "png", out);
+    return out.toByteArray();
+  }
+}
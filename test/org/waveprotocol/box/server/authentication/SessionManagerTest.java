@@ -19,11 +19,15 @@
 
 package org.waveprotocol.box.server.authentication;
 
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import junit.framework.TestCase;
 
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
@@ -43,6 +47,7 @@ import javax.servlet.http.HttpSession;
 public class SessionManagerTest extends TestCase {
   @Mock private org.eclipse.jetty.server.SessionManager jettySessionManager;
 
+  private AccountStore store;
   private SessionManager sessionManager;
   private HumanAccountData account;
 
@@ -50,7 +55,7 @@ public class SessionManagerTest extends TestCase {
   protected void setUp() throws Exception {
     MockitoAnnotations.initMocks(this);
 
-    AccountStore store = new MemoryStore();
+    store = new MemoryStore();
     account = new HumanAccountDataImpl(ParticipantId.ofUnsafe("tubes@example.com"));
     store.putAccount(account);
     sessionManager = new SessionManagerImpl(store, jettySessionManager);
@@ -65,6 +70,43 @@ public class SessionManagerTest extends TestCase {
     assertSame(account, sessionManager.getLoggedInAccount(session));
   }
 
+  public void testAccountIsCachedInSession() throws Exception {
+    HttpSession session = mock(HttpSession.class);
+    ParticipantId id = ParticipantId.ofUnsafe("tubes@example.com");
+    when(session.getAttribute("user")).thenReturn(id);
+    sessionManager.getLoggedInAccount(session);
+
+    ArgumentCaptor<Object> cached = ArgumentCaptor.forClass(Object.class);
+    verify(session).setAttribute(eq("account"), cached.capture());
+    when(session.getAttribute("account")).thenReturn(cached.getValue());
+    store.removeAccount(id);
+    assertSame(account, sessionManager.getLoggedInAccount(session));
+  }
+
+  public void testCachedAccountOfOtherUserIsNotUsed() throws Exception {
+    HttpSession session = mock(HttpSession.class);
+    when(session.getAttribute("user")).thenReturn(ParticipantId.ofUnsafe("tubes@example.com"));
+    sessionManager.getLoggedInAccount(session);
+    ArgumentCaptor<Object> cached = ArgumentCaptor.forClass(Object.class);
+    verify(session).setAttribute(eq("account"), cached.capture());
+
+    HumanAccountData other = new HumanAccountDataImpl(ParticipantId.ofUnsafe("other@example.com"));
+    store.putAccount(other);
+    when(session.getAttribute("user")).thenReturn(other.getId());
+    when(session.getAttribute("account")).thenReturn(cached.getValue());
+    assertSame(other, sessionManager.getLoggedInAccount(session));
+  }
+
+  public void testLoginAndLogoutDropCachedAccount() {
+    HttpSession session = mock(HttpSession.class);
+    sessionManager.setLoggedInUser(session, ParticipantId.ofUnsafe("tubes@example.com"));
+    verify(session).removeAttribute("account");
+    sessionManager.logout(session);
+    verify(session, times(2)).removeAttribute("account");
+    sessionManager.invalidateLoggedInAccount(session);
+    verify(session, times(3)).removeAttribute("account");
+  }
+
   public void testUnknownUserReturnsNull() {
     HttpSession session = mock(HttpSession.class);
     when(session.getAttribute("user")).thenReturn(ParticipantId.ofUnsafe("missing@example.com"));
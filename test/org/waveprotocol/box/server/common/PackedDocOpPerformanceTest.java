@@ -0,0 +1,183 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.waveprotocol.box.server.common;
+
+import junit.framework.TestCase;
+
+import org.waveprotocol.wave.federation.Proto.ProtocolDocumentOperation;
+import org.waveprotocol.wave.model.document.operation.AnnotationBoundaryMapBuilder;
+import org.waveprotocol.wave.model.document.operation.DocOp;
+import org.waveprotocol.wave.model.document.operation.algorithm.Composer;
+import org.waveprotocol.wave.model.document.operation.algorithm.Transformer;
+import org.waveprotocol.wave.model.document.operation.impl.AttributesImpl;
+import org.waveprotocol.wave.model.document.operation.impl.DocOpBuffer;
+import org.waveprotocol.wave.model.document.operation.impl.DocOpBuilder;
+import org.waveprotocol.wave.model.operation.OperationException;
+import org.waveprotocol.wave.model.operation.TransformException;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Performance tests comparing {@link PackedDocOp} with the buffered doc ops
+ * built by {@link DocOpBuffer}, for decoding, forwarding, composing and
+ * transforming operations as they arrive from storage or clients.
+ */
+public class PackedDocOpPerformanceTest extends TestCase {
+
+  private static final int DOCUMENT_LENGTH = 1000;
+  private static final int LINES = 50;
+  /** Items inserted per line: element start and end, and the characters. */
+  private static final int LINE_LENGTH = 2 + "hello world".length();
+  private static final int REPS = 2000;
+
+  private ProtocolDocumentOperation first;
+  private ProtocolDocumentOperation second;
+  private ProtocolDocumentOperation concurrent;
+
+  @Override
+  protected void setUp() throws Exception {
+    first = CoreWaveletOperationSerializer.serialize(insertLines(DOCUMENT_LENGTH, 10));
+    second = CoreWaveletOperationSerializer.serialize(
+        insertLines(DOCUMENT_LENGTH + LINES * LINE_LENGTH, 7));
+    concurrent = CoreWaveletOperationSerializer.serialize(insertLines(DOCUMENT_LENGTH, 13));
+  }
+
+  public void testDecodePerformance() {
+    long allocated = allocatedBytes();
+    long startTime = System.currentTimeMillis();
+    for (int i = 0; i < REPS; i++) {
+      buffered(first);
+    }
+    report("buffered decode", startTime, allocated);
+
+    allocated = allocatedBytes();
+    startTime = System.currentTimeMillis();
+    for (int i = 0; i < REPS; i++) {
+      PackedDocOp.create(first);
+    }
+    report("packed decode", startTime, allocated);
+  }
+
+  public void testForwardPerformance() {
+    long allocated = allocatedBytes();
+    long startTime = System.currentTimeMillis();
+    for (int i = 0; i < REPS; i++) {
+      CoreWaveletOperationSerializer.serialize(buffered(first));
+    }
+    report("buffered forward", startTime, allocated);
+
+    allocated = allocatedBytes();
+    startTime = System.currentTimeMillis();
+    for (int i = 0; i < REPS; i++) {
+      CoreWaveletOperationSerializer.serialize(PackedDocOp.createUnchecked(first));
+    }
+    report("packed forward", startTime, allocated);
+  }
+
+  public void testComposePerformance() throws OperationException {
+    DocOp a = buffered(first);
+    DocOp b = buffered(second);
+    long allocated = allocatedBytes();
+    long startTime = System.currentTimeMillis();
+    for (int i = 0; i < REPS; i++) {
+      Composer.compose(a, b);
+    }
+    report("buffered compose", startTime, allocated);
+
+    a = PackedDocOp.create(first);
+    b = PackedDocOp.create(second);
+    allocated = allocatedBytes();
+    startTime = System.currentTimeMillis();
+    for (int i = 0; i < REPS; i++) {
+      Composer.compose(a, b);
+    }
+    report("packed compose", startTime, allocated);
+  }
+
+  public void testTransformPerformance() throws TransformException {
+    DocOp client = buffered(first);
+    DocOp server = buffered(concurrent);
+    long allocated = allocatedBytes();
+    long startTime = System.currentTimeMillis();
+    for (int i = 0; i < REPS; i++) {
+      Transformer.transform(client, server);
+    }
+    report("buffered transform", startTime, allocated);
+
+    client = PackedDocOp.create(first);
+    server = PackedDocOp.create(concurrent);
+    allocated = allocatedBytes();
+    startTime = System.currentTimeMillis();
+    for (int i = 0; i < REPS; i++) {
+      Transformer.transform(client, server);
+    }
+    report("packed transform", startTime, allocated);
+  }
+
+  /**
+   * Decodes an operation into a buffered doc op, the way the serializer did
+   * before it returned packed operations.
+   */
+  private static DocOp buffered(ProtocolDocumentOperation proto) {
+    DocOpBuffer buffer = new DocOpBuffer();
+    PackedDocOp.createUnchecked(proto).apply(buffer);
+    return buffer.finish();
+  }
+
+  /**
+   * Builds an operation on a document of the given length, which inserts a
+   * bold line of text every {@code gap} items.
+   */
+  private static DocOp insertLines(int documentLength, int gap) {
+    DocOpBuilder builder = new DocOpBuilder();
+    for (int i = 0; i < LINES; i++) {
+      builder.retain(gap);
+      builder.elementStart("line", new AttributesImpl("t", "h1"));
+      builder.elementEnd();
+      builder.annotationBoundary(
+          new AnnotationBoundaryMapBuilder().change("style/fontWeight", null, "bold").build());
+      builder.characters("hello world");
+      builder.annotationBoundary(new AnnotationBoundaryMapBuilder().end("style/fontWeight").build());
+    }
+    builder.retain(documentLength - LINES * gap);
+    return builder.build();
+  }
+
+  private static void report(String name, long startTime, long allocatedBefore) {
+    long elapsed = System.currentTimeMillis() - startTime;
+    long allocated = allocatedBytes();
+    System.err.println(name + ", millis per rep: " + (((float) elapsed) / REPS)
+        + (allocated < 0 ? "" : ", bytes per rep: " + (allocated - allocatedBefore) / REPS));
+  }
+
+  /**
+   * Returns the bytes allocated by the current thread so far, or -1 if the
+   * JVM does not report them.
+   */
+  private static long allocatedBytes() {
+    ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    if (threads instanceof com.sun.management.ThreadMXBean) {
+      return ((com.sun.management.ThreadMXBean) threads)
+          .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+    return -1;
+  }
+}
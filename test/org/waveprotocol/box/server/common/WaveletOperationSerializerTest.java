@@ -24,6 +24,7 @@ import com.google.common.collect.ImmutableMap;
 
 import junit.framework.TestCase;
 
+import org.waveprotocol.wave.federation.Proto.ProtocolDocumentOperation;
 import org.waveprotocol.wave.federation.Proto.ProtocolWaveletDelta;
 import org.waveprotocol.wave.model.document.operation.AnnotationBoundaryMap;
 import org.waveprotocol.wave.model.document.operation.Attributes;
@@ -79,6 +80,8 @@ public class WaveletOperationSerializerTest extends TestCase {
     // Test both (de)serialising a single operation...
     assertEquals(op, CoreWaveletOperationSerializer.deserialize(
         CoreWaveletOperationSerializer.serialize(op), OP_CONTEXT));
+    assertEquals(op, CoreWaveletOperationSerializer.deserializeApplied(
+        CoreWaveletOperationSerializer.serialize(op), OP_CONTEXT));
 
     List<WaveletOperation> ops = ImmutableList.of(op, op, op);
     ParticipantId author = new ParticipantId("kalman@google.com");
@@ -308,6 +311,32 @@ public class WaveletOperationSerializerTest extends TestCase {
     assertReversible(makeBlipOp("emptyUpdateAttributes", m.build()));
   }
 
+  public void testDeserializedDocOpSerializesToTheOriginalProto() {
+    ProtocolDocumentOperation proto = CoreWaveletOperationSerializer.serialize(
+        new DocOpBuilder().retain(2).characters("hello").retain(3).build());
+
+    assertSame(proto, CoreWaveletOperationSerializer.serialize(
+        CoreWaveletOperationSerializer.deserialize(proto)));
+    assertSame(proto, CoreWaveletOperationSerializer.serialize(
+        CoreWaveletOperationSerializer.deserializeApplied(proto)));
+  }
+
+  public void testIllFormedDocOpIsOnlyRejectedWhenChecked() {
+    ProtocolDocumentOperation proto = CoreWaveletOperationSerializer.serialize(
+        new DocOpBuilder().retain(2).build());
+    ProtocolDocumentOperation illFormed = ProtocolDocumentOperation.newBuilder(proto)
+        .addComponent(ProtocolDocumentOperation.Component.newBuilder().setElementEnd(true))
+        .build();
+
+    try {
+      CoreWaveletOperationSerializer.deserialize(illFormed);
+      fail("Expected an IllegalStateException");
+    } catch (IllegalStateException expected) {
+      // pass
+    }
+    assertEquals(2, CoreWaveletOperationSerializer.deserializeApplied(illFormed).size());
+  }
+
   private static WaveletBlipOperation makeBlipOp(String blipId, DocOp mutation) {
     return new WaveletBlipOperation(blipId, new BlipContentOperation(OP_CONTEXT, mutation));
   }
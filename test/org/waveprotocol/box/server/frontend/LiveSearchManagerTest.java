@@ -0,0 +1,233 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.waveprotocol.box.server.frontend;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.wave.api.SearchResult;
+
+import junit.framework.TestCase;
+
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.waveprotocol.box.common.DeltaSequence;
+import org.waveprotocol.box.search.SearchProto.SearchUpdate;
+import org.waveprotocol.box.server.util.WaveletDataUtil;
+import org.waveprotocol.box.server.util.testing.TestingConstants;
+import org.waveprotocol.box.server.waveserver.SearchProvider;
+import org.waveprotocol.box.server.waveserver.WaveBus;
+import org.waveprotocol.box.webclient.search.SearchService;
+import org.waveprotocol.wave.model.testing.DeltaTestUtil;
+import org.waveprotocol.wave.model.version.HashedVersion;
+import org.waveprotocol.wave.model.wave.data.WaveletData;
+
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for {@link LiveSearchManager}.
+ */
+public class LiveSearchManagerTest extends TestCase implements TestingConstants {
+
+  private static final DeltaTestUtil UTIL = new DeltaTestUtil(PARTICIPANT);
+  private static final String QUERY = "in:inbox";
+  private static final int PAGE_SIZE = 10;
+
+  /** Records the updates of a live search. */
+  private static class RecordingListener implements LiveSearchManager.Listener {
+    final List<SearchUpdate> updates = Lists.newArrayList();
+    boolean evicted;
+
+    @Override
+    public void onUpdate(SearchUpdate update) {
+      updates.add(update);
+    }
+
+    @Override
+    public void onEvicted() {
+      evicted = true;
+    }
+  }
+
+  private final List<Runnable> scheduled = Lists.newArrayList();
+
+  private SearchProvider searchProvider;
+  private WaveBus waveBus;
+  private LiveSearchManager manager;
+  private WaveletData wavelet;
+  private RecordingListener listener;
+
+  @Override
+  protected void setUp() throws Exception {
+    searchProvider = mock(SearchProvider.class);
+    waveBus = mock(WaveBus.class);
+    ScheduledExecutorService executor = mock(ScheduledExecutorService.class);
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) {
+        ((Runnable) invocation.getArguments()[0]).run();
+        return null;
+      }
+    }).when(executor).execute(any(Runnable.class));
+    when(executor.schedule(any(Runnable.class), anyLong(), any(TimeUnit.class))).thenAnswer(
+        new Answer<Object>() {
+          @Override
+          public Object answer(InvocationOnMock invocation) {
+            scheduled.add((Runnable) invocation.getArguments()[0]);
+            return null;
+          }
+        });
+    manager = new LiveSearchManager(searchProvider, waveBus, executor, 1000, DOMAIN);
+    wavelet = WaveletDataUtil.createEmptyWavelet(WAVELET_NAME, PARTICIPANT,
+        HashedVersion.unsigned(0), 0L);
+    wavelet.addParticipant(PARTICIPANT);
+    listener = new RecordingListener();
+    setResults(digest("w+1", 0), digest("w+2", 0));
+  }
+
+  public void testSubscribesToWaveBus() {
+    verify(waveBus).subscribe(manager);
+  }
+
+  public void testFirstUpdateHasAllDigests() {
+    manager.subscribe(PARTICIPANT, QUERY, 0, PAGE_SIZE, listener);
+
+    assertEquals(1, listener.updates.size());
+    SearchUpdate update = listener.updates.get(0);
+    assertEquals(ImmutableList.of("w+1", "w+2"), update.getWaveIdsList());
+    assertEquals(2, update.getDigestsCount());
+    assertEquals(2, update.getTotalResults());
+  }
+
+  public void testFullPageHasUnknownTotal() {
+    manager.subscribe(PARTICIPANT, QUERY, 0, 2, listener);
+
+    assertEquals(SearchService.UNKNOWN_SIZE, listener.updates.get(0).getTotalResults());
+  }
+
+  public void testOnlyChangedDigestsAreSent() {
+    manager.subscribe(PARTICIPANT, QUERY, 0, PAGE_SIZE, listener);
+    setResults(digest("w+2", 1), digest("w+1", 0));
+
+    update(wavelet);
+
+    assertEquals(2, listener.updates.size());
+    SearchUpdate update = listener.updates.get(1);
+    assertEquals(ImmutableList.of("w+2", "w+1"), update.getWaveIdsList());
+    assertEquals(1, update.getDigestsCount());
+    assertEquals("w+2", update.getDigests(0).getWaveId());
+  }
+
+  public void testUnchangedResultsAreNotSent() {
+    manager.subscribe(PARTICIPANT, QUERY, 0, PAGE_SIZE, listener);
+
+    update(wavelet);
+
+    assertEquals(1, listener.updates.size());
+  }
+
+  public void testBurstOfChangesRefreshesOnce() {
+    manager.subscribe(PARTICIPANT, QUERY, 0, PAGE_SIZE, listener);
+
+    manager.waveletUpdate(wavelet, DeltaSequence.of(UTIL.delta(1L, UTIL.noOpDocOp("b+1"))));
+    manager.waveletUpdate(wavelet, DeltaSequence.of(UTIL.delta(2L, UTIL.noOpDocOp("b+1"))));
+
+    assertEquals(1, scheduled.size());
+  }
+
+  public void testChangesToWavesOfOthersAreIgnored() {
+    manager.subscribe(PARTICIPANT, QUERY, 0, PAGE_SIZE, listener);
+    WaveletData other = WaveletDataUtil.createEmptyWavelet(WAVELET_NAME, OTHER_PARTICIPANT,
+        HashedVersion.unsigned(0), 0L);
+    other.addParticipant(OTHER_PARTICIPANT);
+
+    manager.waveletUpdate(other, DeltaSequence.of(UTIL.delta(1L, UTIL.noOpDocOp("b+1"))));
+
+    assertTrue(scheduled.isEmpty());
+  }
+
+  public void testRemovedParticipantIsRefreshed() {
+    manager.subscribe(OTHER_PARTICIPANT, QUERY, 0, PAGE_SIZE, listener);
+
+    manager.waveletUpdate(wavelet,
+        DeltaSequence.of(UTIL.delta(1L, UTIL.removeParticipant(OTHER_PARTICIPANT))));
+
+    assertEquals(1, scheduled.size());
+  }
+
+  public void testClosedSearchIsNotRefreshed() {
+    LiveSearchManager.LiveSearch search =
+        manager.subscribe(PARTICIPANT, QUERY, 0, PAGE_SIZE, listener);
+    assertEquals(1, manager.getSearchCount());
+
+    search.close();
+    update(wavelet);
+
+    assertEquals(0, manager.getSearchCount());
+    assertEquals(1, listener.updates.size());
+  }
+
+  public void testOldestSearchIsEvicted() {
+    RecordingListener oldest = new RecordingListener();
+    manager.subscribe(PARTICIPANT, QUERY, 0, PAGE_SIZE, oldest);
+    for (int i = 0; i < LiveSearchManager.MAX_SEARCHES_PER_USER; i++) {
+      manager.subscribe(PARTICIPANT, QUERY, 0, PAGE_SIZE, new RecordingListener());
+    }
+
+    assertTrue(oldest.evicted);
+    assertEquals(LiveSearchManager.MAX_SEARCHES_PER_USER, manager.getSearchCount());
+  }
+
+  /** Sends an update of a wavelet and runs the refreshes it schedules. */
+  private void update(WaveletData wavelet) {
+    manager.waveletUpdate(wavelet, DeltaSequence.of(UTIL.delta(1L, UTIL.noOpDocOp("b+1"))));
+    List<Runnable> refreshes = Lists.newArrayList(scheduled);
+    scheduled.clear();
+    for (Runnable refresh : refreshes) {
+      refresh.run();
+    }
+  }
+
+  private void setResults(SearchResult.Digest... digests) {
+    SearchResult result = new SearchResult(QUERY);
+    for (SearchResult.Digest digest : digests) {
+      result.addDigest(digest);
+    }
+    when(searchProvider.search(eq(PARTICIPANT), eq(QUERY), anyInt(), anyInt()))
+        .thenReturn(result);
+    when(searchProvider.search(eq(OTHER_PARTICIPANT), eq(QUERY), anyInt(), anyInt()))
+        .thenReturn(result);
+  }
+
+  private static SearchResult.Digest digest(String waveId, int unreadCount) {
+    return new SearchResult.Digest("title", "snippet", waveId, ImmutableList.of(USER), 1L, 1L,
+        unreadCount, 1);
+  }
+}
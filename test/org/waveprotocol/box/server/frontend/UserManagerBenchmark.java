@@ -0,0 +1,127 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.waveprotocol.box.server.frontend;
+
+import com.google.common.collect.Lists;
+
+import junit.framework.TestCase;
+
+import org.waveprotocol.box.common.DeltaSequence;
+import org.waveprotocol.box.server.frontend.ClientFrontend.OpenListener;
+import org.waveprotocol.wave.model.id.IdFilters;
+import org.waveprotocol.wave.model.id.WaveIdImpl;
+import org.waveprotocol.wave.model.id.WaveletId;
+import org.waveprotocol.wave.model.id.WaveletIdImpl;
+import org.waveprotocol.wave.model.id.WaveletName;
+import org.waveprotocol.wave.model.operation.wave.TransformedWaveletDelta;
+import org.waveprotocol.wave.model.testing.BenchmarkRunner;
+import org.waveprotocol.wave.model.testing.DeltaTestUtil;
+import org.waveprotocol.wave.model.version.HashedVersion;
+import org.waveprotocol.wave.model.wave.ParticipantId;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Measures delivering updates to a user with many tabs open, each on its own
+ * wave and fed by its own thread, as happens when deltas to several waves of a
+ * user are applied at once. Delivering an update builds its message, which is
+ * what a client listener spends most of its time on. Run with
+ * {@code ant benchmark}.
+ */
+public class UserManagerBenchmark extends TestCase {
+
+  private static final int TABS = 8;
+  private static final int UPDATES = 200;
+
+  private static final ParticipantId USER = ParticipantId.ofUnsafe("user@example.com");
+  private static final DeltaTestUtil UTIL = new DeltaTestUtil(USER);
+  private static final WaveletId WAVELET_ID = WaveletIdImpl.of("example.com", "conv+root");
+
+  /** Consumes the messages built by the listener. */
+  private static volatile int sink;
+
+  /** Builds a message from an update, as a client listener does. */
+  private static final OpenListener LISTENER = new OpenListener() {
+    @Override
+    public void onUpdate(WaveletName waveletName, CommittedWaveletSnapshot snapshot,
+        List<TransformedWaveletDelta> deltas, HashedVersion committedVersion, Boolean marker,
+        String channelId) {
+      StringBuilder message = new StringBuilder(waveletName.toString());
+      for (TransformedWaveletDelta delta : deltas) {
+        message.append(delta.toString());
+      }
+      message.append(channelId);
+      sink = message.toString().hashCode();
+    }
+
+    @Override
+    public void onFailure(String errorMessage) {
+    }
+  };
+
+  private final List<DeltaSequence> updates = Lists.newArrayList();
+  private ExecutorService executor;
+
+  @Override
+  protected void setUp() throws Exception {
+    for (int i = 0; i < UPDATES; i++) {
+      updates.add(DeltaSequence.of(UTIL.noOpDelta(i)));
+    }
+    executor = Executors.newFixedThreadPool(TABS);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    executor.shutdownNow();
+  }
+
+  public void testUpdatesToManyTabs() throws Exception {
+    BenchmarkRunner.run(getClass(), "updatesToManyTabs", TABS * UPDATES,
+        new BenchmarkRunner.Task() {
+          @Override
+          public Object run() throws Exception {
+            final UserManager userManager = new UserManager();
+            List<Future<?>> tabs = Lists.newArrayList();
+            for (int tab = 0; tab < TABS; tab++) {
+              final WaveletName waveletName =
+                  WaveletName.of(WaveIdImpl.of("example.com", "w+" + tab), WAVELET_ID);
+              userManager.subscribe(waveletName.waveId, IdFilters.ALL_IDS, "ch" + tab, LISTENER);
+              tabs.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() {
+                  for (DeltaSequence update : updates) {
+                    userManager.onUpdate(waveletName, update);
+                  }
+                  return null;
+                }
+              }));
+            }
+            for (Future<?> tab : tabs) {
+              tab.get();
+            }
+            return userManager;
+          }
+        });
+  }
+}
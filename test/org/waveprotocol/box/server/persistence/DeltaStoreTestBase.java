@@ -59,7 +59,7 @@ public abstract class DeltaStoreTestBase extends TestCase {
     WaveletName.of(WaveId.of("example.com", "wave1"), WaveletId.of("example.com", "wavelet1"));
   private final WaveletName WAVE2_WAVELET1 =
     WaveletName.of(WaveId.of("example.com", "wave2"), WaveletId.of("example.com", "wavelet1"));
-  private final DeltaTestUtil UTIL = new DeltaTestUtil(TestingConstants.PARTICIPANT);
+  private static final DeltaTestUtil UTIL = new DeltaTestUtil(TestingConstants.PARTICIPANT);
 
 
   /** Create and return a new delta store instance of the type being tested. */
@@ -198,7 +198,7 @@ public abstract class DeltaStoreTestBase extends TestCase {
 
   // *** Helpers
 
-  protected WaveletDeltaRecord createRecord() {
+  public static WaveletDeltaRecord createRecord() {
     HashedVersion targetVersion = HashedVersion.of(0, new byte[] {3, 2, 1});
     HashedVersion resultingVersion = HashedVersion.of(2, new byte[] {1, 2, 3});
 
@@ -0,0 +1,124 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.waveprotocol.box.server.persistence.file;
+
+import org.waveprotocol.box.server.persistence.AttachmentStore.FileAttachmentData;
+import org.waveprotocol.box.server.persistence.AttachmentStoreTestBase;
+import org.waveprotocol.box.server.persistence.migration.AttachmentMigrator;
+import org.waveprotocol.wave.media.model.AttachmentId;
+import org.waveprotocol.wave.media.model.AttachmentIdImpl;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+
+/**
+ * Runs the tests in AttachmentStoreTestBase against the content addressed
+ * attachment store, and tests its sharing of content.
+ */
+public class ContentAddressedAttachmentStoreTest extends AttachmentStoreTestBase {
+
+  private static final AttachmentId ID1 = new AttachmentIdImpl("example.com", "a1");
+  private static final AttachmentId ID2 = new AttachmentIdImpl("example.com", "a2");
+
+  private File path;
+
+  @Override
+  protected void setUp() throws Exception {
+    path = FileUtils.createTemporaryDirectory();
+    super.setUp();
+  }
+
+  @Override
+  protected ContentAddressedAttachmentStore newAttachmentStore() {
+    return new ContentAddressedAttachmentStore(new File(path, "content").getAbsolutePath());
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    super.tearDown();
+    org.apache.commons.io.FileUtils.deleteDirectory(path);
+    assertFalse(path.exists());
+  }
+
+  public void testSameContentIsStoredOnce() throws Exception {
+    ContentAddressedAttachmentStore store = newAttachmentStore();
+    writeStringDataToAttachmentStore(store, ID1, "forwarded everywhere");
+    writeStringDataToAttachmentStore(store, ID2, "forwarded everywhere");
+
+    String hash = store.readHash(ID1);
+    assertEquals(hash, store.readHash(ID2));
+    assertEquals(2, store.getReferenceCount(hash));
+    assertEquals(((FileAttachmentData) store.getAttachment(ID1)).getFile(),
+        ((FileAttachmentData) store.getAttachment(ID2)).getFile());
+  }
+
+  public void testContentIsDeletedWithLastReference() throws Exception {
+    ContentAddressedAttachmentStore store = newAttachmentStore();
+    writeStringDataToAttachmentStore(store, ID1, "shared");
+    writeStringDataToAttachmentStore(store, ID2, "shared");
+    store.storeThumbnail(ID1, new ByteArrayInputStream(new byte[] {1}));
+    String hash = store.readHash(ID1);
+    File blob = ((FileAttachmentData) store.getAttachment(ID1)).getFile();
+
+    store.deleteAttachment(ID1);
+    assertNull(store.getAttachment(ID1));
+    assertEquals("shared", dataToString(store.getAttachment(ID2)));
+    assertNotNull(store.getThumbnail(ID2));
+    assertEquals(1, store.getReferenceCount(hash));
+
+    store.deleteAttachment(ID2);
+    assertFalse(blob.exists());
+    assertEquals(0, store.getReferenceCount(hash));
+  }
+
+  public void testThumbnailIsSharedByContent() throws Exception {
+    ContentAddressedAttachmentStore store = newAttachmentStore();
+    writeStringDataToAttachmentStore(store, ID1, "image");
+    writeStringDataToAttachmentStore(store, ID2, "image");
+    store.storeThumbnail(ID1, new ByteArrayInputStream("thumbnail".getBytes("UTF-8")));
+
+    // The second thumbnail is made from the same content, so it is not written.
+    store.storeThumbnail(ID2, new ByteArrayInputStream("other".getBytes("UTF-8")));
+    assertEquals("thumbnail", dataToString(store.getThumbnail(ID2)));
+  }
+
+  public void testStoreIsReadAfterRestart() throws Exception {
+    writeStringDataToAttachmentStore(newAttachmentStore(), ID1, "persistent");
+    assertEquals("persistent", dataToString(newAttachmentStore().getAttachment(ID1)));
+  }
+
+  public void testMigrateFromDiskStore() throws Exception {
+    FileAttachmentStore source =
+        new FileAttachmentStore(new File(path, "disk").getAbsolutePath());
+    writeStringDataToAttachmentStore(source, ID1, "old");
+    writeStringDataToAttachmentStore(source, ID2, "old");
+    source.storeThumbnail(ID1, new ByteArrayInputStream("small".getBytes("UTF-8")));
+    ContentAddressedAttachmentStore target = newAttachmentStore();
+
+    new AttachmentMigrator(source, target).run();
+    // Running again skips what was migrated.
+    new AttachmentMigrator(source, target).run();
+
+    assertEquals("old", dataToString(target.getAttachment(ID1)));
+    assertEquals("old", dataToString(target.getAttachment(ID2)));
+    assertEquals("small", dataToString(target.getThumbnail(ID1)));
+    assertEquals(2, target.getReferenceCount(target.readHash(ID1)));
+  }
+}
@@ -20,6 +20,7 @@
 package org.waveprotocol.box.server.persistence.file;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 
 import org.waveprotocol.box.server.persistence.DeltaStoreTestBase;
 import org.waveprotocol.box.server.waveserver.DeltaStore;
@@ -99,4 +100,55 @@ public class DeltaStoreTest extends DeltaStoreTestBase {
       toRemove++;
     }
   }
+
+  public void testLookupAnswersFromCatalogWithoutReadingDeltas() throws Exception {
+    DeltaStore store = newDeltaStore();
+    DeltasAccess wavelet = store.open(WAVE1_WAVELET1);
+    wavelet.append(ImmutableList.of(createRecord()));
+    wavelet.close();
+
+    // Overwrite the deltas with junk of the same length and time. The catalog
+    // still describes the file, so it is not read.
+    File deltaFile = FileDeltaCollection.deltasFile(path.getAbsolutePath(), WAVE1_WAVELET1);
+    long lastModified = deltaFile.lastModified();
+    RandomAccessFile file = new RandomAccessFile(deltaFile, "rw");
+    file.write(new byte[(int) file.length()]);
+    file.close();
+    assertTrue(deltaFile.setLastModified(lastModified));
+
+    assertEquals(ImmutableSet.of(WAVE1_WAVELET1.waveletId),
+        newDeltaStore().lookup(WAVE1_WAVELET1.waveId));
+  }
+
+  public void testLookupRebuildsMissingCatalog() throws Exception {
+    DeltaStore store = newDeltaStore();
+    DeltasAccess wavelet = store.open(WAVE1_WAVELET1);
+    wavelet.append(ImmutableList.of(createRecord()));
+    wavelet.close();
+
+    File catalogFile = new File(
+        FileDeltaCollection.deltasFile(path.getAbsolutePath(), WAVE1_WAVELET1).getParentFile(),
+        WaveletCatalog.CATALOG_FILE_NAME);
+    assertTrue(catalogFile.delete());
+
+    assertEquals(ImmutableSet.of(WAVE1_WAVELET1.waveletId),
+        newDeltaStore().lookup(WAVE1_WAVELET1.waveId));
+    assertTrue(catalogFile.exists());
+  }
+
+  public void testLookupRebuildsStaleCatalogEntry() throws Exception {
+    DeltaStore store = newDeltaStore();
+    store.open(WAVE1_WAVELET1).close();
+    assertTrue(store.lookup(WAVE1_WAVELET1.waveId).isEmpty());
+
+    // Append without the store, as if it had crashed before updating the
+    // catalog.
+    FileDeltaCollection wavelet =
+        FileDeltaCollection.open(WAVE1_WAVELET1, path.getAbsolutePath());
+    wavelet.append(ImmutableList.of(createRecord()));
+    wavelet.close();
+
+    assertEquals(ImmutableSet.of(WAVE1_WAVELET1.waveletId),
+        store.lookup(WAVE1_WAVELET1.waveId));
+  }
 }
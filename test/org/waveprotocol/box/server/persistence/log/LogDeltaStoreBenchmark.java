@@ -0,0 +1,146 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.waveprotocol.box.server.persistence.log;
+
+import com.google.common.collect.ImmutableList;
+
+import junit.framework.TestCase;
+
+import org.waveprotocol.box.server.persistence.DeltaStoreTestBase;
+import org.waveprotocol.box.server.persistence.file.FileDeltaStore;
+import org.waveprotocol.box.server.persistence.file.FileUtils;
+import org.waveprotocol.box.server.waveserver.DeltaStore;
+import org.waveprotocol.box.server.waveserver.DeltaStore.DeltasAccess;
+import org.waveprotocol.box.server.waveserver.WaveletDeltaRecord;
+import org.waveprotocol.wave.model.id.WaveId;
+import org.waveprotocol.wave.model.id.WaveletId;
+import org.waveprotocol.wave.model.id.WaveletName;
+import org.waveprotocol.wave.model.testing.BenchmarkRunner;
+
+import java.io.File;
+
+/**
+ * Compares {@link LogDeltaStore} with {@link FileDeltaStore}, in the cost of
+ * appending a delta to a new wavelet, and in the cost of reading a wavelet
+ * from a store that was just opened, which for the log store includes
+ * rebuilding its index. Run with {@code ant benchmark}.
+ */
+public class LogDeltaStoreBenchmark extends TestCase {
+
+  /** Wavelets in the store read by the cold open benchmarks. */
+  private static final int STORED_WAVELETS = 1000;
+
+  private final WaveletDeltaRecord record = DeltaStoreTestBase.createRecord();
+  private File path;
+  private int nextWavelet = 0;
+
+  @Override
+  protected void setUp() throws Exception {
+    path = FileUtils.createTemporaryDirectory();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    org.apache.commons.io.FileUtils.deleteDirectory(path);
+  }
+
+  public void testAppend() throws Exception {
+    append("fileAppend", new FileDeltaStore(new File(path, "file").getPath()));
+    LogDeltaStore log =
+        new LogDeltaStore(new File(path, "log"), LogDeltaStore.DEFAULT_SEGMENT_SIZE);
+    try {
+      append("logAppend", log);
+    } finally {
+      log.close();
+    }
+  }
+
+  public void testColdOpen() throws Exception {
+    final String filePath = new File(path, "file").getPath();
+    final File logPath = new File(path, "log");
+    DeltaStore file = new FileDeltaStore(filePath);
+    LogDeltaStore log = new LogDeltaStore(logPath, LogDeltaStore.DEFAULT_SEGMENT_SIZE);
+    WaveletName last = null;
+    try {
+      for (int i = 0; i < STORED_WAVELETS; i++) {
+        last = nextWaveletName();
+        append(file, last);
+        append(log, last);
+      }
+    } finally {
+      log.close();
+    }
+    final WaveletName waveletName = last;
+
+    BenchmarkRunner.run(getClass(), "fileColdOpen", 1, new BenchmarkRunner.Task() {
+      @Override
+      public Object run() throws Exception {
+        return read(new FileDeltaStore(filePath), waveletName);
+      }
+    });
+    BenchmarkRunner.run(getClass(), "logColdOpen", 1, new BenchmarkRunner.Task() {
+      @Override
+      public Object run() throws Exception {
+        LogDeltaStore store = new LogDeltaStore(logPath, LogDeltaStore.DEFAULT_SEGMENT_SIZE);
+        try {
+          return read(store, waveletName);
+        } finally {
+          store.close();
+        }
+      }
+    });
+  }
+
+  /** Appends one delta to each of a number of new wavelets. */
+  private void append(String name, final DeltaStore store) throws Exception {
+    BenchmarkRunner.run(getClass(), name, 1, new BenchmarkRunner.Task() {
+      @Override
+      public Object run() throws Exception {
+        WaveletName waveletName = nextWaveletName();
+        append(store, waveletName);
+        return waveletName;
+      }
+    });
+  }
+
+  private void append(DeltaStore store, WaveletName waveletName) throws Exception {
+    DeltasAccess wavelet = store.open(waveletName);
+    try {
+      wavelet.append(ImmutableList.of(record));
+    } finally {
+      wavelet.close();
+    }
+  }
+
+  private static Object read(DeltaStore store, WaveletName waveletName) throws Exception {
+    DeltasAccess wavelet = store.open(waveletName);
+    try {
+      return wavelet.getEndVersion();
+    } finally {
+      wavelet.close();
+    }
+  }
+
+  private WaveletName nextWaveletName() {
+    int i = nextWavelet++;
+    return WaveletName.of(WaveId.of("example.com", "w+" + i / 10),
+        WaveletId.of("example.com", "conv+" + i % 10));
+  }
+}
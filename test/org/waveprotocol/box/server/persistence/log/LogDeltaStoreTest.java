@@ -0,0 +1,220 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.waveprotocol.box.server.persistence.log;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+
+import org.waveprotocol.box.server.persistence.DeltaStoreTestBase;
+import org.waveprotocol.box.server.persistence.file.FileUtils;
+import org.waveprotocol.box.server.waveserver.DeltaStore;
+import org.waveprotocol.box.server.waveserver.DeltaStore.DeltasAccess;
+import org.waveprotocol.box.server.waveserver.WaveletDeltaRecord;
+import org.waveprotocol.wave.model.id.WaveId;
+import org.waveprotocol.wave.model.id.WaveletId;
+import org.waveprotocol.wave.model.id.WaveletName;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+/**
+ * Tests for {@link LogDeltaStore}.
+ */
+public class LogDeltaStoreTest extends DeltaStoreTestBase {
+
+  private static final WaveletName WAVE1_WAVELET1 =
+      WaveletName.of(WaveId.of("example.com", "wave1"), WaveletId.of("example.com", "wavelet1"));
+  private static final WaveletName WAVE1_WAVELET2 =
+      WaveletName.of(WaveId.of("example.com", "wave1"), WaveletId.of("example.com", "wavelet2"));
+  private static final WaveletName WAVE2_WAVELET1 =
+      WaveletName.of(WaveId.of("example.com", "wave2"), WaveletId.of("example.com", "wavelet1"));
+  private static final WaveletName WAVE3_WAVELET1 =
+      WaveletName.of(WaveId.of("example.com", "wave3"), WaveletId.of("example.com", "wavelet1"));
+
+  private File path;
+  private final List<LogDeltaStore> stores = Lists.newArrayList();
+
+  @Override
+  protected void setUp() throws Exception {
+    path = FileUtils.createTemporaryDirectory();
+    super.setUp();
+  }
+
+  @Override
+  protected DeltaStore newDeltaStore() {
+    return newDeltaStore(LogDeltaStore.DEFAULT_SEGMENT_SIZE);
+  }
+
+  private LogDeltaStore newDeltaStore(long segmentSize) {
+    LogDeltaStore store = new LogDeltaStore(path, segmentSize);
+    stores.add(store);
+    return store;
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    for (LogDeltaStore store : stores) {
+      store.close();
+    }
+    super.tearDown();
+    org.apache.commons.io.FileUtils.deleteDirectory(path);
+    assertFalse(path.exists());
+  }
+
+  public void testReopenedStoreReadsDeltas() throws Exception {
+    WaveletDeltaRecord written = createRecord();
+    append(newDeltaStore(), WAVE1_WAVELET1, written);
+
+    DeltaStore reopened = newDeltaStore();
+    DeltasAccess wavelet = reopened.open(WAVE1_WAVELET1);
+    assertEquals(written, wavelet.getDelta(0));
+    assertEquals(written.getResultingVersion(), wavelet.getEndVersion());
+    assertEquals(ImmutableSet.of(WAVE1_WAVELET1.waveletId), reopened.lookup(WAVE1_WAVELET1.waveId));
+    wavelet.close();
+  }
+
+  public void testReopenedStoreForgetsDeletedWavelets() throws Exception {
+    DeltaStore store = newDeltaStore();
+    append(store, WAVE1_WAVELET1, createRecord());
+    store.delete(WAVE1_WAVELET1);
+
+    DeltaStore reopened = newDeltaStore();
+    assertTrue(reopened.open(WAVE1_WAVELET1).isEmpty());
+    assertFalse(reopened.getWaveIdIterator().hasNext());
+  }
+
+  // A record torn by a crash is dropped on recovery, and appends continue
+  // after the last complete record.
+  public void testRecoverFromTornRecord() throws Exception {
+    WaveletDeltaRecord written = createRecord();
+    append(newDeltaStore(), WAVE1_WAVELET1, written);
+    File segment = LogSegment.segmentFile(path, 1);
+    long complete = segment.length();
+    append(newDeltaStore(), WAVE2_WAVELET1, written);
+
+    RandomAccessFile file = new RandomAccessFile(segment, "rw");
+    file.setLength(file.length() - 3);
+    file.close();
+
+    DeltaStore reopened = newDeltaStore();
+    assertEquals(complete, segment.length());
+    assertEquals(written, reopened.open(WAVE1_WAVELET1).getDelta(0));
+    assertTrue(reopened.open(WAVE2_WAVELET1).isEmpty());
+
+    append(reopened, WAVE2_WAVELET1, written);
+    assertEquals(written, newDeltaStore().open(WAVE2_WAVELET1).getDelta(0));
+  }
+
+  public void testSealedSegmentsAreRecoveredFromHints() throws Exception {
+    // Every record gets a segment of its own.
+    LogDeltaStore store = newDeltaStore(1);
+    WaveletDeltaRecord written = createRecord();
+    append(store, WAVE1_WAVELET1, written);
+    append(store, WAVE1_WAVELET2, written);
+    append(store, WAVE2_WAVELET1, written);
+
+    assertTrue(LogSegment.hintFile(path, 1).exists());
+    assertTrue(LogSegment.hintFile(path, 2).exists());
+    assertFalse(LogSegment.hintFile(path, 3).exists());
+
+    DeltaStore reopened = newDeltaStore(1);
+    assertEquals(ImmutableSet.of(WAVE1_WAVELET1.waveletId, WAVE1_WAVELET2.waveletId),
+        reopened.lookup(WAVE1_WAVELET1.waveId));
+    assertEquals(written, reopened.open(WAVE1_WAVELET2).getDelta(0));
+    assertEquals(written, reopened.open(WAVE2_WAVELET1).getDelta(0));
+  }
+
+  public void testCorruptHintFallsBackToScan() throws Exception {
+    LogDeltaStore store = newDeltaStore(1);
+    WaveletDeltaRecord written = createRecord();
+    append(store, WAVE1_WAVELET1, written);
+    append(store, WAVE2_WAVELET1, written);
+
+    RandomAccessFile hint = new RandomAccessFile(LogSegment.hintFile(path, 1), "rw");
+    hint.setLength(hint.length() - 1);
+    hint.close();
+
+    assertEquals(written, newDeltaStore(1).open(WAVE1_WAVELET1).getDelta(0));
+  }
+
+  public void testCompactionDeletesDeadSegment() throws Exception {
+    LogDeltaStore store = newDeltaStore(1);
+    WaveletDeltaRecord written = createRecord();
+    append(store, WAVE1_WAVELET1, written);
+    append(store, WAVE2_WAVELET1, written);
+    store.delete(WAVE1_WAVELET1);
+
+    store.compact();
+
+    assertFalse(LogSegment.segmentFile(path, 1).exists());
+    assertTrue(LogSegment.segmentFile(path, 2).exists());
+    assertEquals(written, store.open(WAVE2_WAVELET1).getDelta(0));
+
+    DeltaStore reopened = newDeltaStore(1);
+    assertTrue(reopened.open(WAVE1_WAVELET1).isEmpty());
+    assertEquals(written, reopened.open(WAVE2_WAVELET1).getDelta(0));
+  }
+
+  public void testCompactionKeepsLiveRecords() throws Exception {
+    WaveletDeltaRecord written = createRecord();
+    int recordLength = LogRecord.encodeDelta(WAVE1_WAVELET1, written).remaining();
+    // Three records to a segment.
+    LogDeltaStore store = newDeltaStore(LogSegment.HEADER_LENGTH + 3 * recordLength);
+    append(store, WAVE1_WAVELET1, written);
+    append(store, WAVE1_WAVELET2, written);
+    append(store, WAVE2_WAVELET1, written);
+    append(store, WAVE3_WAVELET1, written);
+    store.delete(WAVE1_WAVELET1);
+    store.delete(WAVE1_WAVELET2);
+    long before = LogSegment.segmentFile(path, 1).length();
+
+    store.compact();
+
+    assertTrue(LogSegment.segmentFile(path, 1).length() < before);
+    assertEquals(written, store.open(WAVE2_WAVELET1).getDelta(0));
+    assertEquals(written, store.open(WAVE3_WAVELET1).getDelta(0));
+    assertTrue(store.lookup(WAVE1_WAVELET1.waveId).isEmpty());
+
+    DeltaStore reopened = newDeltaStore(LogSegment.HEADER_LENGTH + 3 * recordLength);
+    assertEquals(written, reopened.open(WAVE2_WAVELET1).getDelta(0));
+    assertEquals(written, reopened.open(WAVE3_WAVELET1).getDelta(0));
+    assertTrue(reopened.lookup(WAVE1_WAVELET1.waveId).isEmpty());
+  }
+
+  public void testAppendNotAtEndVersionFails() throws Exception {
+    DeltaStore store = newDeltaStore();
+    append(store, WAVE1_WAVELET1, createRecord());
+    try {
+      append(store, WAVE1_WAVELET1, createRecord());
+      fail();
+    } catch (IllegalStateException e) {
+      // Expected.
+    }
+  }
+
+  private static void append(DeltaStore store, WaveletName waveletName,
+      WaveletDeltaRecord record) throws Exception {
+    DeltasAccess wavelet = store.open(waveletName);
+    wavelet.append(ImmutableList.of(record));
+    wavelet.close();
+  }
+}
@@ -0,0 +1,101 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.waveprotocol.box.server.persistence.mongodb;
+
+import com.google.common.collect.ImmutableList;
+import com.mongodb.DB;
+
+import org.waveprotocol.box.common.ListReceiver;
+import org.waveprotocol.box.server.persistence.DeltaStoreTestBase;
+import org.waveprotocol.box.server.waveserver.DeltaStore;
+import org.waveprotocol.box.server.waveserver.WaveletDeltaRecord;
+import org.waveprotocol.wave.model.id.WaveId;
+import org.waveprotocol.wave.model.id.WaveletId;
+import org.waveprotocol.wave.model.id.WaveletName;
+
+/**
+ * Testcases for the {@link MongoDbDeltaStore}. Like the other MongoDB tests,
+ * these need a MongoDB server on localhost.
+ */
+public class DeltaStoreTest extends DeltaStoreTestBase {
+  private static final String TEST_DATABASE = "DeltaStoreTest";
+
+  private static final WaveletName WAVELET_NAME =
+      WaveletName.of(WaveId.of("example.com", "wave1"), WaveletId.of("example.com", "wavelet1"));
+
+  private final DB database;
+
+  public DeltaStoreTest() throws Exception {
+    MongoDbProvider mongoDbProvider = new MongoDbProvider("127.0.0.1", "27017", "wiab_test");
+    this.database = mongoDbProvider.getDatabaseForName(TEST_DATABASE);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    super.tearDown();
+    database.dropDatabase();
+  }
+
+  @Override
+  protected DeltaStore newDeltaStore() {
+    database.dropDatabase();
+    return new MongoDbDeltaStore(database);
+  }
+
+  public void testGetDeltaByEndVersion() throws Exception {
+    MongoDbDeltaCollection wavelet = appendRecord();
+    WaveletDeltaRecord record = wavelet.getDelta(0);
+    assertEquals(record,
+        wavelet.getDeltaByEndVersion(record.getResultingVersion().getVersion()));
+  }
+
+  public void testRepeatedLookupReturnsDelta() throws Exception {
+    MongoDbDeltaCollection wavelet = appendRecord();
+    WaveletDeltaRecord record = wavelet.getDelta(0);
+    assertEquals(record, wavelet.getDelta(0));
+    assertNull(wavelet.getDelta(record.getResultingVersion().getVersion()));
+  }
+
+  public void testReadDeltasStreamsRange() throws Exception {
+    MongoDbDeltaCollection wavelet = appendRecord();
+
+    ListReceiver<WaveletDeltaRecord> all = new ListReceiver<WaveletDeltaRecord>();
+    wavelet.readDeltas(0, Long.MAX_VALUE, 0, all);
+    assertEquals(1, all.size());
+    assertEquals(0, all.get(0).getTransformedDelta().getAppliedAtVersion());
+
+    ListReceiver<WaveletDeltaRecord> none = new ListReceiver<WaveletDeltaRecord>();
+    wavelet.readDeltas(1, Long.MAX_VALUE, 0, none);
+    assertTrue(none.isEmpty());
+  }
+
+  public void testAppendNothingDoesNotWrite() throws Exception {
+    DeltaStore store = newDeltaStore();
+    store.open(WAVELET_NAME).append(ImmutableList.<WaveletDeltaRecord>of());
+    assertTrue(store.open(WAVELET_NAME).isEmpty());
+  }
+
+  private MongoDbDeltaCollection appendRecord() throws Exception {
+    MongoDbDeltaCollection wavelet =
+        (MongoDbDeltaCollection) newDeltaStore().open(WAVELET_NAME);
+    wavelet.append(ImmutableList.of(createRecord()));
+    return wavelet;
+  }
+}
@@ -20,13 +20,14 @@
 package org.waveprotocol.box.server.robots.active;
 
 import static org.mockito.Matchers.any;
-import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.wave.api.OperationRequest;
 import com.google.wave.api.OperationType;
 import com.google.wave.api.ProtocolVersion;
@@ -42,6 +43,8 @@ import net.oauth.OAuthMessage;
 import net.oauth.OAuthServiceProvider;
 import net.oauth.OAuthValidator;
 
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.waveprotocol.box.server.account.RobotAccountDataImpl;
 import org.waveprotocol.box.server.persistence.AccountStore;
 import org.waveprotocol.box.server.robots.OperationContext;
@@ -53,8 +56,10 @@ import org.waveprotocol.wave.model.wave.ParticipantId;
 
 import java.io.BufferedReader;
 import java.io.PrintWriter;
+import java.io.Reader;
 import java.io.StringReader;
 import java.io.StringWriter;
+import java.io.Writer;
 import java.lang.reflect.Type;
 import java.util.Collections;
 import java.util.Enumeration;
@@ -109,7 +114,8 @@ public class ActiveApiServletTest extends TestCase {
 
     servlet =
         new ActiveApiServlet(robotSerializer, converterManager, waveletProvider, operationRegistry,
-            conversationUtil, oAuthServiceProvider, validator, accountStore);
+            conversationUtil, oAuthServiceProvider, validator, accountStore,
+            MoreExecutors.sameThreadExecutor());
   }
 
   public void testDoPostExecutesAndWritesResponse() throws Exception {
@@ -119,10 +125,16 @@ public class ActiveApiServletTest extends TestCase {
     String operationId = "op1";
     OperationRequest operation = new OperationRequest("wavelet.create", operationId);
     List<OperationRequest> operations = Collections.singletonList(operation);
-    when(robotSerializer.deserializeOperations(anyString())).thenReturn(operations);
-    String responseValue = "response value";
-    when(robotSerializer.serialize(any(), any(Type.class), any(ProtocolVersion.class))).thenReturn(
-        responseValue);
+    when(robotSerializer.deserializeOperations(any(Reader.class))).thenReturn(operations);
+    final String responseValue = "response value";
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) throws Throwable {
+        ((Writer) invocation.getArguments()[3]).write(responseValue);
+        return null;
+      }
+    }).when(robotSerializer).serializeList(any(Iterable.class), any(Type.class),
+        any(ProtocolVersion.class), any(Writer.class));
 
     OperationService service = mock(OperationService.class);
     when(operationRegistry.getServiceFor(any(OperationType.class))).thenReturn(service);
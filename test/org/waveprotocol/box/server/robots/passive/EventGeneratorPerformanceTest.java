@@ -0,0 +1,171 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.waveprotocol.box.server.robots.passive;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.wave.api.data.converter.EventDataConverter;
+import com.google.wave.api.data.converter.v22.EventDataConverterV22;
+import com.google.wave.api.event.EventType;
+import com.google.wave.api.robot.Capability;
+import com.google.wave.api.robot.RobotName;
+
+import org.waveprotocol.box.common.DeltaSequence;
+import org.waveprotocol.box.server.robots.RobotsTestBase;
+import org.waveprotocol.box.server.robots.util.ConversationUtil;
+import org.waveprotocol.wave.model.conversation.ConversationBlip;
+import org.waveprotocol.wave.model.conversation.WaveletBasedConversation;
+import org.waveprotocol.wave.model.document.util.LineContainers;
+import org.waveprotocol.wave.model.document.util.XmlStringBuilder;
+import org.waveprotocol.wave.model.id.IdURIEncoderDecoder;
+import org.waveprotocol.wave.model.operation.CapturingOperationSink;
+import org.waveprotocol.wave.model.operation.SilentOperationSink;
+import org.waveprotocol.wave.model.operation.wave.TransformedWaveletDelta;
+import org.waveprotocol.wave.model.operation.wave.WaveletDelta;
+import org.waveprotocol.wave.model.operation.wave.WaveletOperation;
+import org.waveprotocol.wave.model.operation.wave.WaveletOperationContext;
+import org.waveprotocol.wave.model.schema.SchemaCollection;
+import org.waveprotocol.wave.model.testing.FakeIdGenerator;
+import org.waveprotocol.wave.model.version.HashedVersion;
+import org.waveprotocol.wave.model.version.HashedVersionFactory;
+import org.waveprotocol.wave.model.version.HashedVersionFactoryImpl;
+import org.waveprotocol.wave.model.wave.ParticipantId;
+import org.waveprotocol.wave.model.wave.ParticipationHelper;
+import org.waveprotocol.wave.model.wave.data.DocumentFactory;
+import org.waveprotocol.wave.model.wave.data.ObservableWaveletData;
+import org.waveprotocol.wave.model.wave.data.WaveletData;
+import org.waveprotocol.wave.model.wave.data.impl.EmptyWaveletSnapshot;
+import org.waveprotocol.wave.model.wave.data.impl.ObservablePluggableMutableDocument;
+import org.waveprotocol.wave.model.wave.data.impl.WaveletDataImpl;
+import org.waveprotocol.wave.model.wave.opbased.OpBasedWavelet;
+import org.waveprotocol.wave.util.escapers.jvm.JavaUrlCodec;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Performance tests for the {@link EventGenerator}, comparing the cost of
+ * generating events for a growing number of robots on one wavelet with and
+ * without a shared {@link DeltaEventExtractor}.
+ */
+public class EventGeneratorPerformanceTest extends RobotsTestBase {
+
+  private static final EventDataConverter CONVERTER = new EventDataConverterV22();
+  private static final HashedVersionFactory HASH_FACTORY =
+      new HashedVersionFactoryImpl(new IdURIEncoderDecoder(new JavaUrlCodec()));
+  private static final DocumentFactory<?> DOCUMENT_FACTORY =
+      ObservablePluggableMutableDocument.createFactory(SchemaCollection.empty());
+  private static final Map<EventType, Capability> CAPABILITIES = ImmutableMap.of(
+      EventType.DOCUMENT_CHANGED, new Capability(EventType.DOCUMENT_CHANGED),
+      EventType.WAVELET_BLIP_CREATED, new Capability(EventType.WAVELET_BLIP_CREATED));
+
+  private static final int[] ROBOT_COUNTS = {1, 5, 25};
+  private static final int EDITS = 200;
+  private static final int REPS = 20;
+
+  private ConversationUtil conversationUtil;
+  private ObservableWaveletData waveletData;
+  private DeltaSequence deltas;
+
+  @Override
+  protected void setUp() throws Exception {
+    conversationUtil = new ConversationUtil(FakeIdGenerator.create());
+    waveletData = WaveletDataImpl.Factory.create(DOCUMENT_FACTORY).create(
+        new EmptyWaveletSnapshot(WAVELET_NAME.waveId, WAVELET_NAME.waveletId, ALEX,
+            HASH_FACTORY.createVersionZero(WAVELET_NAME), 0L));
+    waveletData.addParticipant(ALEX);
+    for (int i = 0; i < ROBOT_COUNTS[ROBOT_COUNTS.length - 1]; i++) {
+      waveletData.addParticipant(ParticipantId.ofUnsafe(robotName(i).toParticipantAddress()));
+    }
+
+    CapturingOperationSink<WaveletOperation> output =
+        new CapturingOperationSink<WaveletOperation>();
+    OpBasedWavelet wavelet = new OpBasedWavelet(waveletData.getWaveId(), waveletData,
+        new WaveletOperationContext.Factory() {
+          @Override
+          public WaveletOperationContext createContext() {
+            return new WaveletOperationContext(ALEX, 0L, 1);
+          }
+
+          @Override
+          public WaveletOperationContext createContext(ParticipantId creator) {
+            throw new UnsupportedOperationException();
+          }
+        }, ParticipationHelper.DEFAULT,
+        SilentOperationSink.Executor.<WaveletOperation, WaveletData>build(waveletData), output);
+    WaveletBasedConversation.makeWaveletConversational(wavelet);
+    conversationUtil.buildConversation(wavelet).getRoot().getRootThread().appendBlip();
+    output.clear();
+
+    // One delta per edit, as produced by a busy typing session.
+    List<TransformedWaveletDelta> typing = Lists.newArrayList();
+    for (int i = 0; i < EDITS; i++) {
+      ConversationBlip blip = (i % 10 == 0)
+          ? conversationUtil.buildConversation(wavelet).getRoot().getRootThread().appendBlip()
+          : conversationUtil.buildConversation(wavelet).getRoot().getRootThread().getFirstBlip();
+      LineContainers.appendToLastLine(blip.getContent(), XmlStringBuilder.createText("x"));
+      List<WaveletOperation> ops = Lists.newArrayList(output.getOps());
+      HashedVersion endVersion = HashedVersion.unsigned(waveletData.getVersion());
+      typing.add(TransformedWaveletDelta.cloneOperations(endVersion, 0L,
+          new WaveletDelta(ALEX, HashedVersion.unsigned(endVersion.getVersion() - ops.size()),
+              ops)));
+      output.clear();
+    }
+    deltas = DeltaSequence.of(typing);
+  }
+
+  public void testEventGenerationPerRobotCount() throws Exception {
+    for (int robots : ROBOT_COUNTS) {
+      long unshared = timeGeneration(robots, false);
+      long shared = timeGeneration(robots, true);
+      System.err.println(robots + " robots, millis per update: unshared "
+          + (((float) unshared) / REPS) + ", shared " + (((float) shared) / REPS));
+    }
+  }
+
+  /**
+   * Returns the milliseconds taken to generate events for the given number of
+   * robots {@code REPS} times.
+   */
+  private long timeGeneration(int robots, boolean shared) throws Exception {
+    List<WaveletAndDeltas> queued = Lists.newArrayList();
+    for (int i = 0; i < robots; i++) {
+      queued.add(WaveletAndDeltas.create(waveletData, deltas));
+    }
+
+    long startTime = System.currentTimeMillis();
+    for (int rep = 0; rep < REPS; rep++) {
+      DeltaEventExtractor sharedExtractor = new DeltaEventExtractor(conversationUtil);
+      for (int i = 0; i < robots; i++) {
+        DeltaEventExtractor extractor =
+            shared ? sharedExtractor : new DeltaEventExtractor(conversationUtil);
+        EventGenerator generator = new EventGenerator(robotName(i), extractor);
+        // The test is that this doesn't time out.
+        assertFalse(generator.generateEvents(queued.get(i), CAPABILITIES, CONVERTER)
+            .getEvents().isEmpty());
+      }
+    }
+    return System.currentTimeMillis() - startTime;
+  }
+
+  private static RobotName robotName(int i) {
+    return RobotName.fromAddress("robot" + i + "@example.com");
+  }
+}
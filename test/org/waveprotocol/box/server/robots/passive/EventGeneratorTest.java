@@ -419,6 +419,40 @@ public class EventGeneratorTest extends RobotsTestBase {
         EventType.WAVELET_BLIP_CREATED, EventType.WAVELET_SELF_REMOVED);
   }
 
+  public void testRobotsShareExtractedEvents() throws Exception {
+    RobotName otherRobot = RobotName.fromAddress("otherrobot@example.com");
+    waveletData.addParticipant(ParticipantId.ofUnsafe(otherRobot.toParticipantAddress()));
+
+    ConversationBlip rootBlip =
+        conversationUtil.buildConversation(wavelet).getRoot().getRootThread().getFirstBlip();
+    XmlStringBuilder builder = XmlStringBuilder.createText("some random content");
+    LineContainers.appendToLastLine(rootBlip.getContent(), builder);
+    wavelet.addParticipant(BOB);
+
+    List<WaveletOperation> ops = output.getOps();
+    HashedVersion endVersion = HashedVersion.unsigned(waveletData.getVersion());
+    TransformedWaveletDelta delta = makeDeltaFromCapturedOps(ALEX, ops, endVersion, 0L);
+
+    DeltaEventExtractor extractor = new DeltaEventExtractor(conversationUtil);
+    EventGenerator first = new EventGenerator(ROBOT_NAME, extractor);
+    EventGenerator second = new EventGenerator(otherRobot, extractor);
+
+    // Every robot queues its own copy of the same update.
+    EventMessageBundle firstMessages = first.generateEvents(
+        WaveletAndDeltas.create(waveletData, DeltaSequence.of(delta)), ALL_CAPABILITIES,
+        CONVERTER);
+    EventMessageBundle secondMessages = second.generateEvents(
+        WaveletAndDeltas.create(waveletData, DeltaSequence.of(delta)),
+        ImmutableMap.of(EventType.DOCUMENT_CHANGED, new Capability(EventType.DOCUMENT_CHANGED)),
+        CONVERTER);
+
+    assertEquals("Expected one shared replay", 1, extractor.cachedExtractionCount());
+    checkEventTypeWasGenerated(firstMessages, EventType.DOCUMENT_CHANGED,
+        EventType.WAVELET_PARTICIPANTS_CHANGED);
+    assertEquals("Expected only the subscribed event", 1, secondMessages.getEvents().size());
+    checkEventTypeWasGenerated(secondMessages, EventType.DOCUMENT_CHANGED);
+  }
+
   // Helper Methods.
 
   /**
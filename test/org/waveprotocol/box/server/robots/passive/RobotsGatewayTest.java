@@ -22,20 +22,26 @@ package org.waveprotocol.box.server.robots.passive;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import com.google.common.collect.ImmutableSet;
 import com.google.wave.api.RobotSerializer;
 import com.google.wave.api.data.converter.EventDataConverterManager;
 import com.google.wave.api.robot.RobotName;
 
 import junit.framework.TestCase;
 
+import org.waveprotocol.box.common.DeltaSequence;
+import org.waveprotocol.box.server.account.AccountData;
 import org.waveprotocol.box.server.account.RobotAccountData;
 import org.waveprotocol.box.server.persistence.AccountStore;
 import org.waveprotocol.box.server.robots.operations.NotifyOperationService;
 import org.waveprotocol.box.server.robots.util.ConversationUtil;
 import org.waveprotocol.box.server.waveserver.WaveletProvider;
+import org.waveprotocol.wave.model.wave.ParticipantId;
+import org.waveprotocol.wave.model.wave.data.ReadableWaveletData;
 import org.waveprotocol.wave.testing.DeferredExecutor;
 
 /**
@@ -45,6 +51,8 @@ import org.waveprotocol.wave.testing.DeferredExecutor;
  */
 public class RobotsGatewayTest extends TestCase {
 
+  private static final ParticipantId ROBOT = ParticipantId.ofUnsafe("robot@example.com");
+
   private WaveletProvider waveletProvider;
   private RobotConnector robotConnector;
   private AccountStore accountStore;
@@ -100,4 +108,32 @@ public class RobotsGatewayTest extends TestCase {
 
     verify(accountStore).putAccount(newAccount);
   }
+
+  public void testMissingAccountIsLookedUpAgain() throws Exception {
+    ReadableWaveletData wavelet = mock(ReadableWaveletData.class);
+    when(wavelet.getParticipants()).thenReturn(ImmutableSet.of(ROBOT));
+
+    gateway.waveletUpdate(wavelet, DeltaSequence.empty());
+    gateway.waveletUpdate(wavelet, DeltaSequence.empty());
+
+    verify(accountStore, times(2)).getAccount(ROBOT);
+  }
+
+  public void testUnregistrationDropsCachedAccount() throws Exception {
+    ReadableWaveletData wavelet = mock(ReadableWaveletData.class);
+    when(wavelet.getParticipants()).thenReturn(ImmutableSet.of(ROBOT));
+    AccountData account = mock(AccountData.class);
+    when(accountStore.getAccount(ROBOT)).thenReturn(account);
+
+    gateway.waveletUpdate(wavelet, DeltaSequence.empty());
+    gateway.waveletUpdate(wavelet, DeltaSequence.empty());
+    verify(accountStore, times(1)).getAccount(ROBOT);
+
+    RobotAccountData robotAccount = mock(RobotAccountData.class);
+    when(robotAccount.getId()).thenReturn(ROBOT);
+    gateway.onUnregistrationSuccess(robotAccount);
+    gateway.waveletUpdate(wavelet, DeltaSequence.empty());
+
+    verify(accountStore, times(2)).getAccount(ROBOT);
+  }
 }
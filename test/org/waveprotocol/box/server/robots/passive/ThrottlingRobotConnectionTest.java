@@ -0,0 +1,147 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.waveprotocol.box.server.robots.passive;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.wave.api.robot.HttpRobotConnection;
+import com.google.wave.api.robot.RobotConnection;
+import com.google.wave.api.robot.RobotConnectionException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests for the {@link ThrottlingRobotConnection}, partly against a local
+ * stub robot http server.
+ */
+public class ThrottlingRobotConnectionTest extends TestCase {
+
+  private static final String RESPONSE = "[]";
+  private static final int MAX_CONCURRENT_REQUESTS = 2;
+  private static final int REQUESTS = 8;
+
+  private HttpServer server;
+  private ExecutorService executor;
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final AtomicInteger maxInFlight = new AtomicInteger();
+
+  @Override
+  protected void setUp() throws Exception {
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext(Robot.RPC_URL, new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        int current = inFlight.incrementAndGet();
+        int max = maxInFlight.get();
+        while (current > max && !maxInFlight.compareAndSet(max, current)) {
+          max = maxInFlight.get();
+        }
+        try {
+          Thread.sleep(50);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        inFlight.decrementAndGet();
+        byte[] body = RESPONSE.getBytes(Charsets.UTF_8);
+        exchange.sendResponseHeaders(200, body.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(body);
+        out.close();
+      }
+    });
+    server.setExecutor(Executors.newCachedThreadPool());
+    server.start();
+    executor = Executors.newFixedThreadPool(REQUESTS);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    server.stop(0);
+    executor.shutdownNow();
+  }
+
+  public void testLimitsRequestsInFlightPerEndpoint() throws Exception {
+    HttpClient httpClient = new HttpClient(new MultiThreadedHttpConnectionManager());
+    final ThrottlingRobotConnection connection = new ThrottlingRobotConnection(
+        new HttpRobotConnection(httpClient, executor), MAX_CONCURRENT_REQUESTS, 10000);
+    final String url = "http://localhost:" + server.getAddress().getPort() + Robot.RPC_URL;
+
+    // Every robot runner thread posts at the same time.
+    List<Future<String>> responses = Lists.newArrayList();
+    for (int i = 0; i < REQUESTS; i++) {
+      responses.add(executor.submit(new Callable<String>() {
+        @Override
+        public String call() throws RobotConnectionException {
+          return connection.postJson(url, "{}");
+        }
+      }));
+    }
+    for (Future<String> response : responses) {
+      assertEquals(RESPONSE, response.get());
+    }
+
+    assertTrue("At most " + MAX_CONCURRENT_REQUESTS + " requests may be in flight, saw "
+        + maxInFlight.get(), maxInFlight.get() <= MAX_CONCURRENT_REQUESTS);
+    assertEquals(0, connection.getRequestsInFlight(url));
+    String endpoint = "localhost:" + server.getAddress().getPort();
+    assertEquals(REQUESTS, connection.getLatencies().get(endpoint).getCount());
+  }
+
+  public void testFailsWhenEndpointStaysBusy() throws Exception {
+    RobotConnection delegate = mock(RobotConnection.class);
+    SettableFuture<String> pending = SettableFuture.create();
+    when(delegate.asyncPostJson("http://robot.example.com/rpc", "{}")).thenReturn(pending);
+    ThrottlingRobotConnection connection = new ThrottlingRobotConnection(delegate, 1, 10);
+
+    ListenableFuture<String> first = connection.asyncPostJson("http://robot.example.com/rpc", "{}");
+    assertEquals(1, connection.getRequestsInFlight("http://robot.example.com/other"));
+    try {
+      connection.postJson("http://robot.example.com/rpc", "{}");
+      fail("Expected the second request to time out waiting for a slot");
+    } catch (RobotConnectionException e) {
+      // Expected.
+    }
+
+    pending.set(RESPONSE);
+    assertEquals(RESPONSE, first.get());
+    assertEquals(0, connection.getRequestsInFlight("http://robot.example.com/rpc"));
+  }
+}
@@ -0,0 +1,155 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.waveprotocol.box.server.robots.util;
+
+import static org.mockito.Mockito.mock;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.wave.api.JsonRpcConstant.ParamsProperty;
+import com.google.wave.api.OperationRequest;
+import com.google.wave.api.OperationRequest.Parameter;
+import com.google.wave.api.OperationType;
+import com.google.wave.api.data.converter.v22.EventDataConverterV22;
+
+import org.waveprotocol.box.server.robots.AbstractOperationServiceRegistry;
+import org.waveprotocol.box.server.robots.OperationContextImpl;
+import org.waveprotocol.box.server.robots.OperationServiceRegistry;
+import org.waveprotocol.box.server.robots.RobotWaveletData;
+import org.waveprotocol.box.server.robots.RobotsTestBase;
+import org.waveprotocol.box.server.robots.operations.WaveletSetTitleService;
+import org.waveprotocol.box.server.waveserver.WaveletProvider;
+import org.waveprotocol.wave.model.conversation.WaveletBasedConversation;
+import org.waveprotocol.wave.model.id.IdURIEncoderDecoder;
+import org.waveprotocol.wave.model.id.WaveletId;
+import org.waveprotocol.wave.model.id.WaveletName;
+import org.waveprotocol.wave.model.operation.SilentOperationSink;
+import org.waveprotocol.wave.model.operation.wave.BasicWaveletOperationContextFactory;
+import org.waveprotocol.wave.model.operation.wave.WaveletOperation;
+import org.waveprotocol.wave.model.testing.BasicFactories;
+import org.waveprotocol.wave.model.testing.FakeIdGenerator;
+import org.waveprotocol.wave.model.version.HashedVersionFactory;
+import org.waveprotocol.wave.model.version.HashedVersionFactoryImpl;
+import org.waveprotocol.wave.model.wave.ParticipationHelper;
+import org.waveprotocol.wave.model.wave.data.ObservableWaveletData;
+import org.waveprotocol.wave.model.wave.data.WaveletData;
+import org.waveprotocol.wave.model.wave.data.impl.EmptyWaveletSnapshot;
+import org.waveprotocol.wave.model.wave.data.impl.WaveletDataImpl;
+import org.waveprotocol.wave.model.wave.opbased.OpBasedWavelet;
+import org.waveprotocol.wave.util.escapers.jvm.JavaUrlCodec;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Performance tests for executing a large bundle of robot operations spread
+ * over several wavelets, on the request thread and in parallel per wavelet.
+ */
+public class OperationBundlePerformanceTest extends RobotsTestBase {
+
+  private static final HashedVersionFactory HASH_FACTORY =
+      new HashedVersionFactoryImpl(new IdURIEncoderDecoder(new JavaUrlCodec()));
+
+  private static final int WAVELETS = 8;
+  private static final int OPERATIONS = 2000;
+  private static final int THREADS = 4;
+  private static final int REPS = 10;
+
+  private static final OperationServiceRegistry REGISTRY = new AbstractOperationServiceRegistry() {
+    {
+      register(OperationType.WAVELET_SET_TITLE, WaveletSetTitleService.create());
+    }
+  };
+
+  private ConversationUtil conversationUtil;
+  private List<WaveletName> waveletNames;
+  private List<OperationRequest> bundle;
+
+  @Override
+  protected void setUp() throws Exception {
+    conversationUtil = new ConversationUtil(FakeIdGenerator.create());
+    waveletNames = Lists.newArrayList();
+    for (int i = 0; i < WAVELETS; i++) {
+      waveletNames.add(WaveletName.of(WAVE_ID, WaveletId.of("example.com", "conv+w" + i)));
+    }
+    bundle = Lists.newArrayList();
+    for (int i = 0; i < OPERATIONS; i++) {
+      WaveletName waveletName = waveletNames.get(i % WAVELETS);
+      bundle.add(new OperationRequest(OperationType.WAVELET_SET_TITLE.method(), "op" + i,
+          s(waveletName.waveId), s(waveletName.waveletId),
+          Parameter.of(ParamsProperty.WAVELET_TITLE, "Title " + i)));
+    }
+  }
+
+  public void testBundleExecution() throws Exception {
+    ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+    try {
+      long sequential = timeBundle(MoreExecutors.sameThreadExecutor());
+      long parallel = timeBundle(pool);
+      System.err.println(OPERATIONS + " ops on " + WAVELETS + " wavelets, millis per bundle: "
+          + "sequential " + (((float) sequential) / REPS) + ", parallel "
+          + (((float) parallel) / REPS));
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  /**
+   * Returns the milliseconds taken to execute the bundle {@code REPS} times.
+   */
+  private long timeBundle(Executor executor) {
+    long total = 0;
+    for (int rep = 0; rep < REPS; rep++) {
+      OperationContextImpl context = createContext();
+      long startTime = System.currentTimeMillis();
+      OperationUtil.executeOperations(bundle, REGISTRY, context, ALEX, executor);
+      total += System.currentTimeMillis() - startTime;
+      // Failed operations would have left an error response.
+      assertTrue(context.getResponses().isEmpty());
+    }
+    return total;
+  }
+
+  /**
+   * Creates a context with an empty conversational wavelet per wavelet name.
+   */
+  private OperationContextImpl createContext() {
+    OperationContextImpl context = new OperationContextImpl(
+        mock(WaveletProvider.class), new EventDataConverterV22(), conversationUtil);
+    for (WaveletName waveletName : waveletNames) {
+      ObservableWaveletData waveletData = WaveletDataImpl.Factory.create(
+          BasicFactories.observablePluggableMutableDocumentFactory()).create(
+              new EmptyWaveletSnapshot(waveletName.waveId, waveletName.waveletId, ALEX,
+                  HASH_FACTORY.createVersionZero(waveletName), 0L));
+      waveletData.addParticipant(ALEX);
+      OpBasedWavelet wavelet = new OpBasedWavelet(waveletData.getWaveId(), waveletData,
+          new BasicWaveletOperationContextFactory(ALEX), ParticipationHelper.DEFAULT,
+          SilentOperationSink.Executor.<WaveletOperation, WaveletData>build(waveletData),
+          SilentOperationSink.VOID);
+      WaveletBasedConversation.makeWaveletConversational(wavelet);
+      conversationUtil.buildConversation(wavelet).getRoot().getRootThread().appendBlip();
+      context.putWavelet(waveletName.waveId, waveletName.waveletId,
+          new RobotWaveletData(waveletData, HASH_FACTORY.createVersionZero(waveletName)));
+    }
+    return context;
+  }
+}
@@ -26,6 +26,7 @@ import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import com.google.common.collect.Lists;
 import com.google.wave.api.InvalidRequestException;
 import com.google.wave.api.OperationRequest;
 import com.google.wave.api.OperationType;
@@ -35,6 +36,7 @@ import com.google.wave.api.OperationRequest.Parameter;
 import com.google.wave.api.data.converter.EventDataConverter;
 
 import org.mockito.internal.stubbing.answers.ThrowsException;
+import org.waveprotocol.box.server.robots.OperationContext;
 import org.waveprotocol.box.server.robots.OperationContextImpl;
 import org.waveprotocol.box.server.robots.OperationResults;
 import org.waveprotocol.box.server.robots.OperationServiceRegistry;
@@ -48,6 +50,7 @@ import org.waveprotocol.wave.federation.Proto.ProtocolWaveletDelta;
 import org.waveprotocol.wave.model.document.operation.DocInitialization;
 import org.waveprotocol.wave.model.document.operation.impl.DocInitializationBuilder;
 import org.waveprotocol.wave.model.id.IdURIEncoderDecoder;
+import org.waveprotocol.wave.model.id.WaveletId;
 import org.waveprotocol.wave.model.version.HashedVersion;
 import org.waveprotocol.wave.model.version.HashedVersionFactory;
 import org.waveprotocol.wave.model.version.HashedVersionZeroFactoryImpl;
@@ -55,7 +58,10 @@ import org.waveprotocol.wave.model.wave.ParticipantId;
 import org.waveprotocol.wave.model.wave.data.ObservableWaveletData;
 import org.waveprotocol.wave.util.escapers.jvm.JavaUrlCodec;
 
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
 
 /**
  * Unit tests for {@link OperationUtil}.
@@ -163,6 +169,45 @@ public class OperationUtilTest extends RobotsTestBase {
     assertTrue("Expected an error response", context.getResponse(operationId).isError());
   }
 
+  public void testExecuteOperationsGroupsOperationsPerWavelet() throws Exception {
+    final List<String> executed = Collections.synchronizedList(Lists.<String>newArrayList());
+    OperationService service = new OperationService() {
+      @Override
+      public void execute(
+          OperationRequest operation, OperationContext context, ParticipantId participant) {
+        executed.add(operation.getId());
+      }
+    };
+    when(operationRegistry.getServiceFor(any(OperationType.class))).thenReturn(service);
+    final List<Runnable> submitted = Lists.newArrayList();
+    Executor executor = new Executor() {
+      @Override
+      public void execute(Runnable command) {
+        submitted.add(command);
+        command.run();
+      }
+    };
+
+    WaveletId otherWaveletId = WaveletId.of("example.com", "conv+other");
+    List<OperationRequest> operations = Lists.newArrayList(
+        new OperationRequest(OperationType.DOCUMENT_MODIFY.method(), "a1", s(WAVE_ID),
+            s(WAVELET_ID)),
+        new OperationRequest(OperationType.DOCUMENT_MODIFY.method(), "b1", s(WAVE_ID),
+            s(otherWaveletId)),
+        new OperationRequest(OperationType.BLIP_DELETE.method(), "a2", s(WAVE_ID),
+            s(WAVELET_ID)),
+        new OperationRequest(OperationType.ROBOT_CREATE_WAVELET.method(), "create"),
+        new OperationRequest(OperationType.DOCUMENT_MODIFY.method(), "b2", s(WAVE_ID),
+            s(otherWaveletId)));
+
+    OperationUtil.executeOperations(operations, operationRegistry, context, ALEX, executor);
+
+    // The first wavelet is handed to the executor, the other one runs on the
+    // calling thread, and the create is a barrier.
+    assertEquals(Arrays.asList("a1", "a2", "b1", "create", "b2"), executed);
+    assertEquals(1, submitted.size());
+  }
+
   public void testSubmitDeltas() {
     HashedVersion hashedVersionZero = HASH_FACTORY.createVersionZero(WAVELET_NAME);
     ObservableWaveletData waveletData = WaveletDataUtil.createEmptyWavelet(WAVELET_NAME, ALEX,
@@ -0,0 +1,83 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.waveprotocol.box.server.rpc;
+
+import junit.framework.TestCase;
+
+import org.waveprotocol.box.server.rpc.AttachmentServlet.ByteRange;
+
+/**
+ * Tests for the range and validator handling of {@link AttachmentServlet}.
+ */
+public class AttachmentServletTest extends TestCase {
+
+  private static final long SIZE = 1000;
+
+  public void testNoRangeSendsEverything() {
+    assertNull(ByteRange.parse(null, SIZE));
+  }
+
+  public void testClosedRange() {
+    assertRange(0, 500, ByteRange.parse("bytes=0-499", SIZE));
+    assertRange(500, 500, ByteRange.parse("bytes=500-999", SIZE));
+  }
+
+  public void testRangeEndIsClippedToSize() {
+    assertRange(900, 100, ByteRange.parse("bytes=900-5000", SIZE));
+  }
+
+  public void testOpenRange() {
+    assertRange(100, 900, ByteRange.parse("bytes=100-", SIZE));
+  }
+
+  public void testSuffixRange() {
+    assertRange(800, 200, ByteRange.parse("bytes=-200", SIZE));
+    assertRange(0, SIZE, ByteRange.parse("bytes=-5000", SIZE));
+  }
+
+  public void testRangePastEndIsUnsatisfiable() {
+    assertSame(ByteRange.UNSATISFIABLE, ByteRange.parse("bytes=1000-", SIZE));
+    assertSame(ByteRange.UNSATISFIABLE, ByteRange.parse("bytes=-0", SIZE));
+    assertSame(ByteRange.UNSATISFIABLE, ByteRange.parse("bytes=-10", 0));
+  }
+
+  public void testMalformedOrMultipleRangesAreIgnored() {
+    assertNull(ByteRange.parse("items=0-10", SIZE));
+    assertNull(ByteRange.parse("bytes=abc", SIZE));
+    assertNull(ByteRange.parse("bytes=10-5", SIZE));
+    assertNull(ByteRange.parse("bytes=0-1,5-6", SIZE));
+  }
+
+  public void testEtagMatches() {
+    String etag = "\"a:example.com/abc\"";
+    assertTrue(AttachmentServlet.etagMatches(etag, etag));
+    assertTrue(AttachmentServlet.etagMatches("\"x\", " + etag, etag));
+    assertTrue(AttachmentServlet.etagMatches("W/" + etag, etag));
+    assertTrue(AttachmentServlet.etagMatches("*", etag));
+    assertFalse(AttachmentServlet.etagMatches("\"t:example.com/abc\"", etag));
+    assertFalse(AttachmentServlet.etagMatches(null, etag));
+  }
+
+  private static void assertRange(long start, long length, ByteRange range) {
+    assertNotNull(range);
+    assertEquals(start, range.start);
+    assertEquals(length, range.length);
+  }
+}
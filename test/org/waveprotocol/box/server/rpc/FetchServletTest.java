@@ -42,6 +42,7 @@ import org.waveprotocol.box.server.persistence.memory.MemoryStore;
 import org.waveprotocol.box.server.util.TestDataUtil;
 import org.waveprotocol.wave.model.id.WaveId;
 import org.waveprotocol.wave.model.id.WaveletId;
+import org.waveprotocol.wave.model.version.HashedVersion;
 import org.waveprotocol.wave.model.wave.ParticipantId;
 import org.waveprotocol.wave.model.wave.data.BlipData;
 import org.waveprotocol.wave.model.wave.data.WaveletData;
@@ -153,14 +154,91 @@ public class FetchServletTest extends TestCase {
     }
   }
 
+  public void testResponseIsTaggedWithWaveletVersion() throws Exception {
+    WaveletData wavelet = waveletProvider.getHostedWavelet();
+    HttpServletResponse response = mock(HttpServletResponse.class);
+    when(response.getWriter()).thenReturn(new PrintWriter(new StringWriter()));
+
+    requestWaveRef(WaveRef.of(wavelet.getWaveId(), wavelet.getWaveletId()), null, response);
+
+    verify(response).setHeader("ETag", FetchServlet.getEntityTag(wavelet.getHashedVersion()));
+    verify(response).setHeader("Cache-Control", "private, max-age=0, must-revalidate");
+  }
+
+  public void testMatchingEntityTagReturnsNotModified() throws Exception {
+    WaveletData wavelet = waveletProvider.getHostedWavelet();
+    HttpServletResponse response = mock(HttpServletResponse.class);
+
+    requestWaveRef(WaveRef.of(wavelet.getWaveId(), wavelet.getWaveletId()),
+        FetchServlet.getEntityTag(wavelet.getHashedVersion()), response);
+
+    verify(response).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+    verify(response, never()).getWriter();
+  }
+
+  public void testStaleEntityTagReturnsSnapshot() throws Exception {
+    WaveletData wavelet = waveletProvider.getHostedWavelet();
+    HashedVersion oldVersion = wavelet.getHashedVersion();
+    bumpVersion(wavelet);
+    HttpServletResponse response = mock(HttpServletResponse.class);
+    when(response.getWriter()).thenReturn(new PrintWriter(new StringWriter()));
+
+    requestWaveRef(WaveRef.of(wavelet.getWaveId(), wavelet.getWaveletId()),
+        FetchServlet.getEntityTag(oldVersion), response);
+
+    verify(response).setStatus(HttpServletResponse.SC_OK);
+    verify(response).setHeader("ETag", FetchServlet.getEntityTag(wavelet.getHashedVersion()));
+  }
+
+  public void testSnapshotIsEncodedOncePerVersion() throws Exception {
+    WaveletData wavelet = waveletProvider.getHostedWavelet();
+    WaveRef waveref = WaveRef.of(wavelet.getWaveId(), wavelet.getWaveletId());
+    String first = fetchWaveRef(waveref);
+
+    // A change that doesn't move the version isn't seen, as the snapshot
+    // encoded at that version is served again.
+    wavelet.addParticipant(ParticipantId.ofUnsafe("cached@example.com"));
+    assertEquals(first, fetchWaveRef(waveref));
+
+    bumpVersion(wavelet);
+    assertFalse(first.equals(fetchWaveRef(waveref)));
+  }
+
+  public void testMatchesEntityTag() {
+    String etag = FetchServlet.getEntityTag(HashedVersion.unsigned(7));
+    assertTrue(FetchServlet.matchesEntityTag(etag, etag));
+    assertTrue(FetchServlet.matchesEntityTag("W/" + etag, etag));
+    assertTrue(FetchServlet.matchesEntityTag("\"other\", " + etag, etag));
+    assertTrue(FetchServlet.matchesEntityTag("*", etag));
+    assertFalse(FetchServlet.matchesEntityTag(null, etag));
+    assertFalse(FetchServlet.matchesEntityTag(
+        FetchServlet.getEntityTag(HashedVersion.unsigned(6)), etag));
+  }
+
   // ** Helper methods
 
+  private static void bumpVersion(WaveletData wavelet) {
+    HashedVersion version = wavelet.getHashedVersion();
+    wavelet.setVersion(version.getVersion() + 1);
+    wavelet.setHashedVersion(HashedVersion.of(version.getVersion() + 1, new byte[] {1, 2, 3}));
+  }
+
   /**
    * Fetch the given waveref from the servlet.
    */
   private void requestWaveRef(WaveRef waveref, HttpServletResponse response) throws Exception {
+    requestWaveRef(waveref, null, response);
+  }
+
+  /**
+   * Fetch the given waveref from the servlet, with an If-None-Match header if
+   * ifNoneMatch isn't null.
+   */
+  private void requestWaveRef(WaveRef waveref, String ifNoneMatch, HttpServletResponse response)
+      throws Exception {
     HttpServletRequest request = mock(HttpServletRequest.class);
     when(request.getPathInfo()).thenReturn("/" + JavaWaverefEncoder.encodeToUriPathSegment(waveref));
+    when(request.getHeader("If-None-Match")).thenReturn(ifNoneMatch);
     servlet.doGet(request, response);
   }
 
@@ -0,0 +1,98 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.waveprotocol.box.server.stat;
+
+import com.google.common.base.Ticker;
+
+import junit.framework.TestCase;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for {@link WindowedHistogram} and the {@link LatencyHistogram}s it is
+ * made of.
+ */
+public class WindowedHistogramTest extends TestCase {
+
+  private static class ManualTicker extends Ticker {
+    long nanos = TimeUnit.HOURS.toNanos(1);
+
+    @Override
+    public long read() {
+      return nanos;
+    }
+  }
+
+  private ManualTicker ticker;
+  private WindowedHistogram histogram;
+
+  @Override
+  protected void setUp() throws Exception {
+    ticker = new ManualTicker();
+    histogram = new WindowedHistogram(3, 1, TimeUnit.SECONDS, ticker);
+  }
+
+  public void testPercentilesAreWithinAQuarter() {
+    for (int i = 1; i <= 1000; i++) {
+      histogram.record(TimeUnit.MICROSECONDS.toNanos(i));
+    }
+    LatencyHistogram lifetime = histogram.getLifetime();
+    assertEquals(1000, lifetime.getCount());
+    assertEquals(TimeUnit.MICROSECONDS.toNanos(500500), lifetime.getTotalNanos());
+    assertEquals(TimeUnit.MICROSECONDS.toNanos(1000), lifetime.getMaxNanos());
+    assertWithinAQuarter(TimeUnit.MICROSECONDS.toNanos(500), lifetime.getPercentileNanos(0.5));
+    assertWithinAQuarter(TimeUnit.MICROSECONDS.toNanos(990), lifetime.getPercentileNanos(0.99));
+    assertEquals(TimeUnit.MICROSECONDS.toNanos(1000), lifetime.getPercentileNanos(0.999));
+    assertWithinAQuarter(
+        TimeUnit.MICROSECONDS.toNanos(500), histogram.getWindowPercentileNanos(0.5));
+  }
+
+  public void testSmallAndHugeSamples() {
+    histogram.record(-5);
+    histogram.record(0);
+    histogram.record(3);
+    histogram.record(Long.MAX_VALUE);
+    assertEquals(0, histogram.getLifetime().getPercentileNanos(0.5));
+    assertEquals(3, histogram.getLifetime().getPercentileNanos(0.75));
+    assertEquals(Long.MAX_VALUE, histogram.getLifetime().getPercentileNanos(1));
+  }
+
+  public void testOldSamplesLeaveTheWindow() {
+    histogram.record(TimeUnit.SECONDS.toNanos(1));
+    ticker.nanos += TimeUnit.SECONDS.toNanos(1);
+    histogram.record(TimeUnit.MILLISECONDS.toNanos(1));
+    assertEquals(2, histogram.getWindowCount());
+    assertEquals(TimeUnit.SECONDS.toNanos(1), histogram.getWindowPercentileNanos(1));
+
+    ticker.nanos += TimeUnit.SECONDS.toNanos(2);
+    assertEquals(1, histogram.getWindowCount());
+    assertWithinAQuarter(TimeUnit.MILLISECONDS.toNanos(1), histogram.getWindowPercentileNanos(1));
+
+    ticker.nanos += TimeUnit.SECONDS.toNanos(5);
+    assertEquals(0, histogram.getWindowCount());
+    assertEquals(0, histogram.getWindowPercentileNanos(0.5));
+    assertEquals(2, histogram.getLifetime().getCount());
+  }
+
+  private static void assertWithinAQuarter(long expected, long actual) {
+    assertTrue("Expected about " + expected + " but was " + actual,
+        actual >= expected && actual <= expected + expected / 4);
+  }
+}
@@ -0,0 +1,135 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.waveprotocol.box.server.util.collect;
+
+import junit.framework.TestCase;
+
+import org.waveprotocol.wave.model.testing.BenchmarkRunner;
+import org.waveprotocol.wave.model.util.CollectionFactory;
+import org.waveprotocol.wave.model.util.CollectionUtils;
+import org.waveprotocol.wave.model.util.IntMap;
+import org.waveprotocol.wave.model.util.StringMap;
+
+/**
+ * Compares the collections of {@link CompactCollectionFactory} with the
+ * HashMap backed ones, in lookup cost and in memory per entry. Annotation and
+ * attribute maps are small, so memory is measured on many maps of a few
+ * entries. Run with {@code ant benchmark}.
+ */
+public class CompactCollectionFactoryBenchmark extends TestCase {
+
+  private static final int LOOKUP_KEYS = 64;
+  private static final int LOOKUPS = 1000;
+  private static final int SMALL_MAPS = 100000;
+  private static final int SMALL_MAP_ENTRIES = 4;
+
+  private static final CollectionFactory HASH = CollectionUtils.getHashCollectionFactory();
+  private static final CollectionFactory COMPACT = new CompactCollectionFactory();
+
+  private String[] keys;
+
+  @Override
+  protected void setUp() throws Exception {
+    keys = new String[LOOKUP_KEYS];
+    for (int i = 0; i < keys.length; i++) {
+      keys[i] = "style/key" + i;
+    }
+  }
+
+  public void testStringMapLookup() throws Exception {
+    stringMapLookup("hashStringMapLookup", HASH);
+    stringMapLookup("compactStringMapLookup", COMPACT);
+  }
+
+  public void testIntMapLookup() throws Exception {
+    intMapLookup("hashIntMapLookup", HASH);
+    intMapLookup("openIntMapLookup", COMPACT);
+  }
+
+  public void testStringMapMemory() throws Exception {
+    reportMemory("hashStringMap", HASH);
+    reportMemory("compactStringMap", COMPACT);
+  }
+
+  private void stringMapLookup(String name, CollectionFactory factory) throws Exception {
+    final StringMap<String> map = factory.createStringMap();
+    for (int i = 0; i < keys.length; i += 2) {
+      map.put(keys[i], keys[i]);
+    }
+    // Half of the lookups miss.
+    BenchmarkRunner.run(getClass(), name, LOOKUPS, new BenchmarkRunner.Task() {
+      @Override
+      public Object run() {
+        int hits = 0;
+        for (int i = 0; i < LOOKUPS; i++) {
+          if (map.get(keys[i % LOOKUP_KEYS]) != null) {
+            hits++;
+          }
+        }
+        return hits;
+      }
+    });
+  }
+
+  private void intMapLookup(String name, CollectionFactory factory) throws Exception {
+    final IntMap<String> map = factory.createIntMap();
+    for (int i = 0; i < LOOKUP_KEYS; i += 2) {
+      map.put(i * 7, keys[i]);
+    }
+    BenchmarkRunner.run(getClass(), name, LOOKUPS, new BenchmarkRunner.Task() {
+      @Override
+      public Object run() {
+        int hits = 0;
+        for (int i = 0; i < LOOKUPS; i++) {
+          if (map.containsKey((i % LOOKUP_KEYS) * 7)) {
+            hits++;
+          }
+        }
+        return hits;
+      }
+    });
+  }
+
+  /** Reports the retained bytes per entry of many small string maps. */
+  private void reportMemory(String name, CollectionFactory factory) {
+    Object[] maps = new Object[SMALL_MAPS];
+    long before = usedMemory();
+    for (int i = 0; i < maps.length; i++) {
+      StringMap<String> map = factory.createStringMap();
+      for (int j = 0; j < SMALL_MAP_ENTRIES; j++) {
+        map.put(keys[(i + j) % LOOKUP_KEYS], keys[j]);
+      }
+      maps[i] = map;
+    }
+    long used = usedMemory() - before;
+    System.err.println(String.format("%s.%s: %.1f bytes per entry in maps of %d",
+        getClass().getSimpleName(), name,
+        ((double) used) / (SMALL_MAPS * SMALL_MAP_ENTRIES), SMALL_MAP_ENTRIES));
+    assertEquals(SMALL_MAPS, maps.length);
+  }
+
+  private static long usedMemory() {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+}
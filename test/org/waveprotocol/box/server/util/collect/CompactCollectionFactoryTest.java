@@ -0,0 +1,287 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.waveprotocol.box.server.util.collect;
+
+import junit.framework.TestCase;
+
+import org.waveprotocol.wave.model.util.CollectionFactory;
+import org.waveprotocol.wave.model.util.CollectionUtils;
+import org.waveprotocol.wave.model.util.IntMap;
+import org.waveprotocol.wave.model.util.NumberMap;
+import org.waveprotocol.wave.model.util.ReadableIntMap;
+import org.waveprotocol.wave.model.util.ReadableNumberMap;
+import org.waveprotocol.wave.model.util.ReadableStringMap;
+import org.waveprotocol.wave.model.util.ReadableStringSet;
+import org.waveprotocol.wave.model.util.StringMap;
+import org.waveprotocol.wave.model.util.StringSet;
+
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Tests for the collections of {@link CompactCollectionFactory}, which are
+ * checked against java.util collections over random sequences of updates.
+ */
+public class CompactCollectionFactoryTest extends TestCase {
+
+  private static final int STEPS = 20000;
+  /** Few enough keys that removals hit, and probe runs form and break up. */
+  private static final int KEYS = 200;
+
+  private final CollectionFactory factory = new CompactCollectionFactory();
+
+  public void testStringMapMatchesHashMap() {
+    Random random = new Random(1);
+    StringMap<Integer> map = factory.createStringMap();
+    Map<String, Integer> expected = new HashMap<String, Integer>();
+    for (int i = 0; i < STEPS; i++) {
+      String key = "k" + random.nextInt(KEYS);
+      switch (random.nextInt(4)) {
+        case 0:
+          map.remove(key);
+          expected.remove(key);
+          break;
+        case 1:
+          final int mod = 2 + random.nextInt(5);
+          map.filter(new StringMap.EntryFilter<Integer>() {
+            @Override
+            public boolean apply(String key, Integer value) {
+              return value == null || value % mod != 0;
+            }
+          });
+          for (String k : new HashSet<String>(expected.keySet())) {
+            Integer value = expected.get(k);
+            if (value != null && value % mod == 0) {
+              expected.remove(k);
+            }
+          }
+          break;
+        default:
+          Integer value = random.nextInt(10) == 0 ? null : random.nextInt(100);
+          map.put(key, value);
+          expected.put(key, value);
+      }
+      assertEquals(expected.size(), map.countEntries());
+      assertEquals(expected.containsKey(key), map.containsKey(key));
+      assertEquals(expected.get(key), map.get(key));
+    }
+    assertEquals(expected, toJavaMap(map));
+  }
+
+  public void testStringSetMatchesHashSet() {
+    Random random = new Random(2);
+    StringSet set = factory.createStringSet();
+    Set<String> expected = new HashSet<String>();
+    for (int i = 0; i < STEPS; i++) {
+      final String element = "e" + random.nextInt(KEYS);
+      switch (random.nextInt(4)) {
+        case 0:
+          set.remove(element);
+          expected.remove(element);
+          break;
+        case 1:
+          final int mod = 2 + random.nextInt(5);
+          set.filter(new StringSet.StringPredicate() {
+            @Override
+            public boolean apply(String x) {
+              return x.hashCode() % mod != 0;
+            }
+          });
+          for (String e : new HashSet<String>(expected)) {
+            if (e.hashCode() % mod == 0) {
+              expected.remove(e);
+            }
+          }
+          break;
+        default:
+          set.add(element);
+          expected.add(element);
+      }
+      assertEquals(expected.size(), set.countEntries());
+      assertEquals(expected.contains(element), set.contains(element));
+    }
+    assertEquals(expected, CollectionUtils.newJavaSet(set));
+  }
+
+  public void testIntMapMatchesHashMap() {
+    Random random = new Random(3);
+    IntMap<Integer> map = factory.createIntMap();
+    Map<Integer, Integer> expected = new HashMap<Integer, Integer>();
+    for (int i = 0; i < STEPS; i++) {
+      // Keys a multiple of the capacity apart collide on their home slots.
+      int key = (random.nextInt(KEYS) - KEYS / 2) * (random.nextBoolean() ? 1 : 1024);
+      if (random.nextInt(3) == 0) {
+        map.remove(key);
+        expected.remove(key);
+      } else {
+        Integer value = random.nextInt(10) == 0 ? null : random.nextInt(100);
+        map.put(key, value);
+        expected.put(key, value);
+      }
+      assertEquals(expected.size(), map.countEntries());
+      assertEquals(expected.containsKey(key), map.containsKey(key));
+      assertEquals(expected.containsKey(key) ? expected.get(key) : Integer.valueOf(-1),
+          map.get(key, -1));
+    }
+    final Map<Integer, Integer> actual = new HashMap<Integer, Integer>();
+    map.each(new ReadableIntMap.ProcV<Integer>() {
+      @Override
+      public void apply(int key, Integer value) {
+        actual.put(key, value);
+      }
+    });
+    assertEquals(expected, actual);
+  }
+
+  public void testNumberMapComparesKeysLikeDoubleEquals() {
+    NumberMap<String> map = factory.createNumberMap();
+    map.put(0.0, "zero");
+    map.put(-0.0, "negative zero");
+    map.put(Double.NaN, "nan");
+    map.put(1.5, null);
+
+    assertEquals(4, map.countEntries());
+    assertEquals("zero", map.get(0.0));
+    assertEquals("negative zero", map.get(-0.0));
+    assertEquals("nan", map.get(0.0 / 0.0));
+    assertTrue(map.containsKey(1.5));
+    assertEquals("default", map.get(2.5, "default"));
+    assertNull(map.get(1.5, "default"));
+
+    map.remove(Double.NaN);
+    final Map<Double, String> actual = new HashMap<Double, String>();
+    map.each(new ReadableNumberMap.ProcV<String>() {
+      @Override
+      public void apply(double key, String value) {
+        actual.put(key, value);
+      }
+    });
+    Map<Double, String> expected = new HashMap<Double, String>();
+    expected.put(0.0, "zero");
+    expected.put(-0.0, "negative zero");
+    expected.put(1.5, null);
+    assertEquals(expected, actual);
+  }
+
+  public void testStringMapRejectsNullKeys() {
+    StringMap<String> map = factory.createStringMap();
+    try {
+      map.put(null, "a");
+      fail("Null keys should be rejected");
+    } catch (NullPointerException expected) {
+      // pass
+    }
+    try {
+      map.get(null);
+      fail("Null keys should be rejected");
+    } catch (NullPointerException expected) {
+      // pass
+    }
+  }
+
+  public void testGetExistingOfMissingKeyThrows() {
+    StringMap<String> map = factory.createStringMap();
+    map.put("a", null);
+    assertNull(map.getExisting("a"));
+    try {
+      map.getExisting("b");
+      fail("getExisting of a missing key should throw");
+    } catch (IllegalStateException expected) {
+      // pass
+    }
+  }
+
+  public void testKeySetIsLiveView() {
+    StringMap<String> map = factory.createStringMap();
+    ReadableStringSet keys = map.keySet();
+    assertTrue(keys.isEmpty());
+    map.put("a", "1");
+    map.put("b", "2");
+    assertEquals(2, keys.countEntries());
+    assertTrue(keys.contains("a"));
+    map.remove("a");
+    assertFalse(keys.contains("a"));
+    assertEquals("b", keys.someElement());
+  }
+
+  public void testCopiesBetweenFactories() {
+    StringMap<String> compact = factory.createStringMap();
+    compact.put("a", "1");
+    StringMap<String> hashed = CollectionUtils.getHashCollectionFactory().createStringMap();
+    hashed.put("b", "2");
+
+    compact.putAll(hashed);
+    hashed.putAll(compact);
+    assertEquals(2, compact.countEntries());
+    assertEquals(2, hashed.countEntries());
+
+    StringSet compactSet = factory.createStringSet();
+    compactSet.add("a");
+    StringSet hashedSet = CollectionUtils.newStringSet("a", "b");
+    compactSet.addAll(hashedSet);
+    hashedSet.removeAll(compactSet);
+    assertEquals(2, compactSet.countEntries());
+    assertTrue(hashedSet.isEmpty());
+  }
+
+  public void testUpdateDuringIterationThrows() {
+    final StringMap<String> map = factory.createStringMap();
+    map.put("a", "1");
+    map.put("b", "2");
+    try {
+      map.each(new ReadableStringMap.ProcV<String>() {
+        @Override
+        public void apply(String key, String value) {
+          map.put(key + key, value);
+        }
+      });
+      fail("Insertion during iteration should throw");
+    } catch (ConcurrentModificationException expected) {
+      // pass
+    }
+  }
+
+  public void testClearFreesTable() {
+    StringSet set = factory.createStringSet();
+    for (int i = 0; i < 100; i++) {
+      set.add("e" + i);
+    }
+    set.clear();
+    assertTrue(set.isEmpty());
+    assertNull(set.someElement());
+    set.add("x");
+    assertEquals("x", set.someElement());
+  }
+
+  private static <V> Map<String, V> toJavaMap(ReadableStringMap<V> map) {
+    final Map<String, V> result = new HashMap<String, V>();
+    map.each(new ReadableStringMap.ProcV<V>() {
+      @Override
+      public void apply(String key, V value) {
+        result.put(key, value);
+      }
+    });
+    return result;
+  }
+}
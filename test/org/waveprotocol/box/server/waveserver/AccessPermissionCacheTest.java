@@ -0,0 +1,91 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.waveprotocol.box.server.waveserver;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import junit.framework.TestCase;
+
+import org.waveprotocol.box.common.DeltaSequence;
+import org.waveprotocol.box.server.util.WaveletDataUtil;
+import org.waveprotocol.box.server.util.testing.TestingConstants;
+import org.waveprotocol.wave.model.testing.DeltaTestUtil;
+import org.waveprotocol.wave.model.version.HashedVersion;
+import org.waveprotocol.wave.model.wave.ParticipantId;
+import org.waveprotocol.wave.model.wave.data.WaveletData;
+
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Tests for {@link AccessPermissionCache}.
+ */
+public class AccessPermissionCacheTest extends TestCase implements TestingConstants {
+
+  private static final DeltaTestUtil UTIL = new DeltaTestUtil(PARTICIPANT);
+
+  private WaveBus waveBus;
+  private AccessPermissionCache cache;
+  private WaveletData wavelet;
+
+  @Override
+  protected void setUp() throws Exception {
+    waveBus = mock(WaveBus.class);
+    cache = new AccessPermissionCache(waveBus);
+    wavelet = WaveletDataUtil.createEmptyWavelet(WAVELET_NAME, PARTICIPANT,
+        HashedVersion.unsigned(0), 0L);
+  }
+
+  public void testSubscribesToWaveBus() {
+    verify(waveBus).subscribe(cache);
+  }
+
+  public void testDecisionsAreKept() {
+    cache.getDecisions(WAVELET_NAME).put(PARTICIPANT, true);
+    assertEquals(Boolean.TRUE, cache.getDecisions(WAVELET_NAME).get(PARTICIPANT));
+  }
+
+  public void testOtherDeltasKeepDecisions() {
+    cache.getDecisions(WAVELET_NAME).put(PARTICIPANT, true);
+    cache.waveletUpdate(wavelet,
+        DeltaSequence.of(UTIL.delta(1L, UTIL.noOpDocOp("b+1"))));
+    assertEquals(Boolean.TRUE, cache.getDecisions(WAVELET_NAME).get(PARTICIPANT));
+  }
+
+  public void testParticipantChangesDropDecisions() {
+    cache.getDecisions(WAVELET_NAME).put(PARTICIPANT, true);
+    cache.waveletUpdate(wavelet,
+        DeltaSequence.of(UTIL.delta(1L, UTIL.addParticipant(OTHER_PARTICIPANT))));
+    assertNull(cache.getDecisions(WAVELET_NAME).get(PARTICIPANT));
+
+    cache.getDecisions(WAVELET_NAME).put(OTHER_PARTICIPANT, true);
+    cache.waveletUpdate(wavelet,
+        DeltaSequence.of(UTIL.delta(2L, UTIL.removeParticipant(OTHER_PARTICIPANT))));
+    assertNull(cache.getDecisions(WAVELET_NAME).get(OTHER_PARTICIPANT));
+  }
+
+  public void testDecisionMadeDuringChangeIsDropped() {
+    ConcurrentMap<ParticipantId, Boolean> decisions = cache.getDecisions(WAVELET_NAME);
+    cache.waveletUpdate(wavelet,
+        DeltaSequence.of(UTIL.delta(1L, UTIL.removeParticipant(OTHER_PARTICIPANT))));
+    decisions.put(OTHER_PARTICIPANT, true);
+    assertNull(cache.getDecisions(WAVELET_NAME).get(OTHER_PARTICIPANT));
+  }
+}
@@ -19,11 +19,29 @@
 
 package org.waveprotocol.box.server.waveserver;
 
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+
+import com.google.common.collect.Lists;
 import com.google.common.util.concurrent.MoreExecutors;
 
+import org.waveprotocol.box.common.ListReceiver;
 import org.waveprotocol.box.server.persistence.memory.MemoryDeltaStore;
+import org.waveprotocol.wave.federation.Proto.ProtocolAppliedWaveletDelta;
+import org.waveprotocol.wave.model.id.WaveId;
+import org.waveprotocol.wave.model.id.WaveletId;
 import org.waveprotocol.wave.model.id.WaveletName;
+import org.waveprotocol.wave.model.operation.wave.TransformedWaveletDelta;
+import org.waveprotocol.wave.model.operation.wave.WaveletDelta;
+import org.waveprotocol.wave.model.testing.DeltaTestUtil;
+import org.waveprotocol.wave.model.version.HashedVersion;
+import org.waveprotocol.wave.model.wave.ParticipantId;
 
+import java.util.List;
 import java.util.concurrent.Executor;
 
 /**
@@ -55,4 +73,106 @@ public class DeltaStoreBasedWaveletStateTest extends WaveletStateTestBase {
 
   // TODO(soren): We need to add tests here that verify interactions with storage.
   // The base tests only test the public interface, not any interactions with the storage system.
+
+  private static final WaveletName NAME = WaveletName.of(WaveId.of("example.com", "waveid"),
+      WaveletId.of("example.com", "waveletid"));
+  private static final DeltaTestUtil UTIL =
+      new DeltaTestUtil(ParticipantId.ofUnsafe("author@example.com"));
+  private static final int MANY_DELTAS = DeltaStoreBasedWaveletState.RETAINED_PERSISTED_DELTAS * 2;
+
+  public void testFlushKeepsRecentPersistedDeltas() throws Exception {
+    DeltaStoreBasedWaveletState state =
+        DeltaStoreBasedWaveletState.create(store.open(NAME), PERSIST_EXECUTOR);
+    HashedVersion start = state.getCurrentVersion();
+    HashedVersion end = appendDeltas(state, MANY_DELTAS);
+    state.persist(end).get();
+    state.flush(end);
+
+    assertEquals(DeltaStoreBasedWaveletState.RETAINED_PERSISTED_DELTAS,
+        state.getCachedDeltaCount());
+    ListReceiver<TransformedWaveletDelta> history = new ListReceiver<TransformedWaveletDelta>();
+    state.getTransformedDeltaHistory(start, end, history);
+    assertEquals(MANY_DELTAS, history.size());
+  }
+
+  public void testRecentHistoryIsReadFromCache() throws Exception {
+    DeltaStore.DeltasAccess access = spy(store.open(NAME));
+    DeltaStoreBasedWaveletState state =
+        DeltaStoreBasedWaveletState.create(access, PERSIST_EXECUTOR);
+    HashedVersion end = appendDeltas(state, MANY_DELTAS);
+    state.persist(end).get();
+    state.flush(end);
+
+    HashedVersion recent = state.getHashedVersion(
+        end.getVersion() - DeltaStoreBasedWaveletState.RETAINED_PERSISTED_DELTAS);
+    ListReceiver<TransformedWaveletDelta> history = new ListReceiver<TransformedWaveletDelta>();
+    state.getTransformedDeltaHistory(recent, end, history);
+
+    assertEquals(DeltaStoreBasedWaveletState.RETAINED_PERSISTED_DELTAS, history.size());
+    verify(access, never()).getDelta(anyLong());
+  }
+
+  public void testCloseDropsCachedDeltas() throws Exception {
+    DeltaStoreBasedWaveletState state =
+        DeltaStoreBasedWaveletState.create(store.open(NAME), PERSIST_EXECUTOR);
+    appendDeltas(state, 10);
+
+    state.close();
+
+    assertEquals(0, state.getCachedDeltaCount());
+  }
+
+  public void testFlushKeepsUnpersistedDeltas() throws Exception {
+    final List<Runnable> pending = Lists.newArrayList();
+    DeltaStoreBasedWaveletState state = DeltaStoreBasedWaveletState.create(store.open(NAME),
+        new Executor() {
+          @Override
+          public void execute(Runnable command) {
+            pending.add(command);
+          }
+        });
+    HashedVersion end = appendDeltas(state, MANY_DELTAS);
+    state.persist(end);
+    state.flush(end);
+    assertEquals(MANY_DELTAS, state.getCachedDeltaCount());
+
+    for (Runnable task : pending) {
+      task.run();
+    }
+    state.flush(end);
+    assertEquals(DeltaStoreBasedWaveletState.RETAINED_PERSISTED_DELTAS,
+        state.getCachedDeltaCount());
+  }
+
+  public void testBacklogIsAppendedInBatches() throws Exception {
+    DeltaStore.DeltasAccess access = spy(store.open(NAME));
+    DeltaStoreBasedWaveletState state =
+        DeltaStoreBasedWaveletState.create(access, PERSIST_EXECUTOR);
+    state.setBatchLimitBytes(1);
+    HashedVersion end = appendDeltas(state, 10);
+    state.persist(end).get();
+
+    verify(access, atLeast(2)).append(anyCollectionOf(WaveletDeltaRecord.class));
+    assertEquals(end, access.getEndVersion());
+    assertEquals(end, state.getLastPersistedVersion());
+  }
+
+  /**
+   * Appends deltas of one no-op each to a state.
+   *
+   * @return the version after the last delta.
+   */
+  private static HashedVersion appendDeltas(WaveletState state, int count) throws Exception {
+    HashedVersion version = state.getCurrentVersion();
+    for (int i = 0; i < count; i++) {
+      WaveletDelta delta = UTIL.makeNoOpDelta(version, i, 1);
+      ByteStringMessage<ProtocolAppliedWaveletDelta> appliedDelta =
+          WaveServerTestUtil.buildAppliedDelta(delta, i);
+      TransformedWaveletDelta transformedDelta =
+          AppliedDeltaUtil.buildTransformedDelta(appliedDelta, delta);
+      state.appendDelta(new WaveletDeltaRecord(version, appliedDelta, transformedDelta));
+      version = transformedDelta.getResultingVersion();
+    }
+    return version;
+  }
 }
@@ -0,0 +1,325 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.waveprotocol.box.server.waveserver;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.protobuf.ByteString;
+
+import junit.framework.TestCase;
+
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.waveprotocol.box.common.Receiver;
+import org.waveprotocol.box.server.common.CoreWaveletOperationSerializer;
+import org.waveprotocol.box.server.persistence.memory.MemoryDeltaStore;
+import org.waveprotocol.wave.crypto.SignatureException;
+import org.waveprotocol.wave.federation.FederationException;
+import org.waveprotocol.wave.federation.Proto.ProtocolAppliedWaveletDelta;
+import org.waveprotocol.wave.federation.Proto.ProtocolHashedVersion;
+import org.waveprotocol.wave.federation.Proto.ProtocolSignature;
+import org.waveprotocol.wave.federation.Proto.ProtocolSignedDelta;
+import org.waveprotocol.wave.federation.Proto.ProtocolSignerInfo;
+import org.waveprotocol.wave.federation.WaveletFederationProvider;
+import org.waveprotocol.wave.model.id.WaveId;
+import org.waveprotocol.wave.model.id.WaveletId;
+import org.waveprotocol.wave.model.id.WaveletName;
+import org.waveprotocol.wave.model.operation.wave.AddParticipant;
+import org.waveprotocol.wave.model.operation.wave.WaveletDelta;
+import org.waveprotocol.wave.model.operation.wave.WaveletOperation;
+import org.waveprotocol.wave.model.operation.wave.WaveletOperationContext;
+import org.waveprotocol.wave.model.wave.ParticipantId;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for {@link RemoteWaveletContainerImpl} receiving deltas from a hosting
+ * server, which is stood in for by a local wavelet container behind a loopback
+ * {@link WaveletFederationProvider}.
+ */
+public class RemoteWaveletContainerImplTest extends TestCase {
+
+  private static final String REMOTE_DOMAIN = "example2.com";
+  private static final String LOCAL_DOMAIN = "example.com";
+  private static final WaveletName WAVELET_NAME = WaveletName.of(
+      WaveId.of(REMOTE_DOMAIN, "waveid"), WaveletId.of(REMOTE_DOMAIN, "waveletid"));
+  private static final ParticipantId AUTHOR = new ParticipantId("admin@" + REMOTE_DOMAIN);
+  private static final WaveletOperationContext CONTEXT =
+      new WaveletOperationContext(AUTHOR, 0, 1);
+  private static final ProtocolSignature SIGNATURE = ProtocolSignature.newBuilder()
+      .setSignatureBytes(ByteString.EMPTY)
+      .setSignerId(ByteString.EMPTY)
+      .setSignatureAlgorithm(ProtocolSignature.SignatureAlgorithm.SHA1_RSA)
+      .build();
+  private static final int DELTA_COUNT = 6;
+
+  /**
+   * Serves history from the host container. Responses are delivered right
+   * away unless the provider is held.
+   */
+  private class LoopbackFederationProvider implements WaveletFederationProvider {
+    final List<Runnable> heldResponses = Lists.newArrayList();
+    volatile boolean hold = false;
+    /** Whether responses carry an unparseable delta instead of the history. */
+    volatile boolean corrupt = false;
+    volatile int historyRequests = 0;
+
+    @Override
+    public void requestHistory(WaveletName waveletName, String domain,
+        ProtocolHashedVersion startVersion, ProtocolHashedVersion endVersion,
+        long lengthLimit, final HistoryResponseListener listener) {
+      historyRequests++;
+      final List<ByteString> deltas = Lists.newArrayList();
+      try {
+        host.requestHistory(CoreWaveletOperationSerializer.deserialize(startVersion),
+            CoreWaveletOperationSerializer.deserialize(endVersion),
+            new Receiver<ByteStringMessage<ProtocolAppliedWaveletDelta>>() {
+              @Override
+              public boolean put(ByteStringMessage<ProtocolAppliedWaveletDelta> delta) {
+                deltas.add(delta.getByteString());
+                return true;
+              }
+            });
+      } catch (WaveServerException e) {
+        throw new IllegalStateException(e);
+      }
+      if (corrupt) {
+        deltas.clear();
+        deltas.add(ByteString.copyFromUtf8("junk"));
+      }
+      Runnable response = new Runnable() {
+        @Override
+        public void run() {
+          listener.onSuccess(deltas, null, 0);
+        }
+      };
+      synchronized (this) {
+        if (hold) {
+          heldResponses.add(response);
+          return;
+        }
+      }
+      response.run();
+    }
+
+    void release() {
+      List<Runnable> responses;
+      synchronized (this) {
+        hold = false;
+        responses = ImmutableList.copyOf(heldResponses);
+        heldResponses.clear();
+      }
+      for (Runnable response : responses) {
+        response.run();
+      }
+    }
+
+    @Override
+    public void submitRequest(WaveletName waveletName, ProtocolSignedDelta delta,
+        SubmitResultListener listener) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void getDeltaSignerInfo(ByteString signerId, WaveletName waveletName,
+        ProtocolHashedVersion deltaEndVersion, DeltaSignerInfoResponseListener listener) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void postSignerInfo(String destinationDomain, ProtocolSignerInfo signerInfo,
+        PostSignerInfoResponseListener listener) {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  private LocalWaveletContainerImpl host;
+  /** The applied deltas of the host, in order. */
+  private List<ByteString> hostDeltas;
+  private LoopbackFederationProvider federationProvider;
+  private CertificateManager certificateManager;
+  private ExecutorService verificationExecutor;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    WaveletNotificationSubscriber notifiee = mock(WaveletNotificationSubscriber.class);
+    host = new LocalWaveletContainerImpl(WAVELET_NAME, notifiee,
+        Futures.immediateFuture(DeltaStoreBasedWaveletState.create(
+            new MemoryDeltaStore().open(WAVELET_NAME), MoreExecutors.sameThreadExecutor())),
+        REMOTE_DOMAIN, MoreExecutors.sameThreadExecutor());
+    host.awaitLoad();
+    hostDeltas = Lists.newArrayList();
+    for (int i = 0; i < DELTA_COUNT; i++) {
+      List<WaveletOperation> ops = ImmutableList.<WaveletOperation>of(
+          new AddParticipant(CONTEXT, new ParticipantId("user" + i + "@" + LOCAL_DOMAIN)));
+      ProtocolSignedDelta delta = ProtocolSignedDelta.newBuilder()
+          .addSignature(SIGNATURE)
+          .setDelta(CoreWaveletOperationSerializer.serialize(
+              new WaveletDelta(AUTHOR, host.getCurrentVersion(), ops)).toByteString())
+          .build();
+      hostDeltas.add(host.submitRequest(WAVELET_NAME, delta).getAppliedDelta().getByteString());
+    }
+
+    federationProvider = new LoopbackFederationProvider();
+    certificateManager = mock(CertificateManager.class);
+    when(certificateManager.retrieveSignerInfo(any(ByteString.class)))
+        .thenReturn(ProtocolSignerInfo.getDefaultInstance());
+    verificationExecutor = Executors.newFixedThreadPool(4);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    verificationExecutor.shutdownNow();
+    super.tearDown();
+  }
+
+  public void testAppliesDeltasInOrder() throws Exception {
+    RemoteWaveletContainerImpl remote = createRemote();
+    waitFor(remote.update(hostDeltas, REMOTE_DOMAIN, federationProvider, certificateManager));
+
+    assertEquals(host.getCurrentVersion(), remote.getCurrentVersion());
+    assertEquals(0, federationProvider.historyRequests);
+  }
+
+  public void testFetchesMissingHistory() throws Exception {
+    RemoteWaveletContainerImpl remote = createRemote();
+    waitFor(remote.update(hostDeltas.subList(DELTA_COUNT - 1, DELTA_COUNT), REMOTE_DOMAIN,
+        federationProvider, certificateManager));
+
+    assertEquals(host.getCurrentVersion(), remote.getCurrentVersion());
+    assertEquals(1, federationProvider.historyRequests);
+  }
+
+  public void testOnlyOneHistoryRequestIsInFlight() throws Exception {
+    RemoteWaveletContainerImpl remote = createRemote();
+    federationProvider.hold = true;
+    ListenableFuture<Void> first = remote.update(hostDeltas.subList(4, 5), REMOTE_DOMAIN,
+        federationProvider, certificateManager);
+    awaitHistoryRequests(1);
+    ListenableFuture<Void> second = remote.update(hostDeltas.subList(5, 6), REMOTE_DOMAIN,
+        federationProvider, certificateManager);
+    // Give the second update the chance to issue a request of its own.
+    Thread.sleep(100);
+    assertFalse(second.isDone());
+
+    federationProvider.release();
+    waitFor(first);
+    waitFor(second);
+    assertEquals(host.getCurrentVersion(), remote.getCurrentVersion());
+    assertEquals(1, federationProvider.historyRequests);
+  }
+
+  public void testVerificationFailureRejectsUpdate() throws Exception {
+    when(certificateManager.verifyDelta(any(ProtocolSignedDelta.class)))
+        .thenThrow(new SignatureException("bad signature"));
+    RemoteWaveletContainerImpl remote = createRemote();
+    try {
+      waitFor(remote.update(hostDeltas, REMOTE_DOMAIN, federationProvider, certificateManager));
+      fail("Update with bad signatures should fail");
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof FederationException);
+    }
+    assertEquals(0, remote.getCurrentVersion().getVersion());
+  }
+
+  public void testCorruptHistoryFailsWaitingUpdates() throws Exception {
+    federationProvider.corrupt = true;
+    assertWaitingUpdatesFailWithHistory();
+  }
+
+  public void testUnverifiedHistoryFailsWaitingUpdates() throws Exception {
+    final List<ByteString> history = hostDeltas.subList(0, 4);
+    when(certificateManager.verifyDelta(any(ProtocolSignedDelta.class))).thenAnswer(
+        new Answer<ProtocolSignerInfo>() {
+          @Override
+          public ProtocolSignerInfo answer(InvocationOnMock invocation) throws Exception {
+            ProtocolSignedDelta delta = (ProtocolSignedDelta) invocation.getArguments()[0];
+            for (ByteString applied : history) {
+              if (ProtocolAppliedWaveletDelta.parseFrom(applied).getSignedOriginalDelta()
+                  .equals(delta)) {
+                throw new SignatureException("bad signature");
+              }
+            }
+            return null;
+          }
+        });
+    assertWaitingUpdatesFailWithHistory();
+  }
+
+  /**
+   * Queues two updates behind one history request, whose response fails, and
+   * checks that both updates fail.
+   */
+  private void assertWaitingUpdatesFailWithHistory() throws Exception {
+    RemoteWaveletContainerImpl remote = createRemote();
+    federationProvider.hold = true;
+    ListenableFuture<Void> first = remote.update(hostDeltas.subList(4, 5), REMOTE_DOMAIN,
+        federationProvider, certificateManager);
+    awaitHistoryRequests(1);
+    ListenableFuture<Void> second = remote.update(hostDeltas.subList(5, 6), REMOTE_DOMAIN,
+        federationProvider, certificateManager);
+    // Let the second update queue behind the pending history request.
+    Thread.sleep(100);
+
+    federationProvider.release();
+    for (ListenableFuture<Void> update : ImmutableList.of(first, second)) {
+      try {
+        waitFor(update);
+        fail("Update waiting for failed history should fail");
+      } catch (ExecutionException e) {
+        assertTrue(e.getCause() instanceof FederationException);
+      }
+    }
+  }
+
+  private RemoteWaveletContainerImpl createRemote() throws Exception {
+    RemoteWaveletContainerImpl remote = new RemoteWaveletContainerImpl(WAVELET_NAME,
+        mock(WaveletNotificationSubscriber.class),
+        Futures.immediateFuture(DeltaStoreBasedWaveletState.create(
+            new MemoryDeltaStore().open(WAVELET_NAME), MoreExecutors.sameThreadExecutor())),
+        MoreExecutors.sameThreadExecutor(), verificationExecutor);
+    remote.awaitLoad();
+    return remote;
+  }
+
+  private void awaitHistoryRequests(int count) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5000;
+    while (federationProvider.historyRequests < count && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(count, federationProvider.historyRequests);
+  }
+
+  private static void waitFor(ListenableFuture<Void> update) throws Exception {
+    update.get(5, TimeUnit.SECONDS);
+  }
+}
@@ -0,0 +1,195 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.waveprotocol.box.server.waveserver;
+
+import com.google.common.collect.ImmutableSet;
+
+import junit.framework.TestCase;
+
+import org.waveprotocol.box.server.waveserver.UnreadSummaryStore.ConversationSummary;
+import org.waveprotocol.box.server.waveserver.UnreadSummaryStore.ReadSummary;
+import org.waveprotocol.wave.model.conversation.Conversation;
+import org.waveprotocol.wave.model.conversation.ConversationBlip;
+import org.waveprotocol.wave.model.conversation.WaveBasedConversationView;
+import org.waveprotocol.wave.model.conversation.WaveletBasedConversation;
+import org.waveprotocol.wave.model.document.util.LineContainers;
+import org.waveprotocol.wave.model.document.util.XmlStringBuilder;
+import org.waveprotocol.wave.model.id.IdConstants;
+import org.waveprotocol.wave.model.id.WaveId;
+import org.waveprotocol.wave.model.id.WaveletId;
+import org.waveprotocol.wave.model.operation.SilentOperationSink;
+import org.waveprotocol.wave.model.operation.wave.WaveletOperation;
+import org.waveprotocol.wave.model.operation.wave.WaveletOperationContext;
+import org.waveprotocol.wave.model.supplement.PrimitiveSupplement;
+import org.waveprotocol.wave.model.supplement.WaveletBasedSupplement;
+import org.waveprotocol.wave.model.testing.BasicFactories;
+import org.waveprotocol.wave.model.testing.FakeIdGenerator;
+import org.waveprotocol.wave.model.version.HashedVersion;
+import org.waveprotocol.wave.model.wave.ParticipantId;
+import org.waveprotocol.wave.model.wave.ParticipationHelper;
+import org.waveprotocol.wave.model.wave.ReadOnlyWaveView;
+import org.waveprotocol.wave.model.wave.data.ObservableWaveletData;
+import org.waveprotocol.wave.model.wave.data.WaveletData;
+import org.waveprotocol.wave.model.wave.data.impl.WaveletDataImpl;
+import org.waveprotocol.wave.model.wave.opbased.OpBasedWavelet;
+
+/**
+ * Tests for {@link UnreadSummaryStore}.
+ */
+public class UnreadSummaryStoreTest extends TestCase {
+
+  private static final ParticipantId USER = ParticipantId.ofUnsafe("user@example.com");
+  private static final WaveId WAVE_ID = WaveId.of("example.com", "w+abc");
+  private static final WaveletId CONV_ID = WaveletId.of("example.com", "conv+root");
+  private static final WaveletId UDW_ID = WaveletId.of("example.com", "user+user@example.com");
+
+  /** Applies each operation as a delta of its own, as the server does. */
+  private static final WaveletOperationContext.Factory VERSIONED_CONTEXTS =
+      new WaveletOperationContext.Factory() {
+        @Override
+        public WaveletOperationContext createContext() {
+          return createContext(USER);
+        }
+
+        @Override
+        public WaveletOperationContext createContext(ParticipantId creator) {
+          return new WaveletOperationContext(creator, 0L, 1L);
+        }
+      };
+
+  private ObservableWaveletData convData;
+  private ObservableWaveletData udwData;
+  private Conversation conversation;
+  private PrimitiveSupplement supplement;
+  private UnreadSummaryStore store;
+
+  @Override
+  protected void setUp() throws Exception {
+    convData = createWaveletData(CONV_ID);
+    udwData = createWaveletData(UDW_ID);
+
+    OpBasedWavelet convWavelet = createWavelet(convData);
+    ReadOnlyWaveView waveView = new ReadOnlyWaveView(WAVE_ID);
+    waveView.addWavelet(convWavelet);
+    WaveletBasedConversation.makeWaveletConversational(convWavelet);
+    conversation =
+        WaveBasedConversationView.create(waveView, FakeIdGenerator.create()).getRoot();
+    conversation.addParticipant(USER);
+
+    supplement = WaveletBasedSupplement.create(createWavelet(udwData));
+    store = new UnreadSummaryStore();
+  }
+
+  public void testAllBlipsAreUnreadWithoutUserData() {
+    appendBlips(3);
+    assertEquals(3, store.getUnreadCount(USER, convData, null));
+  }
+
+  public void testReadBlipIsNotCounted() {
+    ConversationBlip[] blips = appendBlips(3);
+    markRead(blips[1]);
+    assertEquals(2, store.getUnreadCount(USER, convData, udwData));
+  }
+
+  public void testWaveletReadVersionCoversOlderBlips() {
+    appendBlips(2);
+    supplement.setLastReadWaveletVersion(CONV_ID, (int) convData.getVersion());
+    appendBlips(1);
+    assertEquals(1, store.getUnreadCount(USER, convData, udwData));
+  }
+
+  public void testEditedBlipIsUnreadAgain() {
+    ConversationBlip[] blips = appendBlips(2);
+    markRead(blips[0]);
+    assertEquals(1, store.getUnreadCount(USER, convData, udwData));
+
+    LineContainers.appendToLastLine(blips[0].getContent(), XmlStringBuilder.createText("edit"));
+    assertEquals(2, store.getUnreadCount(USER, convData, udwData));
+  }
+
+  public void testDeletedBlipIsNotCounted() {
+    ConversationBlip[] blips = appendBlips(3);
+    blips[2].delete();
+    assertEquals(2, store.getUnreadCount(USER, convData, null));
+  }
+
+  public void testUpdateRereadsOnlyTouchedBlips() {
+    ConversationBlip[] blips = appendBlips(2);
+    ConversationSummary before = UnreadSummaryStore.summarizeConversation(convData);
+
+    LineContainers.appendToLastLine(blips[1].getContent(), XmlStringBuilder.createText("edit"));
+    ConversationSummary after = UnreadSummaryStore.updateConversation(before, convData,
+        ImmutableSet.of(blips[1].getId()));
+
+    assertEquals(convData.getVersion(), after.version);
+    assertEquals(before.blipVersions.get(blips[0].getId()),
+        after.blipVersions.get(blips[0].getId()));
+    assertEquals(Integer.valueOf((int) blips[1].getLastModifiedVersion()),
+        after.blipVersions.get(blips[1].getId()));
+  }
+
+  public void testUpdateOfManifestFindsNewBlips() {
+    appendBlips(1);
+    ConversationSummary before = UnreadSummaryStore.summarizeConversation(convData);
+    appendBlips(1);
+    ConversationSummary after = UnreadSummaryStore.updateConversation(before, convData,
+        ImmutableSet.of(IdConstants.MANIFEST_DOCUMENT_ID));
+    assertEquals(2, after.blipVersions.size());
+  }
+
+  public void testUnchangedSummariesShareCachedCount() {
+    ConversationBlip[] blips = appendBlips(3);
+    markRead(blips[0]);
+    ConversationSummary summary = UnreadSummaryStore.summarizeConversation(convData);
+    ReadSummary read = UnreadSummaryStore.summarizeReadState(udwData);
+
+    assertEquals(2, UnreadSummaryStore.unreadCount(CONV_ID, summary, read));
+    // A read state moved to a later version by an unrelated change keeps the
+    // counts computed from it.
+    ReadSummary later = read.atVersion(read.version + 1);
+    assertSame(read.unreadCounts, later.unreadCounts);
+    assertEquals(2, UnreadSummaryStore.unreadCount(CONV_ID, summary, later));
+  }
+
+  private ConversationBlip[] appendBlips(int count) {
+    ConversationBlip[] blips = new ConversationBlip[count];
+    for (int i = 0; i < count; i++) {
+      blips[i] = conversation.getRootThread().appendBlip();
+    }
+    return blips;
+  }
+
+  private void markRead(ConversationBlip blip) {
+    supplement.setLastReadBlipVersion(CONV_ID, blip.getId(),
+        (int) blip.getLastModifiedVersion());
+  }
+
+  private static ObservableWaveletData createWaveletData(WaveletId waveletId) {
+    return new WaveletDataImpl(waveletId, USER, 1234567890, 0, HashedVersion.unsigned(0), 0,
+        WAVE_ID, BasicFactories.observablePluggableMutableDocumentFactory());
+  }
+
+  private static OpBasedWavelet createWavelet(ObservableWaveletData data) {
+    return new OpBasedWavelet(WAVE_ID, data, VERSIONED_CONTEXTS,
+        ParticipationHelper.DEFAULT,
+        SilentOperationSink.Executor.<WaveletOperation, WaveletData>build(data),
+        SilentOperationSink.VOID);
+  }
+}
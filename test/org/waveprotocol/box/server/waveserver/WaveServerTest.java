@@ -120,7 +120,7 @@ public class WaveServerTest extends TestCase {
             remoteWaveletContainerFactory, "example.com", lookupExecutor);
     waveServer =
         new WaveServerImpl(MoreExecutors.sameThreadExecutor(), certificateManager,
-            federationRemote, waveMap);
+            federationRemote, waveMap, new AccessPermissionCache(notifiee));
     waveServer.initialize();
   }
 
@@ -73,6 +73,7 @@ public class WaveletContainerTest extends TestCase {
   private static final HashedVersionFactory HASH_FACTORY = new HashedVersionFactoryImpl(URI_CODEC);
   private static final Executor PERSIST_EXECUTOR = MoreExecutors.sameThreadExecutor();
   private static final Executor STORAGE_CONTINUATION_EXECUTOR = MoreExecutors.sameThreadExecutor();
+  private static final Executor VERIFICATION_EXECUTOR = MoreExecutors.sameThreadExecutor();
 
   private static final String localDomain = "example.com";
   private static final WaveletName localWaveletName = WaveletName.of(
@@ -131,7 +132,8 @@ public class WaveletContainerTest extends TestCase {
     WaveletState remoteWaveletState =
         DeltaStoreBasedWaveletState.create(deltaStore.open(remoteWaveletName), PERSIST_EXECUTOR);
     remoteWavelet = new RemoteWaveletContainerImpl(remoteWaveletName, notifiee,
-        Futures.immediateFuture(remoteWaveletState), STORAGE_CONTINUATION_EXECUTOR);
+        Futures.immediateFuture(remoteWaveletState), STORAGE_CONTINUATION_EXECUTOR,
+        VERIFICATION_EXECUTOR);
     remoteWavelet.awaitLoad();
   }
 
@@ -0,0 +1,136 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.waveprotocol.box.server.waveserver;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import junit.framework.TestCase;
+
+import org.waveprotocol.box.common.DeltaSequence;
+import org.waveprotocol.box.server.persistence.file.FileUtils;
+import org.waveprotocol.box.server.util.WaveletDataUtil;
+import org.waveprotocol.box.server.util.testing.TestingConstants;
+import org.waveprotocol.wave.model.id.WaveId;
+import org.waveprotocol.wave.model.id.WaveIdImpl;
+import org.waveprotocol.wave.model.id.WaveletName;
+import org.waveprotocol.wave.model.version.HashedVersion;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for {@link WaveletPreloader}.
+ */
+public class WaveletPreloaderTest extends TestCase implements TestingConstants {
+
+  private static final WaveId OLD_WAVE = WaveIdImpl.of(DOMAIN, "w+old");
+  private static final WaveId RECENT_WAVE = WaveIdImpl.of(DOMAIN, "w+recent");
+  private static final WaveId NEW_WAVE = WaveIdImpl.of(DOMAIN, "w+new");
+
+  private File dir;
+  private File wavesFile;
+  private WaveletProvider waveletProvider;
+
+  @Override
+  protected void setUp() throws Exception {
+    dir = FileUtils.createTemporaryDirectory();
+    wavesFile = new File(dir, "recent_waves");
+    waveletProvider = mock(WaveletProvider.class);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    org.apache.commons.io.FileUtils.deleteDirectory(dir);
+  }
+
+  public void testPreloadsRecentlyModifiedWaves() throws Exception {
+    long now = System.currentTimeMillis();
+    WaveletPreloader before = newPreloader(2);
+    update(before, OLD_WAVE, now - TimeUnit.DAYS.toMillis(30));
+    update(before, RECENT_WAVE, now - TimeUnit.DAYS.toMillis(1));
+    update(before, NEW_WAVE, now);
+    before.writeWavesFile();
+
+    WaveletName recentWavelet = WaveletName.of(RECENT_WAVE, WAVELET_ID);
+    when(waveletProvider.getWaveletIds(RECENT_WAVE)).thenReturn(ImmutableSet.of(WAVELET_ID));
+    when(waveletProvider.getWaveletIds(NEW_WAVE)).thenReturn(ImmutableSet.of(WAVELET_ID));
+    WaveletPreloader after = newPreloader(2);
+    after.start();
+
+    verify(waveletProvider).getSnapshot(WaveletName.of(NEW_WAVE, WAVELET_ID));
+    verify(waveletProvider).getSnapshot(recentWavelet);
+    verify(waveletProvider, never()).getWaveletIds(OLD_WAVE);
+    assertTrue(after.getReadyMs() >= 0);
+  }
+
+  public void testSkipsWavesOlderThanMaxAge() throws Exception {
+    WaveletPreloader before = newPreloader(10);
+    update(before, OLD_WAVE, System.currentTimeMillis() - TimeUnit.DAYS.toMillis(30));
+    before.writeWavesFile();
+
+    assertTrue(newPreloader(10).readWavesFile().isEmpty());
+  }
+
+  public void testMostRecentlyModifiedWavesComeFirst() throws Exception {
+    long now = System.currentTimeMillis();
+    WaveletPreloader before = newPreloader(10);
+    update(before, NEW_WAVE, now - 2);
+    update(before, RECENT_WAVE, now - 1);
+    // Modifying a wave again makes it the most recent.
+    update(before, NEW_WAVE, now);
+    before.writeWavesFile();
+
+    assertEquals(ImmutableList.of(NEW_WAVE, RECENT_WAVE), newPreloader(10).readWavesFile());
+  }
+
+  public void testFailedWaveDoesNotStopPreloading() throws Exception {
+    WaveletPreloader before = newPreloader(10);
+    update(before, RECENT_WAVE, System.currentTimeMillis() - 1);
+    update(before, NEW_WAVE, System.currentTimeMillis());
+    before.writeWavesFile();
+
+    when(waveletProvider.getWaveletIds(NEW_WAVE)).thenThrow(new WaveServerException("failed"));
+    when(waveletProvider.getWaveletIds(RECENT_WAVE)).thenReturn(ImmutableSet.of(WAVELET_ID));
+    WaveletPreloader after = newPreloader(10);
+    after.start();
+
+    verify(waveletProvider).getSnapshot(WaveletName.of(RECENT_WAVE, WAVELET_ID));
+    assertTrue(after.getReadyMs() >= 0);
+  }
+
+  private WaveletPreloader newPreloader(int waveCount) {
+    return new WaveletPreloader(waveletProvider, mock(WaveBus.class),
+        MoreExecutors.sameThreadExecutor(), wavesFile.getPath(), waveCount, 7);
+  }
+
+  private static void update(WaveletPreloader preloader, WaveId waveId, long lastModifiedMs) {
+    preloader.waveletUpdate(
+        WaveletDataUtil.createEmptyWavelet(WaveletName.of(waveId, WAVELET_ID), PARTICIPANT,
+            HashedVersion.unsigned(0), lastModifiedMs),
+        DeltaSequence.empty());
+  }
+}
@@ -30,6 +30,7 @@ import org.waveprotocol.wave.federation.Proto.ProtocolSignature.SignatureAlgorit
 import org.waveprotocol.wave.federation.Proto.ProtocolSignerInfo.HashAlgorithm;
 
 import java.security.cert.X509Certificate;
+import java.util.List;
 
 
 public class WaveSignatureVerifierTest extends TestCase {
@@ -48,6 +49,8 @@ public class WaveSignatureVerifierTest extends TestCase {
 
   static private final byte[] MESSAGE = "hello".getBytes();
 
+  private FakeTimeSource timeSource;
+  private CachedCertPathValidator validator;
   private DefaultCertPathStore store;
   private WaveSignatureVerifier verifier;
 
@@ -56,12 +59,12 @@ public class WaveSignatureVerifierTest extends TestCase {
     super.setUp();
 
     // Jan 31, 2009
-    FakeTimeSource timeSource = new FakeTimeSource(1233465103000L);
+    timeSource = new FakeTimeSource(1233465103000L);
     DefaultCacheImpl cache = new DefaultCacheImpl(timeSource);
-    CachedCertPathValidator validator = new CachedCertPathValidator(cache,
+    validator = new CachedCertPathValidator(cache,
         timeSource, new FakeTrustRootsProvider(CertConstantUtil.CA_PUB_CERT));
     store = new DefaultCertPathStore();
-    verifier = new WaveSignatureVerifier(validator, store);
+    verifier = new WaveSignatureVerifier(validator, store, timeSource);
   }
 
   public void testVerify() throws Exception {
@@ -151,6 +154,63 @@ public class WaveSignatureVerifierTest extends TestCase {
     }
   }
 
+  public void testVerify_validatesCertChainOnce() throws Exception {
+    final int[] validations = {0};
+    verifier = new WaveSignatureVerifier(new WaveCertPathValidator() {
+      @Override
+      public void validate(List<? extends X509Certificate> certs) throws SignatureException {
+        validations[0]++;
+        validator.validate(certs);
+      }
+    }, store, timeSource);
+
+    storeSignerInfo(ImmutableList.of(CertConstantUtil.SERVER_PUB_CERT,
+        CertConstantUtil.INTERMEDIATE_PUB_CERT));
+
+    ProtocolSignature signature = ProtocolSignature.newBuilder()
+        .setSignatureBytes(ByteString.copyFrom(deBase64(SIGNATURE)))
+        .setSignerId(ByteString.copyFrom(deBase64(SIGNER_ID)))
+        .setSignatureAlgorithm(SignatureAlgorithm.SHA1_RSA)
+        .build();
+
+    verifier.verify(MESSAGE, signature, AUTHORITY);
+    verifier.verify(MESSAGE, signature, AUTHORITY);
+    assertEquals(1, validations[0]);
+
+    // The authority is still checked for a signer that has been verified.
+    try {
+      verifier.verify(MESSAGE, signature, "some_other_authority.com");
+      fail("expected exception, but didn't get it");
+    } catch (SignatureException e) {
+      // expected
+    }
+  }
+
+  public void testVerify_revalidatesAfterCertExpiry() throws Exception {
+
+    storeSignerInfo(ImmutableList.of(CertConstantUtil.SERVER_PUB_CERT,
+        CertConstantUtil.INTERMEDIATE_PUB_CERT));
+
+    ProtocolSignature signature = ProtocolSignature.newBuilder()
+        .setSignatureBytes(ByteString.copyFrom(deBase64(SIGNATURE)))
+        .setSignerId(ByteString.copyFrom(deBase64(SIGNER_ID)))
+        .setSignatureAlgorithm(SignatureAlgorithm.SHA1_RSA)
+        .build();
+
+    verifier.verify(MESSAGE, signature, AUTHORITY);
+
+    long expiry = Math.min(CertConstantUtil.SERVER_PUB_CERT.getNotAfter().getTime(),
+        CertConstantUtil.INTERMEDIATE_PUB_CERT.getNotAfter().getTime());
+    timeSource.advanceSeconds((expiry - timeSource.currentTimeMillis()) / 1000L + 1);
+
+    try {
+      verifier.verify(MESSAGE, signature, AUTHORITY);
+      fail("expected exception, but didn't get it");
+    } catch (SignatureException e) {
+      // expected
+    }
+  }
+
   public void testSpeed() throws Exception {
     storeSignerInfo(ImmutableList.of(CertConstantUtil.SERVER_PUB_CERT,
         CertConstantUtil.INTERMEDIATE_PUB_CERT));
@@ -22,11 +22,14 @@ package org.waveprotocol.wave.federation.xmpp;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
 
+import com.google.common.collect.Lists;
 import com.google.protobuf.ByteString;
 
 import junit.framework.TestCase;
 
+import org.dom4j.Element;
 import org.waveprotocol.wave.federation.ProtocolHashedVersionFactory;
 import org.waveprotocol.wave.federation.WaveletFederationListener;
 import org.waveprotocol.wave.federation.FederationErrorProto.FederationError;
@@ -36,6 +39,7 @@ import org.waveprotocol.wave.model.id.WaveId;
 import org.waveprotocol.wave.model.id.WaveletId;
 import org.waveprotocol.wave.model.id.WaveletName;
 import org.waveprotocol.wave.model.id.URIEncoderDecoder.EncodingException;
+import org.xmpp.packet.Message;
 import org.xmpp.packet.Packet;
 
 import java.util.Collections;
@@ -59,6 +63,8 @@ public class XmppFederationHostForDomainTest extends TestCase {
 
   private final static WaveletName WAVELET_NAME =
       WaveletName.of(WaveId.of(REMOTE_DOMAIN, "wave"), WaveletId.of(REMOTE_DOMAIN, "wavelet"));
+  private final static WaveletName OTHER_WAVELET_NAME =
+      WaveletName.of(WaveId.of(REMOTE_DOMAIN, "wave"), WaveletId.of(REMOTE_DOMAIN, "other"));
   private final static ProtocolHashedVersion WAVELET_VERSION =
       ProtocolHashedVersionFactory.createVersionZero(WAVELET_NAME);
   private final static ByteString DELTA_BYTESTRING =
@@ -66,8 +72,12 @@ public class XmppFederationHostForDomainTest extends TestCase {
 
   private final static String TEST_ID_SUFFIX = "-1-sometestID";
 
+  // Long enough for the batch window never to end during a test.
+  private final static int BATCH_WINDOW_MS = 60 * 60 * 1000;
+
 
   private MockDisco disco;
+  private XmppManager manager;
   private XmppFederationHostForDomain fedHost;
   private MockOutgoingPacketTransport transport;
 
@@ -112,7 +122,7 @@ public class XmppFederationHostForDomainTest extends TestCase {
 
     disco = new MockDisco(null);
     transport = new MockOutgoingPacketTransport();
-    XmppManager manager =
+    manager =
         new XmppManager(mock(XmppFederationHost.class), mock(XmppFederationRemote.class),
                         disco, transport, LOCAL_JID);
     fedHost = new XmppFederationHostForDomain(REMOTE_DOMAIN, manager, disco, LOCAL_JID);
@@ -215,6 +225,86 @@ public class XmppFederationHostForDomainTest extends TestCase {
     assertEquals(0, transport.packetsSent);
   }
 
+  /**
+   * Tests that the updates to one wavelet queued within the batch window are
+   * sent as one item of one message, and acknowledged together.
+   */
+  public void testUpdatesToOneWaveletAreCoalesced() throws Exception {
+    fedHost = new XmppFederationHostForDomain(REMOTE_DOMAIN, manager, disco, LOCAL_JID,
+        BATCH_WINDOW_MS);
+    WaveletFederationListener.WaveletUpdateCallback callback =
+        mock(WaveletFederationListener.WaveletUpdateCallback.class);
+    WaveletFederationListener.WaveletUpdateCallback callback2 =
+        mock(WaveletFederationListener.WaveletUpdateCallback.class);
+    WaveletFederationListener.WaveletUpdateCallback callback3 =
+        mock(WaveletFederationListener.WaveletUpdateCallback.class);
+    update(callback);
+    update(callback2);
+    commit(callback3);
+    assertEquals(0, disco.pending.size());
+
+    fedHost.flush();
+    successDiscoRequest();
+    assertEquals(1, transport.packetsSent);
+    List<Element> updates = getWaveletUpdates(transport.lastPacketSent);
+    assertEquals(1, updates.size());
+    assertEquals(XmppUtil.waveletNameCodec.waveletNameToURI(WAVELET_NAME),
+        updates.get(0).attributeValue("wavelet-name"));
+    assertEquals(2, updates.get(0).elements("applied-delta").size());
+    assertEquals(Long.toString(WAVELET_VERSION.getVersion()),
+        updates.get(0).element("commit-notice").attributeValue("version"));
+    verifyZeroInteractions(callback, callback2, callback3);
+
+    acknowledge(transport.lastPacketSent);
+    verify(callback).onSuccess();
+    verify(callback2).onSuccess();
+    verify(callback3).onSuccess();
+  }
+
+  /**
+   * Tests that the updates to several wavelets queued within the batch window
+   * are sent as one message with an item per wavelet.
+   */
+  public void testUpdatesToSeveralWaveletsShareOneMessage() throws Exception {
+    fedHost = new XmppFederationHostForDomain(REMOTE_DOMAIN, manager, disco, LOCAL_JID,
+        BATCH_WINDOW_MS);
+    update(null);
+    fedHost.waveletUpdate(OTHER_WAVELET_NAME,
+        Collections.<ByteString>singletonList(DELTA_BYTESTRING), null, null);
+
+    fedHost.flush();
+    successDiscoRequest();
+    assertEquals(1, transport.packetsSent);
+    List<Element> updates = getWaveletUpdates(transport.lastPacketSent);
+    assertEquals(2, updates.size());
+    assertEquals(XmppUtil.waveletNameCodec.waveletNameToURI(WAVELET_NAME),
+        updates.get(0).attributeValue("wavelet-name"));
+    assertEquals(XmppUtil.waveletNameCodec.waveletNameToURI(OTHER_WAVELET_NAME),
+        updates.get(1).attributeValue("wavelet-name"));
+  }
+
+  /**
+   * Returns the wavelet-update elements of a sent message, one per item.
+   */
+  @SuppressWarnings("unchecked")
+  private static List<Element> getWaveletUpdates(Packet packet) {
+    List<Element> updates = Lists.newArrayList();
+    Element items = packet.getElement().element("event").element("items");
+    for (Element item : (List<Element>) items.elements("item")) {
+      updates.add(item.element("wavelet-update"));
+    }
+    return updates;
+  }
+
+  /**
+   * Delivers the receipt of a sent message.
+   */
+  private void acknowledge(Packet packet) {
+    Message receipt = XmppUtil.createResponseMessage((Message) packet);
+    receipt.addChildElement("received", XmppNamespace.NAMESPACE_XMPP_RECEIPTS);
+    manager.receivePacket(receipt);
+  }
+
   /**
    * Send a single commit notice containing a dummy version via {@link #fedHost}.
    *
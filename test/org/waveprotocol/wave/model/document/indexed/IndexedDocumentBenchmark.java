@@ -0,0 +1,178 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.waveprotocol.wave.model.document.indexed;
+
+import junit.framework.TestCase;
+
+import org.waveprotocol.wave.model.document.bootstrap.BootstrapDocument;
+import org.waveprotocol.wave.model.document.operation.DocOp;
+import org.waveprotocol.wave.model.document.operation.automaton.DocumentSchema;
+import org.waveprotocol.wave.model.document.raw.impl.Element;
+import org.waveprotocol.wave.model.document.raw.impl.Node;
+import org.waveprotocol.wave.model.document.raw.impl.RawDocumentImpl;
+import org.waveprotocol.wave.model.document.raw.impl.Text;
+import org.waveprotocol.wave.model.testing.BenchmarkRunner;
+import org.waveprotocol.wave.model.testing.RandomDocOpGenerator;
+import org.waveprotocol.wave.model.testing.RandomDocOpGenerator.RandomProvider;
+import org.waveprotocol.wave.model.testing.RandomProviderImpl;
+import org.waveprotocol.wave.model.testing.TypingTraceGenerator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Benchmarks for {@link IndexedDocumentImpl#consume} and
+ * {@link BasicAnnotationTree}. Run with {@code ant benchmark}.
+ */
+public class IndexedDocumentBenchmark extends TestCase {
+
+  private static final int TRACE_STEPS = 1000;
+  private static final int RANDOM_OPS = 200;
+
+  private static final int TREE_UPDATES = 2000;
+  private static final int QUERIES_PER_UPDATE = 5;
+  private static final int TREE_KEYS = 10;
+
+  private TypingTraceGenerator.Trace trace;
+  /** Random operations that apply in sequence to an empty document. */
+  private List<DocOp> randomOps;
+
+  @Override
+  protected void setUp() throws Exception {
+    trace = TypingTraceGenerator.generate(RandomProviderImpl.ofSeed(42), TRACE_STEPS);
+
+    RandomProvider random = RandomProviderImpl.ofSeed(7);
+    RandomDocOpGenerator.Parameters parameters = new RandomDocOpGenerator.Parameters();
+    BootstrapDocument document = new BootstrapDocument();
+    randomOps = new ArrayList<DocOp>();
+    for (int i = 0; i < RANDOM_OPS; i++) {
+      DocOp op = RandomDocOpGenerator.generate(random, parameters, document);
+      document.consume(op);
+      randomOps.add(op);
+    }
+  }
+
+  public void testConsumeTypingTrace() throws Exception {
+    final List<DocOp> ops = trace.getOps();
+    BenchmarkRunner.run(getClass(), "consumeTypingTrace", ops.size() + 1,
+        new BenchmarkRunner.Task() {
+          @Override
+          public Object run() throws Exception {
+            IndexedDocument<Node, Element, Text> doc = createDocument();
+            doc.consume(trace.getInitialization());
+            for (DocOp op : ops) {
+              doc.consume(op);
+            }
+            return doc;
+          }
+        });
+  }
+
+  public void testConsumeRandom() throws Exception {
+    BenchmarkRunner.run(getClass(), "consumeRandom", RANDOM_OPS, new BenchmarkRunner.Task() {
+      @Override
+      public Object run() throws Exception {
+        IndexedDocument<Node, Element, Text> doc = createDocument();
+        for (DocOp op : randomOps) {
+          doc.consume(op);
+        }
+        return doc;
+      }
+    });
+  }
+
+  /**
+   * Replays a random sequence of inserts, deletes and annotation changes on
+   * an annotation tree, with a few lookups after each of them.
+   */
+  public void testAnnotationTree() throws Exception {
+    final String[] keys = new String[TREE_KEYS];
+    for (int i = 0; i < keys.length; i++) {
+      keys[i] = "k" + i;
+    }
+    final String[] values = {null, "a", "b"};
+    // Each update is an opcode, a start, a length, a key and a value.
+    final int[] updates = new int[5 * TREE_UPDATES];
+    final int[] queries = new int[2 * TREE_UPDATES * QUERIES_PER_UPDATE];
+    Random random = new Random(2);
+    int length = 0;
+    for (int i = 0, q = 0; i < TREE_UPDATES; i++) {
+      int opcode = length < 100 ? 0 : random.nextInt(3);
+      int start = random.nextInt(length + 1);
+      int span;
+      if (opcode == 0) {
+        span = 1 + random.nextInt(50);
+        length += span;
+      } else {
+        span = random.nextInt(Math.min(50, length - start) + 1);
+        if (opcode == 1) {
+          length -= span;
+        }
+      }
+      updates[5 * i] = opcode;
+      updates[5 * i + 1] = start;
+      updates[5 * i + 2] = span;
+      updates[5 * i + 3] = random.nextInt(keys.length);
+      updates[5 * i + 4] = random.nextInt(values.length);
+      for (int j = 0; j < QUERIES_PER_UPDATE; j++) {
+        queries[q++] = length == 0 ? -1 : random.nextInt(length);
+        queries[q++] = random.nextInt(keys.length);
+      }
+    }
+
+    BenchmarkRunner.run(getClass(), "annotationTree", TREE_UPDATES * (1 + QUERIES_PER_UPDATE),
+        new BenchmarkRunner.Task() {
+          @Override
+          public Object run() {
+            BasicAnnotationTree<Object> tree =
+                new BasicAnnotationTree<Object>(new Object(), new Object());
+            Object result = null;
+            for (int i = 0, q = 0; i < TREE_UPDATES; i++) {
+              int start = updates[5 * i + 1];
+              int span = updates[5 * i + 2];
+              switch (updates[5 * i]) {
+                case 0:
+                  tree.insert(start, span);
+                  break;
+                case 1:
+                  tree.delete(start, start + span);
+                  break;
+                default:
+                  tree.setAnnotation(start, start + span, keys[updates[5 * i + 3]],
+                      values[updates[5 * i + 4]]);
+              }
+              for (int j = 0; j < QUERIES_PER_UPDATE; j++, q += 2) {
+                if (queries[q] >= 0) {
+                  result = tree.getAnnotation(queries[q], keys[queries[q + 1]]);
+                }
+              }
+            }
+            return result;
+          }
+        });
+  }
+
+  private static IndexedDocument<Node, Element, Text> createDocument() {
+    return new IndexedDocumentImpl<Node, Element, Text, Void>(
+        RawDocumentImpl.PROVIDER.parse("<doc></doc>"), new AnnotationTree<Object>("a", "b", null),
+        DocumentSchema.NO_SCHEMA_CONSTRAINTS);
+  }
+}
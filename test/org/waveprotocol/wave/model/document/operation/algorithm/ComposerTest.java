@@ -21,10 +21,19 @@ package org.waveprotocol.wave.model.document.operation.algorithm;
 
 import junit.framework.TestCase;
 
+import org.waveprotocol.wave.model.document.bootstrap.BootstrapDocument;
 import org.waveprotocol.wave.model.document.operation.Attributes;
 import org.waveprotocol.wave.model.document.operation.DocOp;
 import org.waveprotocol.wave.model.document.operation.impl.DocOpBuilder;
 import org.waveprotocol.wave.model.operation.OperationException;
+import org.waveprotocol.wave.model.testing.RandomDocOpGenerator;
+import org.waveprotocol.wave.model.testing.RandomDocOpGenerator.RandomProvider;
+import org.waveprotocol.wave.model.testing.RandomProviderImpl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * @author ohler@google.com (Christian Ohler)
@@ -61,4 +70,40 @@ public class ComposerTest extends TestCase {
     // compose unchecked this time, nothing should be thrown.
     Composer.composeUnchecked(checked, unchecked);
   }
+
+  public void testComposeManyEqualsApplyingInSequence() throws OperationException {
+    RandomDocOpGenerator.Parameters parameters = new RandomDocOpGenerator.Parameters();
+    for (int seed = 0; seed < 100; seed++) {
+      RandomProvider random = RandomProviderImpl.ofSeed(seed);
+      BootstrapDocument expected = new BootstrapDocument();
+      List<DocOp> operations = new ArrayList<DocOp>();
+      int count = 1 + seed % 30;
+      for (int i = 0; i < count; i++) {
+        DocOp operation = RandomDocOpGenerator.generate(random, parameters, expected);
+        expected.consume(operation);
+        operations.add(operation);
+      }
+
+      BootstrapDocument actual = new BootstrapDocument();
+      actual.consume(Composer.compose(operations));
+      assertEquals("seed " + seed, expected.toString(), actual.toString());
+    }
+  }
+
+  public void testComposeManyEmptyIsNull() {
+    assertNull(Composer.compose(Collections.<DocOp>emptyList()));
+  }
+
+  public void testComposeManyDocumentLengthMismatch() {
+    List<DocOp> operations = Arrays.asList(
+        new DocOpBuilder().characters("a").build(),
+        new DocOpBuilder().retain(1).characters("b").build(),
+        new DocOpBuilder().retain(1).build());
+    try {
+      Composer.compose(operations);
+      fail();
+    } catch (IllegalArgumentException e) {
+      // ok
+    }
+  }
 }
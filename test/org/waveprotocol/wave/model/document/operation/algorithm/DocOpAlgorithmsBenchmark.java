@@ -0,0 +1,171 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.waveprotocol.wave.model.document.operation.algorithm;
+
+import junit.framework.TestCase;
+
+import org.waveprotocol.wave.model.document.bootstrap.BootstrapDocument;
+import org.waveprotocol.wave.model.document.operation.DocOp;
+import org.waveprotocol.wave.model.document.operation.automaton.DocumentSchema;
+import org.waveprotocol.wave.model.document.operation.impl.DocOpValidator;
+import org.waveprotocol.wave.model.testing.BenchmarkRunner;
+import org.waveprotocol.wave.model.testing.RandomDocOpGenerator;
+import org.waveprotocol.wave.model.testing.RandomDocOpGenerator.RandomProvider;
+import org.waveprotocol.wave.model.testing.RandomProviderImpl;
+import org.waveprotocol.wave.model.testing.TypingTraceGenerator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Benchmarks for {@link Composer}, {@link Transformer} and
+ * {@link DocOpValidator}, on a typing session and on random operations.
+ * Run with {@code ant benchmark}.
+ */
+public class DocOpAlgorithmsBenchmark extends TestCase {
+
+  private static final int TRACE_STEPS = 500;
+  private static final int INITIAL_RANDOM_OPS = 50;
+  private static final int RANDOM_OPS = 200;
+
+  private TypingTraceGenerator.Trace trace;
+
+  /** The document the random operations are generated against. */
+  private BootstrapDocument document;
+  private List<DocOp> randomOps;
+  private List<DocOp> concurrentRandomOps;
+  /** Operations to apply after the random operation with the same index. */
+  private List<DocOp> followingRandomOps;
+
+  @Override
+  protected void setUp() throws Exception {
+    trace = TypingTraceGenerator.generate(RandomProviderImpl.ofSeed(42), TRACE_STEPS);
+
+    RandomProvider random = RandomProviderImpl.ofSeed(7);
+    RandomDocOpGenerator.Parameters parameters = new RandomDocOpGenerator.Parameters();
+    document = new BootstrapDocument();
+    for (int i = 0; i < INITIAL_RANDOM_OPS; i++) {
+      document.consume(RandomDocOpGenerator.generate(random, parameters, document));
+    }
+    randomOps = new ArrayList<DocOp>();
+    concurrentRandomOps = new ArrayList<DocOp>();
+    followingRandomOps = new ArrayList<DocOp>();
+    for (int i = 0; i < RANDOM_OPS; i++) {
+      DocOp op = RandomDocOpGenerator.generate(random, parameters, document);
+      randomOps.add(op);
+      concurrentRandomOps.add(RandomDocOpGenerator.generate(random, parameters, document));
+      BootstrapDocument after = new BootstrapDocument(document);
+      after.consume(op);
+      followingRandomOps.add(RandomDocOpGenerator.generate(random, parameters, after));
+    }
+  }
+
+  public void testComposeTypingTrace() throws Exception {
+    final List<DocOp> ops = trace.getOps();
+    BenchmarkRunner.run(getClass(), "composeTypingTrace", ops.size() - 1,
+        new BenchmarkRunner.Task() {
+          @Override
+          public Object run() throws Exception {
+            DocOp result = null;
+            for (int i = 0; i < ops.size() - 1; i++) {
+              result = Composer.compose(ops.get(i), ops.get(i + 1));
+            }
+            return result;
+          }
+        });
+  }
+
+  public void testComposeManySmallOps() throws Exception {
+    composeMany(1000);
+    composeMany(100000);
+  }
+
+  /**
+   * Composes a typing session of the given length at once with
+   * {@link Composer#compose(Iterable)}.
+   */
+  private void composeMany(int count) throws Exception {
+    final List<DocOp> ops =
+        TypingTraceGenerator.generate(RandomProviderImpl.ofSeed(42), count).getOps();
+    BenchmarkRunner.run(getClass(), "composeMany" + count, count,
+        new BenchmarkRunner.Task() {
+          @Override
+          public Object run() {
+            return Composer.compose(ops);
+          }
+        });
+  }
+
+  public void testComposeRandom() throws Exception {
+    BenchmarkRunner.run(getClass(), "composeRandom", RANDOM_OPS, new BenchmarkRunner.Task() {
+      @Override
+      public Object run() throws Exception {
+        DocOp result = null;
+        for (int i = 0; i < RANDOM_OPS; i++) {
+          result = Composer.compose(randomOps.get(i), followingRandomOps.get(i));
+        }
+        return result;
+      }
+    });
+  }
+
+  public void testTransformTypingTrace() throws Exception {
+    final List<DocOp> ops = trace.getOps();
+    final List<DocOp> concurrentOps = trace.getConcurrentOps();
+    BenchmarkRunner.run(getClass(), "transformTypingTrace", ops.size(),
+        new BenchmarkRunner.Task() {
+          @Override
+          public Object run() throws Exception {
+            Object result = null;
+            for (int i = 0; i < ops.size(); i++) {
+              result = Transformer.transform(ops.get(i), concurrentOps.get(i));
+            }
+            return result;
+          }
+        });
+  }
+
+  public void testTransformRandom() throws Exception {
+    BenchmarkRunner.run(getClass(), "transformRandom", RANDOM_OPS, new BenchmarkRunner.Task() {
+      @Override
+      public Object run() throws Exception {
+        Object result = null;
+        for (int i = 0; i < RANDOM_OPS; i++) {
+          result = Transformer.transform(randomOps.get(i), concurrentRandomOps.get(i));
+        }
+        return result;
+      }
+    });
+  }
+
+  public void testValidateRandom() throws Exception {
+    BenchmarkRunner.run(getClass(), "validateRandom", RANDOM_OPS, new BenchmarkRunner.Task() {
+      @Override
+      public Object run() {
+        Object result = null;
+        for (int i = 0; i < RANDOM_OPS; i++) {
+          result = DocOpValidator.validate(
+              null, DocumentSchema.NO_SCHEMA_CONSTRAINTS, document, randomOps.get(i));
+        }
+        return result;
+      }
+    });
+  }
+}
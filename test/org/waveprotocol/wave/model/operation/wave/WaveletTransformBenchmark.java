@@ -0,0 +1,104 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.waveprotocol.wave.model.operation.wave;
+
+import junit.framework.TestCase;
+
+import org.waveprotocol.wave.model.document.operation.DocOp;
+import org.waveprotocol.wave.model.testing.BenchmarkRunner;
+import org.waveprotocol.wave.model.testing.RandomProviderImpl;
+import org.waveprotocol.wave.model.testing.TypingTraceGenerator;
+import org.waveprotocol.wave.model.wave.ParticipantId;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Benchmarks for {@link Transform#transform(WaveletOperation, WaveletOperation)}
+ * on the operation pairs the wave server transforms most: edits to the same
+ * blip, edits to different blips, and edits against participant changes.
+ * Run with {@code ant benchmark}.
+ */
+public class WaveletTransformBenchmark extends TestCase {
+
+  private static final int TRACE_STEPS = 500;
+  private static final ParticipantId ALEX = ParticipantId.ofUnsafe("alex@example.com");
+  private static final ParticipantId BOB = ParticipantId.ofUnsafe("bob@example.com");
+  private static final WaveletOperationContext ALEX_CONTEXT =
+      new WaveletOperationContext(ALEX, 0L, 1);
+  private static final WaveletOperationContext BOB_CONTEXT =
+      new WaveletOperationContext(BOB, 0L, 1);
+
+  private List<WaveletOperation> clientOps;
+  private List<WaveletOperation> sameBlipServerOps;
+  private List<WaveletOperation> otherBlipServerOps;
+  private List<WaveletOperation> participantServerOps;
+
+  @Override
+  protected void setUp() throws Exception {
+    TypingTraceGenerator.Trace trace =
+        TypingTraceGenerator.generate(RandomProviderImpl.ofSeed(42), TRACE_STEPS);
+    clientOps = new ArrayList<WaveletOperation>();
+    sameBlipServerOps = new ArrayList<WaveletOperation>();
+    otherBlipServerOps = new ArrayList<WaveletOperation>();
+    participantServerOps = new ArrayList<WaveletOperation>();
+    for (int i = 0; i < TRACE_STEPS; i++) {
+      DocOp concurrent = trace.getConcurrentOps().get(i);
+      ParticipantId participant = ParticipantId.ofUnsafe("user" + i + "@example.com");
+      clientOps.add(blipOp(ALEX_CONTEXT, "b+1", trace.getOps().get(i)));
+      sameBlipServerOps.add(blipOp(BOB_CONTEXT, "b+1", concurrent));
+      otherBlipServerOps.add(blipOp(BOB_CONTEXT, "b+2", concurrent));
+      participantServerOps.add(i % 2 == 0
+          ? new AddParticipant(BOB_CONTEXT, participant)
+          : new RemoveParticipant(BOB_CONTEXT, participant));
+    }
+  }
+
+  public void testTransformSameBlip() throws Exception {
+    runTransforms("sameBlip", sameBlipServerOps);
+  }
+
+  public void testTransformOtherBlip() throws Exception {
+    runTransforms("otherBlip", otherBlipServerOps);
+  }
+
+  public void testTransformAgainstParticipantChanges() throws Exception {
+    runTransforms("participantChanges", participantServerOps);
+  }
+
+  private void runTransforms(String name, final List<WaveletOperation> serverOps)
+      throws Exception {
+    BenchmarkRunner.run(getClass(), name, TRACE_STEPS, new BenchmarkRunner.Task() {
+      @Override
+      public Object run() throws Exception {
+        Object result = null;
+        for (int i = 0; i < TRACE_STEPS; i++) {
+          result = Transform.transform(clientOps.get(i), serverOps.get(i));
+        }
+        return result;
+      }
+    });
+  }
+
+  private static WaveletOperation blipOp(WaveletOperationContext context, String blipId,
+      DocOp op) {
+    return new WaveletBlipOperation(blipId, new BlipContentOperation(context, op));
+  }
+}
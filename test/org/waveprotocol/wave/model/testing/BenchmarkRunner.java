@@ -0,0 +1,128 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.waveprotocol.wave.model.testing;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * A small harness for the benchmark suites run by {@code ant benchmark}.
+ *
+ * <p>
+ * A task is run repeatedly to warm up the JIT, and then timed over a number of
+ * iterations of a fixed duration. The time per operation of every iteration
+ * is collected, and the median, minimum and maximum are reported on stderr.
+ * If the system property {@value #OUTPUT_PROPERTY} names a file, the results
+ * are also appended to it as one JSON object per line, so that they can be
+ * compared between runs.
+ */
+public final class BenchmarkRunner {
+
+  /** A unit of work to benchmark. */
+  public interface Task {
+    /**
+     * Runs the work once.
+     *
+     * @return a result of the work, which is consumed so that the JIT cannot
+     *         drop the work as dead code.
+     */
+    Object run() throws Exception;
+  }
+
+  /** System property naming the file the results are appended to. */
+  public static final String OUTPUT_PROPERTY = "benchmark.out";
+
+  private static final long WARMUP_NANOS = 500L * 1000 * 1000;
+  private static final long ITERATION_NANOS = 200L * 1000 * 1000;
+  private static final int ITERATIONS = 5;
+
+  /** Consumes task results. */
+  private static volatile int sink;
+
+  private BenchmarkRunner() {
+  }
+
+  /**
+   * Runs and reports a benchmark.
+   *
+   * @param name the name of the benchmark, unique within the suite.
+   * @param suite the class that defines the benchmark.
+   * @param operationsPerRun the number of operations in one run of the task,
+   *        by which the times are divided.
+   * @param task the work to time.
+   * @return the median nanoseconds per operation.
+   */
+  public static double run(Class<?> suite, String name, int operationsPerRun, Task task)
+      throws Exception {
+    long start = System.nanoTime();
+    while (System.nanoTime() - start < WARMUP_NANOS) {
+      consume(task.run());
+    }
+
+    double[] nanosPerOperation = new double[ITERATIONS];
+    for (int i = 0; i < ITERATIONS; i++) {
+      long runs = 0;
+      long elapsed;
+      start = System.nanoTime();
+      do {
+        consume(task.run());
+        runs++;
+        elapsed = System.nanoTime() - start;
+      } while (elapsed < ITERATION_NANOS);
+      nanosPerOperation[i] = ((double) elapsed) / (runs * operationsPerRun);
+    }
+    Arrays.sort(nanosPerOperation);
+    double median = nanosPerOperation[ITERATIONS / 2];
+    double min = nanosPerOperation[0];
+    double max = nanosPerOperation[ITERATIONS - 1];
+
+    String fullName = suite.getSimpleName() + "." + name;
+    System.err.println(String.format("%s: %.1f ns per op (min %.1f, max %.1f)",
+        fullName, median, min, max));
+    report(fullName, operationsPerRun, median, min, max);
+    return median;
+  }
+
+  private static void consume(Object result) {
+    sink ^= System.identityHashCode(result);
+  }
+
+  private static void report(String name, int operationsPerRun, double median, double min,
+      double max) throws IOException {
+    String file = System.getProperty(OUTPUT_PROPERTY);
+    if (file == null || file.isEmpty()) {
+      return;
+    }
+    Writer writer = new FileWriter(file, true);
+    try {
+      writer.write(String.format(Locale.ROOT,
+          "{\"benchmark\":\"%s\",\"opsPerRun\":%d,\"iterations\":%d,"
+          + "\"nsPerOp\":%.1f,\"nsPerOpMin\":%.1f,\"nsPerOpMax\":%.1f,"
+          + "\"java\":\"%s\",\"timestamp\":%d}%n",
+          name, operationsPerRun, ITERATIONS, median, min, max,
+          System.getProperty("java.version"), System.currentTimeMillis()));
+    } finally {
+      writer.close();
+    }
+  }
+}
@@ -0,0 +1,241 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.waveprotocol.wave.model.testing;
+
+import org.waveprotocol.wave.model.document.operation.AnnotationBoundaryMapBuilder;
+import org.waveprotocol.wave.model.document.operation.DocInitialization;
+import org.waveprotocol.wave.model.document.operation.DocOp;
+import org.waveprotocol.wave.model.document.operation.impl.AttributesImpl;
+import org.waveprotocol.wave.model.document.operation.impl.DocInitializationBuilder;
+import org.waveprotocol.wave.model.document.operation.impl.DocOpBuilder;
+import org.waveprotocol.wave.model.testing.RandomDocOpGenerator.RandomProvider;
+import org.waveprotocol.wave.model.util.Preconditions;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Generates the operations of a simulated editing session in a blip, in the
+ * shape the editor sends them: short runs of typed characters, new lines,
+ * backspaces and bold toggles on the word just typed, mostly at the end of
+ * the text. These are far more regular than the operations of
+ * {@link RandomDocOpGenerator}, and are what the server sees most of.
+ *
+ * <p>
+ * Alongside every operation the trace holds a concurrent operation against
+ * the same document state, in which a second participant types a character
+ * at the start of the first line.
+ */
+public final class TypingTraceGenerator {
+
+  /** A generated editing session. */
+  public static final class Trace {
+    private final DocInitialization initialization;
+    private final List<DocOp> ops;
+    private final List<DocOp> concurrentOps;
+
+    Trace(DocInitialization initialization, List<DocOp> ops, List<DocOp> concurrentOps) {
+      this.initialization = initialization;
+      this.ops = Collections.unmodifiableList(ops);
+      this.concurrentOps = Collections.unmodifiableList(concurrentOps);
+    }
+
+    /** Returns the document the session starts from: a body with one line. */
+    public DocInitialization getInitialization() {
+      return initialization;
+    }
+
+    /** Returns the operations of the session, in order. */
+    public List<DocOp> getOps() {
+      return ops;
+    }
+
+    /**
+     * Returns, for every operation of the session, an operation by another
+     * participant against the same document state.
+     */
+    public List<DocOp> getConcurrentOps() {
+      return concurrentOps;
+    }
+  }
+
+  private static final String BOLD_KEY = "style/fontWeight";
+  private static final String BOLD = "bold";
+  private static final String LETTERS = "etaoinshrdlu cmfwypvbgk";
+
+  // Item markers of the tracked document content.
+  private static final char ELEMENT_START = '<';
+  private static final char ELEMENT_END = '>';
+
+  /** The content of the document, one char per item. */
+  private final StringBuilder items = new StringBuilder();
+  /** The bold annotation of each item. */
+  private final List<String> bold = new ArrayList<String>();
+  private final RandomProvider random;
+  private int cursor;
+
+  private TypingTraceGenerator(RandomProvider random) {
+    this.random = random;
+  }
+
+  /**
+   * Generates an editing session.
+   *
+   * @param random the source of randomness.
+   * @param steps the number of operations in the session.
+   */
+  public static Trace generate(RandomProvider random, int steps) {
+    TypingTraceGenerator generator = new TypingTraceGenerator(random);
+    DocInitialization initialization = new DocInitializationBuilder()
+        .elementStart("body", AttributesImpl.EMPTY_MAP)
+        .elementStart("line", AttributesImpl.EMPTY_MAP)
+        .elementEnd()
+        .elementEnd()
+        .build();
+    generator.insertItems(0, "" + ELEMENT_START + ELEMENT_START + ELEMENT_END + ELEMENT_END);
+    // Type before the end of the body.
+    generator.cursor = 3;
+
+    List<DocOp> ops = new ArrayList<DocOp>(steps);
+    List<DocOp> concurrentOps = new ArrayList<DocOp>(steps);
+    for (int i = 0; i < steps; i++) {
+      concurrentOps.add(generator.concurrentInsert());
+      ops.add(generator.nextOp());
+    }
+    return new Trace(initialization, ops, concurrentOps);
+  }
+
+  /** Returns an op inserting a character at the start of the first line. */
+  private DocOp concurrentInsert() {
+    return new DocOpBuilder().retain(3).characters("x").retain(items.length() - 3).build();
+  }
+
+  private DocOp nextOp() {
+    int choice = random.nextInt(100);
+    if (choice < 4) {
+      DocOp op = toggleBoldOfLastWord();
+      if (op != null) {
+        return op;
+      }
+    } else if (choice < 10) {
+      return newLine();
+    } else if (choice < 18) {
+      DocOp op = backspace();
+      if (op != null) {
+        return op;
+      }
+    }
+    return type();
+  }
+
+  private DocOp type() {
+    int length = 1 + random.nextInt(3);
+    StringBuilder text = new StringBuilder();
+    for (int i = 0; i < length; i++) {
+      text.append(LETTERS.charAt(random.nextInt(LETTERS.length())));
+    }
+    DocOp op = new DocOpBuilder()
+        .retain(cursor)
+        .characters(text.toString())
+        .retain(items.length() - cursor)
+        .build();
+    insertItems(cursor, text.toString());
+    cursor += length;
+    return op;
+  }
+
+  private DocOp newLine() {
+    DocOp op = new DocOpBuilder()
+        .retain(cursor)
+        .elementStart("line", AttributesImpl.EMPTY_MAP)
+        .elementEnd()
+        .retain(items.length() - cursor)
+        .build();
+    insertItems(cursor, "" + ELEMENT_START + ELEMENT_END);
+    cursor += 2;
+    return op;
+  }
+
+  /** Deletes the character before the cursor, or returns null if there is none. */
+  private DocOp backspace() {
+    char previous = items.charAt(cursor - 1);
+    if (previous == ELEMENT_START || previous == ELEMENT_END) {
+      return null;
+    }
+    DocOp op = new DocOpBuilder()
+        .retain(cursor - 1)
+        .deleteCharacters(String.valueOf(previous))
+        .retain(items.length() - cursor)
+        .build();
+    cursor--;
+    items.deleteCharAt(cursor);
+    bold.remove(cursor);
+    return op;
+  }
+
+  /**
+   * Toggles bold on the characters before the cursor, or returns null if they
+   * are not uniformly annotated.
+   */
+  private DocOp toggleBoldOfLastWord() {
+    int start = cursor;
+    while (start > 0 && cursor - start < 6
+        && items.charAt(start - 1) != ELEMENT_START && items.charAt(start - 1) != ELEMENT_END) {
+      start--;
+    }
+    if (start == cursor) {
+      return null;
+    }
+    String oldValue = bold.get(start);
+    for (int i = start; i < cursor; i++) {
+      if (!equal(oldValue, bold.get(i))) {
+        return null;
+      }
+    }
+    String newValue = oldValue == null ? BOLD : null;
+    DocOp op = new DocOpBuilder()
+        .retain(start)
+        .annotationBoundary(
+            new AnnotationBoundaryMapBuilder().change(BOLD_KEY, oldValue, newValue).build())
+        .retain(cursor - start)
+        .annotationBoundary(new AnnotationBoundaryMapBuilder().end(BOLD_KEY).build())
+        .retain(items.length() - cursor)
+        .build();
+    for (int i = start; i < cursor; i++) {
+      bold.set(i, newValue);
+    }
+    return op;
+  }
+
+  /** Inserts items, which inherit the annotation of the item to their left. */
+  private void insertItems(int position, String inserted) {
+    Preconditions.checkPositionIndex(position, items.length());
+    String inherited = position == 0 ? null : bold.get(position - 1);
+    items.insert(position, inserted);
+    for (int i = 0; i < inserted.length(); i++) {
+      bold.add(position, inherited);
+    }
+  }
+
+  private static boolean equal(String a, String b) {
+    return a == null ? b == null : a.equals(b);
+  }
+}